@@ -74,53 +74,80 @@ public class AABB {
      * @return true if the ray intersects the AABB, false otherwise
      */
     public boolean hasIntersection(Ray ray) {
+        return clip(ray, new double[]{Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY});
+    }
+    /**
+     * Calculates the distances along a ray at which it enters and leaves the AABB.
+     *
+     * @param ray the ray to intersect with the AABB
+     * @return {enter, leave}, where enter is negative if the ray starts inside the AABB,
+     * or null if the ray does not intersect the AABB in front of its head
+     */
+    public double[] intersectionInterval(Ray ray) {
+        double[] range = {Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY};
+        return clip(ray, range) && range[1] >= 0 ? range : null;
+    }
+
+    /**
+     * Clips a range of distances along a ray to the three slabs of the AABB.
+     * The axes are unrolled, reading the coordinates directly rather than by axis index.
+     *
+     * @param ray   the ray
+     * @param range the {enter, leave} range to clip, updated in place
+     * @return true if the clipped range is not empty
+     */
+    private boolean clip(Ray ray, double[] range) {
         Point head = ray.getHead();
         Vector dir = ray.getDirection();
+        return clip(head.getX(), dir.getX(), min.getX(), max.getX(), range)
+                && clip(head.getY(), dir.getY(), min.getY(), max.getY(), range)
+                && clip(head.getZ(), dir.getZ(), min.getZ(), max.getZ(), range);
+    }
 
-        double tMin = Double.NEGATIVE_INFINITY;
-        double tMax = Double.POSITIVE_INFINITY;
-
-        // For each axis X, Y, Z
-        for (int axis = 0; axis < 3; axis++) {
-            double axisDir = dir.get(axis);
-            double axisOrigin = head.get(axis);
-            double axisMin = min.get(axis);
-            double axisMax = max.get(axis);
-
-            // Handle parallel rays to an axis
-            if (Math.abs(axisDir) < DELTA) {
-                // Ray is parallel to slab. No hit if origin not within slab
-                if (axisOrigin < axisMin || axisOrigin > axisMax) {
-                    return false;
-                }
-                // Otherwise, parallel ray is inside this slab, so continue to next axis
-                continue;
-            }
-
-            // Calculate intersection distances
-            double t1 = (axisMin - axisOrigin) / axisDir;
-            double t2 = (axisMax - axisOrigin) / axisDir;
-
-            // Ensure t1 is the nearest intersection
-            if (t1 > t2) {
-                double temp = t1;
-                t1 = t2;
-                t2 = temp;
-            }
-
-            // Update tMin and tMax
-            tMin = Math.max(tMin, t1);
-            tMax = Math.min(tMax, t2);
+    /**
+     * Clips a range of distances along a ray to one slab of the AABB
+     *
+     * @param origin    the ray's head coordinate on the slab's axis
+     * @param direction the ray's direction component on the slab's axis
+     * @param low       the slab's lower bound
+     * @param high      the slab's upper bound
+     * @param range     the {enter, leave} range to clip, updated in place
+     * @return true if the clipped range is not empty
+     */
+    private boolean clip(double origin, double direction, double low, double high, double[] range) {
+        // Ray is parallel to the slab: no hit if the origin is not within the slab
+        if (Math.abs(direction) < DELTA) return origin >= low && origin <= high;
+        double t1 = (low - origin) / direction;
+        double t2 = (high - origin) / direction;
+        range[0] = Math.max(range[0], Math.min(t1, t2));
+        range[1] = Math.min(range[1], Math.max(t1, t2));
+        return range[0] <= range[1];
+    }
 
-            // No intersection if tMin > tMax
-            if (tMin > tMax) {
-                return false;
-            }
-        }
+    /**
+     * Checks if the AABB contains a point, including its faces.
+     *
+     * @param point the point
+     * @return true if the point is inside the AABB, false otherwise
+     */
+    public boolean contains(Point point) {
+        return point.getX() >= min.getX() && point.getX() <= max.getX()
+                && point.getY() >= min.getY() && point.getY() <= max.getY()
+                && point.getZ() >= min.getZ() && point.getZ() <= max.getZ();
+    }
 
-        // Ray intersects all 3 slabs, so there's an intersection
-        return true;
+    /**
+     * Checks if this AABB overlaps another one, including touching faces.
+     *
+     * @param other the other AABB
+     * @return true if the AABBs overlap, false otherwise
+     */
+    public boolean overlaps(AABB other) {
+        return min.getX() <= other.max.getX() && other.min.getX() <= max.getX()
+                && min.getY() <= other.max.getY() && other.min.getY() <= max.getY()
+                && min.getZ() <= other.max.getZ() && other.min.getZ() <= max.getZ();
     }
+
     /**
      * Union operation to combine two AABBs into a new AABB that encompasses both.
      * Helps to calculate the bounding box that contains all the scene objects.
@@ -141,4 +168,15 @@ public class AABB {
         );
         return new AABB(newMin, newMax);
     }
+
+    /**
+     * Expands the AABB by a margin on all sides.
+     *
+     * @param margin the margin
+     * @return a new AABB that is this AABB widened by the margin
+     */
+    public AABB expand(double margin) {
+        return new AABB(new Point(min.getX() - margin, min.getY() - margin, min.getZ() - margin),
+                new Point(max.getX() + margin, max.getY() + margin, max.getZ() + margin));
+    }
 }
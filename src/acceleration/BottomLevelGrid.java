@@ -0,0 +1,88 @@
+package acceleration;
+
+import geometries.Intersectable;
+import primitives.Point;
+import primitives.Ray;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A group of geometries with its own voxel grid (a bottom-level acceleration structure).
+ * The grid is built once, in the group's own (object) space, and is shared by all the
+ * {@link geometries.Instance instances} of the group, so the memory and the build time of a
+ * repeated model scale with the model, not with its copies.
+ * The instances themselves are placed in the scene's grid by their bounding boxes, which
+ * makes that grid the top-level structure over the instances.
+ */
+public class BottomLevelGrid extends Intersectable {
+    /** Number of voxels per geometry for the grid size calculation */
+    private static final int VOXELS_PER_OBJECT = 4;
+    /** The grid of the geometries with bounding boxes, null if there are none */
+    private final VoxelGrid voxelGrid;
+    /** The geometries without bounding boxes */
+    private final List<Intersectable> unboundedGeometries = new LinkedList<>();
+
+    /**
+     * Builds the grid of a group of geometries
+     *
+     * @param geometries the geometries of the group
+     */
+    public BottomLevelGrid(List<Intersectable> geometries) {
+        List<Intersectable> bounded = new ArrayList<>();
+        AABB bounds = null;
+        for (Intersectable geometry : geometries) {
+            AABB aabb = geometry.getAABB();
+            if (aabb == null) unboundedGeometries.add(geometry);
+            else {
+                bounded.add(geometry);
+                bounds = bounds == null ? aabb : bounds.union(aabb);
+            }
+        }
+
+        if (bounded.isEmpty()) voxelGrid = null;
+        else {
+            int gridSize = Math.max(1, (int) Math.cbrt(bounded.size() * VOXELS_PER_OBJECT));
+            voxelGrid = new VoxelGrid(bounds, gridSize, gridSize, gridSize);
+            List<AABB> boxes = new ArrayList<>(bounded.size());
+            for (Intersectable geometry : bounded) boxes.add(geometry.getAABB());
+            voxelGrid.addObjects(bounded, boxes);
+        }
+        // a group with an unbounded geometry has no bounding box
+        box = unboundedGeometries.isEmpty() ? bounds : null;
+    }
+
+    @Override
+    protected List<Intersection> calculateIntersectionsHelper(Ray ray, double maxDistance) {
+        List<Intersection> intersections = voxelGrid == null ? new LinkedList<>()
+                : voxelGrid.findAllIntersections(ray, maxDistance);
+        for (Intersectable geometry : unboundedGeometries) {
+            List<Intersection> hits = geometry.calculateIntersections(ray, maxDistance);
+            if (hits != null) intersections.addAll(hits);
+        }
+        return intersections.isEmpty() ? null : intersections;
+    }
+
+    /**
+     * Finds the closest intersection of a ray with the group, walking the group's grid
+     * only up to the closest hit
+     *
+     * @param ray the ray to intersect with the group
+     * @return the closest intersection, or null if there is none
+     */
+    @Override
+    public Intersection calculateClosestIntersection(Ray ray) {
+        Point head = ray.getHead();
+        Intersection closest = voxelGrid == null ? null : voxelGrid.findClosestIntersection(ray);
+        double minDistance = closest == null ? Double.POSITIVE_INFINITY : head.distanceSquared(closest.point);
+        for (Intersectable geometry : unboundedGeometries) {
+            Intersection intersection = geometry.calculateClosestIntersection(ray);
+            if (intersection != null && head.distanceSquared(intersection.point) < minDistance) {
+                closest = intersection;
+                minDistance = head.distanceSquared(intersection.point);
+            }
+        }
+        return closest;
+    }
+}
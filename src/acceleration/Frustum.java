@@ -0,0 +1,172 @@
+package acceleration;
+
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+/**
+ * An infinite pyramid of rays from an apex, such as the rays of a camera through one render tile.
+ * The pyramid is spanned by its edge directions (given in order around it) and bounded by the
+ * planes through the apex and each pair of neighbouring edges, and by the plane through the apex
+ * perpendicular to its mean direction.
+ * The culling tests are conservative: a shape is reported outside only if the pyramid's rays
+ * cannot hit it, so culling never changes the closest hit of a ray {@link #contains(Ray) within}
+ * the frustum.
+ */
+public final class Frustum {
+    /** The smallest length of a candidate separating plane's normal */
+    private static final double MIN_NORMAL = 1e-12;
+
+    /** The coordinates of the apex */
+    private final double ax, ay, az;
+    /** The edge directions, as {x, y, z} */
+    private final double[][] edges;
+    /** The inward normals of the bounding planes through the apex, as {x, y, z} */
+    private final double[][] normals;
+
+    /**
+     * Constructs the frustum of the rays from an apex between its edges
+     *
+     * @param apex  the apex
+     * @param edges the edge directions, at least 3, in order around the pyramid
+     * @throws IllegalArgumentException if there are less than 3 edges
+     */
+    public Frustum(Point apex, Vector... edges) {
+        if (edges.length < 3)
+            throw new IllegalArgumentException("A frustum needs at least 3 edges");
+        ax = apex.getX();
+        ay = apex.getY();
+        az = apex.getZ();
+
+        int n = edges.length;
+        this.edges = new double[n][];
+        double[] mean = new double[3];
+        for (int i = 0; i < n; ++i) {
+            Vector e = edges[i].normalize();
+            this.edges[i] = new double[]{e.getX(), e.getY(), e.getZ()};
+            for (int c = 0; c < 3; ++c) mean[c] += this.edges[i][c];
+        }
+
+        normals = new double[n + 1][];
+        for (int i = 0; i < n; ++i) {
+            double[] normal = cross(this.edges[i], this.edges[(i + 1) % n]);
+            // orient the side plane towards the pyramid's inside
+            if (dot(normal, mean) < 0)
+                for (int c = 0; c < 3; ++c) normal[c] = -normal[c];
+            normals[i] = normal;
+        }
+        // the mean direction bounds the pyramid from behind only if it leans on every edge
+        boolean front = true;
+        for (double[] e : this.edges) front &= dot(e, mean) > 0;
+        normals[n] = front ? mean : new double[3];
+    }
+
+    /**
+     * Checks whether a ray is one of the frustum's rays, i.e. it starts at the apex and
+     * its direction is between the frustum's edges
+     *
+     * @param ray the ray
+     * @return true if the ray is within the frustum
+     */
+    public boolean contains(Ray ray) {
+        Point head = ray.getHead();
+        if (head.getX() != ax || head.getY() != ay || head.getZ() != az) return false;
+        Vector dir = ray.getDirection();
+        for (double[] n : normals)
+            if (n[0] * dir.getX() + n[1] * dir.getY() + n[2] * dir.getZ() < 0) return false;
+        return true;
+    }
+
+    /**
+     * Checks whether a box may intersect the frustum: it does not if it is
+     * entirely outside one of the frustum's bounding planes
+     *
+     * @param box the box
+     * @return false if the box is certainly outside the frustum
+     */
+    public boolean intersects(AABB box) {
+        Point min = box.getMin();
+        Point max = box.getMax();
+        for (double[] n : normals) {
+            // the corner of the box farthest along the plane's inward normal
+            double x = n[0] >= 0 ? max.getX() : min.getX();
+            double y = n[1] >= 0 ? max.getY() : min.getY();
+            double z = n[2] >= 0 ? max.getZ() : min.getZ();
+            if (n[0] * (x - ax) + n[1] * (y - ay) + n[2] * (z - az) < 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a plane may intersect the frustum's rays: they cannot reach it
+     * if the apex is off the plane and no edge heads towards it
+     *
+     * @param point  a point on the plane
+     * @param normal the plane's normal
+     * @return false if the frustum's rays certainly miss the plane
+     */
+    public boolean intersectsPlane(Point point, Vector normal) {
+        double[] n = {normal.getX(), normal.getY(), normal.getZ()};
+        double side = n[0] * (ax - point.getX()) + n[1] * (ay - point.getY()) + n[2] * (az - point.getZ());
+        if (side == 0) return true;
+        for (double[] e : edges)
+            if (side * dot(n, e) < 0) return true;
+        return false;
+    }
+
+    /**
+     * Checks whether an infinite tube may intersect the frustum.
+     * The tube is outside the frustum if a plane parallel to its axis through one of the
+     * frustum's edges has the whole frustum on one side, and the axis farther than the radius
+     * on the other side.
+     *
+     * @param axis   the tube's axis
+     * @param radius the tube's radius
+     * @return false if the tube is certainly outside the frustum
+     */
+    public boolean intersectsTube(Ray axis, double radius) {
+        Point head = axis.getHead();
+        Vector dir = axis.getDirection();
+        double[] d = {dir.getX(), dir.getY(), dir.getZ()};
+        double[] toAxis = {head.getX() - ax, head.getY() - ay, head.getZ() - az};
+        for (double[] edge : edges) {
+            double[] m = cross(edge, d);
+            double length = Math.sqrt(dot(m, m));
+            if (length < MIN_NORMAL) continue;
+            double low = 0, high = 0;
+            for (double[] e : edges) {
+                double side = dot(m, e);
+                low = Math.min(low, side);
+                high = Math.max(high, side);
+            }
+            double distance = dot(m, toAxis) / length;
+            if (low >= 0 && distance < -radius || high <= 0 && distance > radius) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Calculates the dot product of two vectors given as {x, y, z}
+     *
+     * @param u the first vector
+     * @param v the second vector
+     * @return the dot product
+     */
+    private static double dot(double[] u, double[] v) {
+        return u[0] * v[0] + u[1] * v[1] + u[2] * v[2];
+    }
+
+    /**
+     * Calculates the cross product of two vectors given as {x, y, z}
+     *
+     * @param u the first vector
+     * @param v the second vector
+     * @return the cross product, as {x, y, z}
+     */
+    private static double[] cross(double[] u, double[] v) {
+        return new double[]{
+                u[1] * v[2] - u[2] * v[1],
+                u[2] * v[0] - u[0] * v[2],
+                u[0] * v[1] - u[1] * v[0]};
+    }
+}
@@ -0,0 +1,196 @@
+package acceleration;
+
+import geometries.Intersectable;
+import primitives.Point;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A persistent on-disk cache of voxel grids, for repeated renders of the same scene.
+ * A grid depends only on its bounds, its resolution, and the bounding box and the shape of each of
+ * its geometries in order (the data of its overlap test, see {@link Intersectable#shapeHash()}), so the
+ * cache key is a hash of these, and a scene whose geometry did not change (e.g. one with only new
+ * lights, materials or camera) finds its grid in the cache.
+ * <p>
+ * A cached grid is a flat binary file: a header (format version, key, resolution and counts),
+ * then the occupied voxels' linear indices, the start of each voxel's geometries, and the
+ * geometries' indices. The file is memory-mapped on load, and the only fix-up is to gather each
+ * voxel's geometries by their indices, which skips the binning of the geometries entirely.
+ */
+public final class GridCache {
+    /** The magic number at the start of a cached grid file */
+    private static final int MAGIC = 0x56475244; // "VGRD"
+    /** The version of the cached grid files, changed whenever the voxels of a geometry change (e.g. exact overlap tests) */
+    private static final int VERSION = 2;
+    /** The number of bytes of a cached grid file's header */
+    private static final int HEADER_BYTES = 4 * 4 + 8 + 4 * 4;
+
+    /** Don't let anyone instantiate this class. */
+    private GridCache() {
+    }
+
+    /**
+     * Returns the voxel grid of geometries from the cache in a directory, building it (with
+     * {@link VoxelGrid#addObjects}) and storing it in the cache if it is not there.
+     * A cached grid that cannot be read (e.g. of an older format) is rebuilt and replaced,
+     * and a grid that cannot be stored is still returned, since the cache only saves time.
+     *
+     * @param directory the cache directory, created if it does not exist
+     * @param bounds    the grid's bounds
+     * @param nx        number of voxels along the X-axis
+     * @param ny        number of voxels along the Y-axis
+     * @param nz        number of voxels along the Z-axis
+     * @param objs      the geometries
+     * @param objBounds the axis-aligned bounding box of each geometry
+     * @return the grid of the geometries
+     */
+    public static VoxelGrid build(Path directory, AABB bounds, int nx, int ny, int nz,
+                                  List<Intersectable> objs, List<AABB> objBounds) {
+        long key = key(bounds, nx, ny, nz, objs, objBounds);
+        Path file = directory.resolve(String.format("voxelgrid-%016x.bin", key));
+        VoxelGrid grid = new VoxelGrid(bounds, nx, ny, nz);
+        if (Files.isRegularFile(file) && load(file, key, grid, objs, objBounds)) return grid;
+
+        grid = new VoxelGrid(bounds, nx, ny, nz);
+        grid.addObjects(objs, objBounds);
+        store(file, key, grid, objs.size());
+        return grid;
+    }
+
+    /**
+     * Calculates the cache key of a grid: a 64-bit hash of its bounds, its resolution,
+     * and the shape and bounding box of each of its geometries in order
+     *
+     * @param bounds    the grid's bounds
+     * @param nx        number of voxels along the X-axis
+     * @param ny        number of voxels along the Y-axis
+     * @param nz        number of voxels along the Z-axis
+     * @param objs      the geometries
+     * @param objBounds the axis-aligned bounding box of each geometry
+     * @return the key
+     */
+    public static long key(AABB bounds, int nx, int ny, int nz, List<Intersectable> objs, List<AABB> objBounds) {
+        long hash = mix(VERSION, nx);
+        hash = mix(mix(hash, ny), nz);
+        hash = mix(hash, bounds);
+        for (int i = 0; i < objs.size(); i++)
+            hash = mix(mix(hash, objs.get(i).shapeHash()), objBounds.get(i));
+        return hash;
+    }
+
+    /**
+     * Mixes the coordinates of a box into a hash
+     *
+     * @param hash the hash
+     * @param box  the box
+     * @return the new hash
+     */
+    private static long mix(long hash, AABB box) {
+        Point min = box.getMin(), max = box.getMax();
+        hash = mix(hash, Double.doubleToLongBits(min.getX()));
+        hash = mix(hash, Double.doubleToLongBits(min.getY()));
+        hash = mix(hash, Double.doubleToLongBits(min.getZ()));
+        hash = mix(hash, Double.doubleToLongBits(max.getX()));
+        hash = mix(hash, Double.doubleToLongBits(max.getY()));
+        return mix(hash, Double.doubleToLongBits(max.getZ()));
+    }
+
+    /**
+     * Mixes a value into a hash
+     *
+     * @param hash  the hash
+     * @param value the value
+     * @return the new hash
+     */
+    private static long mix(long hash, long value) {
+        hash = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        return hash ^ hash >>> 29;
+    }
+
+    /**
+     * Loads a cached grid's voxels into an empty grid
+     *
+     * @param file      the cached grid file
+     * @param key       the grid's cache key
+     * @param grid      the empty grid
+     * @param objs      the geometries
+     * @param objBounds the axis-aligned bounding box of each geometry
+     * @return true if the grid was loaded, false if the file is not a valid cached grid of the geometries
+     */
+    private static boolean load(Path file, long key, VoxelGrid grid, List<Intersectable> objs, List<AABB> objBounds) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) return false;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != objs.size()
+                    || buffer.getInt() != 0 || buffer.getLong() != key)
+                return false;
+            int nx = buffer.getInt(), ny = buffer.getInt(), nz = buffer.getInt(), cells = buffer.getInt();
+            if (cells < 0 || size != HEADER_BYTES + 4L * (2L * cells + 1) + 4L * references(buffer, cells))
+                return false;
+            IntBuffer ints = buffer.asIntBuffer();
+            IntBuffer voxels = ints.slice(0, cells);
+            IntBuffer starts = ints.slice(cells, cells + 1);
+            IntBuffer indices = ints.slice(2 * cells + 1, ints.limit() - 2 * cells - 1);
+            return grid.loadCells(nx, ny, nz, voxels, starts, indices, objs, objBounds);
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the number of geometry references of a cached grid
+     *
+     * @param buffer the cached grid file, positioned after the header
+     * @param cells  the number of occupied voxels
+     * @return the number of references
+     */
+    private static long references(ByteBuffer buffer, int cells) {
+        return buffer.getInt(HEADER_BYTES + 4 * (2 * cells));
+    }
+
+    /**
+     * Stores a grid in the cache, writing a temporary file that then replaces the cached file,
+     * so concurrent renders never read a partial file
+     *
+     * @param file  the cached grid file
+     * @param key   the grid's cache key
+     * @param grid  the grid
+     * @param count the number of the grid's geometries
+     */
+    private static void store(Path file, long key, VoxelGrid grid, int count) {
+        int[][] cells = grid.cells();
+        int[] voxels = cells[0], starts = cells[1], indices = cells[2];
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 4 * (voxels.length + starts.length + indices.length));
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(0).putLong(key);
+        buffer.putInt(grid.getNx()).putInt(grid.getNy()).putInt(grid.getNz()).putInt(voxels.length);
+        IntBuffer ints = buffer.asIntBuffer();
+        ints.put(voxels).put(starts).put(indices);
+        Path temp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            temp = Files.createTempFile(file.getParent(), "voxelgrid", ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                buffer.rewind();
+                while (buffer.hasRemaining()) channel.write(buffer);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UnsupportedOperationException e) {
+            // the cache only saves time, the grid is used without it
+            try {
+                if (temp != null) Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // a leftover temporary file is never read
+            }
+        }
+    }
+}
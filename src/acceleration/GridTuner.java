@@ -0,0 +1,155 @@
+package acceleration;
+
+import geometries.Intersectable;
+import geometries.Intersectable.Intersection;
+import primitives.Ray;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Chooses the resolution of a voxel grid along each axis.
+ * The resolution follows the scene's extents rather than a cube: the voxels are cubes of the size
+ * that gives the requested number of voxels per geometry over the scene's volume, so a wide flat scene
+ * (a long floor, a star field) gets many voxels along its long axes and few along its thin one.
+ * A voxel is kept from being much smaller than a typical geometry along each axis, since such
+ * geometries would be referenced by many voxels, and the total number of voxels is capped.
+ * <p>
+ * Optionally, the resolution is tuned by tracing a sample of rays (e.g. some of the camera's rays)
+ * through grids of several densities, and choosing the one of the least estimated cost: the number of
+ * voxels the rays visit and of the geometries referenced there, up to each ray's closest hit.
+ */
+public final class GridTuner {
+    /** The extent, relative to the largest one, below which an axis is flat and gets a single voxel */
+    private static final double FLAT_EXTENT = 1e-3;
+    /** The smallest size of a voxel along an axis, relative to the median extent of the geometries */
+    private static final double MIN_VOXEL_TO_GEOMETRY = 0.5;
+    /** The largest number of geometries whose extents are sampled for their medians */
+    private static final int MEDIAN_SAMPLES = 4096;
+    /** The numbers of voxels per geometry that tuning tries */
+    private static final double[] TUNING_DENSITIES = {1, 2, 4, 8, 16};
+
+    /** Don't let anyone instantiate this class. */
+    private GridTuner() {
+    }
+
+    /**
+     * Chooses the resolution of a grid from the scene's extents and the geometries' sizes
+     *
+     * @param bounds    the grid's bounds
+     * @param objBounds the bounding box of each geometry
+     * @param density   the number of voxels per geometry
+     * @param maxVoxels the largest total number of voxels
+     * @return the number of voxels along each axis, {nx, ny, nz}
+     * @throws IllegalArgumentException if the density or the cap is not positive
+     */
+    public static int[] resolution(AABB bounds, List<AABB> objBounds, double density, long maxVoxels) {
+        if (density <= 0 || maxVoxels <= 0)
+            throw new IllegalArgumentException("The voxel density and the voxel cap must be positive");
+        int n = objBounds.size();
+        double[] extent = extent(bounds);
+        double largest = Math.max(extent[0], Math.max(extent[1], extent[2]));
+        if (n == 0 || !(largest > 0)) return new int[]{1, 1, 1};
+
+        // cubic voxels over the volume of the axes that are not flat
+        double volume = 1;
+        int dimensions = 0;
+        for (double e : extent)
+            if (e > largest * FLAT_EXTENT) {
+                volume *= e;
+                dimensions++;
+            }
+        double size = Math.pow(volume / (density * n), 1.0 / dimensions);
+
+        double[] median = medianExtent(objBounds);
+        int[] resolution = new int[3];
+        for (int axis = 0; axis < 3; axis++) {
+            if (extent[axis] <= largest * FLAT_EXTENT) resolution[axis] = 1;
+            else {
+                double voxel = Math.max(size, median[axis] * MIN_VOXEL_TO_GEOMETRY);
+                resolution[axis] = (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.ceil(extent[axis] / voxel)));
+            }
+        }
+
+        // cap the number of voxels by shrinking all the axes alike
+        while ((double) resolution[0] * resolution[1] * resolution[2] > maxVoxels) {
+            double scale = Math.cbrt(maxVoxels / ((double) resolution[0] * resolution[1] * resolution[2]));
+            for (int axis = 0; axis < 3; axis++)
+                resolution[axis] = Math.max(1, Math.min(resolution[axis] - 1, (int) (resolution[axis] * scale)));
+        }
+        return resolution;
+    }
+
+    /**
+     * Builds the grid of geometries whose resolution has the least estimated cost for a sample of rays,
+     * among grids of several densities (see {@link #resolution})
+     *
+     * @param bounds    the grid's bounds
+     * @param objs      the geometries
+     * @param objBounds the bounding box of each geometry
+     * @param rays      the sample of rays, e.g. some of the camera's rays
+     * @param maxVoxels the largest total number of voxels
+     * @return the grid of the geometries with the tuned resolution
+     */
+    public static VoxelGrid tune(AABB bounds, List<Intersectable> objs, List<AABB> objBounds,
+                                 List<Ray> rays, long maxVoxels) {
+        VoxelGrid best = null;
+        double bestCost = Double.POSITIVE_INFINITY;
+        double[] hits = null;
+        int[] last = null;
+        for (double density : TUNING_DENSITIES) {
+            int[] resolution = resolution(bounds, objBounds, density, maxVoxels);
+            if (Arrays.equals(resolution, last)) continue;
+            last = resolution;
+            VoxelGrid grid = new VoxelGrid(bounds, resolution[0], resolution[1], resolution[2]);
+            grid.addObjects(objs, objBounds);
+            if (hits == null) { // the closest hits do not depend on the resolution
+                hits = new double[rays.size()];
+                for (int r = 0; r < hits.length; r++) {
+                    Intersection hit = grid.findClosestIntersection(rays.get(r));
+                    hits[r] = hit == null ? Double.POSITIVE_INFINITY : rays.get(r).getHead().distance(hit.point);
+                }
+            }
+            double cost = grid.sampleCost(rays, hits);
+            if (cost < bestCost) {
+                best = grid;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Calculates the extents of a box
+     *
+     * @param box the box
+     * @return the extents along the axes
+     */
+    private static double[] extent(AABB box) {
+        return new double[]{box.getMax().getX() - box.getMin().getX(),
+                box.getMax().getY() - box.getMin().getY(),
+                box.getMax().getZ() - box.getMin().getZ()};
+    }
+
+    /**
+     * Estimates the median extents of geometries along the axes, from a sample of them
+     *
+     * @param objBounds the bounding box of each geometry
+     * @return the median extents along the axes
+     */
+    private static double[] medianExtent(List<AABB> objBounds) {
+        int stride = Math.max(1, objBounds.size() / MEDIAN_SAMPLES);
+        int samples = (objBounds.size() + stride - 1) / stride;
+        double[][] extents = new double[3][samples];
+        for (int s = 0; s < samples; s++) {
+            double[] extent = extent(objBounds.get(s * stride));
+            for (int axis = 0; axis < 3; axis++) extents[axis][s] = extent[axis];
+        }
+        double[] median = new double[3];
+        for (int axis = 0; axis < 3; axis++) {
+            Arrays.sort(extents[axis]);
+            median[axis] = extents[axis][samples / 2];
+        }
+        return median;
+    }
+}
@@ -0,0 +1,108 @@
+package acceleration;
+
+/**
+ * Batched ray intersection kernels over primitives stored in structure-of-arrays layout.
+ * Each kernel tests one ray against {@code count} primitives and writes, for each primitive,
+ * the distance along the ray of its first hit in front of the ray's head, or positive
+ * infinity for a miss. The tests are conservative (slightly more permissive than the exact
+ * tests of the geometries), so they are used to select the geometries to test exactly.
+ * <p>
+ * {@link #get()} returns kernels based on the JDK Vector API when the
+ * {@code jdk.incubator.vector} module is available (run with
+ * {@code --add-modules jdk.incubator.vector}), and scalar kernels otherwise.
+ * The Vector API kernels are kept in their own source root ({@code vector/src}), compiled with the
+ * module only where it is available, and loaded reflectively, so the rest of the sources compile without it.
+ */
+public interface IntersectionKernels {
+    /** The tolerance of the conservative tests */
+    double EPSILON = 1e-9;
+
+    /**
+     * Tests a ray against spheres
+     *
+     * @param ray     the ray
+     * @param cx      the x coordinates of the centers
+     * @param cy      the y coordinates of the centers
+     * @param cz      the z coordinates of the centers
+     * @param r2      the squared radii
+     * @param count   the number of spheres
+     * @param t       the output hit distances
+     */
+    void spheres(PackedRay ray, double[] cx, double[] cy, double[] cz, double[] r2, int count, double[] t);
+
+    /**
+     * Tests a ray against triangles (Möller–Trumbore)
+     *
+     * @param ray   the ray
+     * @param ax    the x coordinates of the first vertices
+     * @param ay    the y coordinates of the first vertices
+     * @param az    the z coordinates of the first vertices
+     * @param e1x   the x components of the first edges (second vertex - first vertex)
+     * @param e1y   the y components of the first edges
+     * @param e1z   the z components of the first edges
+     * @param e2x   the x components of the second edges (third vertex - first vertex)
+     * @param e2y   the y components of the second edges
+     * @param e2z   the z components of the second edges
+     * @param count the number of triangles
+     * @param t     the output hit distances
+     */
+    void triangles(PackedRay ray, double[] ax, double[] ay, double[] az,
+                   double[] e1x, double[] e1y, double[] e1z,
+                   double[] e2x, double[] e2y, double[] e2z, int count, double[] t);
+
+    /**
+     * Tests a ray against axis-aligned boxes (slab test).
+     * The distance of a box that contains the ray's head is 0.
+     *
+     * @param ray   the ray
+     * @param minX  the minimal x coordinates
+     * @param minY  the minimal y coordinates
+     * @param minZ  the minimal z coordinates
+     * @param maxX  the maximal x coordinates
+     * @param maxY  the maximal y coordinates
+     * @param maxZ  the maximal z coordinates
+     * @param count the number of boxes
+     * @param t     the output entry distances
+     */
+    void boxes(PackedRay ray, double[] minX, double[] minY, double[] minZ,
+               double[] maxX, double[] maxY, double[] maxZ, int count, double[] t);
+
+    /**
+     * Returns the kernels of the running JVM: Vector API kernels if the
+     * {@code jdk.incubator.vector} module and the compiled kernels are available, scalar kernels otherwise
+     *
+     * @return the kernels
+     */
+    static IntersectionKernels get() {
+        return Holder.KERNELS;
+    }
+
+    /**
+     * Lazily loads the kernels of the running JVM
+     */
+    final class Holder {
+        /** The kernels of the running JVM */
+        private static final IntersectionKernels KERNELS = load();
+
+        /** Private constructor to prevent instantiation */
+        private Holder() {
+        }
+
+        /**
+         * Loads the Vector API kernels if their module and their class are available
+         *
+         * @return the loaded kernels
+         */
+        private static IntersectionKernels load() {
+            if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+                try {
+                    return (IntersectionKernels) Class.forName("acceleration.VectorKernels")
+                            .getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | LinkageError ignored) {
+                    // fall back to the scalar kernels
+                }
+            }
+            return new ScalarKernels();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package acceleration;
+
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+/**
+ * A ray unpacked into plain coordinates for the batched intersection kernels.
+ * Holds the ray's head, its direction and the inverse of its direction; direction
+ * components that are almost zero are inverted as a huge finite value, so that the slab
+ * test of a box never multiplies zero by infinity.
+ */
+public final class PackedRay {
+    /** The smallest direction component magnitude that is inverted as is */
+    private static final double MIN_DIRECTION = 1e-12;
+
+    /** The coordinates of the ray's head */
+    public final double ox, oy, oz;
+    /** The components of the ray's (normalized) direction */
+    public final double dx, dy, dz;
+    /** The inverse of the components of the ray's direction */
+    public final double ix, iy, iz;
+
+    /**
+     * Unpacks a ray
+     *
+     * @param ray the ray
+     */
+    public PackedRay(Ray ray) {
+        Point head = ray.getHead();
+        Vector dir = ray.getDirection();
+        ox = head.getX();
+        oy = head.getY();
+        oz = head.getZ();
+        dx = dir.getX();
+        dy = dir.getY();
+        dz = dir.getZ();
+        ix = inverse(dx);
+        iy = inverse(dy);
+        iz = inverse(dz);
+    }
+
+    /**
+     * Inverts a direction component, keeping the result finite
+     *
+     * @param d the direction component
+     * @return the inverse of the component
+     */
+    private static double inverse(double d) {
+        return 1 / (Math.abs(d) < MIN_DIRECTION ? Math.copySign(MIN_DIRECTION, d) : d);
+    }
+}
@@ -0,0 +1,240 @@
+package acceleration;
+
+import geometries.Intersectable;
+import geometries.Sphere;
+import geometries.Triangle;
+import primitives.Point;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The geometries of a voxel packed in structure-of-arrays layout for the batched
+ * {@link IntersectionKernels}: spheres by center and squared radius, triangles by vertex and
+ * edges, and any other geometry by its bounding box.
+ * The kernels select the geometries that the ray may hit, and only those are tested exactly.
+ * Voxels with fewer geometries than {@link #MIN_BATCH} are not worth the kernels' setup,
+ * and all their geometries are candidates.
+ */
+final class PrimitiveBatch {
+    /** The tolerance of a candidate's distance beyond the maximum distance */
+    private static final double DISTANCE_TOLERANCE = 1e-9;
+    /** The smallest number of geometries that is selected by the kernels */
+    private static final int MIN_BATCH = 4;
+
+    /** The kernels of the running JVM */
+    private final IntersectionKernels kernels = IntersectionKernels.get();
+
+    /** The spheres of the voxel */
+    private final Intersectable[] spheres;
+    /** The spheres' centers and squared radii */
+    private final double[] cx, cy, cz, r2;
+
+    /** The triangles of the voxel */
+    private final Intersectable[] triangles;
+    /** The triangles' first vertices and edges */
+    private final double[] ax, ay, az, e1x, e1y, e1z, e2x, e2y, e2z;
+
+    /** The other bounded geometries of the voxel */
+    private final Intersectable[] boxes;
+    /** The other geometries' bounding boxes */
+    private final double[] minX, minY, minZ, maxX, maxY, maxZ;
+
+    /** The unbounded geometries of the voxel, always candidates */
+    private final List<Intersectable> unbounded = new ArrayList<>();
+
+    /** The size of the largest batch */
+    private final int maxCount;
+    /** All the geometries of a voxel that is too small for the kernels, null otherwise */
+    private final Candidates all;
+
+    /**
+     * Packs the geometries of a voxel
+     *
+     * @param geometries the geometries
+     */
+    PrimitiveBatch(List<Intersectable> geometries) {
+        List<Sphere> sphereList = new ArrayList<>();
+        List<Triangle> triangleList = new ArrayList<>();
+        List<Intersectable> boxList = new ArrayList<>();
+        for (Intersectable geometry : geometries) {
+            if (geometry instanceof Sphere sphere) sphereList.add(sphere);
+            else if (geometry instanceof Triangle triangle) triangleList.add(triangle);
+            else if (geometry.getAABB() != null) boxList.add(geometry);
+            else unbounded.add(geometry);
+        }
+
+        spheres = sphereList.toArray(new Intersectable[0]);
+        cx = new double[spheres.length];
+        cy = new double[spheres.length];
+        cz = new double[spheres.length];
+        r2 = new double[spheres.length];
+        for (int i = 0; i < spheres.length; i++) {
+            Sphere sphere = sphereList.get(i);
+            Point center = sphere.getCenter();
+            cx[i] = center.getX();
+            cy[i] = center.getY();
+            cz[i] = center.getZ();
+            r2[i] = sphere.getRadius() * sphere.getRadius();
+        }
+
+        triangles = triangleList.toArray(new Intersectable[0]);
+        int n = triangles.length;
+        ax = new double[n];
+        ay = new double[n];
+        az = new double[n];
+        e1x = new double[n];
+        e1y = new double[n];
+        e1z = new double[n];
+        e2x = new double[n];
+        e2y = new double[n];
+        e2z = new double[n];
+        for (int i = 0; i < n; i++) {
+            List<Point> vertices = triangleList.get(i).getVertices();
+            Point a = vertices.get(0), b = vertices.get(1), c = vertices.get(2);
+            ax[i] = a.getX();
+            ay[i] = a.getY();
+            az[i] = a.getZ();
+            e1x[i] = b.getX() - a.getX();
+            e1y[i] = b.getY() - a.getY();
+            e1z[i] = b.getZ() - a.getZ();
+            e2x[i] = c.getX() - a.getX();
+            e2y[i] = c.getY() - a.getY();
+            e2z[i] = c.getZ() - a.getZ();
+        }
+
+        boxes = boxList.toArray(new Intersectable[0]);
+        n = boxes.length;
+        minX = new double[n];
+        minY = new double[n];
+        minZ = new double[n];
+        maxX = new double[n];
+        maxY = new double[n];
+        maxZ = new double[n];
+        for (int i = 0; i < n; i++) {
+            AABB box = boxes[i].getAABB();
+            minX[i] = box.getMin().getX();
+            minY[i] = box.getMin().getY();
+            minZ[i] = box.getMin().getZ();
+            maxX[i] = box.getMax().getX();
+            maxY[i] = box.getMax().getY();
+            maxZ[i] = box.getMax().getZ();
+        }
+
+        maxCount = Math.max(spheres.length, Math.max(triangles.length, boxes.length));
+        if (geometries.size() < MIN_BATCH) {
+            all = new Candidates(geometries.size());
+            for (Intersectable geometry : geometries) all.add(geometry, 0);
+        } else all = null;
+    }
+
+    /**
+     * Selects the geometries that a ray may hit within a maximum distance
+     *
+     * @param ray         the ray
+     * @param maxDistance the maximum distance along the ray
+     * @return the candidate geometries, ordered by the distance of their kernel hit
+     */
+    Candidates candidates(PackedRay ray, double maxDistance) {
+        if (all != null) return all;
+        Candidates result = new Candidates(unbounded.size() + spheres.length + triangles.length + boxes.length);
+        for (Intersectable geometry : unbounded) result.add(geometry, 0);
+        if (maxCount == 0) return result;
+        double limit = maxDistance * (1 + DISTANCE_TOLERANCE) + DISTANCE_TOLERANCE;
+        double[] t = new double[maxCount];
+        if (spheres.length > 0) {
+            kernels.spheres(ray, cx, cy, cz, r2, spheres.length, t);
+            result.select(spheres, t, limit);
+        }
+        if (triangles.length > 0) {
+            kernels.triangles(ray, ax, ay, az, e1x, e1y, e1z, e2x, e2y, e2z, triangles.length, t);
+            result.select(triangles, t, limit);
+        }
+        if (boxes.length > 0) {
+            kernels.boxes(ray, minX, minY, minZ, maxX, maxY, maxZ, boxes.length, t);
+            result.select(boxes, t, limit);
+        }
+        return result;
+    }
+
+    /**
+     * The candidate geometries of a ray in a voxel, ordered by the distance of their kernel hit.
+     * A kernel hit's distance is a lower bound of the geometry's exact hits, so a search for
+     * the closest hit can stop at the first candidate that is farther than the closest hit found.
+     */
+    static final class Candidates {
+        /** The candidate geometries */
+        private final Intersectable[] geometries;
+        /** The kernel hit distances of the candidates */
+        private final double[] distances;
+        /** The number of candidates */
+        private int size = 0;
+
+        /**
+         * Constructs an empty list of candidates
+         *
+         * @param capacity the maximal number of candidates
+         */
+        private Candidates(int capacity) {
+            geometries = new Intersectable[capacity];
+            distances = new double[capacity];
+        }
+
+        /**
+         * Inserts a candidate in distance order
+         *
+         * @param geometry the geometry
+         * @param distance the distance of its kernel hit
+         */
+        private void add(Intersectable geometry, double distance) {
+            int i = size++;
+            for (; i > 0 && distances[i - 1] > distance; i--) {
+                geometries[i] = geometries[i - 1];
+                distances[i] = distances[i - 1];
+            }
+            geometries[i] = geometry;
+            distances[i] = distance;
+        }
+
+        /**
+         * Adds the geometries whose kernel hit distance is within a limit
+         *
+         * @param tested the tested geometries
+         * @param t      the kernel hit distances of the geometries
+         * @param limit  the distance limit
+         */
+        private void select(Intersectable[] tested, double[] t, double limit) {
+            for (int i = 0; i < tested.length; i++)
+                if (t[i] <= limit) add(tested[i], t[i]);
+        }
+
+        /**
+         * Returns the number of candidates
+         *
+         * @return the number of candidates
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Returns a candidate geometry
+         *
+         * @param i the candidate's position
+         * @return the geometry
+         */
+        Intersectable geometry(int i) {
+            return geometries[i];
+        }
+
+        /**
+         * Returns the distance of a candidate's kernel hit, a lower bound of its exact hits' distances
+         *
+         * @param i the candidate's position
+         * @return the distance
+         */
+        double distance(int i) {
+            return distances[i];
+        }
+    }
+}
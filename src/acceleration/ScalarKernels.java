@@ -0,0 +1,148 @@
+package acceleration;
+
+import static acceleration.IntersectionKernels.EPSILON;
+
+/**
+ * Scalar implementation of the batched intersection kernels,
+ * used when the Vector API is not available and for the tails of the vector loops.
+ */
+public final class ScalarKernels implements IntersectionKernels {
+
+    @Override
+    public void spheres(PackedRay ray, double[] cx, double[] cy, double[] cz, double[] r2, int count, double[] t) {
+        spheres(ray, cx, cy, cz, r2, 0, count, t);
+    }
+
+    /**
+     * Tests a ray against a range of spheres
+     *
+     * @param ray  the ray
+     * @param cx   the x coordinates of the centers
+     * @param cy   the y coordinates of the centers
+     * @param cz   the z coordinates of the centers
+     * @param r2   the squared radii
+     * @param from the first sphere (inclusive)
+     * @param to   the last sphere (exclusive)
+     * @param t    the output hit distances
+     */
+    static void spheres(PackedRay ray, double[] cx, double[] cy, double[] cz, double[] r2,
+                        int from, int to, double[] t) {
+        for (int i = from; i < to; i++) {
+            double lx = cx[i] - ray.ox, ly = cy[i] - ray.oy, lz = cz[i] - ray.oz;
+            double tca = lx * ray.dx + ly * ray.dy + lz * ray.dz;
+            double thc2 = r2[i] - (lx * lx + ly * ly + lz * lz - tca * tca);
+            if (thc2 < -EPSILON * r2[i]) {
+                t[i] = Double.POSITIVE_INFINITY;
+                continue;
+            }
+            double thc = Math.sqrt(Math.max(thc2, 0));
+            double t0 = tca - thc;
+            double t1 = tca + thc;
+            t[i] = t0 > -EPSILON ? Math.max(t0, 0) : t1 > -EPSILON ? Math.max(t1, 0) : Double.POSITIVE_INFINITY;
+        }
+    }
+
+    @Override
+    public void triangles(PackedRay ray, double[] ax, double[] ay, double[] az,
+                          double[] e1x, double[] e1y, double[] e1z,
+                          double[] e2x, double[] e2y, double[] e2z, int count, double[] t) {
+        triangles(ray, ax, ay, az, e1x, e1y, e1z, e2x, e2y, e2z, 0, count, t);
+    }
+
+    /**
+     * Tests a ray against a range of triangles
+     *
+     * @param ray  the ray
+     * @param ax   the x coordinates of the first vertices
+     * @param ay   the y coordinates of the first vertices
+     * @param az   the z coordinates of the first vertices
+     * @param e1x  the x components of the first edges
+     * @param e1y  the y components of the first edges
+     * @param e1z  the z components of the first edges
+     * @param e2x  the x components of the second edges
+     * @param e2y  the y components of the second edges
+     * @param e2z  the z components of the second edges
+     * @param from the first triangle (inclusive)
+     * @param to   the last triangle (exclusive)
+     * @param t    the output hit distances
+     */
+    static void triangles(PackedRay ray, double[] ax, double[] ay, double[] az,
+                          double[] e1x, double[] e1y, double[] e1z,
+                          double[] e2x, double[] e2y, double[] e2z, int from, int to, double[] t) {
+        for (int i = from; i < to; i++) {
+            double hx = ray.dy * e2z[i] - ray.dz * e2y[i];
+            double hy = ray.dz * e2x[i] - ray.dx * e2z[i];
+            double hz = ray.dx * e2y[i] - ray.dy * e2x[i];
+            double a = e1x[i] * hx + e1y[i] * hy + e1z[i] * hz;
+            if (Math.abs(a) < EPSILON * EPSILON) {
+                t[i] = Double.POSITIVE_INFINITY;
+                continue;
+            }
+            double f = 1 / a;
+            double sx = ray.ox - ax[i], sy = ray.oy - ay[i], sz = ray.oz - az[i];
+            double u = f * (sx * hx + sy * hy + sz * hz);
+            double qx = sy * e1z[i] - sz * e1y[i];
+            double qy = sz * e1x[i] - sx * e1z[i];
+            double qz = sx * e1y[i] - sy * e1x[i];
+            double v = f * (ray.dx * qx + ray.dy * qy + ray.dz * qz);
+            double d = f * (e2x[i] * qx + e2y[i] * qy + e2z[i] * qz);
+            t[i] = u >= -EPSILON && v >= -EPSILON && u + v <= 1 + EPSILON && d > -EPSILON
+                    ? Math.max(d, 0) : Double.POSITIVE_INFINITY;
+        }
+    }
+
+    @Override
+    public void boxes(PackedRay ray, double[] minX, double[] minY, double[] minZ,
+                      double[] maxX, double[] maxY, double[] maxZ, int count, double[] t) {
+        boxes(ray, minX, minY, minZ, maxX, maxY, maxZ, 0, count, t);
+    }
+
+    /**
+     * Tests a ray against a range of boxes
+     *
+     * @param ray  the ray
+     * @param minX the minimal x coordinates
+     * @param minY the minimal y coordinates
+     * @param minZ the minimal z coordinates
+     * @param maxX the maximal x coordinates
+     * @param maxY the maximal y coordinates
+     * @param maxZ the maximal z coordinates
+     * @param from the first box (inclusive)
+     * @param to   the last box (exclusive)
+     * @param t    the output entry distances
+     */
+    static void boxes(PackedRay ray, double[] minX, double[] minY, double[] minZ,
+                      double[] maxX, double[] maxY, double[] maxZ, int from, int to, double[] t) {
+        for (int i = from; i < to; i++) {
+            double tx1 = (minX[i] - ray.ox) * ray.ix, tx2 = (maxX[i] - ray.ox) * ray.ix;
+            double ty1 = (minY[i] - ray.oy) * ray.iy, ty2 = (maxY[i] - ray.oy) * ray.iy;
+            double tz1 = (minZ[i] - ray.oz) * ray.iz, tz2 = (maxZ[i] - ray.oz) * ray.iz;
+            double near = max(max(min(tx1, tx2), min(ty1, ty2)), max(min(tz1, tz2), 0));
+            double far = min(min(max(tx1, tx2), max(ty1, ty2)), max(tz1, tz2));
+            t[i] = near <= far * (1 + EPSILON) + EPSILON ? near : Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Returns the smaller of two values that are not NaN
+     * (cheaper than {@link Math#min(double, double)}, which also orders NaN and signed zeros)
+     *
+     * @param a the first value
+     * @param b the second value
+     * @return the smaller value
+     */
+    private static double min(double a, double b) {
+        return a < b ? a : b;
+    }
+
+    /**
+     * Returns the larger of two values that are not NaN
+     *
+     * @param a the first value
+     * @param b the second value
+     * @return the larger value
+     */
+    private static double max(double a, double b) {
+        return a > b ? a : b;
+    }
+}
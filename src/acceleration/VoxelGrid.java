@@ -5,18 +5,50 @@ import geometries.Intersectable;
 import geometries.Intersectable.Intersection;
 import primitives.Vector;
 
+import java.nio.IntBuffer;
 import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 /**
  * A VoxelGrid is an acceleration structure that partitions 3D space into a regular grid of voxels.
- * Each voxel contains a list of geometries that intersect it.
+ * Each voxel contains a list of geometries that intersect it: a geometry spanning several voxels is
+ * tested for overlap with each voxel of its bounding box (see {@link Intersectable#overlaps}), so a
+ * diagonal triangle or a sphere is not referred to from the voxels its bounding box merely touches.
  * This implementation uses a sparse HashMap to store only occupied voxels, improving memory efficiency.
+ * The geometries of each voxel are also packed, on the first query after the grid changes, into a
+ * {@link PrimitiveBatch} whose batched kernels select the geometries a ray may hit before they are
+ * tested exactly.
+ * Many geometries added together (see {@link #addObjects}) are inserted in parallel on the fork-join
+ * pool, and the voxels are packed in parallel, with the same result as inserting them one by one.
+ * <p>
+ * A grid may also be subdivided into a two-level grid (see {@link #subdivide}): each voxel with more
+ * geometries than a threshold gets its own nested grid over the voxel's bounds, and a ray walking
+ * through such a voxel walks through the nested grid, so a dense cluster of small geometries in a large
+ * scene (e.g. a model on a wide floor) is not tested all at once. A geometry is tested at most once
+ * per ray, in whichever level it is found first.
+ * <p>
+ * Empty space is skipped: along with the packed voxels, a bitmap of the occupied voxels and one of the
+ * occupied macro-cells (blocks of 4x4x4 voxels) are built, so a ray steps over an empty voxel without
+ * looking it up, and over an empty macro-cell in one step.
  */
 public class VoxelGrid {
+    private static final int PARALLEL_INSERT_SIZE = 1024; // The smallest number of geometries inserted in parallel
+    private static final int SUB_GRID_VOXELS_PER_OBJECT = 4; // Number of voxels per geometry of a nested grid
+    private static final int MACRO_CELL_SHIFT = 2; // The log2 of a macro-cell's size in voxels along each axis
+    private static final long MAX_OCCUPANCY_VOXELS = 1L << 30; // The most voxels of a grid whose empty space is skipped
+    private static final long EMPTY_KEY = Long.MAX_VALUE; // The key of a slot of a voxel its geometry does not overlap
+    private static final double OVERLAP_MARGIN = 1e-6; // The widening of a voxel tested for overlap, relative to its size
     private final AABB bounds; // The global bounding box of the scene
     private final int nx, ny, nz; // Number of voxels along each axis
     private final double voxelSizeX, voxelSizeY, voxelSizeZ; // Size of each voxel along each axis
     private final Map<VoxelIndex, List<Intersectable>> grid = new HashMap<>(); // Sparse grid to store intersectable objects in voxels
+    private volatile Map<VoxelIndex, PrimitiveBatch> batches = null; // Packed voxels, null until the first query
+    private Occupancy occupancy = null; // The occupied voxels and macro-cells, built with the packed voxels
+    private final List<Intersectable> objects = new ArrayList<>(); // The geometries added to the grid
+    private final List<AABB> objectBounds = new ArrayList<>(); // The bounding box of each added geometry
+    private final Map<VoxelIndex, VoxelGrid> subGrids = new HashMap<>(); // Nested grids of the dense voxels
+    private int subdivisionThreshold = 0; // The threshold of the dense voxels, 0 if the grid is not subdivided
 
     /**
      * Constructs a voxel grid using the provided bounding box and grid resolution.
@@ -37,108 +69,394 @@ public class VoxelGrid {
     }
 
     /**
-     * Adds a geometry to all voxels overlapping its bounding box.
+     * Adds a geometry to all voxels of its bounding box that it overlaps.
      *
      * @param obj       the geometry to add
      * @param objBounds the axis-aligned bounding box of the geometry
      */
     public void addObject(Intersectable obj, AABB objBounds) {
-        int minX = clamp(toGridX(objBounds.getMin().getX()), 0, nx - 1);
-        int maxX = clamp(toGridX(objBounds.getMax().getX()), 0, nx - 1);
-        int minY = clamp(toGridY(objBounds.getMin().getY()), 0, ny - 1);
-        int maxY = clamp(toGridY(objBounds.getMax().getY()), 0, ny - 1);
-        int minZ = clamp(toGridZ(objBounds.getMin().getZ()), 0, nz - 1);
-        int maxZ = clamp(toGridZ(objBounds.getMax().getZ()), 0, nz - 1);
-
-        for (int i = minX; i <= maxX; i++) {
-            for (int j = minY; j <= maxY; j++) {
-                for (int k = minZ; k <= maxZ; k++) {
+        objects.add(obj);
+        objectBounds.add(objBounds);
+        int[] range = new int[6];
+        voxelRange(objBounds, range, 0);
+        boolean single = range[0] == range[3] && range[1] == range[4] && range[2] == range[5];
+
+        for (int i = range[0]; i <= range[3]; i++) {
+            for (int j = range[1]; j <= range[4]; j++) {
+                for (int k = range[2]; k <= range[5]; k++) {
+                    if (!single && !obj.overlaps(voxelBox(i, j, k, objBounds))) continue;
                     VoxelIndex index = new VoxelIndex(i, j, k);
                     // Add the object to the voxel's list, creating the list if it doesn't exist
                     grid.computeIfAbsent(index, key -> new ArrayList<>()).add(obj);
                 }
             }
         }
+        batches = null;
     }
 
     /**
-     * Finds the closest intersection between the ray and the geometries in the grid.
-     * AKA 3D DDA algorithm for ray traversal through the voxel grid.
+     * Adds geometries to all voxels of their bounding boxes that they overlap, with the same result as
+     * adding them one by one in order. Many geometries are inserted in parallel on the fork-join pool:
+     * the voxel range of each geometry is binned, a prefix sum of the ranges' sizes gives each geometry
+     * its slots of (voxel, geometry) keys, the slots are filled (the slots of voxels a geometry does not
+     * overlap with an empty key), and sorting the keys groups each voxel's geometries in their order.
      *
-     * @param ray the ray to test
-     * @return the closest intersection, or null if no intersection was found
+     * @param objs       the geometries to add
+     * @param objsBounds the axis-aligned bounding box of each geometry
      */
-    public Intersection findClosestIntersection(Ray ray) {
-        if (!bounds.hasIntersection(ray)) return null; // If the ray does not intersect the scene bounding box, return null
+    public void addObjects(List<Intersectable> objs, List<AABB> objsBounds) {
+        int n = objs.size();
+        if (n < PARALLEL_INSERT_SIZE || (long) nx * ny * nz > Integer.MAX_VALUE) {
+            for (int i = 0; i < n; i++) addObject(objs.get(i), objsBounds.get(i));
+            return;
+        }
 
-        Point origin = ray.getHead();
-        Vector dir = ray.getDirection();
+        // binning: the voxel range of each geometry and the number of its voxels
+        int[] ranges = new int[6 * n];
+        long[] offsets = new long[n + 1];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            voxelRange(objsBounds.get(i), ranges, 6 * i);
+            offsets[i + 1] = (long) (ranges[6 * i + 3] - ranges[6 * i] + 1)
+                    * (ranges[6 * i + 4] - ranges[6 * i + 1] + 1) * (ranges[6 * i + 5] - ranges[6 * i + 2] + 1);
+        });
+        // prefix sums: the first slot of each geometry
+        Arrays.parallelPrefix(offsets, Long::sum);
+        if (offsets[n] > Integer.MAX_VALUE - 8) { // too many slots for one array
+            for (int i = 0; i < n; i++) addObject(objs.get(i), objsBounds.get(i));
+            return;
+        }
+
+        // fill: a (voxel, geometry) key per slot, sorted by voxel and then by geometry
+        long[] keys = new long[(int) offsets[n]];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            int slot = (int) offsets[i];
+            boolean single = offsets[i + 1] - offsets[i] == 1;
+            for (int x = ranges[6 * i]; x <= ranges[6 * i + 3]; x++)
+                for (int y = ranges[6 * i + 1]; y <= ranges[6 * i + 4]; y++)
+                    for (int z = ranges[6 * i + 2]; z <= ranges[6 * i + 5]; z++)
+                        keys[slot++] = single || objs.get(i).overlaps(voxelBox(x, y, z, objsBounds.get(i)))
+                                ? (long) (x + nx * (y + ny * z)) << 32 | i : EMPTY_KEY;
+        });
+        Arrays.parallelSort(keys);
+
+        objects.addAll(objs);
+        objectBounds.addAll(objsBounds);
+        for (int start = 0, end; start < keys.length && keys[start] != EMPTY_KEY; start = end) {
+            int voxel = (int) (keys[start] >>> 32);
+            end = start + 1;
+            while (end < keys.length && (int) (keys[end] >>> 32) == voxel) end++;
+            List<Intersectable> cell = grid.computeIfAbsent(
+                    new VoxelIndex(voxel % nx, voxel / nx % ny, voxel / nx / ny), key -> new ArrayList<>());
+            for (int k = start; k < end; k++) cell.add(objs.get((int) keys[k]));
+        }
+        batches = null;
+    }
+
+    /**
+     * Subdivides the dense voxels of the grid: each voxel with more geometries than the threshold
+     * gets a nested grid over the voxel's bounds, whose resolution is based on its number of geometries,
+     * and the voxel's geometries move into the nested grid. A grid built later from this one
+     * by {@link #cull} is subdivided by the same threshold.
+     *
+     * @param threshold the largest number of geometries of a voxel that is not subdivided
+     * @throws IllegalArgumentException if the threshold is not positive
+     */
+    public void subdivide(int threshold) {
+        if (threshold <= 0)
+            throw new IllegalArgumentException("The subdivision threshold must be positive");
+        subdivisionThreshold = threshold;
+        Map<Intersectable, AABB> boundsOf = new IdentityHashMap<>();
+        for (int i = 0; i < objects.size(); i++) boundsOf.put(objects.get(i), objectBounds.get(i));
+
+        List<Map.Entry<VoxelIndex, List<Intersectable>>> dense = new ArrayList<>();
+        for (Map.Entry<VoxelIndex, List<Intersectable>> cell : grid.entrySet())
+            if (cell.getValue().size() > threshold) dense.add(cell);
+        VoxelGrid[] nested = new VoxelGrid[dense.size()];
+        IntStream.range(0, dense.size()).parallel().forEach(c -> {
+            VoxelIndex index = dense.get(c).getKey();
+            List<Intersectable> cell = dense.get(c).getValue();
+            double minX = bounds.getMin().getX() + index.i * voxelSizeX;
+            double minY = bounds.getMin().getY() + index.j * voxelSizeY;
+            double minZ = bounds.getMin().getZ() + index.k * voxelSizeZ;
+            AABB box = new AABB(new Point(minX, minY, minZ),
+                    new Point(minX + voxelSizeX, minY + voxelSizeY, minZ + voxelSizeZ));
+            int size = Math.max(2, (int) Math.cbrt(cell.size() * SUB_GRID_VOXELS_PER_OBJECT));
+            nested[c] = new VoxelGrid(box, size, size, size);
+            List<AABB> cellBounds = new ArrayList<>(cell.size());
+            for (Intersectable obj : cell) cellBounds.add(boundsOf.get(obj));
+            nested[c].addObjects(cell, cellBounds);
+        });
+        for (int c = 0; c < nested.length; c++) {
+            VoxelIndex index = dense.get(c).getKey();
+            grid.remove(index);
+            subGrids.put(index, nested[c]);
+        }
+        batches = null;
+    }
+
+    /**
+     * Returns the number of nested grids of the dense voxels
+     *
+     * @return the number of nested grids, 0 if the grid is not subdivided
+     */
+    public int subGridCount() {
+        return subGrids.size();
+    }
+
+    /**
+     * Estimates the cost of tracing a sample of rays through the grid (see {@link GridTuner}): the number
+     * of occupied voxels each ray visits and of the geometries referenced by them, up to the ray's closest
+     * hit, as visiting a voxel costs about as much as testing a geometry
+     *
+     * @param rays the rays
+     * @param hits the distance of each ray's closest hit, infinite where there is none
+     * @return the estimated cost
+     */
+    double sampleCost(List<Ray> rays, double[] hits) {
+        double cost = 0;
+        for (int r = 0; r < rays.size(); r++) {
+            Walker walker = walk(rays.get(r));
+            if (walker == null) continue;
+            do {
+                List<Intersectable> cell = grid.get(walker.index());
+                cost += 1 + (cell == null ? 0 : cell.size());
+            } while (hits[r] > walker.exit() && walker.step());
+        }
+        return cost;
+    }
 
-        int ix = clamp(toGridX(origin.getX()), 0, nx - 1);
-        int iy = clamp(toGridY(origin.getY()), 0, ny - 1);
-        int iz = clamp(toGridZ(origin.getZ()), 0, nz - 1);
+    /**
+     * Returns the occupied voxels in compressed sparse row form, for storing the grid
+     * (see {@link GridCache})
+     *
+     * @return the voxels' linear indices (in increasing order), the start of each voxel's geometries
+     * and the end of the last one, and the voxels' geometries as their indices in the order of addition
+     */
+    int[][] cells() {
+        Map<Intersectable, Integer> indexOf = new IdentityHashMap<>();
+        for (int i = 0; i < objects.size(); i++) indexOf.putIfAbsent(objects.get(i), i);
+        List<Map.Entry<VoxelIndex, List<Intersectable>>> cells = new ArrayList<>(grid.entrySet());
+        int[] voxels = new int[cells.size()];
+        Integer[] order = new Integer[cells.size()];
+        for (int c = 0; c < voxels.length; c++) {
+            VoxelIndex index = cells.get(c).getKey();
+            voxels[c] = index.i + nx * (index.j + ny * index.k);
+            order[c] = c;
+        }
+        Arrays.sort(order, Comparator.comparingInt(c -> voxels[c]));
+
+        int[] sortedVoxels = new int[voxels.length], starts = new int[voxels.length + 1];
+        for (int c = 0; c < voxels.length; c++) {
+            sortedVoxels[c] = voxels[order[c]];
+            starts[c + 1] = starts[c] + cells.get(order[c]).getValue().size();
+        }
+        int[] indices = new int[starts[voxels.length]];
+        for (int c = 0, slot = 0; c < voxels.length; c++)
+            for (Intersectable obj : cells.get(order[c]).getValue()) indices[slot++] = indexOf.get(obj);
+        return new int[][]{sortedVoxels, starts, indices};
+    }
+
+    /**
+     * Fills an empty grid with stored voxels (see {@link #cells()})
+     *
+     * @param nx        the stored grid's number of voxels along the X-axis
+     * @param ny        the stored grid's number of voxels along the Y-axis
+     * @param nz        the stored grid's number of voxels along the Z-axis
+     * @param voxels    the voxels' linear indices
+     * @param starts    the start of each voxel's geometries, and the end of the last one
+     * @param indices   the voxels' geometries, as their indices
+     * @param objs      the geometries
+     * @param objBounds the axis-aligned bounding box of each geometry
+     * @return true if the grid was filled, false if the stored voxels do not fit the grid and the geometries
+     */
+    boolean loadCells(int nx, int ny, int nz, IntBuffer voxels, IntBuffer starts, IntBuffer indices,
+                      List<Intersectable> objs, List<AABB> objBounds) {
+        if (nx != this.nx || ny != this.ny || nz != this.nz || !grid.isEmpty()) return false;
+        long voxelCount = (long) nx * ny * nz;
+        int cells = voxels.limit();
+        if (starts.get(0) != 0 || starts.get(cells) != indices.limit()) return false;
+        for (int c = 0; c < cells; c++) {
+            int voxel = voxels.get(c), start = starts.get(c), end = starts.get(c + 1);
+            if (voxel < 0 || voxel >= voxelCount || end < start) return false;
+            List<Intersectable> cell = new ArrayList<>(end - start);
+            for (int k = start; k < end; k++) {
+                int index = indices.get(k);
+                if (index < 0 || index >= objs.size()) return false;
+                cell.add(objs.get(index));
+            }
+            grid.put(new VoxelIndex(voxel % nx, voxel / nx % ny, voxel / nx / ny), cell);
+        }
+        objects.addAll(objs);
+        objectBounds.addAll(objBounds);
+        batches = null;
+        return true;
+    }
+
+    /**
+     * Returns the number of voxels along the X-axis
+     *
+     * @return the number of voxels
+     */
+    int getNx() {
+        return nx;
+    }
+
+    /**
+     * Returns the number of voxels along the Y-axis
+     *
+     * @return the number of voxels
+     */
+    int getNy() {
+        return ny;
+    }
+
+    /**
+     * Returns the number of voxels along the Z-axis
+     *
+     * @return the number of voxels
+     */
+    int getNz() {
+        return nz;
+    }
+
+    /**
+     * Finds the range of voxels that overlap a bounding box
+     *
+     * @param objBounds the bounding box
+     * @param range     the array to store the range in, as {minX, minY, minZ, maxX, maxY, maxZ} voxel indices
+     * @param offset    the offset of the range in the array
+     */
+    private void voxelRange(AABB objBounds, int[] range, int offset) {
+        range[offset] = clamp(toGridX(objBounds.getMin().getX()), 0, nx - 1);
+        range[offset + 1] = clamp(toGridY(objBounds.getMin().getY()), 0, ny - 1);
+        range[offset + 2] = clamp(toGridZ(objBounds.getMin().getZ()), 0, nz - 1);
+        range[offset + 3] = clamp(toGridX(objBounds.getMax().getX()), 0, nx - 1);
+        range[offset + 4] = clamp(toGridY(objBounds.getMax().getY()), 0, ny - 1);
+        range[offset + 5] = clamp(toGridZ(objBounds.getMax().getZ()), 0, nz - 1);
+    }
 
-        int stepX = dir.getX() >= 0 ? 1 : -1;
-        int stepY = dir.getY() >= 0 ? 1 : -1;
-        int stepZ = dir.getZ() >= 0 ? 1 : -1;
+    /**
+     * Builds the box of a voxel to test a geometry's overlap with. The box is widened slightly, so a
+     * geometry touching the voxel's faces is kept in it, and a voxel on the grid's faces is extended to
+     * the geometry's bounding box beyond them, since the parts of the geometry outside the grid are
+     * clamped into that voxel.
+     *
+     * @param i         the voxel's index along the X-axis
+     * @param j         the voxel's index along the Y-axis
+     * @param k         the voxel's index along the Z-axis
+     * @param objBounds the bounding box of the geometry
+     * @return the box of the voxel
+     */
+    private AABB voxelBox(int i, int j, int k, AABB objBounds) {
+        Point min = bounds.getMin(), objMin = objBounds.getMin(), objMax = objBounds.getMax();
+        double mx = voxelSizeX * OVERLAP_MARGIN, my = voxelSizeY * OVERLAP_MARGIN, mz = voxelSizeZ * OVERLAP_MARGIN;
+        double minX = min.getX() + i * voxelSizeX - mx, maxX = min.getX() + (i + 1) * voxelSizeX + mx;
+        double minY = min.getY() + j * voxelSizeY - my, maxY = min.getY() + (j + 1) * voxelSizeY + my;
+        double minZ = min.getZ() + k * voxelSizeZ - mz, maxZ = min.getZ() + (k + 1) * voxelSizeZ + mz;
+        if (i == 0) minX = Math.min(minX, objMin.getX());
+        if (j == 0) minY = Math.min(minY, objMin.getY());
+        if (k == 0) minZ = Math.min(minZ, objMin.getZ());
+        if (i == nx - 1) maxX = Math.max(maxX, objMax.getX());
+        if (j == ny - 1) maxY = Math.max(maxY, objMax.getY());
+        if (k == nz - 1) maxZ = Math.max(maxZ, objMax.getZ());
+        return new AABB(new Point(minX, minY, minZ), new Point(maxX, maxY, maxZ));
+    }
 
-        double nextX = voxelBoundary(bounds.getMin().getX(), ix, stepX, voxelSizeX);
-        double nextY = voxelBoundary(bounds.getMin().getY(), iy, stepY, voxelSizeY);
-        double nextZ = voxelBoundary(bounds.getMin().getZ(), iz, stepZ, voxelSizeZ);
+    /**
+     * Builds a grid of the geometries that may intersect a frustum, for tracing the rays
+     * within the frustum (e.g. the primary rays of one render tile).
+     * The new grid's voxels have the size of this grid's voxels, and its bounds are cropped to
+     * the bounding box of the geometries in the frustum, so the frustum's rays walk through
+     * fewer voxels and test fewer geometries.
+     *
+     * @param frustum the frustum
+     * @return the grid of the geometries in the frustum, or null if there are none
+     */
+    public VoxelGrid cull(Frustum frustum) {
+        List<Intersectable> visible = new ArrayList<>();
+        List<AABB> visibleBounds = new ArrayList<>();
+        AABB box = null;
+        for (int i = 0; i < objects.size(); i++) {
+            AABB objBounds = objectBounds.get(i);
+            if (frustum.intersects(objBounds)) {
+                visible.add(objects.get(i));
+                visibleBounds.add(objBounds);
+                box = box == null ? objBounds : box.union(objBounds);
+            }
+        }
+        if (box == null) return null;
 
-        double tMaxX = safeDivide(nextX - origin.getX(), dir.getX());
-        double tMaxY = safeDivide(nextY - origin.getY(), dir.getY());
-        double tMaxZ = safeDivide(nextZ - origin.getZ(), dir.getZ());
+        VoxelGrid culled = new VoxelGrid(box,
+                voxelsAlong(box.getMax().getX() - box.getMin().getX(), voxelSizeX, nx),
+                voxelsAlong(box.getMax().getY() - box.getMin().getY(), voxelSizeY, ny),
+                voxelsAlong(box.getMax().getZ() - box.getMin().getZ(), voxelSizeZ, nz));
+        culled.addObjects(visible, visibleBounds);
+        if (subdivisionThreshold > 0) culled.subdivide(subdivisionThreshold);
+        return culled;
+    }
 
-        double tDeltaX = voxelSizeX / Math.abs(dir.getX());
-        double tDeltaY = voxelSizeY / Math.abs(dir.getY());
-        double tDeltaZ = voxelSizeZ / Math.abs(dir.getZ());
+    /**
+     * Finds the closest intersection between the ray and the geometries in the grid.
+     * AKA 3D DDA algorithm for ray traversal through the voxel grid.
+     * The traversal stops as soon as the closest hit found lies within the current voxel.
+     *
+     * @param ray the ray to test
+     * @return the closest intersection, or null if no intersection was found
+     */
+    public Intersection findClosestIntersection(Ray ray) {
+        Closest closest = new Closest();
+        findClosestIntersection(ray, new PackedRay(ray), new HashSet<>(), closest);
+        return closest.intersection;
+    }
 
-        Intersection closest = null;
-        double closestDist = Double.POSITIVE_INFINITY;
-        Set<Intersectable> tested = new HashSet<>();
+    /**
+     * The closest intersection found so far by a walk through the levels of a subdivided grid
+     */
+    private static final class Closest {
+        /** The closest intersection, null if none was found */
+        Intersection intersection = null;
+        /** The distance of the closest intersection */
+        double distance = Double.POSITIVE_INFINITY;
+    }
 
-        while (ix >= 0 && ix < nx && iy >= 0 && iy < ny && iz >= 0 && iz < nz) {
-            VoxelIndex index = new VoxelIndex(ix, iy, iz);
-            List<Intersectable> cell = grid.get(index);
+    /**
+     * Walks a ray through the grid, and through the nested grids of the voxels it passes,
+     * until the closest hit found lies within the current voxel
+     *
+     * @param ray     the ray to test
+     * @param packed  the ray, packed
+     * @param tested  the geometries tested already, in any level
+     * @param closest the closest intersection found so far, updated with the grid's
+     */
+    private void findClosestIntersection(Ray ray, PackedRay packed, Set<Intersectable> tested, Closest closest) {
+        Walker walker = walk(ray);
+        if (walker == null) return; // The ray does not intersect the scene bounding box
 
+        Point origin = ray.getHead();
+        Map<VoxelIndex, PrimitiveBatch> voxels = batches();
+        do {
+            if (!subGrids.isEmpty()) {
+                VoxelGrid subGrid = subGrids.get(walker.index());
+                if (subGrid != null) subGrid.findClosestIntersection(ray, packed, tested, closest);
+            }
+            PrimitiveBatch.Candidates cell = candidates(voxels, walker, packed, closest.distance);
             if (cell != null) {
-                for (Intersectable obj : cell) {
+                // the candidates are ordered by a lower bound of their hits' distances
+                for (int c = 0; c < cell.size() && cell.distance(c) <= closest.distance; c++) {
+                    Intersectable obj = cell.geometry(c);
                     if (tested.add(obj)) { // Only test each object once
-                        List<Intersection> hits = obj.calculateIntersections(ray);
-                        if (hits != null) {
-                            for (Intersection inter : hits) {
-                                double dist = origin.distance(inter.point);
-                                if (dist < closestDist) {
-                                    closest = inter;
-                                    closestDist = dist;
-                                }
+                        Intersection inter = obj.calculateClosestIntersection(ray);
+                        if (inter != null) {
+                            double dist = origin.distance(inter.point);
+                            if (dist < closest.distance) {
+                                closest.intersection = inter;
+                                closest.distance = dist;
                             }
                         }
                     }
                 }
             }
-
-            if (tMaxX < tMaxY) {
-                if (tMaxX < tMaxZ) {
-                    ix += stepX;
-                    tMaxX += tDeltaX;
-                } else {
-                    iz += stepZ;
-                    tMaxZ += tDeltaZ;
-                }
-            } else {
-                if (tMaxY < tMaxZ) {
-                    iy += stepY;
-                    tMaxY += tDeltaY;
-                } else {
-                    iz += stepZ;
-                    tMaxZ += tDeltaZ;
-                }
-            }
-        }
-
-        return closest;
+        } while (closest.distance > walker.exit() && walker.step());
     }
 
     /**
@@ -149,57 +467,542 @@ public class VoxelGrid {
      * @return a list of intersections, or an empty list if none found
      */
     public List<Intersection> findAllIntersections(Ray ray, double maxDistance) {
+        return findAllIntersections(ray, maxDistance, inter -> false);
+    }
+
+    /**
+     * Finds the intersections between the ray and geometries within the given maximum distance,
+     * stopping the traversal once a blocking intersection is found (e.g. an opaque geometry along
+     * a shadow ray). The result then contains the blocking intersection, and may miss others.
+     *
+     * @param ray         the ray to test
+     * @param maxDistance maximum distance from ray origin to consider
+     * @param blocking    the condition of a blocking intersection
+     * @return a list of intersections, or an empty list if none found
+     */
+    public List<Intersection> findAllIntersections(Ray ray, double maxDistance, Predicate<Intersection> blocking) {
         List<Intersection> allHits = new LinkedList<>();
+        findAllIntersections(ray, new PackedRay(ray), maxDistance, blocking, new HashSet<>(), allHits);
+        return allHits;
+    }
 
-        if (!bounds.hasIntersection(ray)) return allHits;
+    /**
+     * Walks a ray through the grid, and through the nested grids of the voxels it passes,
+     * collecting the intersections within the maximum distance until a blocking one
+     *
+     * @param ray         the ray to test
+     * @param packed      the ray, packed
+     * @param maxDistance maximum distance from ray origin to consider
+     * @param blocking    the condition of a blocking intersection
+     * @param tested      the geometries tested already, in any level
+     * @param allHits     the intersections found so far, the grid's are appended
+     * @return true if a blocking intersection was found
+     */
+    private boolean findAllIntersections(Ray ray, PackedRay packed, double maxDistance, Predicate<Intersection> blocking,
+                                         Set<Intersectable> tested, List<Intersection> allHits) {
+        Walker walker = walk(ray);
+        if (walker == null) return false;
 
         Point origin = ray.getHead();
-        Vector dir = ray.getDirection();
-
-        int ix = clamp(toGridX(origin.getX()), 0, nx - 1);
-        int iy = clamp(toGridY(origin.getY()), 0, ny - 1);
-        int iz = clamp(toGridZ(origin.getZ()), 0, nz - 1);
-
-        int stepX = dir.getX() >= 0 ? 1 : -1;
-        int stepY = dir.getY() >= 0 ? 1 : -1;
-        int stepZ = dir.getZ() >= 0 ? 1 : -1;
-
-        double nextX = voxelBoundary(bounds.getMin().getX(), ix, stepX, voxelSizeX);
-        double nextY = voxelBoundary(bounds.getMin().getY(), iy, stepY, voxelSizeY);
-        double nextZ = voxelBoundary(bounds.getMin().getZ(), iz, stepZ, voxelSizeZ);
-
-        double tMaxX = safeDivide(nextX - origin.getX(), dir.getX());
-        double tMaxY = safeDivide(nextY - origin.getY(), dir.getY());
-        double tMaxZ = safeDivide(nextZ - origin.getZ(), dir.getZ());
-
-        double tDeltaX = voxelSizeX / Math.abs(dir.getX());
-        double tDeltaY = voxelSizeY / Math.abs(dir.getY());
-        double tDeltaZ = voxelSizeZ / Math.abs(dir.getZ());
-
-        Set<Intersectable> tested = new HashSet<>();
-
-        while (ix >= 0 && ix < nx && iy >= 0 && iy < ny && iz >= 0 && iz < nz) {
-            VoxelIndex index = new VoxelIndex(ix, iy, iz);
-            List<Intersectable> cell = grid.get(index);
-
+        Map<VoxelIndex, PrimitiveBatch> voxels = batches();
+        do {
+            if (!subGrids.isEmpty()) {
+                VoxelGrid subGrid = subGrids.get(walker.index());
+                if (subGrid != null && subGrid.findAllIntersections(ray, packed, maxDistance, blocking, tested, allHits))
+                    return true;
+            }
+            PrimitiveBatch.Candidates cell = candidates(voxels, walker, packed, maxDistance);
             if (cell != null) {
-                for (Intersectable obj : cell) {
+                for (int c = 0; c < cell.size(); c++) {
+                    Intersectable obj = cell.geometry(c);
                     if (tested.add(obj)) {
                         List<Intersection> hits = obj.calculateIntersections(ray, maxDistance);
                         if (hits != null) {
                             for (Intersection inter : hits) {
                                 if (origin.distance(inter.point) <= maxDistance) {
                                     allHits.add(inter);
+                                    if (blocking.test(inter)) return true;
                                 }
                             }
                         }
                     }
                 }
             }
+        } while (walker.exit() <= maxDistance && walker.step());
+        return false;
+    }
+
+    /**
+     * Finds the closest intersection of each ray of a packet of coherent rays.
+     * The rays walk through the grid together: in each step the active rays that are in the same
+     * voxel are gathered into a lane mask, and each lane of the mask tests the voxel's candidate
+     * geometries that it has not tested yet.
+     * A lane is deactivated when it leaves the grid or its closest hit lies within its voxel.
+     * The rays of a subdivided grid are traced one by one.
+     *
+     * @param rays the rays of the packet, at most 64
+     * @return the closest intersection of each ray (null where there is none)
+     * @throws IllegalArgumentException if the packet has more than 64 rays
+     */
+    public Intersection[] findClosestIntersections(Ray[] rays) {
+        if (rays.length > Long.SIZE)
+            throw new IllegalArgumentException("A packet can have at most " + Long.SIZE + " rays");
+        if (!subGrids.isEmpty()) {
+            Intersection[] closest = new Intersection[rays.length];
+            for (int i = 0; i < rays.length; i++) closest[i] = findClosestIntersection(rays[i]);
+            return closest;
+        }
+
+        Intersection[] closest = new Intersection[rays.length];
+        double[] closestDist = new double[rays.length];
+        Arrays.fill(closestDist, Double.POSITIVE_INFINITY);
+        Walker[] walkers = new Walker[rays.length];
+        PackedRay[] packed = new PackedRay[rays.length];
+        long active = 0;
+        for (int lane = 0; lane < rays.length; lane++) {
+            walkers[lane] = walk(rays[lane]);
+            if (walkers[lane] != null) {
+                active |= 1L << lane;
+                packed[lane] = new PackedRay(rays[lane]);
+            }
+        }
 
-            double nextT = Math.min(tMaxX, Math.min(tMaxY, tMaxZ));
-            if (nextT > maxDistance) break;
+        Map<VoxelIndex, PrimitiveBatch> voxels = batches();
+        Map<Intersectable, long[]> tested = new IdentityHashMap<>(); // the lanes that tested each geometry
+        while (active != 0) {
+            long lanes = sameVoxelLanes(walkers, active);
+            PrimitiveBatch batch = voxels.get(walkers[Long.numberOfTrailingZeros(lanes)].index());
+            if (batch != null) {
+                for (long m = lanes; m != 0; m &= m - 1) {
+                    int lane = Long.numberOfTrailingZeros(m);
+                    long bit = 1L << lane;
+                    PrimitiveBatch.Candidates cell = batch.candidates(packed[lane], closestDist[lane]);
+                    for (int c = 0; c < cell.size() && cell.distance(c) <= closestDist[lane]; c++) {
+                        Intersectable obj = cell.geometry(c);
+                        long[] testedLanes = tested.computeIfAbsent(obj, key -> new long[1]);
+                        if ((testedLanes[0] & bit) != 0) continue;
+                        testedLanes[0] |= bit;
+                        Intersection inter = obj.calculateClosestIntersection(rays[lane]);
+                        if (inter == null) continue;
+                        double dist = rays[lane].getHead().distance(inter.point);
+                        if (dist < closestDist[lane]) {
+                            closest[lane] = inter;
+                            closestDist[lane] = dist;
+                        }
+                    }
+                }
+            }
+            for (long m = lanes; m != 0; m &= m - 1) {
+                int lane = Long.numberOfTrailingZeros(m);
+                if (closestDist[lane] <= walkers[lane].exit() || !walkers[lane].step())
+                    active &= ~(1L << lane);
+            }
+        }
+        return closest;
+    }
 
+    /**
+     * Finds all intersections of each ray of a packet of coherent rays within its maximum distance.
+     * The rays walk through the grid together as in {@link #findClosestIntersections(Ray[])}.
+     *
+     * @param rays         the rays of the packet, at most 64
+     * @param maxDistances the maximum distance of each ray
+     * @return the intersections of each ray, an empty list where there are none
+     * @throws IllegalArgumentException if the packet has more than 64 rays
+     */
+    public List<List<Intersection>> findAllIntersections(Ray[] rays, double[] maxDistances) {
+        return findAllIntersections(rays, maxDistances, inter -> false);
+    }
+
+    /**
+     * Finds the intersections of each ray of a packet of coherent rays within its maximum distance,
+     * deactivating a lane once a blocking intersection is found for it
+     * (see {@link #findAllIntersections(Ray, double, Predicate)}).
+     *
+     * @param rays         the rays of the packet, at most 64
+     * @param maxDistances the maximum distance of each ray
+     * @param blocking     the condition of a blocking intersection
+     * @return the intersections of each ray, an empty list where there are none
+     * @throws IllegalArgumentException if the packet has more than 64 rays
+     */
+    public List<List<Intersection>> findAllIntersections(Ray[] rays, double[] maxDistances,
+                                                         Predicate<Intersection> blocking) {
+        if (rays.length > Long.SIZE)
+            throw new IllegalArgumentException("A packet can have at most " + Long.SIZE + " rays");
+
+        List<List<Intersection>> allHits = new ArrayList<>(rays.length);
+        if (!subGrids.isEmpty()) {
+            for (int i = 0; i < rays.length; i++) allHits.add(findAllIntersections(rays[i], maxDistances[i], blocking));
+            return allHits;
+        }
+        Walker[] walkers = new Walker[rays.length];
+        PackedRay[] packed = new PackedRay[rays.length];
+        long active = 0;
+        for (int lane = 0; lane < rays.length; lane++) {
+            allHits.add(new LinkedList<>());
+            walkers[lane] = walk(rays[lane]);
+            if (walkers[lane] != null) {
+                active |= 1L << lane;
+                packed[lane] = new PackedRay(rays[lane]);
+            }
+        }
+
+        Map<VoxelIndex, PrimitiveBatch> voxels = batches();
+        Map<Intersectable, long[]> tested = new IdentityHashMap<>(); // the lanes that tested each geometry
+        while (active != 0) {
+            long lanes = sameVoxelLanes(walkers, active);
+            long blocked = 0;
+            PrimitiveBatch batch = voxels.get(walkers[Long.numberOfTrailingZeros(lanes)].index());
+            if (batch != null) {
+                for (long m = lanes; m != 0; m &= m - 1) {
+                    int lane = Long.numberOfTrailingZeros(m);
+                    long bit = 1L << lane;
+                    PrimitiveBatch.Candidates cell = batch.candidates(packed[lane], maxDistances[lane]);
+                    search:
+                    for (int c = 0; c < cell.size(); c++) {
+                        Intersectable obj = cell.geometry(c);
+                        long[] testedLanes = tested.computeIfAbsent(obj, key -> new long[1]);
+                        if ((testedLanes[0] & bit) != 0) continue;
+                        testedLanes[0] |= bit;
+                        List<Intersection> hits = obj.calculateIntersections(rays[lane], maxDistances[lane]);
+                        if (hits == null) continue;
+                        for (Intersection inter : hits)
+                            if (rays[lane].getHead().distance(inter.point) <= maxDistances[lane]) {
+                                allHits.get(lane).add(inter);
+                                if (blocking.test(inter)) {
+                                    blocked |= bit;
+                                    break search;
+                                }
+                            }
+                    }
+                }
+            }
+            active &= ~blocked;
+            for (long m = lanes & ~blocked; m != 0; m &= m - 1) {
+                int lane = Long.numberOfTrailingZeros(m);
+                if (walkers[lane].exit() > maxDistances[lane] || !walkers[lane].step())
+                    active &= ~(1L << lane);
+            }
+        }
+        return allHits;
+    }
+
+    /**
+     * Returns the packed geometries of the voxels, packing them (and building the bitmaps of the occupied
+     * voxels and macro-cells) on the first query after the grid changed
+     *
+     * @return the packed geometries of the occupied voxels
+     */
+    private Map<VoxelIndex, PrimitiveBatch> batches() {
+        Map<VoxelIndex, PrimitiveBatch> packed = batches;
+        if (packed == null) {
+            synchronized (this) {
+                packed = batches;
+                if (packed == null) {
+                    List<Map.Entry<VoxelIndex, List<Intersectable>>> cells = new ArrayList<>(grid.entrySet());
+                    PrimitiveBatch[] packedCells = new PrimitiveBatch[cells.size()];
+                    IntStream.range(0, cells.size()).parallel()
+                            .forEach(i -> packedCells[i] = new PrimitiveBatch(cells.get(i).getValue()));
+                    packed = new HashMap<>();
+                    for (int i = 0; i < packedCells.length; i++)
+                        packed.put(cells.get(i).getKey(), packedCells[i]);
+                    occupancy = (long) nx * ny * nz > MAX_OCCUPANCY_VOXELS ? null : new Occupancy();
+                    batches = packed;
+                }
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * Selects the geometries of a walker's current voxel that its ray may hit within a maximum distance
+     *
+     * @param voxels      the packed geometries of the voxels
+     * @param walker      the walker
+     * @param ray         the walker's ray, packed
+     * @param maxDistance the maximum distance along the ray
+     * @return the candidate geometries, or null if the voxel is empty
+     */
+    private static PrimitiveBatch.Candidates candidates(Map<VoxelIndex, PrimitiveBatch> voxels, Walker walker,
+                                                        PackedRay ray, double maxDistance) {
+        PrimitiveBatch batch = voxels.get(walker.index());
+        return batch == null ? null : batch.candidates(ray, maxDistance);
+    }
+
+    /**
+     * Finds the active lanes that are in the same voxel as the first active lane
+     *
+     * @param walkers the walkers of the lanes
+     * @param active  the mask of the active lanes, not empty
+     * @return the mask of the active lanes in the first active lane's voxel
+     */
+    private static long sameVoxelLanes(Walker[] walkers, long active) {
+        Walker leader = walkers[Long.numberOfTrailingZeros(active)];
+        long lanes = 0;
+        for (long m = active; m != 0; m &= m - 1) {
+            int lane = Long.numberOfTrailingZeros(m);
+            if (walkers[lane].sameVoxel(leader)) lanes |= 1L << lane;
+        }
+        return lanes;
+    }
+
+    /**
+     * Starts a DDA walk of a ray through the grid
+     *
+     * @param ray the ray
+     * @return the walker at the first voxel of the ray, or null if the ray misses the grid's bounds
+     */
+    private Walker walk(Ray ray) {
+        double[] interval = bounds.intersectionInterval(ray);
+        if (interval == null) return null;
+        batches(); // build the bitmaps of the occupied voxels and macro-cells, if the grid changed
+        Walker walker = new Walker(ray, Math.max(interval[0], 0), occupancy);
+        return walker.skipEmpty() ? walker : null;
+    }
+
+    /**
+     * The bitmaps of the occupied voxels (those with geometries or a nested grid) and of the occupied
+     * macro-cells (the blocks of voxels with an occupied voxel), by their linear indices
+     */
+    private final class Occupancy {
+        /** The number of macro-cells along the X-axis and along the Y-axis */
+        private final int mx, my;
+        /** The bitmap of the occupied voxels */
+        private final long[] voxels;
+        /** The bitmap of the occupied macro-cells */
+        private final long[] macroCells;
+
+        /**
+         * Builds the bitmaps of the grid's occupied voxels and macro-cells
+         */
+        Occupancy() {
+            mx = (nx >> MACRO_CELL_SHIFT) + 1;
+            my = (ny >> MACRO_CELL_SHIFT) + 1;
+            int mz = (nz >> MACRO_CELL_SHIFT) + 1;
+            voxels = new long[(int) (((long) nx * ny * nz + Long.SIZE - 1) / Long.SIZE)];
+            macroCells = new long[(int) (((long) mx * my * mz + Long.SIZE - 1) / Long.SIZE)];
+            for (VoxelIndex index : grid.keySet()) occupy(index);
+            for (VoxelIndex index : subGrids.keySet()) occupy(index);
+        }
+
+        /**
+         * Marks a voxel and its macro-cell as occupied
+         *
+         * @param index the voxel's index
+         */
+        private void occupy(VoxelIndex index) {
+            long voxel = index.i + (long) nx * (index.j + (long) ny * index.k);
+            voxels[(int) (voxel >>> 6)] |= 1L << voxel;
+            int macroCell = macroCellIndex(index.i, index.j, index.k);
+            macroCells[macroCell >>> 6] |= 1L << macroCell;
+        }
+
+        /**
+         * Returns the linear index of the macro-cell of a voxel
+         *
+         * @param i the voxel's index along the X-axis
+         * @param j the voxel's index along the Y-axis
+         * @param k the voxel's index along the Z-axis
+         * @return the macro-cell's linear index
+         */
+        private int macroCellIndex(int i, int j, int k) {
+            return (i >> MACRO_CELL_SHIFT) + mx * ((j >> MACRO_CELL_SHIFT) + my * (k >> MACRO_CELL_SHIFT));
+        }
+
+        /**
+         * Checks whether a voxel is occupied
+         *
+         * @param i the voxel's index along the X-axis
+         * @param j the voxel's index along the Y-axis
+         * @param k the voxel's index along the Z-axis
+         * @return true if the voxel has geometries or a nested grid
+         */
+        boolean voxel(int i, int j, int k) {
+            long voxel = i + (long) nx * (j + (long) ny * k);
+            return (voxels[(int) (voxel >>> 6)] & 1L << voxel) != 0;
+        }
+
+        /**
+         * Checks whether the macro-cell of a voxel is occupied
+         *
+         * @param i the voxel's index along the X-axis
+         * @param j the voxel's index along the Y-axis
+         * @param k the voxel's index along the Z-axis
+         * @return true if a voxel of the macro-cell is occupied
+         */
+        boolean macroCell(int i, int j, int k) {
+            int macroCell = macroCellIndex(i, j, k);
+            return (macroCells[macroCell >>> 6] & 1L << macroCell) != 0;
+        }
+    }
+
+    /**
+     * The state of a 3D DDA walk of a ray through the voxels of the grid.
+     * The walk starts at the first occupied voxel from where the ray enters the grid's bounds (or from
+     * the voxel of the ray's head if it starts inside them) and visits the occupied voxels pierced by the
+     * ray in order, stepping over the empty voxels and leaping over the empty macro-cells.
+     * Distances are measured along the ray from its head.
+     */
+    private final class Walker {
+        /** The current voxel's indices */
+        private int ix, iy, iz;
+        /** The step direction along each axis */
+        private final int stepX, stepY, stepZ;
+        /** The distance to the next voxel boundary along each axis */
+        private double tMaxX, tMaxY, tMaxZ;
+        /** The distance between voxel boundaries along each axis */
+        private final double tDeltaX, tDeltaY, tDeltaZ;
+        /** The occupied voxels and macro-cells, null to visit every voxel */
+        private final Occupancy occupancy;
+
+        /**
+         * Constructs a walker at the voxel of a point of the ray
+         *
+         * @param ray       the ray
+         * @param tStart    the distance of the starting point along the ray
+         * @param occupancy the occupied voxels and macro-cells, null to visit every voxel
+         */
+        Walker(Ray ray, double tStart, Occupancy occupancy) {
+            this.occupancy = occupancy;
+            Point origin = ray.getHead();
+            Vector dir = ray.getDirection();
+
+            ix = clamp(toGridX(origin.getX() + dir.getX() * tStart), 0, nx - 1);
+            iy = clamp(toGridY(origin.getY() + dir.getY() * tStart), 0, ny - 1);
+            iz = clamp(toGridZ(origin.getZ() + dir.getZ() * tStart), 0, nz - 1);
+
+            stepX = dir.getX() >= 0 ? 1 : -1;
+            stepY = dir.getY() >= 0 ? 1 : -1;
+            stepZ = dir.getZ() >= 0 ? 1 : -1;
+
+            tMaxX = safeDivide(voxelBoundary(bounds.getMin().getX(), ix, stepX, voxelSizeX) - origin.getX(), dir.getX());
+            tMaxY = safeDivide(voxelBoundary(bounds.getMin().getY(), iy, stepY, voxelSizeY) - origin.getY(), dir.getY());
+            tMaxZ = safeDivide(voxelBoundary(bounds.getMin().getZ(), iz, stepZ, voxelSizeZ) - origin.getZ(), dir.getZ());
+
+            tDeltaX = voxelSizeX / Math.abs(dir.getX());
+            tDeltaY = voxelSizeY / Math.abs(dir.getY());
+            tDeltaZ = voxelSizeZ / Math.abs(dir.getZ());
+        }
+
+        /**
+         * Returns the index of the current voxel
+         *
+         * @return the current voxel's index
+         */
+        VoxelIndex index() {
+            return new VoxelIndex(ix, iy, iz);
+        }
+
+        /**
+         * Checks whether another walker is at the same voxel
+         *
+         * @param other the other walker
+         * @return true if both walkers are at the same voxel
+         */
+        boolean sameVoxel(Walker other) {
+            return ix == other.ix && iy == other.iy && iz == other.iz;
+        }
+
+        /**
+         * Returns the distance at which the ray leaves the current voxel
+         *
+         * @return the exit distance of the current voxel
+         */
+        double exit() {
+            return Math.min(tMaxX, Math.min(tMaxY, tMaxZ));
+        }
+
+        /**
+         * Moves to the next occupied voxel pierced by the ray
+         *
+         * @return true if the next occupied voxel is inside the grid, false if the ray left the grid
+         */
+        boolean step() {
+            return advance() && skipEmpty();
+        }
+
+        /**
+         * Skips the empty voxels from the current one, a whole empty macro-cell at a time
+         *
+         * @return true if an occupied voxel inside the grid was reached, false if the ray left the grid
+         */
+        boolean skipEmpty() {
+            if (occupancy == null) return true;
+            while (!occupancy.voxel(ix, iy, iz))
+                if (!(occupancy.macroCell(ix, iy, iz) ? advance() : leaveMacroCell())) return false;
+            return true;
+        }
+
+        /**
+         * Moves to the voxel where the ray leaves the current macro-cell, as the voxel-by-voxel steps
+         * would: along each axis but the one the ray leaves the macro-cell by, the walker steps over
+         * the voxel boundaries before the exit, and along that axis over the macro-cell's boundary.
+         *
+         * @return true if the voxel is inside the grid, false if the ray left the grid
+         */
+        private boolean leaveMacroCell() {
+            int kx = macroSteps(ix, stepX, nx), ky = macroSteps(iy, stepY, ny), kz = macroSteps(iz, stepZ, nz);
+            double exitX = boundary(tMaxX, tDeltaX, kx), exitY = boundary(tMaxY, tDeltaY, ky);
+            double exitZ = boundary(tMaxZ, tDeltaZ, kz);
+            // the axis the ray leaves by, breaking ties as step() does
+            int axis = exitX < exitY ? (exitX < exitZ ? 0 : 2) : (exitY < exitZ ? 1 : 2);
+            double exit = axis == 0 ? exitX : axis == 1 ? exitY : exitZ;
+            if (axis == 0) {
+                ix += kx * stepX;
+                tMaxX = exitX + tDeltaX;
+            } else while (tMaxX < exit) {
+                ix += stepX;
+                tMaxX += tDeltaX;
+            }
+            if (axis == 1) {
+                iy += ky * stepY;
+                tMaxY = exitY + tDeltaY;
+            } else while (tMaxY < exit) {
+                iy += stepY;
+                tMaxY += tDeltaY;
+            }
+            if (axis == 2) {
+                iz += kz * stepZ;
+                tMaxZ = exitZ + tDeltaZ;
+            } else while (tMaxZ < exit) {
+                iz += stepZ;
+                tMaxZ += tDeltaZ;
+            }
+            return ix >= 0 && ix < nx && iy >= 0 && iy < ny && iz >= 0 && iz < nz;
+        }
+
+        /**
+         * Calculates the distance of a voxel boundary along an axis, summed as the steps sum it
+         *
+         * @param tMax   the distance to the next voxel boundary along the axis
+         * @param tDelta the distance between voxel boundaries along the axis
+         * @param steps  the number of the boundary from the next one, at least 1
+         * @return the distance of the boundary
+         */
+        private static double boundary(double tMax, double tDelta, int steps) {
+            for (int s = 1; s < steps; s++) tMax += tDelta;
+            return tMax;
+        }
+
+        /**
+         * Calculates the number of voxel steps along an axis that leave the current macro-cell (or the grid)
+         *
+         * @param index the current voxel's index along the axis
+         * @param step  the step direction along the axis
+         * @param n     the number of voxels along the axis
+         * @return the number of steps, at least 1
+         */
+        private static int macroSteps(int index, int step, int n) {
+            return step > 0 ? Math.min(n, (index >> MACRO_CELL_SHIFT) + 1 << MACRO_CELL_SHIFT) - index
+                    : index - (index >> MACRO_CELL_SHIFT << MACRO_CELL_SHIFT) + 1;
+        }
+
+        /**
+         * Moves to the next voxel pierced by the ray
+         *
+         * @return true if the next voxel is inside the grid, false if the ray left the grid
+         */
+        private boolean advance() {
             if (tMaxX < tMaxY) {
                 if (tMaxX < tMaxZ) {
                     ix += stepX;
@@ -217,9 +1020,20 @@ public class VoxelGrid {
                     tMaxZ += tDeltaZ;
                 }
             }
+            return ix >= 0 && ix < nx && iy >= 0 && iy < ny && iz >= 0 && iz < nz;
         }
+    }
 
-        return allHits;
+    /**
+     * Calculates the amount of voxels of a given size that cover an extent along an axis.
+     *
+     * @param extent the extent along the axis
+     * @param size   the size of a voxel along the axis
+     * @param max    the maximal amount of voxels
+     * @return the amount of voxels, between 1 and the maximal amount
+     */
+    private static int voxelsAlong(double extent, double size, int max) {
+        return size > 0 ? Math.max(1, Math.min(max, (int) Math.ceil(extent / size))) : 1;
     }
 
     /**
@@ -0,0 +1,1086 @@
+package acceleration;
+
+import geometries.Intersectable;
+import geometries.Intersectable.Intersection;
+import geometries.Polygon;
+import primitives.Point;
+import primitives.Ray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * A wide bounding volume hierarchy: a tree of boxes whose nodes have up to 4 or 8 children.
+ * The hierarchy is built as a binary tree with the surface area heuristic (SAH) over binned
+ * centroids, and then collapsed into wide nodes by repeatedly replacing the child with the
+ * largest surface area by its own two children.
+ * Each wide node stores its children's bounds in structure-of-arrays layout, so all the
+ * children of a node are tested against a ray by a single call of the batched box kernel
+ * (see {@link IntersectionKernels}), and the children that the ray enters are visited
+ * front to back, nearest entry first.
+ * <p>
+ * Optionally, the build also considers spatial splits (as in the SBVH): a split plane may cut
+ * through geometries, whose references are then clipped to each side, so a long thin geometry
+ * is referenced by several small boxes instead of spanning a large one. Polygons are clipped
+ * exactly, other geometries by their bounding boxes. The number of added references is limited
+ * by a memory growth budget.
+ * <p>
+ * The subtrees of large nodes are built in parallel on the fork-join pool once the budget of spatial
+ * split references is used up (at once without spatial splits). Until then, the subtrees are built
+ * one after the other, so the budget is used in the same order as by a serial build, and the
+ * hierarchy is the same.
+ * <p>
+ * Optionally, the nodes are also compressed for huge scenes: each node is stored in a flat
+ * {@code int[]} as its bounds' origin and scale (as floats), its children's references, and its
+ * children's bounds quantized to 8 bits per coordinate relative to the node's bounds.
+ * The quantization rounds outwards, so the decoded bounds contain the exact ones and the
+ * traversal finds the same intersections, at the cost of decoding each visited node.
+ * <p>
+ * For animations whose geometries move but keep their number and order, the hierarchy can be
+ * refitted to the geometries of the next frame (see {@link #refit}): the same tree, with its bounds
+ * recomputed bottom-up. Refitting is linear in the number of nodes, but the tree's quality degrades
+ * as the geometries move away from where they were built, so a refit whose SAH cost grows beyond
+ * a limit relative to the built hierarchy's rebuilds the hierarchy instead.
+ */
+public class WideBVH {
+    /** The number of centroid bins of the SAH split search */
+    private static final int BINS = 12;
+    /** The maximal number of geometries of a leaf that is not split further */
+    private static final int MAX_LEAF_SIZE = 4;
+    /** The maximal number of geometries of a leaf that is kept because splitting it costs more */
+    private static final int MAX_SAH_LEAF_SIZE = 16;
+    /** The cost of visiting a node, relative to the cost of intersecting a geometry */
+    private static final double TRAVERSAL_COST = 1;
+    /**
+     * The smallest overlap of the two sides of an object split, relative to the surface area of
+     * the whole hierarchy, for which spatial splits are considered
+     */
+    private static final double MIN_SPATIAL_OVERLAP = 1e-5;
+    /** The largest quantized coordinate of a compressed node */
+    private static final int QUANTIZED_MAX = 255;
+    /** The number of ints of a compressed node's header: the floats of its bounds' origin and scale */
+    private static final int HEADER = 6;
+    /** The reference of an unused child slot of a compressed node */
+    private static final int EMPTY = Integer.MIN_VALUE;
+    /** The smallest number of references of a node whose sides are built in parallel */
+    private static final int PARALLEL_BUILD_SIZE = 4096;
+    /** The default growth of the SAH cost at which a refit rebuilds the hierarchy */
+    public static final double DEFAULT_REFIT_COST_GROWTH = 1.5;
+
+    /** The maximal number of children of a node */
+    private final int width;
+    /** The geometries, ordered by leaf, a geometry that spatial splits cut may appear in several leaves */
+    private final Intersectable[] geometries;
+    /** The index of each of the leaves' geometries in the built list of geometries */
+    private final int[] sources;
+    /** The number of geometries the hierarchy was built of */
+    private final int geometryCount;
+    /** Whether spatial splits referenced a geometry in several leaves */
+    private final boolean duplicates;
+    /** The spatial split growth limit the hierarchy was built with */
+    private final double spatialSplitGrowth;
+    /** The SAH cost of the built hierarchy (see {@link #cost()}) */
+    private final double buildCost;
+    /** The number of nodes of the hierarchy */
+    private final int nodeCount;
+    /** The nodes of the hierarchy, the root first, null if the nodes are compressed */
+    private final Node[] nodes;
+    /** The compressed nodes of the hierarchy, one after the other, null if the nodes are not compressed */
+    private final int[] compressedNodes;
+    /** The number of ints of a compressed node */
+    private final int compressedSize;
+    /** The index of the first geometry of each leaf */
+    private final int[] leafFirst;
+    /** The number of geometries of each leaf */
+    private final int[] leafCount;
+    /** The batched intersection kernels */
+    private final IntersectionKernels kernels = IntersectionKernels.get();
+
+    /**
+     * A node of the hierarchy: the bounds of its children in structure-of-arrays layout,
+     * and a reference to each child - the index of an inner node, or the complement (~)
+     * of the index of a leaf.
+     */
+    private static final class Node {
+        /** The children's minimal and maximal coordinates */
+        final double[] minX, minY, minZ, maxX, maxY, maxZ;
+        /** The children's references: a node's index, or ~ a leaf's index */
+        final int[] children;
+        /** The number of children */
+        int size = 0;
+
+        /**
+         * Constructs an empty node
+         *
+         * @param width the maximal number of children
+         */
+        Node(int width) {
+            minX = new double[width];
+            minY = new double[width];
+            minZ = new double[width];
+            maxX = new double[width];
+            maxY = new double[width];
+            maxZ = new double[width];
+            children = new int[width];
+        }
+
+        /**
+         * Adds a child to the node
+         *
+         * @param box       the child's bounds, as {minX, minY, minZ, maxX, maxY, maxZ}
+         * @param reference the child's reference
+         */
+        void add(double[] box, int reference) {
+            minX[size] = box[0];
+            minY[size] = box[1];
+            minZ[size] = box[2];
+            maxX[size] = box[3];
+            maxY[size] = box[4];
+            maxZ[size] = box[5];
+            children[size++] = reference;
+        }
+    }
+
+    /**
+     * A node of the binary hierarchy built before collapsing: an inner node with two children,
+     * or a leaf of geometries
+     */
+    private static final class BuildNode {
+        /** The node's bounds, as {minX, minY, minZ, maxX, maxY, maxZ} */
+        final double[] box;
+        /** The children of an inner node, null for a leaf */
+        BuildNode left, right;
+        /** The indices of a leaf's geometries, null for an inner node */
+        int[] leaf;
+
+        /**
+         * Constructs a node
+         *
+         * @param box the node's bounds
+         */
+        BuildNode(double[] box) {
+            this.box = box;
+        }
+    }
+
+    /**
+     * A reference to a geometry from the binary hierarchy, with the part of the geometry's
+     * bounding box that the reference covers
+     */
+    private record Reference(int geometry, double[] box) {
+    }
+
+    /**
+     * Builds the hierarchy of bounded geometries, with object splits only
+     *
+     * @param geometries the geometries, each with a bounding box
+     * @param width      the maximal number of children of a node, 2 to 8
+     * @throws IllegalArgumentException if a geometry has no bounding box, there are no geometries,
+     *                                  or the width is not between 2 and 8
+     */
+    public WideBVH(List<Intersectable> geometries, int width) {
+        this(geometries, width, 0);
+    }
+
+    /**
+     * Builds the hierarchy of bounded geometries, with spatial splits up to a memory growth limit
+     *
+     * @param geometries         the geometries, each with a bounding box
+     * @param width              the maximal number of children of a node, 2 to 8
+     * @param spatialSplitGrowth the number of references that spatial splits may add, relative to the
+     *                           number of geometries (e.g. 0.3 for up to 30% more), 0 for object splits only
+     * @throws IllegalArgumentException if a geometry has no bounding box, there are no geometries,
+     *                                  the width is not between 2 and 8, or the growth is negative
+     */
+    public WideBVH(List<Intersectable> geometries, int width, double spatialSplitGrowth) {
+        this(geometries, width, spatialSplitGrowth, false);
+    }
+
+    /**
+     * Builds the hierarchy of bounded geometries, with spatial splits up to a memory growth limit,
+     * and optionally with compressed nodes
+     *
+     * @param geometries         the geometries, each with a bounding box
+     * @param width              the maximal number of children of a node, 2 to 8
+     * @param spatialSplitGrowth the number of references that spatial splits may add, relative to the
+     *                           number of geometries (e.g. 0.3 for up to 30% more), 0 for object splits only
+     * @param compressed         whether to store the nodes with quantized bounds
+     * @throws IllegalArgumentException if a geometry has no bounding box, there are no geometries,
+     *                                  the width is not between 2 and 8, or the growth is negative
+     */
+    public WideBVH(List<Intersectable> geometries, int width, double spatialSplitGrowth, boolean compressed) {
+        if (width < 2 || width > 8)
+            throw new IllegalArgumentException("The width of a BVH must be between 2 and 8");
+        if (geometries.isEmpty())
+            throw new IllegalArgumentException("A BVH needs at least one geometry");
+        if (spatialSplitGrowth < 0)
+            throw new IllegalArgumentException("The spatial split growth must not be negative");
+        this.width = width;
+        this.spatialSplitGrowth = spatialSplitGrowth;
+
+        Intersectable[] input = geometries.toArray(new Intersectable[0]);
+        List<Reference> references = new ArrayList<>(input.length);
+        double[] bounds = emptyBox();
+        for (int i = 0; i < input.length; i++) {
+            AABB aabb = input[i].getAABB();
+            if (aabb == null)
+                throw new IllegalArgumentException("A BVH geometry must have a bounding box");
+            references.add(new Reference(i, box(aabb)));
+            grow(bounds, references.get(i).box());
+        }
+        Builder builder = new Builder(input, (int) (input.length * spatialSplitGrowth), area(bounds));
+        BuildNode root = builder.build(references);
+
+        List<Node> wide = new ArrayList<>();
+        List<int[]> leaves = new ArrayList<>();
+        List<Integer> order = new ArrayList<>(input.length);
+        if (root.left == null) { // a single leaf is the only child of the root
+            Node node = new Node(width);
+            wide.add(node);
+            node.add(root.box, ~addLeaf(leaves, order, root));
+        } else collapse(root, wide, leaves, order);
+        sources = order.stream().mapToInt(Integer::intValue).toArray();
+        this.geometries = new Intersectable[sources.length];
+        for (int g = 0; g < sources.length; g++) this.geometries[g] = input[sources[g]];
+        geometryCount = input.length;
+        duplicates = this.geometries.length > input.length;
+        nodeCount = wide.size();
+        // a node's header, its children's references, and 6 bytes of quantized bounds per child
+        compressedSize = HEADER + width + (6 * width + 3) / 4;
+        if (compressed) {
+            nodes = null;
+            compressedNodes = new int[nodeCount * compressedSize];
+            IntStream.range(0, nodeCount).parallel().forEach(i -> compress(wide.get(i), i * compressedSize));
+        } else {
+            nodes = wide.toArray(new Node[0]);
+            compressedNodes = null;
+        }
+        leafFirst = new int[leaves.size()];
+        leafCount = new int[leaves.size()];
+        for (int i = 0; i < leaves.size(); i++) {
+            leafFirst[i] = leaves.get(i)[0];
+            leafCount[i] = leaves.get(i)[1];
+        }
+        buildCost = cost();
+    }
+
+    /**
+     * Refits the hierarchy to moved geometries, with the default limit of the SAH cost growth
+     * ({@link #DEFAULT_REFIT_COST_GROWTH})
+     *
+     * @param geometries the geometries, in the order of the built ones, each with a bounding box
+     * @return this hierarchy, refitted, or a new hierarchy of the geometries if the refit degraded it too much
+     * @throws IllegalArgumentException if the number of geometries changed or a geometry has no bounding box
+     * @see #refit(List, double)
+     */
+    public WideBVH refit(List<Intersectable> geometries) {
+        return refit(geometries, DEFAULT_REFIT_COST_GROWTH);
+    }
+
+    /**
+     * Refits the hierarchy to moved geometries: the i-th geometry replaces the i-th geometry the hierarchy
+     * was built of, and the bounds of the nodes are recomputed bottom-up, keeping the tree.
+     * If the refitted hierarchy's SAH cost exceeds the built hierarchy's by more than the growth limit,
+     * a new hierarchy is built with the same settings instead.
+     * The hierarchy must not be traversed during a refit.
+     * The references that spatial splits clipped are refitted to their geometries' whole bounding boxes.
+     *
+     * @param geometries    the geometries, in the order of the built ones, each with a bounding box
+     * @param maxCostGrowth the SAH cost of the refitted hierarchy relative to the built one's above which
+     *                      the hierarchy is rebuilt (e.g. 1.5 for 50% more)
+     * @return this hierarchy, refitted, or a new hierarchy of the geometries if the refit degraded it too much
+     * @throws IllegalArgumentException if the number of geometries changed or a geometry has no bounding box
+     */
+    public WideBVH refit(List<Intersectable> geometries, double maxCostGrowth) {
+        if (geometries.size() != geometryCount)
+            throw new IllegalArgumentException("A BVH refit needs as many geometries as the BVH was built of");
+        double[][] boxes = new double[geometryCount][];
+        for (int i = 0; i < geometryCount; i++) {
+            AABB aabb = geometries.get(i).getAABB();
+            if (aabb == null)
+                throw new IllegalArgumentException("A BVH geometry must have a bounding box");
+            boxes[i] = box(aabb);
+        }
+        for (int g = 0; g < sources.length; g++) this.geometries[g] = geometries.get(sources[g]);
+
+        // the children of a node follow it, so a backward pass visits the children first
+        double[][] bounds = new double[nodeCount][];
+        Node decoded = new Node(width);
+        for (int n = nodeCount - 1; n >= 0; n--) {
+            Node node = nodes != null ? nodes[n] : decompress(n * compressedSize, decoded);
+            double[] nodeBounds = emptyBox();
+            int size = node.size;
+            node.size = 0;
+            for (int c = 0; c < size; c++) {
+                int child = node.children[c];
+                double[] box;
+                if (child < 0) {
+                    box = emptyBox();
+                    for (int g = leafFirst[~child]; g < leafFirst[~child] + leafCount[~child]; g++)
+                        grow(box, boxes[sources[g]]);
+                } else box = bounds[child];
+                node.add(box, child);
+                grow(nodeBounds, box);
+            }
+            bounds[n] = nodeBounds;
+            if (nodes == null) {
+                Arrays.fill(compressedNodes, n * compressedSize, (n + 1) * compressedSize, 0);
+                compress(node, n * compressedSize);
+            }
+        }
+        return cost() <= buildCost * maxCostGrowth ? this
+                : new WideBVH(geometries, width, spatialSplitGrowth, compressedNodes != null);
+    }
+
+    /**
+     * Calculates the SAH cost of the hierarchy: the expected cost of a ray through the root's bounds,
+     * as the cost of visiting each node and of intersecting each leaf's geometries, weighted by the
+     * probability of a ray hitting its bounds - the ratio of its surface area to the root's
+     *
+     * @return the cost, in geometry intersections
+     */
+    public final double cost() {
+        double nodeAreas = 0, leafAreas = 0;
+        double[] root = null;
+        Node decoded = new Node(width);
+        for (int n = 0; n < nodeCount; n++) {
+            Node node = nodes != null ? nodes[n] : decompress(n * compressedSize, decoded);
+            double[] bounds = emptyBox();
+            for (int c = 0; c < node.size; c++) {
+                double[] box = {node.minX[c], node.minY[c], node.minZ[c], node.maxX[c], node.maxY[c], node.maxZ[c]};
+                grow(bounds, box);
+                if (node.children[c] < 0) leafAreas += area(box) * leafCount[~node.children[c]];
+            }
+            nodeAreas += area(bounds);
+            if (root == null) root = bounds;
+        }
+        double rootArea = area(root);
+        return rootArea > 0 ? (TRAVERSAL_COST * nodeAreas + leafAreas) / rootArea : 0;
+    }
+
+    /**
+     * Returns the number of geometries the hierarchy was built of
+     *
+     * @return the number of geometries
+     */
+    public int geometryCount() {
+        return geometryCount;
+    }
+
+    /**
+     * Returns the number of references to geometries in the leaves of the hierarchy,
+     * which exceeds the number of geometries by the references that spatial splits added
+     *
+     * @return the number of references
+     */
+    public int referenceCount() {
+        return geometries.length;
+    }
+
+    /**
+     * Returns the number of nodes of the hierarchy
+     *
+     * @return the number of (wide) nodes
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Estimates the memory of the hierarchy's nodes, on a 64-bit JVM with compressed references
+     * (16-byte array headers, 8-byte alignment)
+     *
+     * @return the estimated number of bytes of the nodes
+     */
+    public long nodeMemory() {
+        if (compressedNodes != null) return arrayMemory(4L * compressedNodes.length);
+        // a node object with 7 array references and a size, 6 bounds arrays and a references array
+        long node = align(12 + 7 * 4 + 4) + 6 * arrayMemory(8L * width) + arrayMemory(4L * width);
+        return arrayMemory(4L * nodeCount) + nodeCount * node;
+    }
+
+    /**
+     * Estimates the memory of an array
+     *
+     * @param bytes the number of bytes of the array's elements
+     * @return the estimated number of bytes of the array
+     */
+    private static long arrayMemory(long bytes) {
+        return align(16 + bytes);
+    }
+
+    /**
+     * Aligns a memory size to 8 bytes
+     *
+     * @param bytes the number of bytes
+     * @return the aligned number of bytes
+     */
+    private static long align(long bytes) {
+        return (bytes + 7) / 8 * 8;
+    }
+
+    /**
+     * Finds the closest intersection between the ray and the geometries in the hierarchy.
+     * The nodes are visited nearest entry first, and a node is skipped once the closest hit
+     * found so far is nearer than its entry.
+     *
+     * @param ray the ray to test
+     * @return the closest intersection, or null if no intersection was found
+     */
+    public Intersection findClosestIntersection(Ray ray) {
+        Point origin = ray.getHead();
+        PackedRay packed = new PackedRay(ray);
+        Traversal traversal = new Traversal();
+        Intersection closest = null;
+        double closestDist = Double.POSITIVE_INFINITY;
+
+        while (traversal.size > 0) {
+            int reference = traversal.pop();
+            if (traversal.entry > closestDist) continue;
+            if (reference < 0) {
+                int leaf = ~reference;
+                for (int g = leafFirst[leaf]; g < leafFirst[leaf] + leafCount[leaf]; g++) {
+                    Intersection inter = geometries[g].calculateClosestIntersection(ray);
+                    if (inter != null) {
+                        double dist = origin.distance(inter.point);
+                        if (dist < closestDist) {
+                            closest = inter;
+                            closestDist = dist;
+                        }
+                    }
+                }
+            } else traversal.pushChildren(reference, packed, closestDist, true);
+        }
+        return closest;
+    }
+
+    /**
+     * Finds all intersections between the ray and geometries within the given maximum distance.
+     *
+     * @param ray         the ray to test
+     * @param maxDistance maximum distance from ray origin to consider
+     * @return a list of intersections, or an empty list if none found
+     */
+    public List<Intersection> findAllIntersections(Ray ray, double maxDistance) {
+        return findAllIntersections(ray, maxDistance, inter -> false);
+    }
+
+    /**
+     * Finds the intersections between the ray and geometries within the given maximum distance,
+     * stopping the traversal once a blocking intersection is found (e.g. an opaque geometry along
+     * a shadow ray). The result then contains the blocking intersection, and may miss others.
+     *
+     * @param ray         the ray to test
+     * @param maxDistance maximum distance from ray origin to consider
+     * @param blocking    the condition of a blocking intersection
+     * @return a list of intersections, or an empty list if none found
+     */
+    public List<Intersection> findAllIntersections(Ray ray, double maxDistance, Predicate<Intersection> blocking) {
+        List<Intersection> allHits = new LinkedList<>();
+        Point origin = ray.getHead();
+        PackedRay packed = new PackedRay(ray);
+        Traversal traversal = new Traversal();
+        // a geometry referenced by several leaves is intersected once
+        Set<Intersectable> tested = duplicates ? Collections.newSetFromMap(new IdentityHashMap<>()) : null;
+
+        while (traversal.size > 0) {
+            int reference = traversal.pop();
+            if (reference >= 0) {
+                traversal.pushChildren(reference, packed, maxDistance, false);
+                continue;
+            }
+            int leaf = ~reference;
+            for (int g = leafFirst[leaf]; g < leafFirst[leaf] + leafCount[leaf]; g++) {
+                if (tested != null && !tested.add(geometries[g])) continue;
+                List<Intersection> hits = geometries[g].calculateIntersections(ray, maxDistance);
+                if (hits == null) continue;
+                for (Intersection inter : hits)
+                    if (origin.distance(inter.point) <= maxDistance) {
+                        allHits.add(inter);
+                        if (blocking.test(inter)) return allHits;
+                    }
+            }
+        }
+        return allHits;
+    }
+
+    /**
+     * The stack of the nodes and leaves still to visit in a traversal of the hierarchy,
+     * with the distance at which the ray enters each of them
+     */
+    private final class Traversal {
+        /** The references of the nodes and leaves to visit */
+        private int[] references = new int[4 * width];
+        /** The entry distance of each node or leaf to visit */
+        private double[] entries = new double[4 * width];
+        /** The number of nodes and leaves to visit */
+        private int size = 0;
+        /** The entry distance of the last popped node or leaf */
+        private double entry;
+        /** The entry distances of the children of the last tested node */
+        private final double[] t = new double[width];
+        /** The order of the children of the last tested node */
+        private final int[] order = new int[width];
+        /** The last decoded compressed node, null if the nodes are not compressed */
+        private final Node decoded = compressedNodes == null ? null : new Node(width);
+
+        /**
+         * Constructs a traversal that starts at the root
+         */
+        Traversal() {
+            references[size] = 0;
+            entries[size++] = 0;
+        }
+
+        /**
+         * Removes the top of the stack
+         *
+         * @return the reference of the node or leaf to visit, its entry distance is kept in {@link #entry}
+         */
+        int pop() {
+            entry = entries[--size];
+            return references[size];
+        }
+
+        /**
+         * Tests a node's children against the ray and pushes those that the ray enters within a
+         * maximum distance, optionally ordered so that the nearest child is visited first
+         *
+         * @param index       the node's index
+         * @param ray         the ray, packed
+         * @param maxDistance the maximum entry distance
+         * @param ordered     whether to visit the children nearest first
+         */
+        void pushChildren(int index, PackedRay ray, double maxDistance, boolean ordered) {
+            Node node = decoded == null ? nodes[index] : decompress(index * compressedSize, decoded);
+            kernels.boxes(ray, node.minX, node.minY, node.minZ, node.maxX, node.maxY, node.maxZ, node.size, t);
+            int hits = 0;
+            for (int c = 0; c < node.size; c++) {
+                // a missed child's distance is infinite, which the maximum distance may be as well
+                if (t[c] == Double.POSITIVE_INFINITY || t[c] > maxDistance) continue;
+                // insertion sort, farthest first, so the nearest child is on the top of the stack
+                int k = hits++;
+                if (ordered)
+                    for (; k > 0 && t[order[k - 1]] < t[c]; k--) order[k] = order[k - 1];
+                order[k] = c;
+            }
+            if (size + hits > references.length) {
+                references = Arrays.copyOf(references, 2 * (size + hits));
+                entries = Arrays.copyOf(entries, 2 * (size + hits));
+            }
+            for (int k = 0; k < hits; k++) {
+                references[size] = node.children[order[k]];
+                entries[size++] = t[order[k]];
+            }
+        }
+    }
+
+    /**
+     * The builder of the binary hierarchy of the geometries, which tracks the remaining budget
+     * of references that spatial splits may add
+     */
+    private static final class Builder {
+        /** The geometries */
+        private final Intersectable[] input;
+        /** The number of references that spatial splits may still add, it only decreases */
+        private int budget;
+        /** The surface area of the whole hierarchy */
+        private final double rootArea;
+
+        /**
+         * Constructs a builder
+         *
+         * @param input    the geometries
+         * @param budget   the number of references that spatial splits may add
+         * @param rootArea the surface area of the whole hierarchy
+         */
+        Builder(Intersectable[] input, int budget, double rootArea) {
+            this.input = input;
+            this.budget = budget;
+            this.rootArea = rootArea;
+        }
+
+        /**
+         * Builds the binary hierarchy of references, choosing at each node the cheapest
+         * of the best object split and (within the budget) the best spatial split
+         *
+         * @param references the references
+         * @return the root of the references' hierarchy
+         */
+        BuildNode build(List<Reference> references) {
+            int count = references.size();
+            double[] box = emptyBox();
+            double[] centroids = emptyBox();
+            for (Reference reference : references) {
+                grow(box, reference.box());
+                for (int axis = 0; axis < 3; axis++) {
+                    double c = centroid(reference.box(), axis);
+                    centroids[axis] = Math.min(centroids[axis], c);
+                    centroids[axis + 3] = Math.max(centroids[axis + 3], c);
+                }
+            }
+            BuildNode node = new BuildNode(box);
+            if (count <= MAX_LEAF_SIZE) return leaf(node, references);
+
+            int axis = 0;
+            for (int a = 1; a < 3; a++)
+                if (centroids[a + 3] - centroids[a] > centroids[axis + 3] - centroids[axis]) axis = a;
+            double low = centroids[axis], extent = centroids[axis + 3] - low;
+            if (extent <= 0) // the centroids coincide, split the references in the middle
+                return split(node, references.subList(0, count / 2), references.subList(count / 2, count));
+
+            // bin the centroids, then sweep the bins for the object split of the lowest SAH cost
+            int[] binCounts = new int[BINS];
+            double[][] binBoxes = new double[BINS][];
+            for (int b = 0; b < BINS; b++) binBoxes[b] = emptyBox();
+            for (Reference reference : references) {
+                int b = bin(reference.box(), axis, low, extent);
+                binCounts[b]++;
+                grow(binBoxes[b], reference.box());
+            }
+            double[][] rightBoxes = new double[BINS][];
+            double[] sweep = emptyBox();
+            for (int b = BINS - 1; b > 0; b--) {
+                grow(sweep, binBoxes[b]);
+                rightBoxes[b] = sweep.clone();
+            }
+            sweep = emptyBox();
+            int bestSplit = -1, leftCount = 0;
+            double bestCost = Double.POSITIVE_INFINITY, overlap = 0;
+            for (int b = 0; b < BINS - 1; b++) {
+                grow(sweep, binBoxes[b]);
+                leftCount += binCounts[b];
+                double cost = area(sweep) * leftCount + area(rightBoxes[b + 1]) * (count - leftCount);
+                if (leftCount > 0 && leftCount < count && cost < bestCost) {
+                    bestCost = cost;
+                    bestSplit = b;
+                    overlap = area(intersection(sweep, rightBoxes[b + 1]));
+                }
+            }
+
+            // spatial splits pay off where the sides of the object split overlap
+            double[] spatial = budget > 0 && overlap / rootArea > MIN_SPATIAL_OVERLAP
+                    ? findSpatialSplit(references, box) : null;
+            double cost = TRAVERSAL_COST + Math.min(bestCost, spatial == null ? bestCost : spatial[2]) / area(box);
+            if (cost >= count && count <= MAX_SAH_LEAF_SIZE) return leaf(node, references);
+
+            if (spatial != null && spatial[2] < bestCost) {
+                int spatialAxis = (int) spatial[0];
+                double plane = spatial[1];
+                List<Reference> left = new ArrayList<>(), right = new ArrayList<>();
+                for (Reference reference : references) {
+                    if (reference.box()[spatialAxis + 3] <= plane) left.add(reference);
+                    else if (reference.box()[spatialAxis] >= plane) right.add(reference);
+                    else { // the plane cuts the reference, clip it to each side
+                        Reference l = clip(reference, spatialAxis, Double.NEGATIVE_INFINITY, plane);
+                        Reference r = clip(reference, spatialAxis, plane, Double.POSITIVE_INFINITY);
+                        if (l != null) left.add(l);
+                        if (r != null) right.add(r);
+                    }
+                }
+                int added = left.size() + right.size() - count;
+                if (!left.isEmpty() && !right.isEmpty() && added <= budget) {
+                    budget -= added;
+                    return split(node, left, right);
+                }
+            }
+
+            if (bestSplit < 0) // no object split separates the references, split them in the middle
+                return split(node, references.subList(0, count / 2), references.subList(count / 2, count));
+            List<Reference> left = new ArrayList<>(), right = new ArrayList<>();
+            for (Reference reference : references)
+                (bin(reference.box(), axis, low, extent) <= bestSplit ? left : right).add(reference);
+            return split(node, left, right);
+        }
+
+        /**
+         * Finds the spatial split of the lowest SAH cost: the references are clipped to bins of
+         * equal width along each axis, and a reference counts on each side of a plane that cuts it
+         *
+         * @param references the references
+         * @param box        the bounds of the references
+         * @return the split as {axis, plane, cost}, or null if there is none
+         */
+        private double[] findSpatialSplit(List<Reference> references, double[] box) {
+            double[] best = null;
+            for (int axis = 0; axis < 3; axis++) {
+                double low = box[axis], extent = box[axis + 3] - low;
+                if (extent <= 0) continue;
+                int[] entries = new int[BINS], exits = new int[BINS];
+                double[][] binBoxes = new double[BINS][];
+                for (int b = 0; b < BINS; b++) binBoxes[b] = emptyBox();
+                for (Reference reference : references) {
+                    int first = spatialBin(reference.box()[axis], low, extent);
+                    int last = spatialBin(reference.box()[axis + 3], low, extent);
+                    entries[first]++;
+                    exits[last]++;
+                    for (int b = first; b <= last; b++) {
+                        Reference clipped = first == last ? reference
+                                : clip(reference, axis, low + extent * b / BINS, low + extent * (b + 1) / BINS);
+                        if (clipped != null) grow(binBoxes[b], clipped.box());
+                    }
+                }
+                double[] rightAreas = new double[BINS];
+                int[] rightCounts = new int[BINS];
+                double[] sweep = emptyBox();
+                int rightCount = 0;
+                for (int b = BINS - 1; b > 0; b--) {
+                    grow(sweep, binBoxes[b]);
+                    rightCount += exits[b];
+                    rightAreas[b] = area(sweep);
+                    rightCounts[b] = rightCount;
+                }
+                sweep = emptyBox();
+                int leftCount = 0;
+                for (int b = 0; b < BINS - 1; b++) {
+                    grow(sweep, binBoxes[b]);
+                    leftCount += entries[b];
+                    double cost = area(sweep) * leftCount + rightAreas[b + 1] * rightCounts[b + 1];
+                    if (leftCount > 0 && rightCounts[b + 1] > 0 && (best == null || cost < best[2]))
+                        best = new double[]{axis, low + extent * (b + 1) / BINS, cost};
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Clips a reference to a slab between two planes perpendicular to an axis.
+         * A polygon is clipped exactly, any other geometry by its bounding box.
+         *
+         * @param reference the reference
+         * @param axis      the axis
+         * @param low       the lower plane's coordinate
+         * @param high      the higher plane's coordinate
+         * @return the clipped reference, or null if the geometry is outside the slab
+         */
+        private Reference clip(Reference reference, int axis, double low, double high) {
+            double[] clipped = reference.box().clone();
+            clipped[axis] = Math.max(clipped[axis], low);
+            clipped[axis + 3] = Math.min(clipped[axis + 3], high);
+            if (input[reference.geometry()] instanceof Polygon polygon) {
+                double[] polygonBox = clip(polygon.getVertices(), axis, low, high);
+                if (polygonBox == null) return null;
+                clipped = intersection(clipped, polygonBox);
+            }
+            return clipped[axis] > clipped[axis + 3] ? null : new Reference(reference.geometry(), clipped);
+        }
+
+        /**
+         * Clips a convex polygon to a slab between two planes perpendicular to an axis
+         *
+         * @param vertices the polygon's vertices
+         * @param axis     the axis
+         * @param low      the lower plane's coordinate
+         * @param high     the higher plane's coordinate
+         * @return the bounds of the clipped polygon, or null if the polygon is outside the slab
+         */
+        private static double[] clip(List<Point> vertices, int axis, double low, double high) {
+            List<double[]> polygon = new ArrayList<>(vertices.size());
+            for (Point p : vertices) polygon.add(new double[]{p.getX(), p.getY(), p.getZ()});
+            polygon = clip(polygon, axis, low, 1);
+            polygon = clip(polygon, axis, high, -1);
+            if (polygon.isEmpty()) return null;
+            double[] box = emptyBox();
+            for (double[] p : polygon) grow(box, new double[]{p[0], p[1], p[2], p[0], p[1], p[2]});
+            return box;
+        }
+
+        /**
+         * Clips a convex polygon by a plane perpendicular to an axis (Sutherland-Hodgman)
+         *
+         * @param polygon the polygon's vertices, as {x, y, z}
+         * @param axis    the axis
+         * @param plane   the plane's coordinate, infinite to keep the whole polygon
+         * @param side    1 to keep the part above the plane, -1 to keep the part below it
+         * @return the vertices of the clipped polygon
+         */
+        private static List<double[]> clip(List<double[]> polygon, int axis, double plane, int side) {
+            if (Double.isInfinite(plane)) return polygon;
+            List<double[]> result = new ArrayList<>(polygon.size() + 1);
+            for (int i = 0; i < polygon.size(); i++) {
+                double[] p = polygon.get(i), q = polygon.get((i + 1) % polygon.size());
+                double dp = side * (p[axis] - plane), dq = side * (q[axis] - plane);
+                if (dp >= 0) result.add(p);
+                if (dp < 0 && dq > 0 || dp > 0 && dq < 0) {
+                    double s = dp / (dp - dq);
+                    double[] cut = new double[3];
+                    for (int c = 0; c < 3; c++) cut[c] = p[c] + s * (q[c] - p[c]);
+                    cut[axis] = plane;
+                    result.add(cut);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Makes a binary node an inner node of the hierarchies of two sides. Large sides are built
+         * in parallel once the budget of spatial split references is used up, before that they are
+         * built one after the other, the first side first.
+         *
+         * @param node  the node
+         * @param left  the references of one side
+         * @param right the references of the other side
+         * @return the node
+         */
+        private BuildNode split(BuildNode node, List<Reference> left, List<Reference> right) {
+            if (budget > 0 || left.size() + right.size() < PARALLEL_BUILD_SIZE) {
+                node.left = build(left);
+                node.right = build(right);
+            } else {
+                ForkJoinTask<BuildNode> leftTask = ForkJoinTask.adapt(() -> build(left)).fork();
+                node.right = build(right);
+                node.left = leftTask.join();
+            }
+            return node;
+        }
+
+        /**
+         * Makes a binary node a leaf of references
+         *
+         * @param node       the node
+         * @param references the references
+         * @return the node
+         */
+        private static BuildNode leaf(BuildNode node, List<Reference> references) {
+            node.leaf = new int[references.size()];
+            for (int i = 0; i < node.leaf.length; i++) node.leaf[i] = references.get(i).geometry();
+            return node;
+        }
+    }
+
+    /**
+     * Collapses a binary inner node and its descendants into wide nodes
+     *
+     * @param binary the binary inner node
+     * @param wide   the wide nodes built so far, the new nodes are appended
+     * @param leaves the leaves built so far, as {first, count}, the new leaves are appended
+     * @param order  the indices of the geometries of the leaves built so far, leaf by leaf,
+     *               the new leaves' are appended
+     * @return the index of the wide node of the binary node
+     */
+    private int collapse(BuildNode binary, List<Node> wide, List<int[]> leaves, List<Integer> order) {
+        List<BuildNode> children = new ArrayList<>(List.of(binary.left, binary.right));
+        while (children.size() < width) {
+            // open the inner child with the largest surface area
+            int largest = -1;
+            for (int c = 0; c < children.size(); c++)
+                if (children.get(c).left != null
+                        && (largest < 0 || area(children.get(c).box) > area(children.get(largest).box)))
+                    largest = c;
+            if (largest < 0) break;
+            BuildNode opened = children.remove(largest);
+            children.add(opened.left);
+            children.add(opened.right);
+        }
+
+        Node node = new Node(width);
+        int index = wide.size();
+        wide.add(node);
+        for (BuildNode child : children)
+            node.add(child.box, child.left == null ? ~addLeaf(leaves, order, child)
+                    : collapse(child, wide, leaves, order));
+        return index;
+    }
+
+    /**
+     * Compresses a node into the compressed nodes: the node's bounds are stored as their origin and
+     * the scale of one quantization step (as floats), and the children's bounds as the number of steps
+     * from the origin, rounded outwards
+     *
+     * @param node   the node
+     * @param offset the offset of the compressed node
+     */
+    private void compress(Node node, int offset) {
+        double[][] mins = {node.minX, node.minY, node.minZ}, maxs = {node.maxX, node.maxY, node.maxZ};
+        int[] quantized = new int[6 * width];
+        for (int axis = 0; axis < 3; axis++) {
+            double low = Double.POSITIVE_INFINITY, high = Double.NEGATIVE_INFINITY;
+            for (int c = 0; c < node.size; c++) {
+                low = Math.min(low, mins[axis][c]);
+                high = Math.max(high, maxs[axis][c]);
+            }
+            // round the origin down and the scale up, so the quantized range covers the node
+            float origin = (float) low;
+            if (origin > low) origin = Math.nextDown(origin);
+            float scale = (float) ((high - origin) / QUANTIZED_MAX);
+            while (origin + QUANTIZED_MAX * (double) scale < high) scale = Math.nextUp(scale);
+            compressedNodes[offset + axis] = Float.floatToRawIntBits(origin);
+            compressedNodes[offset + 3 + axis] = Float.floatToRawIntBits(scale);
+
+            for (int c = 0; c < node.size; c++) {
+                int low8 = 0, high8 = 0;
+                if (scale > 0) {
+                    low8 = Math.clamp((long) Math.floor((mins[axis][c] - origin) / scale), 0, QUANTIZED_MAX);
+                    while (low8 > 0 && dequantize(origin, scale, low8) > mins[axis][c]) low8--;
+                    high8 = Math.clamp((long) Math.ceil((maxs[axis][c] - origin) / scale), 0, QUANTIZED_MAX);
+                    while (high8 < QUANTIZED_MAX && dequantize(origin, scale, high8) < maxs[axis][c]) high8++;
+                }
+                quantized[6 * c + axis] = low8;
+                quantized[6 * c + 3 + axis] = high8;
+            }
+        }
+        for (int c = 0; c < width; c++)
+            compressedNodes[offset + HEADER + c] = c < node.size ? node.children[c] : EMPTY;
+        for (int b = 0; b < quantized.length; b++)
+            compressedNodes[offset + HEADER + width + b / 4] |= quantized[b] << 8 * (b % 4);
+    }
+
+    /**
+     * Decompresses a node, with its children's bounds rounded outwards
+     *
+     * @param offset the offset of the compressed node
+     * @param node   the node to decompress into
+     * @return the decompressed node
+     */
+    private Node decompress(int offset, Node node) {
+        double[][] mins = {node.minX, node.minY, node.minZ}, maxs = {node.maxX, node.maxY, node.maxZ};
+        int size = 0;
+        while (size < width && compressedNodes[offset + HEADER + size] != EMPTY) {
+            node.children[size] = compressedNodes[offset + HEADER + size];
+            size++;
+        }
+        node.size = size;
+        int bytes = offset + HEADER + width;
+        for (int axis = 0; axis < 3; axis++) {
+            float origin = Float.intBitsToFloat(compressedNodes[offset + axis]);
+            float scale = Float.intBitsToFloat(compressedNodes[offset + 3 + axis]);
+            for (int c = 0; c < size; c++) {
+                int low = 6 * c + axis, high = low + 3;
+                mins[axis][c] = dequantize(origin, scale, compressedNodes[bytes + low / 4] >>> 8 * (low % 4) & 0xFF);
+                maxs[axis][c] = dequantize(origin, scale, compressedNodes[bytes + high / 4] >>> 8 * (high % 4) & 0xFF);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Decodes a quantized coordinate, exactly as the compression checks it
+     *
+     * @param origin    the origin of the quantized range
+     * @param scale     the size of a quantization step
+     * @param quantized the quantized coordinate
+     * @return the coordinate
+     */
+    private static double dequantize(float origin, float scale, int quantized) {
+        return origin + quantized * (double) scale;
+    }
+
+    /**
+     * Adds a binary leaf to the leaves
+     *
+     * @param leaves the leaves, as {first, count}
+     * @param order  the indices of the geometries of the leaves, leaf by leaf
+     * @param leaf   the binary leaf
+     * @return the index of the added leaf
+     */
+    private static int addLeaf(List<int[]> leaves, List<Integer> order, BuildNode leaf) {
+        leaves.add(new int[]{order.size(), leaf.leaf.length});
+        for (int geometry : leaf.leaf) order.add(geometry);
+        return leaves.size() - 1;
+    }
+
+    /**
+     * Converts an AABB to an array of its bounds
+     *
+     * @param aabb the AABB
+     * @return the bounds, as {minX, minY, minZ, maxX, maxY, maxZ}
+     */
+    static double[] box(AABB aabb) {
+        Point min = aabb.getMin(), max = aabb.getMax();
+        return new double[]{min.getX(), min.getY(), min.getZ(), max.getX(), max.getY(), max.getZ()};
+    }
+
+    /**
+     * Creates an empty box, which any box grows to contain
+     *
+     * @return the empty box, as {minX, minY, minZ, maxX, maxY, maxZ}
+     */
+    private static double[] emptyBox() {
+        double inf = Double.POSITIVE_INFINITY;
+        return new double[]{inf, inf, inf, -inf, -inf, -inf};
+    }
+
+    /**
+     * Grows a box to contain another box
+     *
+     * @param box   the box to grow
+     * @param other the other box
+     */
+    private static void grow(double[] box, double[] other) {
+        for (int axis = 0; axis < 3; axis++) {
+            box[axis] = Math.min(box[axis], other[axis]);
+            box[axis + 3] = Math.max(box[axis + 3], other[axis + 3]);
+        }
+    }
+
+    /**
+     * Calculates the half surface area of a box
+     *
+     * @param box the box
+     * @return the half surface area, 0 for an empty box
+     */
+    private static double area(double[] box) {
+        double dx = box[3] - box[0], dy = box[4] - box[1], dz = box[5] - box[2];
+        return dx < 0 || dy < 0 || dz < 0 ? 0 : dx * dy + dy * dz + dz * dx;
+    }
+
+    /**
+     * Calculates the intersection of two boxes
+     *
+     * @param box   a box
+     * @param other the other box
+     * @return the intersection, empty (with a minimum above a maximum) if the boxes are disjoint
+     */
+    private static double[] intersection(double[] box, double[] other) {
+        double[] result = new double[6];
+        for (int axis = 0; axis < 3; axis++) {
+            result[axis] = Math.max(box[axis], other[axis]);
+            result[axis + 3] = Math.min(box[axis + 3], other[axis + 3]);
+        }
+        return result;
+    }
+
+    /**
+     * Calculates the centroid of a box along an axis
+     *
+     * @param box  the box
+     * @param axis the axis, 0 to 2
+     * @return the centroid's coordinate
+     */
+    private static double centroid(double[] box, int axis) {
+        return (box[axis] + box[axis + 3]) / 2;
+    }
+
+    /**
+     * Finds the centroid bin of a box
+     *
+     * @param box    the box
+     * @param axis   the binned axis
+     * @param low    the lowest centroid along the axis
+     * @param extent the extent of the centroids along the axis
+     * @return the bin index
+     */
+    private static int bin(double[] box, int axis, double low, double extent) {
+        return Math.min(BINS - 1, (int) ((centroid(box, axis) - low) / extent * BINS));
+    }
+
+    /**
+     * Finds the spatial bin of a coordinate
+     *
+     * @param coordinate the coordinate
+     * @param low        the lower bound of the bins
+     * @param extent     the extent of the bins
+     * @return the bin index
+     */
+    private static int spatialBin(double coordinate, double low, double extent) {
+        return Math.max(0, Math.min(BINS - 1, (int) ((coordinate - low) / extent * BINS)));
+    }
+}
@@ -0,0 +1,206 @@
+package geometries;
+
+import acceleration.AABB;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A bounded proxy of an unbounded geometry (a plane or a tube): the part of the geometry inside a clip box,
+ * usually the scene's bounding box with a margin. Unlike the geometry, the proxy has a bounding box,
+ * so it can be put in an acceleration structure like the bounded geometries, and only the structure's
+ * cells it overlaps refer to it.
+ * The proxy's intersections are the geometry's intersections inside the clip box; the geometry's
+ * intersections outside the clip box are left to the geometry itself.
+ */
+public class BoundedProxy extends Intersectable {
+    /** The margin of the proxy's bounding box, relative to the clip box's diagonal */
+    private static final double BOUNDS_MARGIN = 1e-6;
+    /** The unbounded geometry */
+    private final Intersectable geometry;
+    /** The clip box */
+    private final AABB clip;
+
+    /**
+     * Constructs a proxy of a geometry whose bounding box is the part of the clip box the geometry may cross
+     *
+     * @param geometry the unbounded geometry
+     * @param clip     the clip box
+     * @param bounds   the bounding box of the geometry's part inside the clip box
+     */
+    private BoundedProxy(Intersectable geometry, AABB clip, AABB bounds) {
+        this.geometry = geometry;
+        this.clip = clip;
+        this.box = bounds;
+    }
+
+    /**
+     * Builds the bounded proxy of an unbounded geometry inside a clip box.
+     * The proxy's bounding box is the bounding box of the part of a plane inside the clip box, or of the
+     * part of the clip box within a tube's radius of its axis, or the whole clip box for other geometries.
+     *
+     * @param geometry the unbounded geometry
+     * @param clip     the clip box
+     * @return the proxy, or null if the geometry does not cross the clip box
+     */
+    public static BoundedProxy of(Intersectable geometry, AABB clip) {
+        AABB bounds;
+        if (geometry instanceof Plane plane) bounds = clip(plane, clip);
+        else if (geometry instanceof Tube tube) bounds = clip(tube, clip);
+        else bounds = clip;
+        if (bounds == null) return null;
+
+        // widen the bounding box slightly, so the rays through a flat part are not culled by rounding
+        double margin = clip.getMax().distance(clip.getMin()) * BOUNDS_MARGIN;
+        return new BoundedProxy(geometry, clip, bounds.expand(margin));
+    }
+
+    /**
+     * Returns the unbounded geometry of the proxy
+     *
+     * @return the geometry
+     */
+    public Intersectable getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Finds the intersections of a ray with the geometry inside the clip box.
+     *
+     * @param ray         the ray to intersect with the geometry
+     * @param maxDistance the maximum distance for the intersections
+     * @return the intersections inside the clip box, or null if there are none
+     */
+    @Override
+    protected List<Intersection> calculateIntersectionsHelper(Ray ray, double maxDistance) {
+        List<Intersection> hits = geometry.calculateIntersections(ray, maxDistance);
+        if (hits == null) return null;
+        List<Intersection> inside = new ArrayList<>(hits.size());
+        for (Intersection hit : hits)
+            if (clip.contains(hit.point)) inside.add(hit);
+        return inside.isEmpty() ? null : inside;
+    }
+
+    /**
+     * Checks whether the geometry's part inside the clip box may overlap an axis-aligned box
+     *
+     * @param box the box
+     * @return false if the proxy surely does not overlap the box, true otherwise
+     */
+    @Override
+    public boolean overlaps(AABB box) {
+        return this.box.overlaps(box) && geometry.overlaps(box);
+    }
+
+    /**
+     * Calculates a hash of the proxy's geometry and bounding box, on which its overlap test depends
+     *
+     * @return the hash
+     */
+    @Override
+    public long shapeHash() {
+        return hash(geometry.shapeHash(), box.getMin().getX(), box.getMin().getY(), box.getMin().getZ(),
+                box.getMax().getX(), box.getMax().getY(), box.getMax().getZ());
+    }
+
+    /**
+     * Calculates the bounding box of the part of a plane inside a box, from the points where the plane
+     * crosses the box's edges
+     *
+     * @param plane the plane
+     * @param clip  the box
+     * @return the bounding box, or null if the plane does not cross the box
+     */
+    private static AABB clip(Plane plane, AABB clip) {
+        Point min = clip.getMin(), max = clip.getMax(), p = plane.getPoint();
+        Vector n = plane.getNormal();
+        Point[] corners = new Point[8];
+        double[] distances = new double[8];
+        for (int c = 0; c < 8; c++) {
+            corners[c] = new Point((c & 1) == 0 ? min.getX() : max.getX(),
+                    (c & 2) == 0 ? min.getY() : max.getY(),
+                    (c & 4) == 0 ? min.getZ() : max.getZ());
+            distances[c] = n.getX() * (corners[c].getX() - p.getX()) + n.getY() * (corners[c].getY() - p.getY())
+                    + n.getZ() * (corners[c].getZ() - p.getZ());
+        }
+
+        AABB bounds = null;
+        for (int c = 0; c < 8; c++) {
+            if (distances[c] == 0) bounds = union(bounds, corners[c]);
+            // the edges from the corner along the axes
+            for (int axis = 1; axis < 8; axis <<= 1) {
+                int other = c | axis;
+                if (other == c || distances[c] * distances[other] >= 0) continue;
+                double t = distances[c] / (distances[c] - distances[other]);
+                Point a = corners[c], b = corners[other];
+                bounds = union(bounds, new Point(a.getX() + (b.getX() - a.getX()) * t,
+                        a.getY() + (b.getY() - a.getY()) * t, a.getZ() + (b.getZ() - a.getZ()) * t));
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Calculates a bounding box of the part of a box within a tube's radius of its axis, from the segment
+     * of the axis inside the box widened by the radius
+     *
+     * @param tube the tube
+     * @param clip the box
+     * @return the bounding box, or null if the tube does not cross the box
+     */
+    private static AABB clip(Tube tube, AABB clip) {
+        Point min = clip.getMin(), max = clip.getMax(), head = tube.getAxis().getHead();
+        Vector dir = tube.getAxis().getDirection();
+        double r = tube.getRadius();
+        double[] range = {Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY};
+        if (!slab(head.getX(), dir.getX(), min.getX() - r, max.getX() + r, range)
+                || !slab(head.getY(), dir.getY(), min.getY() - r, max.getY() + r, range)
+                || !slab(head.getZ(), dir.getZ(), min.getZ() - r, max.getZ() + r, range))
+            return null;
+
+        // the ends of the axis segment along each axis
+        double fromX = head.getX() + dir.getX() * range[0], toX = head.getX() + dir.getX() * range[1];
+        double fromY = head.getY() + dir.getY() * range[0], toY = head.getY() + dir.getY() * range[1];
+        double fromZ = head.getZ() + dir.getZ() * range[0], toZ = head.getZ() + dir.getZ() * range[1];
+        return new AABB(
+                new Point(Math.max(min.getX(), Math.min(fromX, toX) - r),
+                        Math.max(min.getY(), Math.min(fromY, toY) - r),
+                        Math.max(min.getZ(), Math.min(fromZ, toZ) - r)),
+                new Point(Math.min(max.getX(), Math.max(fromX, toX) + r),
+                        Math.min(max.getY(), Math.max(fromY, toY) + r),
+                        Math.min(max.getZ(), Math.max(fromZ, toZ) + r)));
+    }
+
+    /**
+     * Clips a range of distances along a line to a slab
+     *
+     * @param origin    the line's point's coordinate on the slab's axis
+     * @param direction the line's direction component on the slab's axis
+     * @param low       the slab's lower bound
+     * @param high      the slab's upper bound
+     * @param range     the {from, to} range to clip, updated in place
+     * @return true if the clipped range is not empty
+     */
+    private static boolean slab(double origin, double direction, double low, double high, double[] range) {
+        if (direction == 0) return origin >= low && origin <= high;
+        double t1 = (low - origin) / direction, t2 = (high - origin) / direction;
+        range[0] = Math.max(range[0], Math.min(t1, t2));
+        range[1] = Math.min(range[1], Math.max(t1, t2));
+        return range[0] <= range[1];
+    }
+
+    /**
+     * Extends a bounding box to a point
+     *
+     * @param bounds the bounding box, null if it is empty
+     * @param point  the point
+     * @return the bounding box of the box and the point
+     */
+    private static AABB union(AABB bounds, Point point) {
+        AABB box = new AABB(point, point);
+        return bounds == null ? box : bounds.union(box);
+    }
+}
@@ -241,15 +241,10 @@ public class Cube extends Geometry {
     @Override
     public AABB getAABB() {
         if(box == null) {
-            // Calculate the AABB based on the cube's dimensions and center
-            double hw = width / 2;
-            double hh = height / 2;
-            double hd = depth / 2;
-
-            Point min = center.subtract(new Vector(hw, hh, hd));
-            Point max = center.add(new Vector(hw, hh, hd));
-
-            box = new AABB(min, max);
+            // Calculate the AABB of the cube's faces, which are rotated
+            AABB bounds = polygons.get(0).getAABB();
+            for (Polygon polygon : polygons) bounds = bounds.union(polygon.getAABB());
+            box = bounds;
         }
         return box;
     }
@@ -159,5 +159,36 @@ public class Cylinder extends Tube {
         return box;
     }
 
+    /**
+     * Checks conservatively whether the cylinder may overlap an axis-aligned box: besides the bounding
+     * boxes overlapping, the sphere around the box must reach the capsule around the cylinder's axis,
+     * which contains the cylinder.
+     *
+     * @param box the box
+     * @return false if the cylinder surely does not overlap the box, true otherwise
+     */
+    @Override
+    public boolean overlaps(AABB box) {
+        if (!super.overlaps(box)) return false;
+        Point center = box.getCenter(), p0 = axis.getPoint(0d);
+        Vector dir = axis.getDirection();
+        // the distance from the box's center to the nearest point of the axis segment
+        double cx = center.getX() - p0.getX(), cy = center.getY() - p0.getY(), cz = center.getZ() - p0.getZ();
+        double t = Math.max(0, Math.min(height, cx * dir.getX() + cy * dir.getY() + cz * dir.getZ()));
+        double dx = cx - t * dir.getX(), dy = cy - t * dir.getY(), dz = cz - t * dir.getZ();
+        double reach = radius + box.getMax().distance(center);
+        return dx * dx + dy * dy + dz * dz <= reach * reach;
+    }
+
+    /**
+     * Calculates a hash of the cylinder's axis, radius and height, on which its overlap test depends
+     *
+     * @return the hash
+     */
+    @Override
+    public long shapeHash() {
+        return hash(super.shapeHash(), height);
+    }
+
 
 }
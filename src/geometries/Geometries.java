@@ -3,6 +3,7 @@ package geometries;
 import acceleration.AABB;
 import primitives.Ray;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -10,10 +11,36 @@ import java.util.List;
  * The `Geometries` class represents a collection of geometries in 3D space.
  * It implements the `Intersectable` interface and includes a list of geometries.
  * This is a composite class that allows for the grouping of multiple geometries.
+ * <p>
+ * A ray is tested against a geometry of the collection only if it hits the geometry's bounding box,
+ * and against the whole collection only if it hits the collection's bounding box, when all its
+ * geometries are bounded. The collection's bounding box is cached until a geometry is added to it
+ * or to a nested collection: each collection counts its additions and the recomputations of its box,
+ * and recomputes its box when these counts of it or of its nested collections change.
+ * Acceleration structures take the collection's {@link #flatten() leaf geometries}, so the geometries
+ * of a nested collection are accelerated like the others.
  */
 public class Geometries extends Intersectable{
     /// The list of geometries in the collection
     private final List<Intersectable> geometries = new LinkedList<>();
+    /// The nested collections, in order
+    private final List<Geometries> groups = new ArrayList<>();
+    /// The number of additions of geometries to the collection
+    private volatile int additions = 0;
+    /// The number of recomputations of the bounding box
+    private volatile long version = 0;
+    /// The cached bounding box, null until it is computed
+    private volatile Bounds cache = null;
+
+    /**
+     * The cached bounding box of the collection and the counts it was computed for
+     *
+     * @param box         the bounding box of the bounded geometries, null if there are none
+     * @param unbounded   whether a geometry, or a geometry of a nested collection, has no bounding box
+     * @param additions   the number of additions to the collection when the box was computed
+     * @param groupsStamp the sum of the nested collections' versions when the box was computed
+     */
+    private record Bounds(AABB box, boolean unbounded, int additions, long groupsStamp) {}
 
     /**
      * Constructs a new `Geometries` object.
@@ -37,6 +64,46 @@ public class Geometries extends Intersectable{
      */
     public void add(Intersectable... intersectables){
         Collections.addAll(geometries, intersectables);
+        for (Intersectable intersectable : intersectables) {
+            if (intersectable instanceof Geometries group) groups.add(group);
+        }
+        additions++;
+    }
+
+    /**
+     * Returns the leaf geometries of the collection, in order, with the geometries of each nested
+     * collection in its place, for building acceleration structures over them.
+     *
+     * @return the leaf geometries
+     */
+    public List<Intersectable> flatten() {
+        return flatten(geometries);
+    }
+
+    /**
+     * Returns the leaf geometries of a list of geometries, in order, with the geometries of each
+     * collection in its place, without grouping the list into a collection.
+     *
+     * @param geometries the geometries
+     * @return the leaf geometries
+     */
+    public static List<Intersectable> flatten(List<Intersectable> geometries) {
+        List<Intersectable> leaves = new ArrayList<>();
+        flatten(geometries, leaves);
+        return leaves;
+    }
+
+    /**
+     * Appends the leaf geometries of a list of geometries to a list
+     *
+     * @param geometries the geometries
+     * @param leaves     the list of leaf geometries
+     */
+    private static void flatten(List<Intersectable> geometries, List<Intersectable> leaves) {
+        for (Intersectable geometry : geometries) {
+            if (geometry instanceof Geometries group) flatten(group.geometries, leaves);
+            else leaves.add(geometry);
+        }
     }
 
     /**
@@ -47,10 +114,12 @@ public class Geometries extends Intersectable{
      */
     @Override
     protected List<Intersection> calculateIntersectionsHelper(Ray ray, double maxDistance) {
+        if (misses(this, ray)) return null;
         List<Intersection> intersections = new LinkedList<>();
 
         // Iterate over all geometries and collect intersection points
         for (Intersectable geometry : geometries) {
+            if (misses(geometry, ray)) continue;
             List<Intersection> intersectionsOfGeometry = geometry.calculateIntersectionsHelper(ray, maxDistance);
             if (intersectionsOfGeometry != null) {
                 intersections.addAll(intersectionsOfGeometry);
@@ -61,6 +130,32 @@ public class Geometries extends Intersectable{
         return intersections.isEmpty() ? null : intersections;
     }
 
+    /**
+     * Finds the closest intersection of a ray with the geometries, as the closest of
+     * the closest intersections of each geometry.
+     *
+     * @param ray the ray to intersect with the geometries
+     * @return the closest intersection, or null if there is none
+     */
+    @Override
+    public Intersection calculateClosestIntersection(Ray ray) {
+        if (misses(this, ray)) return null;
+        Intersection closest = null;
+        double minDistance = Double.POSITIVE_INFINITY;
+        for (Intersectable geometry : geometries) {
+            if (misses(geometry, ray)) continue;
+            Intersection intersection = geometry.calculateClosestIntersection(ray);
+            if (intersection != null) {
+                double distance = ray.getHead().distanceSquared(intersection.point);
+                if (distance < minDistance) {
+                    closest = intersection;
+                    minDistance = distance;
+                }
+            }
+        }
+        return closest;
+    }
+
     /**
      * getter method to get the geometries list.
      * @return the list of geometries
@@ -77,19 +172,80 @@ public class Geometries extends Intersectable{
         return geometries.size();
     }
 
+    /**
+     * Returns the bounding box of the collection's bounded geometries, cached until a geometry is added
+     * to the collection or to a nested collection.
+     *
+     * @return the bounding box, or null if no geometry is bounded
+     */
     @Override
     public AABB getAABB() {
-        if (geometries.isEmpty()) {
-            return null;
-        }
-        AABB box = geometries.get(0).getAABB();
-        for (Intersectable geometry : geometries) {
-            AABB geometryBox = geometry.getAABB();
-            if (geometryBox != null) {
-                box = box == null ? geometryBox : box.union(geometryBox);
+        return bounds().box();
+    }
+
+    /**
+     * Returns the up-to-date cached bounding box of the collection, recomputing it if a geometry was added
+     * to the collection or a nested collection's box was recomputed since it was computed
+     *
+     * @return the cached bounding box
+     */
+    private Bounds bounds() {
+        long groupsStamp = groupsStamp();
+        Bounds bounds = cache;
+        if (bounds != null && bounds.additions() == additions && bounds.groupsStamp() == groupsStamp) return bounds;
+        synchronized (this) {
+            int count = additions;
+            groupsStamp = groupsStamp();
+            bounds = cache;
+            if (bounds != null && bounds.additions() == count && bounds.groupsStamp() == groupsStamp) return bounds;
+            AABB box = null;
+            boolean unbounded = false;
+            for (Intersectable geometry : geometries) {
+                AABB geometryBox = geometry.getAABB();
+                if (geometryBox != null) {
+                    box = box == null ? geometryBox : box.union(geometryBox);
+                }
+                if (geometryBox == null || geometry instanceof Geometries group && group.bounds().unbounded()) {
+                    unbounded = true;
+                }
             }
+            bounds = new Bounds(box, unbounded, count, groupsStamp);
+            cache = bounds;
+            version++;
+            return bounds;
+        }
+    }
+
+    /**
+     * Brings the nested collections' bounding boxes up to date and sums their versions. Since the versions
+     * only grow, the sum changes exactly when a nested collection's box was recomputed.
+     *
+     * @return the sum of the nested collections' versions
+     */
+    private long groupsStamp() {
+        long stamp = 0;
+        for (Geometries group : groups) {
+            group.bounds();
+            stamp += group.version;
+        }
+        return stamp;
+    }
+
+    /**
+     * Checks whether a ray surely misses a geometry, by the geometry's bounding box.
+     * A collection is missed only if all its geometries are bounded and its bounding box is missed.
+     *
+     * @param geometry the geometry
+     * @param ray      the ray
+     * @return true if the ray misses the geometry's bounding box
+     */
+    private static boolean misses(Intersectable geometry, Ray ray) {
+        if (geometry instanceof Geometries group) {
+            Bounds bounds = group.bounds();
+            return bounds.box() != null && !bounds.unbounded() && !bounds.box().hasIntersection(ray);
         }
-        return box;
+        AABB box = geometry.getAABB();
+        return box != null && !box.hasIntersection(ray);
     }
 
 }
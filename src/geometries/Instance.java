@@ -0,0 +1,166 @@
+package geometries;
+
+import acceleration.AABB;
+import primitives.*;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A transformed copy of a shared model (typically a {@link acceleration.BottomLevelGrid}).
+ * The instance keeps only a reference to the model and an affine transformation from the model's
+ * object space to world space: rays are transformed into object space, intersected with the model,
+ * and the hits are transformed back. The model may be shared by any number of instances.
+ * An instance may override the material and the emission of the model's geometries.
+ * The world space view of a hit geometry is allocated per hit and not kept, so the memory of
+ * the instances does not grow with the geometries they hit.
+ */
+public class Instance extends Intersectable {
+    /** The instanced model, in object space */
+    private final Intersectable model;
+    /** The transformation from object space to world space */
+    private final Transform transform;
+    /** The material of the instance's geometries, null for the model's materials */
+    private Material material = null;
+    /** The emission of the instance's geometries, null for the model's emissions */
+    private Color emission = null;
+
+    /**
+     * Constructs an instance of a model
+     *
+     * @param model     the model, in object space
+     * @param transform the transformation from the model's object space to world space
+     */
+    public Instance(Intersectable model, Transform transform) {
+        this.model = model;
+        this.transform = transform;
+        AABB bounds = model.getAABB();
+        if (bounds != null) {
+            // the bounding box of the transformed corners of the model's box
+            Point min = bounds.getMin(), max = bounds.getMax();
+            for (int corner = 0; corner < 8; ++corner) {
+                Point p = transform.apply(new Point(
+                        (corner & 1) == 0 ? min.getX() : max.getX(),
+                        (corner & 2) == 0 ? min.getY() : max.getY(),
+                        (corner & 4) == 0 ? min.getZ() : max.getZ()));
+                AABB point = new AABB(p, p);
+                box = box == null ? point : box.union(point);
+            }
+        }
+    }
+
+    /**
+     * Sets the material of all the instance's geometries
+     *
+     * @param material the material
+     * @return the instance itself
+     */
+    public Instance setMaterial(Material material) {
+        this.material = material;
+        return this;
+    }
+
+    /**
+     * Sets the emission of all the instance's geometries
+     *
+     * @param emission the emission color
+     * @return the instance itself
+     */
+    public Instance setEmission(Color emission) {
+        this.emission = emission;
+        return this;
+    }
+
+    @Override
+    protected List<Intersection> calculateIntersectionsHelper(Ray ray, double maxDistance) {
+        Vector direction = transform.applyInverse(ray.getDirection());
+        // distances along the object space ray are scaled by the length of its direction
+        List<Intersection> hits = model.calculateIntersections(
+                new Ray(transform.applyInverse(ray.getHead()), direction), maxDistance * direction.length());
+        if (hits == null) return null;
+        List<Intersection> intersections = new LinkedList<>();
+        for (Intersection hit : hits)
+            intersections.add(toWorld(hit));
+        return intersections;
+    }
+
+    @Override
+    public Intersection calculateClosestIntersection(Ray ray) {
+        Intersection hit = model.calculateClosestIntersection(
+                new Ray(transform.applyInverse(ray.getHead()), transform.applyInverse(ray.getDirection())));
+        return hit == null ? null : toWorld(hit);
+    }
+
+    /**
+     * Transforms an intersection with the model into world space
+     *
+     * @param hit the intersection, in object space
+     * @return the intersection in world space, with the world space view of its geometry
+     */
+    private Intersection toWorld(Intersection hit) {
+        return new Intersection(new TransformedGeometry(hit.geometry), transform.apply(hit.point));
+    }
+
+    /**
+     * The world space view of one of the model's geometries, as placed by the instance.
+     * Its normals are transformed from the geometry's normals, and its material and emission are
+     * the instance's (if set) or the geometry's.
+     * Two views are equal when they view the same geometry placed by the same instance.
+     */
+    private final class TransformedGeometry extends Geometry {
+        /** The model's geometry, in object space */
+        private final Geometry geometry;
+
+        /**
+         * Constructs the world space view of a geometry
+         *
+         * @param geometry the model's geometry
+         */
+        TransformedGeometry(Geometry geometry) {
+            this.geometry = geometry;
+        }
+
+        @Override
+        public Material getMaterial() {
+            return Instance.this.material != null ? Instance.this.material : geometry.getMaterial();
+        }
+
+        @Override
+        public Color getEmission() {
+            return Instance.this.emission != null ? Instance.this.emission : geometry.getEmission();
+        }
+
+        @Override
+        public Vector getNormal(Point point) {
+            return transform.applyNormal(geometry.getNormal(transform.applyInverse(point)));
+        }
+
+        @Override
+        protected List<Intersection> calculateIntersectionsHelper(Ray ray, double maxDistance) {
+            List<Intersection> intersections = Instance.this.calculateIntersectionsHelper(ray, maxDistance);
+            if (intersections != null) intersections.removeIf(intersection -> !equals(intersection.geometry));
+            return intersections == null || intersections.isEmpty() ? null : intersections;
+        }
+
+        /**
+         * The instance that placed the view
+         *
+         * @return the instance
+         */
+        private Instance instance() {
+            return Instance.this;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            return obj instanceof TransformedGeometry other
+                    && other.instance() == Instance.this && other.geometry == geometry;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(Instance.this) + System.identityHashCode(geometry);
+        }
+    }
+}
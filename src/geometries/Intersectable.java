@@ -5,6 +5,7 @@ import lighting.LightSource;
 import primitives.*;
 
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Interface for geometric objects that can be intersected by rays.
@@ -54,7 +55,7 @@ public abstract class Intersectable {
         public boolean equals(Object obj) {
             if (this == obj) return true;
             if (obj == null || getClass() != obj.getClass()) return false;
-            return ((Intersection) obj).geometry==this.geometry &&
+            return Objects.equals(((Intersection) obj).geometry, this.geometry) &&
                     ((Intersection) obj).point.equals(this.point);
         }
         /**
@@ -72,6 +73,48 @@ public abstract class Intersectable {
     public AABB getAABB() {
         return box;
     }
+
+    /**
+     * Checks whether the geometry may overlap an axis-aligned box, so that an acceleration structure
+     * refers to the geometry only from the cells it really overlaps.
+     * The test is conservative: it may report an overlap where there is none, but never misses one.
+     * The default implementation compares the box with the geometry's bounding box.
+     *
+     * @param box the box
+     * @return false if the geometry surely does not overlap the box, true otherwise
+     */
+    public boolean overlaps(AABB box) {
+        AABB bounds = getAABB();
+        return bounds == null || bounds.overlaps(box);
+    }
+
+    /**
+     * Calculates a hash of the shape data on which {@link #overlaps} depends, so a cached acceleration
+     * structure is not reused for another shape with the same bounding box.
+     * The default implementation, for the default overlap test by the bounding box, hashes the class only,
+     * since the bounding box is hashed separately. A geometry that overrides {@link #overlaps} must
+     * override this method too, to hash the data its test uses.
+     *
+     * @return the hash
+     */
+    public long shapeHash() {
+        return getClass().getName().hashCode();
+    }
+
+    /**
+     * Mixes values into a hash
+     *
+     * @param hash   the hash
+     * @param values the values
+     * @return the new hash
+     */
+    protected static long hash(long hash, double... values) {
+        for (double value : values) {
+            hash = (hash ^ Double.doubleToLongBits(value)) * 0x9E3779B97F4A7C15L;
+            hash ^= hash >>> 29;
+        }
+        return hash;
+    }
     /**
      * Finds all intersection points between a given ray and the geometric object.
      *
@@ -121,4 +164,16 @@ public abstract class Intersectable {
         return calculateIntersectionsHelper(ray, maxDistance);
     }
 
+    /**
+     * Calculates the closest intersection between a ray and the geometric object.
+     * The default implementation picks the closest of all the intersections; composite objects
+     * with their own acceleration structure may find it without calculating all of them.
+     *
+     * @param ray the ray to intersect with the object
+     * @return the closest intersection, or null if there is none
+     */
+    public Intersection calculateClosestIntersection(Ray ray) {
+        return ray.findClosestIntersection(calculateIntersections(ray));
+    }
+
 }
@@ -42,6 +42,15 @@ public class Plane extends Geometry {
         this.normal = normal.normalize();
     }
 
+    /**
+     * Returns the point on the plane.
+     *
+     * @return the point on the plane
+     */
+    public Point getPoint() {
+        return point;
+    }
+
     /**
      * Returns the normal vector to the plane.
      *
@@ -90,5 +99,36 @@ public class Plane extends Geometry {
         return null; // infinite plane has no bounding box
     }
 
+    /**
+     * Checks whether the plane overlaps an axis-aligned box: the box's corners are not all
+     * on the same side of the plane.
+     *
+     * @param box the box
+     * @return true if the plane overlaps the box, false otherwise
+     */
+    @Override
+    public boolean overlaps(AABB box) {
+        Point min = box.getMin(), max = box.getMax();
+        // the signed distances of the nearest and farthest corners along the normal
+        double center = normal.getX() * ((min.getX() + max.getX()) / 2 - point.getX())
+                + normal.getY() * ((min.getY() + max.getY()) / 2 - point.getY())
+                + normal.getZ() * ((min.getZ() + max.getZ()) / 2 - point.getZ());
+        double radius = Math.abs(normal.getX()) * (max.getX() - min.getX()) / 2
+                + Math.abs(normal.getY()) * (max.getY() - min.getY()) / 2
+                + Math.abs(normal.getZ()) * (max.getZ() - min.getZ()) / 2;
+        return Math.abs(center) <= radius;
+    }
+
+    /**
+     * Calculates a hash of the plane's point and normal, on which its overlap test depends
+     *
+     * @return the hash
+     */
+    @Override
+    public long shapeHash() {
+        return hash(super.shapeHash(), point.getX(), point.getY(), point.getZ(),
+                normal.getX(), normal.getY(), normal.getZ());
+    }
+
 
 }
\ No newline at end of file
@@ -77,6 +77,15 @@ public class Polygon extends Geometry {
       }
    }
 
+   /**
+    * Returns the ordered list of the polygon's vertices.
+    *
+    * @return the vertices
+    */
+   public List<Point> getVertices() {
+      return vertices;
+   }
+
    /**
     * Returns the normal at point p:
     * – flat shading: constant plane normal
@@ -182,4 +191,103 @@ public class Polygon extends Geometry {
       }
       return box;
    }
+
+   /**
+    * Checks whether the polygon overlaps an axis-aligned box, by the separating axis theorem:
+    * a convex polygon and a box are disjoint if and only if their projections are disjoint on one of
+    * the box's axes, the polygon's normal, or the cross product of an edge with a box axis.
+    *
+    * @param box the box
+    * @return true if the polygon overlaps the box, false otherwise
+    */
+   @Override
+   public boolean overlaps(AABB box) {
+      Point center = box.getCenter();
+      double[] half = {box.getMax().getX() - center.getX(), box.getMax().getY() - center.getY(),
+              box.getMax().getZ() - center.getZ()};
+      // the vertices relative to the box's center
+      double[][] v = new double[size][];
+      for (int i = 0; i < size; i++) {
+         Point p = vertices.get(i);
+         v[i] = new double[]{p.getX() - center.getX(), p.getY() - center.getY(), p.getZ() - center.getZ()};
+      }
+
+      // the box's axes
+      for (int axis = 0; axis < 3; axis++) {
+         double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+         for (double[] p : v) {
+            min = Math.min(min, p[axis]);
+            max = Math.max(max, p[axis]);
+         }
+         if (min > half[axis] || max < -half[axis]) return false;
+      }
+
+      // the polygon's normal
+      double[] e1 = subtract(v[1], v[0]), e2 = subtract(v[2], v[0]);
+      if (separates(cross(e1, e2), v, half)) return false;
+
+      // the cross products of the edges with the box's axes
+      for (int i = 0; i < size; i++) {
+         double[] edge = subtract(v[(i + 1) % size], v[i]);
+         if (separates(new double[]{0, -edge[2], edge[1]}, v, half)
+                 || separates(new double[]{edge[2], 0, -edge[0]}, v, half)
+                 || separates(new double[]{-edge[1], edge[0], 0}, v, half))
+            return false;
+      }
+      return true;
+   }
+
+   /**
+    * Calculates a hash of the polygon's vertices, on which its overlap test depends
+    *
+    * @return the hash
+    */
+   @Override
+   public long shapeHash() {
+      long hash = super.shapeHash();
+      for (Point vertex : vertices)
+         hash = hash(hash, vertex.getX(), vertex.getY(), vertex.getZ());
+      return hash;
+   }
+
+   /**
+    * Checks whether an axis separates the projections of vertices and of a box centered at the origin
+    *
+    * @param axis     the axis, not necessarily normalized (a zero axis separates nothing)
+    * @param vertices the vertices relative to the box's center
+    * @param half     the box's half extents
+    * @return true if the projections are disjoint, false otherwise
+    */
+   private static boolean separates(double[] axis, double[][] vertices, double[] half) {
+      double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+      for (double[] p : vertices) {
+         double d = p[0] * axis[0] + p[1] * axis[1] + p[2] * axis[2];
+         min = Math.min(min, d);
+         max = Math.max(max, d);
+      }
+      double radius = half[0] * Math.abs(axis[0]) + half[1] * Math.abs(axis[1]) + half[2] * Math.abs(axis[2]);
+      return min > radius || max < -radius;
+   }
+
+   /**
+    * Subtracts two coordinate triples
+    *
+    * @param a the first triple
+    * @param b the second triple
+    * @return a - b
+    */
+   private static double[] subtract(double[] a, double[] b) {
+      return new double[]{a[0] - b[0], a[1] - b[1], a[2] - b[2]};
+   }
+
+   /**
+    * Calculates the cross product of two coordinate triples
+    *
+    * @param a the first triple
+    * @param b the second triple
+    * @return a x b
+    */
+   private static double[] cross(double[] a, double[] b) {
+      return new double[]{a[1] * b[2] - a[2] * b[1], a[2] * b[0] - a[0] * b[2], a[0] * b[1] - a[1] * b[0]};
+   }
 }
@@ -27,6 +27,15 @@ public class Sphere extends RadialGeometry {
         this.center = center;
     }
 
+    /**
+     * Returns the center point of the sphere.
+     *
+     * @return the center point
+     */
+    public Point getCenter() {
+        return center;
+    }
+
     /**
      * Returns the normal vector to the sphere at a given point.
      * This method calculates the normal vector by subtracting the center point from the given point and normalizing the result.
@@ -97,4 +106,41 @@ public class Sphere extends RadialGeometry {
         return box;
     }
 
+    /**
+     * Checks whether the sphere overlaps an axis-aligned box, by the distance from the sphere's center
+     * to the nearest point of the box.
+     *
+     * @param box the box
+     * @return true if the sphere overlaps the box, false otherwise
+     */
+    @Override
+    public boolean overlaps(AABB box) {
+        double dx = outside(center.getX(), box.getMin().getX(), box.getMax().getX());
+        double dy = outside(center.getY(), box.getMin().getY(), box.getMax().getY());
+        double dz = outside(center.getZ(), box.getMin().getZ(), box.getMax().getZ());
+        return dx * dx + dy * dy + dz * dz <= radius * radius;
+    }
+
+    /**
+     * Calculates a hash of the sphere's center and radius, on which its overlap test depends
+     *
+     * @return the hash
+     */
+    @Override
+    public long shapeHash() {
+        return hash(super.shapeHash(), center.getX(), center.getY(), center.getZ(), radius);
+    }
+
+    /**
+     * Calculates how far a coordinate is outside a range
+     *
+     * @param value the coordinate
+     * @param min   the range's start
+     * @param max   the range's end
+     * @return the distance of the coordinate from the range, 0 if it is inside
+     */
+    private static double outside(double value, double min, double max) {
+        return value < min ? min - value : value > max ? value - max : 0;
+    }
+
 }
\ No newline at end of file
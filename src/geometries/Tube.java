@@ -29,6 +29,15 @@ public class Tube extends RadialGeometry {
         this.axis = axis;
     }
 
+    /**
+     * Returns the axis ray of the tube.
+     *
+     * @return the axis ray
+     */
+    public Ray getAxis() {
+        return axis;
+    }
+
     /**
      * Get the normal vector at a given point on the tube.
      * @param point the point on the geometry
@@ -108,4 +117,35 @@ public class Tube extends RadialGeometry {
     public AABB getAABB() {
         return null; // infinite plane has no bounding box
     }
+
+    /**
+     * Checks conservatively whether the tube may overlap an axis-aligned box: the sphere around the box
+     * must reach the tube, that is, the box's center must be within the tube's radius plus the sphere's
+     * radius from the axis line (and the tube's bounding box, if it has one, must overlap the box).
+     *
+     * @param box the box
+     * @return false if the tube surely does not overlap the box, true otherwise
+     */
+    @Override
+    public boolean overlaps(AABB box) {
+        if (!super.overlaps(box)) return false;
+        Point center = box.getCenter(), p0 = axis.getHead();
+        Vector dir = axis.getDirection();
+        double cx = center.getX() - p0.getX(), cy = center.getY() - p0.getY(), cz = center.getZ() - p0.getZ();
+        double t = cx * dir.getX() + cy * dir.getY() + cz * dir.getZ();
+        double dx = cx - t * dir.getX(), dy = cy - t * dir.getY(), dz = cz - t * dir.getZ();
+        double reach = radius + box.getMax().distance(center);
+        return dx * dx + dy * dy + dz * dz <= reach * reach;
+    }
+
+    /**
+     * Calculates a hash of the tube's axis and radius, on which its overlap test depends
+     *
+     * @return the hash
+     */
+    @Override
+    public long shapeHash() {
+        return hash(super.shapeHash(), axis.getHead().getX(), axis.getHead().getY(), axis.getHead().getZ(),
+                axis.getDirection().getX(), axis.getDirection().getY(), axis.getDirection().getZ(), radius);
+    }
 }
\ No newline at end of file
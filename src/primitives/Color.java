@@ -64,6 +64,12 @@ public class Color {
       return new java.awt.Color(Math.min(ir, 255), Math.min(ig, 255), Math.min(ib, 255));
    }
 
+   /**
+    * RGB components getter - the components are not limited by 255
+    * @return triad of Red/Green/Blue components
+    */
+   public Double3 getRgb() { return rgb; }
+
    /**
     * Operation of adding this and one or more other colors (by component)
     * @param  colors one or more other colors to add
@@ -0,0 +1,184 @@
+package primitives;
+
+/**
+ * An affine transformation of 3D space: a linear map (rotation, scaling) followed by a translation.
+ * The transformation is immutable and keeps its inverse, so points and vectors can be moved
+ * both into and out of the transformed space (e.g. between world space and an instance's object space).
+ */
+public final class Transform {
+    /** The identity transformation */
+    public static final Transform IDENTITY = new Transform(new double[]{1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0});
+
+    /** The transformation's matrix, 3 rows of 4 (the linear map and the translation column), row by row */
+    private final double[] m;
+    /** The inverse transformation's matrix, in the same layout */
+    private final double[] inv;
+
+    /**
+     * Constructs a transformation from its matrix
+     *
+     * @param m the matrix, 3 rows of 4, row by row
+     * @throws IllegalArgumentException if the linear map is singular
+     */
+    private Transform(double[] m) {
+        this.m = m;
+        double c00 = m[5] * m[10] - m[6] * m[9];
+        double c01 = m[6] * m[8] - m[4] * m[10];
+        double c02 = m[4] * m[9] - m[5] * m[8];
+        double det = m[0] * c00 + m[1] * c01 + m[2] * c02;
+        if (Util.isZero(det))
+            throw new IllegalArgumentException("A transformation must not be singular");
+
+        // the inverse of the linear map is its adjugate divided by its determinant
+        double[] a = {
+                c00, m[2] * m[9] - m[1] * m[10], m[1] * m[6] - m[2] * m[5],
+                c01, m[0] * m[10] - m[2] * m[8], m[2] * m[4] - m[0] * m[6],
+                c02, m[1] * m[8] - m[0] * m[9], m[0] * m[5] - m[1] * m[4]};
+        inv = new double[12];
+        for (int row = 0; row < 3; ++row) {
+            for (int col = 0; col < 3; ++col)
+                inv[row * 4 + col] = a[row * 3 + col] / det;
+            // the inverse translation undoes the translation after the inverse linear map
+            inv[row * 4 + 3] = -(inv[row * 4] * m[3] + inv[row * 4 + 1] * m[7] + inv[row * 4 + 2] * m[11]);
+        }
+    }
+
+    /**
+     * Creates a translation
+     *
+     * @param offset the translation's offset
+     * @return the translation
+     */
+    public static Transform translation(Vector offset) {
+        return new Transform(new double[]{1, 0, 0, offset.getX(), 0, 1, 0, offset.getY(), 0, 0, 1, offset.getZ()});
+    }
+
+    /**
+     * Creates a scaling around the origin
+     *
+     * @param factors the scale factors along the X, Y and Z axes
+     * @return the scaling
+     * @throws IllegalArgumentException if a factor is zero
+     */
+    public static Transform scaling(Double3 factors) {
+        return new Transform(new double[]{factors.d1(), 0, 0, 0, 0, factors.d2(), 0, 0, 0, 0, factors.d3(), 0});
+    }
+
+    /**
+     * Creates a rotation around the origin, by angles around the X, Y and Z axes applied in this order
+     * (the same convention as {@link geometries.Cube}'s rotation)
+     *
+     * @param degrees the rotation angles around the X, Y and Z axes, in degrees
+     * @return the rotation
+     */
+    public static Transform rotation(Double3 degrees) {
+        double cx = Math.cos(Math.toRadians(degrees.d1())), sx = Math.sin(Math.toRadians(degrees.d1()));
+        double cy = Math.cos(Math.toRadians(degrees.d2())), sy = Math.sin(Math.toRadians(degrees.d2()));
+        double cz = Math.cos(Math.toRadians(degrees.d3())), sz = Math.sin(Math.toRadians(degrees.d3()));
+        Transform x = new Transform(new double[]{1, 0, 0, 0, 0, cx, -sx, 0, 0, sx, cx, 0});
+        Transform y = new Transform(new double[]{cy, 0, sy, 0, 0, 1, 0, 0, -sy, 0, cy, 0});
+        Transform z = new Transform(new double[]{cz, -sz, 0, 0, sz, cz, 0, 0, 0, 0, 1, 0});
+        return x.then(y).then(z);
+    }
+
+    /**
+     * Composes this transformation with another one applied after it
+     *
+     * @param next the transformation to apply after this one
+     * @return the composed transformation
+     */
+    public Transform then(Transform next) {
+        double[] n = next.m;
+        double[] r = new double[12];
+        for (int row = 0; row < 3; ++row)
+            for (int col = 0; col < 4; ++col)
+                r[row * 4 + col] = n[row * 4] * m[col] + n[row * 4 + 1] * m[4 + col] + n[row * 4 + 2] * m[8 + col]
+                        + (col == 3 ? n[row * 4 + 3] : 0);
+        return new Transform(r);
+    }
+
+    /**
+     * Transforms a point
+     *
+     * @param p the point
+     * @return the transformed point
+     */
+    public Point apply(Point p) {
+        return transform(m, p);
+    }
+
+    /**
+     * Transforms a point back by the inverse transformation
+     *
+     * @param p the transformed point
+     * @return the original point
+     */
+    public Point applyInverse(Point p) {
+        return transform(inv, p);
+    }
+
+    /**
+     * Transforms a direction vector (by the linear map only); the result is not normalized
+     *
+     * @param v the vector
+     * @return the transformed vector
+     */
+    public Vector apply(Vector v) {
+        return transform(m, v);
+    }
+
+    /**
+     * Transforms a direction vector back by the inverse transformation; the result is not normalized
+     *
+     * @param v the transformed vector
+     * @return the original vector
+     */
+    public Vector applyInverse(Vector v) {
+        return transform(inv, v);
+    }
+
+    /**
+     * Transforms a surface normal, by the inverse transpose of the linear map,
+     * so it stays perpendicular to the transformed surface
+     *
+     * @param normal the normal
+     * @return the transformed normal, normalized
+     */
+    public Vector applyNormal(Vector normal) {
+        double x = normal.getX(), y = normal.getY(), z = normal.getZ();
+        return new Vector(
+                inv[0] * x + inv[4] * y + inv[8] * z,
+                inv[1] * x + inv[5] * y + inv[9] * z,
+                inv[2] * x + inv[6] * y + inv[10] * z).normalize();
+    }
+
+    /**
+     * Transforms a point by a matrix
+     *
+     * @param t the matrix
+     * @param p the point
+     * @return the transformed point
+     */
+    private static Point transform(double[] t, Point p) {
+        double x = p.getX(), y = p.getY(), z = p.getZ();
+        return new Point(
+                t[0] * x + t[1] * y + t[2] * z + t[3],
+                t[4] * x + t[5] * y + t[6] * z + t[7],
+                t[8] * x + t[9] * y + t[10] * z + t[11]);
+    }
+
+    /**
+     * Transforms a vector by the linear map of a matrix
+     *
+     * @param t the matrix
+     * @param v the vector
+     * @return the transformed vector
+     */
+    private static Vector transform(double[] t, Vector v) {
+        double x = v.getX(), y = v.getY(), z = v.getZ();
+        return new Vector(
+                t[0] * x + t[1] * y + t[2] * z,
+                t[4] * x + t[5] * y + t[6] * z,
+                t[8] * x + t[9] * y + t[10] * z);
+    }
+}
@@ -0,0 +1,266 @@
+package renderer;
+
+import geometries.Intersectable;
+import primitives.Point;
+import primitives.Vector;
+import scene.Scene;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+/**
+ * An animation: a sequence of frames of a scene whose geometries are either static or dynamic,
+ * seen by a camera that moves along keyframes.
+ * The static geometries (the scene's) are put in an acceleration structure once, which all the frames
+ * share, so an animation whose only motion is the camera's pays no rebuild cost at all.
+ * The dynamic geometries are created for each frame and intersected by a small per-frame hierarchy
+ * alongside the static structure (see {@link DynamicRayTracer}), which is refitted from frame to frame.
+ * <p>
+ * The camera's location and target are interpolated linearly between keyframes, and held before
+ * the first keyframe and after the last one.
+ */
+public class Animation {
+    /** The scene of the static geometries, lights and background */
+    private Scene scene;
+    /** The type of ray tracer of the static geometries */
+    private RayTracerType rayTracerType = RayTracerType.VOXEL;
+    /** The blackboard settings of the ray tracer */
+    private Blackboard blackboard = Blackboard.getBuilder().build();
+    /** The camera settings other than its location and direction */
+    private Camera.Builder camera;
+    /** The up direction of the camera */
+    private Vector up = Vector.AXIS_Y;
+    /** The number of frames */
+    private int frames = 0;
+    /** The camera's keyframes: the frame, and the camera's location and target */
+    private final TreeMap<Integer, Point[]> keyframes = new TreeMap<>();
+    /** The dynamic geometries, each created for a frame */
+    private final List<IntFunction<Intersectable>> dynamicGeometries = new ArrayList<>();
+
+    /** The shared ray tracer of the static geometries, built on the first frame */
+    private RayTracerBase staticTracer = null;
+    /** The ray tracer of the last rendered frame */
+    private RayTracerBase lastTracer = null;
+
+    /**
+     * Private constructor to prevent direct instantiation.
+     * Use the Builder class to create an instance of Animation.
+     */
+    private Animation() {
+    }
+
+    /**
+     * Static method to get a new Builder instance for constructing an Animation.
+     *
+     * @return a new instance of the Animation.Builder
+     */
+    public static Builder getBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder class for creating an Animation instance using the Builder pattern.
+     */
+    public static class Builder {
+        private final Animation animation = new Animation();
+
+        /**
+         * Sets the scene of the static geometries, the lights and the background.
+         *
+         * @param scene the scene
+         * @return the builder instance
+         */
+        public Builder setScene(Scene scene) {
+            animation.scene = scene;
+            return this;
+        }
+
+        /**
+         * Sets the type of ray tracer of the static geometries. Default is VOXEL.
+         *
+         * @param rayTracerType the type of ray tracer
+         * @return the builder instance
+         */
+        public Builder setRayTracer(RayTracerType rayTracerType) {
+            animation.rayTracerType = rayTracerType;
+            return this;
+        }
+
+        /**
+         * Sets the blackboard settings of the ray tracer.
+         *
+         * @param blackboard the blackboard settings
+         * @return the builder instance
+         */
+        public Builder setBlackboard(Blackboard blackboard) {
+            animation.blackboard = blackboard;
+            return this;
+        }
+
+        /**
+         * Sets the camera settings other than its location and direction, which the keyframes set
+         * (view plane, resolution, multithreading, and so on).
+         * The camera's ray tracer and blackboard settings are the animation's.
+         *
+         * @param camera the camera builder
+         * @return the builder instance
+         */
+        public Builder setCamera(Camera.Builder camera) {
+            animation.camera = camera;
+            return this;
+        }
+
+        /**
+         * Sets the up direction of the camera. Default is the Y axis.
+         *
+         * @param up the up direction
+         * @return the builder instance
+         */
+        public Builder setUp(Vector up) {
+            animation.up = up;
+            return this;
+        }
+
+        /**
+         * Sets the number of frames.
+         *
+         * @param frames the number of frames
+         * @return the builder instance
+         * @throws IllegalArgumentException if frames is not positive
+         */
+        public Builder setFrames(int frames) {
+            if (frames <= 0)
+                throw new IllegalArgumentException("The number of frames must be positive");
+            animation.frames = frames;
+            return this;
+        }
+
+        /**
+         * Adds a keyframe of the camera.
+         *
+         * @param frame    the frame
+         * @param location the camera's location at the frame
+         * @param target   the point the camera looks at in the frame
+         * @return the builder instance
+         * @throws IllegalArgumentException if the location is the target
+         */
+        public Builder addCameraKeyframe(int frame, Point location, Point target) {
+            if (location.equals(target))
+                throw new IllegalArgumentException("Target point cannot be the same as the camera location");
+            animation.keyframes.put(frame, new Point[]{location, target});
+            return this;
+        }
+
+        /**
+         * Adds a dynamic geometry, created for each frame. A dynamic geometry should keep its type
+         * from frame to frame, so the per-frame hierarchy is refitted instead of rebuilt.
+         *
+         * @param geometry the geometry of a frame
+         * @return the builder instance
+         */
+        public Builder addDynamic(IntFunction<Intersectable> geometry) {
+            animation.dynamicGeometries.add(geometry);
+            return this;
+        }
+
+        /**
+         * Builds the Animation instance.
+         *
+         * @return the animation
+         * @throws MissingResourceException if the scene, the camera, the frames or the keyframes are not set
+         */
+        public Animation build() {
+            if (animation.scene == null)
+                throw new MissingResourceException("Missing rendering data", "Animation", "scene");
+            if (animation.camera == null)
+                throw new MissingResourceException("Missing rendering data", "Animation", "camera");
+            if (animation.frames == 0)
+                throw new MissingResourceException("Missing rendering data", "Animation", "frames");
+            if (animation.keyframes.isEmpty())
+                throw new MissingResourceException("Missing rendering data", "Animation", "keyframes");
+            return animation;
+        }
+    }
+
+    /**
+     * Renders all the frames and writes each to an image named by the frame's number
+     * (e.g. "video/frame_0", "video/frame_1", ...), for {@link ImagesToVideo}.
+     *
+     * @param fileName the name of the images, without the frame's number
+     */
+    public void render(String fileName) {
+        for (int frame = 0; frame < frames; frame++)
+            frame(frame).renderImage().writeToImage(fileName + "_" + frame);
+    }
+
+    /**
+     * Builds the camera of a frame, with the frame's ray tracer.
+     * The frames must be built in order, since each frame's dynamic hierarchy is refitted from the
+     * previous one's, and the camera of a frame must be rendered before the next frame is built.
+     *
+     * @param frame the frame
+     * @return the camera of the frame
+     */
+    public Camera frame(int frame) {
+        if (staticTracer == null) staticTracer = staticTracer();
+        List<Intersectable> dynamic = new ArrayList<>(dynamicGeometries.size());
+        for (IntFunction<Intersectable> geometry : dynamicGeometries) dynamic.add(geometry.apply(frame));
+        lastTracer = dynamic.isEmpty() ? staticTracer : new DynamicRayTracer(staticTracer, dynamic,
+                lastTracer instanceof DynamicRayTracer previous ? previous : null);
+
+        Point[] view = view(frame);
+        return camera.setLocation(view[0])
+                .setDirection(view[1], up)
+                .setBlackboard(blackboard)
+                .setRayTracer(lastTracer)
+                .build();
+    }
+
+    /**
+     * Builds the shared ray tracer of the static geometries
+     *
+     * @return the ray tracer
+     */
+    private RayTracerBase staticTracer() {
+        if (scene.geometries.getGeometries().isEmpty()) return new SimpleRayTracer(scene, blackboard);
+        return switch (rayTracerType) {
+            case SIMPLE -> new SimpleRayTracer(scene, blackboard);
+            case VOXEL -> new VoxelRayTracer(scene, blackboard);
+            case HIERARCHICAL_VOXEL -> new VoxelRayTracer(scene, blackboard, true);
+            case BVH -> new BvhRayTracer(scene, blackboard);
+        };
+    }
+
+    /**
+     * Interpolates the camera's location and target at a frame between the keyframes
+     *
+     * @param frame the frame
+     * @return the camera's location and target
+     */
+    private Point[] view(int frame) {
+        Map.Entry<Integer, Point[]> before = keyframes.floorEntry(frame), after = keyframes.ceilingEntry(frame);
+        if (before == null) return after.getValue();
+        if (after == null || after.getKey().equals(before.getKey())) return before.getValue();
+        double t = (double) (frame - before.getKey()) / (after.getKey() - before.getKey());
+        return new Point[]{interpolate(before.getValue()[0], after.getValue()[0], t),
+                interpolate(before.getValue()[1], after.getValue()[1], t)};
+    }
+
+    /**
+     * Interpolates linearly between two points
+     *
+     * @param from the point at 0
+     * @param to   the point at 1
+     * @param t    the interpolation parameter, between 0 and 1
+     * @return the interpolated point
+     */
+    private static Point interpolate(Point from, Point to, double t) {
+        return new Point(from.getX() + (to.getX() - from.getX()) * t,
+                from.getY() + (to.getY() - from.getY()) * t,
+                from.getZ() + (to.getZ() - from.getZ()) * t);
+    }
+}
@@ -53,6 +53,34 @@ public class Blackboard implements Cloneable {
      * Default is false.
      */
     private boolean adaptiveSampling = false;
+    /**
+     * Indicates whether to use stochastic light selection.
+     * If true, each shading point samples a subset of the light sources with probability
+     * proportional to their estimated contribution instead of shading every light.
+     * Default is false.
+     */
+    private boolean stochasticLights = false;
+    /**
+     * Indicates whether to use image-space adaptive anti-aliasing.
+     * If true, the image is first rendered with one ray per pixel, and anti-aliasing rays are
+     * spent only on pixels that differ from their neighbours in color or in the hit geometry.
+     * Default is false.
+     */
+    private boolean imageSpaceAdaptive = false;
+    /**
+     * Indicates whether to use variance-driven sample allocation.
+     * If true, a total sample budget is distributed between the image tiles by their
+     * running variance estimates, instead of a fixed number of rays per pixel.
+     * Default is false.
+     */
+    private boolean varianceDriven = false;
+    /**
+     * Indicates whether to use decoupled shading for the sample rays of a pixel.
+     * If true, the samples resolve visibility only, and each distinct geometry seen by a pixel
+     * is shaded once and weighted by the number of samples that hit it.
+     * Default is false.
+     */
+    private boolean decoupledShading = false;
     /**
      * Enum representing the methods of generating points.
      * GRID: Generates points in a grid pattern.
@@ -99,6 +127,94 @@ public class Blackboard implements Cloneable {
      * Default is 5, which means that the algorithm can generate up to 5 times the base number of rays.
      */
     private int maxAdaptiveLevel = 5;
+    /**
+     * The number of lights sampled per shading point when stochastic light selection is used.
+     * Default is 4, scenes with fewer lights are shaded with all of their lights.
+     */
+    private int lightSamples = 4;
+    /**
+     * The color contrast (per channel, in the 0-255 range) between neighbouring pixels
+     * above which image-space adaptive anti-aliasing refines a pixel.
+     * Default is 10.
+     */
+    private double contrastThreshold = 10;
+    /**
+     * The maximal number of refinement rounds of image-space adaptive anti-aliasing.
+     * Default is 3.
+     */
+    private int refinementRounds = 3;
+    /**
+     * The total number of samples of variance-driven sample allocation for the whole image.
+     * Default is 0, which means {@code amountOfRays} samples per pixel on average.
+     */
+    private long sampleBudget = 0;
+    /**
+     * The noise level (standard error of a pixel, in the 0-255 range) at which a tile is
+     * considered converged by variance-driven sample allocation.
+     * Default is 0, which means tiles stop only when their samples do not vary at all.
+     */
+    private double targetNoise = 0;
+    /**
+     * The number of coherent rays traced together as a packet, for primary rays and shadow rays.
+     * One of 1 (no packets), 4, 8 or 16.
+     * Default is 16.
+     */
+    private int packetSize = 16;
+    /**
+     * Indicates whether to trace rays breadth-first (wavefront) instead of recursively.
+     * If true, each generation of rays (primary, then reflected and refracted rays of each bounce)
+     * is intersected as a batch sorted by direction octant and origin, and the hard shadow rays
+     * of a generation are traced as batches per light source.
+     * Default is false.
+     */
+    private boolean wavefront = false;
+    /**
+     * Indicates whether to cull the scene to the view frustum of each render tile.
+     * If true, the primary rays of a tile are traced against the geometries that may be seen
+     * through the tile only. Applies without depth of field.
+     * Default is false.
+     */
+    private boolean frustumCulling = false;
+    /**
+     * The maximal number of children of a node of the BVH ray tracer's hierarchy.
+     * One of 2, 4 or 8.
+     * Default is 4.
+     */
+    private int bvhWidth = 4;
+    /**
+     * The number of geometry references that spatial splits may add to the BVH ray tracer's hierarchy,
+     * relative to the number of geometries (e.g. 0.3 for up to 30% more).
+     * Default is 0, which means object splits only.
+     */
+    private double spatialSplitGrowth = 0;
+    /**
+     * Indicates whether the BVH ray tracer's hierarchy stores its nodes compressed,
+     * with the children's bounds quantized to 8 bits per coordinate.
+     * Default is false.
+     */
+    private boolean compressedBvh = false;
+    /**
+     * The growth of the SAH cost of the BVH ray tracer's hierarchy, relative to the built hierarchy,
+     * above which refitting it to the next frame's geometries rebuilds it instead.
+     * Default is {@link acceleration.WideBVH#DEFAULT_REFIT_COST_GROWTH}.
+     */
+    private double bvhRefitCostGrowth = acceleration.WideBVH.DEFAULT_REFIT_COST_GROWTH;
+    /**
+     * The directory of the voxel ray tracer's on-disk grid cache, where built grids are stored
+     * and loaded by a hash of the scene's geometry.
+     * Default is null, which means no cache.
+     */
+    private String accelerationCache = null;
+    /**
+     * The largest total number of voxels of the voxel ray tracer's grid.
+     * Default is 2^24.
+     */
+    private long maxVoxels = 1L << 24;
+    /**
+     * The number of camera rays the voxel ray tracer traces to tune its grid's resolution.
+     * Default is 0, which means the resolution is chosen from the scene's extents and geometries only.
+     */
+    private int gridTuningRays = 0;
 
     /**
      * Private constructor to prevent direct instantiation.
@@ -268,6 +384,299 @@ public class Blackboard implements Cloneable {
             return this;
         }
 
+        /**
+         * Sets whether to use stochastic light selection.
+         * If true, each shading point samples a subset of the lights, chosen with probability
+         * proportional to their estimated contribution, and reweights their contribution.
+         * Default is false.
+         *
+         * @param stochasticLights true to enable stochastic light selection, false to disable
+         * @return this Builder instance for method chaining
+         */
+        public Builder setStochasticLights(boolean stochasticLights) {
+            blackboard.stochasticLights = stochasticLights;
+            return this;
+        }
+        /**
+         * Sets the number of lights sampled per shading point when stochastic light selection is used.
+         * Default is 4.
+         *
+         * @param lightSamples the number of light samples per shading point
+         * @return this Builder instance for method chaining
+         * @throws IllegalArgumentException if lightSamples is not positive
+         */
+        public Builder setLightSamples(int lightSamples) {
+            if (lightSamples <= 0)
+                throw new IllegalArgumentException("Light samples must be positive");
+            blackboard.lightSamples = lightSamples;
+            return this;
+        }
+
+        /**
+         * Sets whether to use image-space adaptive anti-aliasing.
+         * If true, the image is first rendered with one ray per pixel, and anti-aliasing rays are
+         * spent only on pixels that differ from their neighbours in color or in the hit geometry.
+         * Default is false.
+         *
+         * @param imageSpaceAdaptive true to enable image-space adaptive anti-aliasing, false to disable
+         * @return this Builder instance for method chaining
+         */
+        public Builder setImageSpaceAdaptive(boolean imageSpaceAdaptive) {
+            blackboard.imageSpaceAdaptive = imageSpaceAdaptive;
+            return this;
+        }
+        /**
+         * Sets the contrast threshold of image-space adaptive anti-aliasing.
+         * A pixel is refined while its color differs from a neighbour's, or changes between
+         * refinement rounds, by more than this value in some channel (0-255 range).
+         * Default is 10.
+         *
+         * @param contrastThreshold the contrast threshold to be set
+         * @return this Builder instance for method chaining
+         */
+        public Builder setContrastThreshold(double contrastThreshold) {
+            blackboard.contrastThreshold = contrastThreshold;
+            return this;
+        }
+        /**
+         * Sets the maximal number of refinement rounds of image-space adaptive anti-aliasing.
+         * Each round adds the anti-aliasing rays to every pixel that is still flagged.
+         * Default is 3.
+         *
+         * @param refinementRounds the maximal number of refinement rounds
+         * @return this Builder instance for method chaining
+         * @throws IllegalArgumentException if refinementRounds is not positive
+         */
+        public Builder setRefinementRounds(int refinementRounds) {
+            if (refinementRounds <= 0)
+                throw new IllegalArgumentException("Refinement rounds must be positive");
+            blackboard.refinementRounds = refinementRounds;
+            return this;
+        }
+
+        /**
+         * Sets whether to use variance-driven sample allocation.
+         * If true, a total sample budget is distributed between the image tiles by their
+         * running variance estimates, instead of a fixed number of rays per pixel.
+         * Default is false.
+         *
+         * @param varianceDriven true to enable variance-driven sample allocation, false to disable
+         * @return this Builder instance for method chaining
+         */
+        public Builder setVarianceDriven(boolean varianceDriven) {
+            blackboard.varianceDriven = varianceDriven;
+            return this;
+        }
+        /**
+         * Sets the total number of samples of variance-driven sample allocation for the whole image.
+         * Default is 0, which means {@code amountOfRays} samples per pixel on average.
+         *
+         * @param sampleBudget the total number of samples
+         * @return this Builder instance for method chaining
+         * @throws IllegalArgumentException if sampleBudget is negative
+         */
+        public Builder setSampleBudget(long sampleBudget) {
+            if (sampleBudget < 0)
+                throw new IllegalArgumentException("Sample budget must not be negative");
+            blackboard.sampleBudget = sampleBudget;
+            return this;
+        }
+        /**
+         * Sets the noise level at which variance-driven sample allocation stops sampling a tile.
+         * The noise of a tile is the root mean square of the standard errors of its pixels (0-255 range).
+         * Default is 0, which means tiles stop only when their samples do not vary at all.
+         *
+         * @param targetNoise the target noise level
+         * @return this Builder instance for method chaining
+         * @throws IllegalArgumentException if targetNoise is negative
+         */
+        public Builder setTargetNoise(double targetNoise) {
+            if (targetNoise < 0)
+                throw new IllegalArgumentException("Target noise must not be negative");
+            blackboard.targetNoise = targetNoise;
+            return this;
+        }
+
+        /**
+         * Sets whether to use decoupled shading for the sample rays of a pixel.
+         * If true, the samples resolve visibility only, and each distinct geometry seen by a pixel
+         * is shaded once and weighted by the number of samples that hit it.
+         * Default is false.
+         *
+         * @param decoupledShading true to enable decoupled shading, false to disable
+         * @return this Builder instance for method chaining
+         */
+        public Builder setDecoupledShading(boolean decoupledShading) {
+            blackboard.decoupledShading = decoupledShading;
+            return this;
+        }
+
+        /**
+         * Sets the number of coherent rays traced together as a packet.
+         * Packets are used for the primary rays of a tile or of a pixel's sample set,
+         * and for the shadow rays towards a light source.
+         * Default is 16.
+         *
+         * @param packetSize 1 (no packets), 4, 8 or 16
+         * @return this Builder instance for method chaining
+         * @throws IllegalArgumentException if packetSize is not 1, 4, 8 or 16
+         */
+        public Builder setPacketSize(int packetSize) {
+            if (packetSize != 1 && packetSize != 4 && packetSize != 8 && packetSize != 16)
+                throw new IllegalArgumentException("Packet size must be 1, 4, 8 or 16");
+            blackboard.packetSize = packetSize;
+            return this;
+        }
+
+        /**
+         * Sets whether to trace rays breadth-first (wavefront) instead of recursively.
+         * If true, each generation of rays is intersected as a batch sorted by direction octant
+         * and origin, in packets of the packet size, and the hard shadow rays of a generation
+         * are traced as batches per light source. The images are the same as with recursive tracing.
+         * Default is false.
+         *
+         * @param wavefront true to enable wavefront tracing, false to disable
+         * @return this Builder instance for method chaining
+         */
+        public Builder setWavefront(boolean wavefront) {
+            blackboard.wavefront = wavefront;
+            return this;
+        }
+
+        /**
+         * Sets whether to cull the scene to the view frustum of each render tile.
+         * If true, the ray tracer is given the frustum of the camera's rays through each tile
+         * (without depth of field), and traces the tile's primary rays against the geometries
+         * that may intersect the frustum only. The images are the same as without culling.
+         * Default is false.
+         *
+         * @param frustumCulling true to enable frustum culling, false to disable
+         * @return this Builder instance for method chaining
+         */
+        public Builder setFrustumCulling(boolean frustumCulling) {
+            blackboard.frustumCulling = frustumCulling;
+            return this;
+        }
+
+        /**
+         * Sets the maximal number of children of a node of the BVH ray tracer's hierarchy.
+         * The children of a node are tested against a ray together, so wider nodes mean
+         * fewer, larger batches of box tests.
+         * Default is 4.
+         *
+         * @param bvhWidth 2 (binary), 4 or 8
+         * @return this Builder instance for method chaining
+         * @throws IllegalArgumentException if bvhWidth is not 2, 4 or 8
+         */
+        public Builder setBvhWidth(int bvhWidth) {
+            if (bvhWidth != 2 && bvhWidth != 4 && bvhWidth != 8)
+                throw new IllegalArgumentException("BVH width must be 2, 4 or 8");
+            blackboard.bvhWidth = bvhWidth;
+            return this;
+        }
+
+        /**
+         * Sets the memory growth limit of spatial splits in the BVH ray tracer's hierarchy.
+         * A spatial split cuts through the geometries it crosses and references each of them
+         * on both sides, clipped, which suits long thin geometries whose boxes would overlap
+         * many others. The limit is the number of references that spatial splits may add,
+         * relative to the number of geometries.
+         * Default is 0 (object splits only).
+         *
+         * @param spatialSplitGrowth the relative growth limit, e.g. 0.3 for up to 30% more references
+         * @return this Builder instance for method chaining
+         * @throws IllegalArgumentException if spatialSplitGrowth is negative
+         */
+        public Builder setSpatialSplitGrowth(double spatialSplitGrowth) {
+            if (spatialSplitGrowth < 0)
+                throw new IllegalArgumentException("Spatial split growth must be non-negative");
+            blackboard.spatialSplitGrowth = spatialSplitGrowth;
+            return this;
+        }
+
+        /**
+         * Sets whether the BVH ray tracer's hierarchy stores its nodes compressed.
+         * A compressed node keeps its children's bounds quantized to 8 bits per coordinate
+         * (rounded outwards) in a flat array, which takes several times less memory
+         * and is decoded when the node is visited. The images are the same as without compression.
+         * Default is false.
+         *
+         * @param compressedBvh true to compress the nodes, false to keep them in full precision
+         * @return this Builder instance for method chaining
+         */
+        public Builder setCompressedBvh(boolean compressedBvh) {
+            blackboard.compressedBvh = compressedBvh;
+            return this;
+        }
+
+        /**
+         * Sets the limit of the growth of the SAH cost of a refitted BVH ray tracer's hierarchy.
+         * When an animation frame's camera is built with the previous frame's camera
+         * (see {@link Camera.Builder#setPreviousFrame}), the previous hierarchy is refitted to the moved
+         * geometries instead of built anew, as long as its SAH cost stays within the limit relative to
+         * the cost of the hierarchy when it was built; beyond it, the hierarchy is rebuilt.
+         * Default is {@link acceleration.WideBVH#DEFAULT_REFIT_COST_GROWTH}.
+         *
+         * @param bvhRefitCostGrowth the relative cost limit, e.g. 1.5 for up to 50% more
+         * @return this Builder instance for method chaining
+         * @throws IllegalArgumentException if bvhRefitCostGrowth is less than 1
+         */
+        public Builder setBvhRefitCostGrowth(double bvhRefitCostGrowth) {
+            if (bvhRefitCostGrowth < 1)
+                throw new IllegalArgumentException("BVH refit cost growth must be at least 1");
+            blackboard.bvhRefitCostGrowth = bvhRefitCostGrowth;
+            return this;
+        }
+
+        /**
+         * Sets the directory of the voxel ray tracer's on-disk grid cache.
+         * The grid of a scene is stored in the directory under a hash of the scene's bounds, the grid's
+         * resolution and the geometries' classes and bounding boxes, and later renders of a scene with the
+         * same geometry (e.g. with other lights, materials or camera) load it instead of building it.
+         * Default is null, which means no cache.
+         *
+         * @param accelerationCache the cache directory, or null for no cache
+         * @return this Builder instance for method chaining
+         */
+        public Builder setAccelerationCache(String accelerationCache) {
+            blackboard.accelerationCache = accelerationCache;
+            return this;
+        }
+
+        /**
+         * Sets the largest total number of voxels of the voxel ray tracer's grid.
+         * The grid's resolution along each axis follows the scene's extents, and is scaled down
+         * alike on all the axes to keep within the cap.
+         * Default is 2^24.
+         *
+         * @param maxVoxels the largest number of voxels
+         * @return this Builder instance for method chaining
+         * @throws IllegalArgumentException if maxVoxels is not positive
+         */
+        public Builder setMaxVoxels(long maxVoxels) {
+            if (maxVoxels <= 0)
+                throw new IllegalArgumentException("Max voxels must be positive");
+            blackboard.maxVoxels = maxVoxels;
+            return this;
+        }
+
+        /**
+         * Sets the number of camera rays the voxel ray tracer traces to tune its grid's resolution.
+         * The rays are spread evenly over the image, and the grid of several densities whose estimated
+         * cost for them is the least is kept. The images are the same as without tuning.
+         * Default is 0 (no tuning).
+         *
+         * @param gridTuningRays the number of sample rays, 0 for no tuning
+         * @return this Builder instance for method chaining
+         * @throws IllegalArgumentException if gridTuningRays is negative
+         */
+        public Builder setGridTuningRays(int gridTuningRays) {
+            if (gridTuningRays < 0)
+                throw new IllegalArgumentException("Grid tuning rays must be non-negative");
+            blackboard.gridTuningRays = gridTuningRays;
+            return this;
+        }
+
         /**
          * Builds the Blackboard instance with the specified configurations.
          * This method checks if the sender point is set and throws an exception if it is not.
@@ -317,6 +726,84 @@ public class Blackboard implements Cloneable {
         return resultRays;
     }
 
+    /**
+     * Constructs 2D sample offsets in the square area {@code [-radius, radius]^2}, with the
+     * configured method of generating points. Unlike {@link #constructRays(Ray, double, double)}
+     * the center itself is not added, so a sample set built from the offsets contains no
+     * duplicate center sample.
+     *
+     * @param radius the half side of the area
+     * @param circle true to keep only the offsets inside the circle of the radius,
+     *               the offsets are also filtered when {@code useCircle} is set
+     * @return a mutable list of offsets, each as {x, y}; a single center offset if no points are generated
+     */
+    public List<double[]> constructOffsets(double radius, boolean circle) {
+        return constructOffsets(radius, circle, 0);
+    }
+
+    /**
+     * Constructs 2D sample offsets as {@link #constructOffsets(double, boolean)}, for one of several
+     * sample sets of the same area. The GRID method places the points of pass 0 at the centers of their
+     * cells, and shifts the points of each later pass within the cells along a Halton sequence, so the
+     * passes do not repeat the same points. The other methods are random and ignore the pass.
+     *
+     * @param radius the half side of the area
+     * @param circle true to keep only the offsets inside the circle of the radius
+     * @param pass   the index of the sample set, from 0
+     * @return a mutable list of offsets, each as {x, y}; a single center offset if no points are generated
+     */
+    public List<double[]> constructOffsets(double radius, boolean circle, int pass) {
+        List<double[]> offsets = new ArrayList<>();
+        if (amountOfRays > 1 && radius != 0) {
+            if (method == MethodsOfPoints.RANDOM) {
+                for (int k = 0; k < amountOfRays; k++)
+                    offsets.add(new double[]{(Math.random() * 2 - 1) * radius, (Math.random() * 2 - 1) * radius});
+            } else {
+                double cellSize = (2.0 * radius) / gridSize;
+                List<int[]> cellIndices = new ArrayList<>();
+                for (int i = 0; i < gridSize; i++)
+                    for (int j = 0; j < gridSize; j++)
+                        cellIndices.add(new int[]{i, j});
+                if (method == MethodsOfPoints.JITTERED)
+                    Collections.shuffle(cellIndices);
+                else {
+                    // same cell selection as createGridPoints: farthest from the grid center first
+                    int mid = gridSize / 2;
+                    cellIndices.sort(Comparator.comparingDouble(
+                            (int[] c) -> Math.pow(c[0] - mid + 0.5, 2) + Math.pow(c[1] - mid + 0.5, 2)).reversed());
+                }
+                boolean jitter = method == MethodsOfPoints.JITTERED;
+                double cellX = cellPosition(pass, 2), cellY = cellPosition(pass, 3);
+                for (int[] cell : cellIndices.subList(0, Math.min(amountOfRays, cellIndices.size())))
+                    offsets.add(new double[]{
+                            (cell[0] + (jitter ? Math.random() : cellX)) * cellSize - radius,
+                            (cell[1] + (jitter ? Math.random() : cellY)) * cellSize - radius});
+            }
+            if (circle || useCircle)
+                offsets.removeIf(o -> o[0] * o[0] + o[1] * o[1] > radius * radius);
+        }
+        if (offsets.isEmpty())
+            offsets.add(new double[]{0, 0});
+        return offsets;
+    }
+
+    /**
+     * Calculates the position of the GRID points of a pass within their cells: the cell's center for
+     * pass 0, shifted by the pass's element of the Halton sequence of the base for the later passes
+     *
+     * @param pass the index of the sample set
+     * @param base the base of the Halton sequence, a different prime for each axis
+     * @return the position within the cell, from 0 to 1
+     */
+    private static double cellPosition(int pass, int base) {
+        double position = 0.5, fraction = 1;
+        for (int n = pass; n > 0; n /= base) {
+            fraction /= base;
+            position += fraction * (n % base);
+        }
+        return position % 1;
+    }
+
     /**
      * Calculates points based on the specified method and center point.
      * This method generates points in a grid, randomly, or jittered based on the method set in the Blackboard.
@@ -513,6 +1000,148 @@ public class Blackboard implements Cloneable {
         return adaptiveSampling;
     }
 
+    /**
+     * Returns whether stochastic light selection is enabled.
+     * @return true if stochastic light selection is enabled, false otherwise
+     */
+    public Boolean useStochasticLights() {
+        return stochasticLights;
+    }
+    /**
+     * Returns the number of lights sampled per shading point.
+     * @return the number of light samples
+     */
+    public int getLightSamples() {
+        return lightSamples;
+    }
+
+    /**
+     * Returns whether image-space adaptive anti-aliasing is enabled.
+     * @return true if image-space adaptive anti-aliasing is enabled, false otherwise
+     */
+    public Boolean useImageSpaceAdaptive() {
+        return imageSpaceAdaptive;
+    }
+    /**
+     * Returns the contrast threshold of image-space adaptive anti-aliasing.
+     * @return the contrast threshold
+     */
+    public double getContrastThreshold() {
+        return contrastThreshold;
+    }
+    /**
+     * Returns the maximal number of refinement rounds of image-space adaptive anti-aliasing.
+     * @return the maximal number of refinement rounds
+     */
+    public int getRefinementRounds() {
+        return refinementRounds;
+    }
+    /**
+     * Returns whether variance-driven sample allocation is enabled.
+     * @return true if variance-driven sample allocation is enabled, false otherwise
+     */
+    public Boolean useVarianceDriven() {
+        return varianceDriven;
+    }
+    /**
+     * Returns the total number of samples of variance-driven sample allocation.
+     * @return the sample budget, 0 for {@code amountOfRays} samples per pixel on average
+     */
+    public long getSampleBudget() {
+        return sampleBudget;
+    }
+    /**
+     * Returns the noise level at which variance-driven sample allocation stops sampling a tile.
+     * @return the target noise level
+     */
+    public double getTargetNoise() {
+        return targetNoise;
+    }
+    /**
+     * Returns whether decoupled shading is enabled.
+     * @return true if decoupled shading is enabled, false otherwise
+     */
+    public Boolean useDecoupledShading() {
+        return decoupledShading;
+    }
+    /**
+     * Returns the number of coherent rays traced together as a packet.
+     * @return the packet size, 1 for no packets
+     */
+    public int getPacketSize() {
+        return packetSize;
+    }
+    /**
+     * Returns whether wavefront tracing is enabled.
+     * @return true if rays are traced breadth-first, false if recursively
+     */
+    public Boolean useWavefront() {
+        return wavefront;
+    }
+    /**
+     * Returns whether the scene is culled to the view frustum of each render tile.
+     * @return true if frustum culling is enabled, false otherwise
+     */
+    public Boolean useFrustumCulling() {
+        return frustumCulling;
+    }
+    /**
+     * Returns the maximal number of children of a node of the BVH ray tracer's hierarchy.
+     * @return the BVH width, 2, 4 or 8
+     */
+    public int getBvhWidth() {
+        return bvhWidth;
+    }
+    /**
+     * Returns the memory growth limit of spatial splits in the BVH ray tracer's hierarchy.
+     * @return the number of references spatial splits may add, relative to the number of geometries
+     */
+    public double getSpatialSplitGrowth() {
+        return spatialSplitGrowth;
+    }
+    /**
+     * Returns whether the BVH ray tracer's hierarchy stores its nodes compressed.
+     * @return true if the nodes are compressed, false otherwise
+     */
+    public Boolean useCompressedBvh() {
+        return compressedBvh;
+    }
+    /**
+     * Returns the limit of the growth of the SAH cost of a refitted BVH ray tracer's hierarchy.
+     * @return the relative cost limit
+     */
+    public double getBvhRefitCostGrowth() {
+        return bvhRefitCostGrowth;
+    }
+    /**
+     * Returns the directory of the voxel ray tracer's on-disk grid cache.
+     * @return the cache directory, or null for no cache
+     */
+    public String getAccelerationCache() {
+        return accelerationCache;
+    }
+    /**
+     * Returns the largest total number of voxels of the voxel ray tracer's grid.
+     * @return the largest number of voxels
+     */
+    public long getMaxVoxels() {
+        return maxVoxels;
+    }
+    /**
+     * Returns the number of camera rays the voxel ray tracer traces to tune its grid's resolution.
+     * @return the number of sample rays, 0 for no tuning
+     */
+    public int getGridTuningRays() {
+        return gridTuningRays;
+    }
+    /**
+     * Returns the number of rays to be generated.
+     * @return the number of rays
+     */
+    public int getAmountOfRays() {
+        return amountOfRays;
+    }
+
     /**
      * Returns the method used for generating points.
      * @return the method of generating points, such as GRID, RANDOM, or JITTERED
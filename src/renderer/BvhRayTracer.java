@@ -0,0 +1,161 @@
+package renderer;
+
+import acceleration.WideBVH;
+import geometries.Intersectable;
+import geometries.Intersectable.Intersection;
+import primitives.*;
+import scene.Scene;
+import scene.SceneSnapshot;
+
+import java.util.List;
+
+/**
+ * A ray tracer that uses a wide bounding volume hierarchy (BVH) for spatial acceleration.
+ * The scene's bounded geometries are organized in a hierarchy of boxes whose nodes have up to
+ * {@link Blackboard#getBvhWidth()} children, which are tested against a ray together;
+ * the geometries without bounding boxes are intersected with every ray.
+ * The hierarchy uses spatial splits up to {@link Blackboard#getSpatialSplitGrowth()},
+ * and compressed nodes if {@link Blackboard#useCompressedBvh()}.
+ * For animations, the ray tracer of a frame may refit the previous frame's hierarchy to its moved
+ * geometries instead of building one (up to {@link Blackboard#getBvhRefitCostGrowth()}).
+ */
+public class BvhRayTracer extends RayTracerBase {
+
+    private final WideBVH bvh; // The hierarchy of the bounded geometries, null if there are none
+    private final List<Intersectable> unboundedGeometries; // List of geometries without bounding boxes
+
+    /**
+     * Constructs a BvhRayTracer with the given scene and default blackboard settings.
+     *
+     * @param scene The scene to be rendered.
+     */
+    public BvhRayTracer(Scene scene) {
+        this(scene, Blackboard.getBuilder().build());
+    }
+
+    /**
+     * Constructs a BvhRayTracer with the given scene and blackboard settings.
+     *
+     * @param scene      The scene to be rendered.
+     * @param blackboard The blackboard settings for rendering.
+     */
+    public BvhRayTracer(Scene scene, Blackboard blackboard) {
+        this(compile(scene), blackboard);
+    }
+
+    /**
+     * Constructs a BvhRayTracer of a compiled scene snapshot with the given blackboard settings.
+     *
+     * @param snapshot   The scene's snapshot.
+     * @param blackboard The blackboard settings for rendering.
+     */
+    public BvhRayTracer(SceneSnapshot snapshot, Blackboard blackboard) {
+        super(snapshot);
+        this.blackboard = blackboard;
+        this.unboundedGeometries = snapshot.getUnboundedPrimitives();
+        List<Intersectable> bounded = snapshot.getBoundedPrimitives();
+        this.bvh = bounded.isEmpty() ? null : new WideBVH(bounded, blackboard.getBvhWidth(),
+                blackboard.getSpatialSplitGrowth(), blackboard.useCompressedBvh());
+    }
+
+    /**
+     * Constructs a BvhRayTracer for the next frame of an animation, whose geometries moved but kept
+     * their number and order. The previous frame's hierarchy is refitted to the scene's geometries,
+     * or rebuilt if the refit degraded it beyond {@link Blackboard#getBvhRefitCostGrowth()}, and is
+     * built anew if the number of bounded geometries changed. The previous ray tracer must not
+     * be used afterward, since its hierarchy is refitted in place.
+     *
+     * @param scene      The scene of the frame to be rendered.
+     * @param blackboard The blackboard settings for rendering.
+     * @param previous   The ray tracer of the previous frame.
+     */
+    public BvhRayTracer(Scene scene, Blackboard blackboard, BvhRayTracer previous) {
+        super(scene);
+        this.blackboard = blackboard;
+        this.unboundedGeometries = snapshot.getUnboundedPrimitives();
+        List<Intersectable> bounded = snapshot.getBoundedPrimitives();
+        if (bounded.isEmpty()) this.bvh = null;
+        else if (previous.bvh != null && previous.bvh.geometryCount() == bounded.size())
+            this.bvh = previous.bvh.refit(bounded, blackboard.getBvhRefitCostGrowth());
+        else this.bvh = new WideBVH(bounded, blackboard.getBvhWidth(),
+                    blackboard.getSpatialSplitGrowth(), blackboard.useCompressedBvh());
+    }
+
+    /**
+     * Traces a ray and calculates its color based on intersections with the scene.
+     *
+     * @param ray The ray to be traced.
+     * @return The color of the ray based on intersections or the background color if no intersection is found.
+     */
+    @Override
+    public Color traceRay(Ray ray) {
+        Intersection intersection = findClosestIntersection(ray);
+        return intersection == null ? snapshot.getBackground() : calcColor(intersection, ray);
+    }
+
+    /**
+     * Finds the closest intersection of a ray with the scene's geometries.
+     *
+     * @param ray The ray to find intersections for.
+     * @return The closest intersection or null if no intersection is found.
+     */
+    @Override
+    protected Intersection findClosestIntersection(Ray ray) {
+        Intersection closest = bvh == null ? null : bvh.findClosestIntersection(ray);
+        double minDist = closest == null ? Double.POSITIVE_INFINITY : ray.getHead().distanceSquared(closest.point);
+        for (Intersectable geometry : unboundedGeometries) {
+            Intersection hit = geometry.calculateClosestIntersection(ray);
+            if (hit != null && ray.getHead().distanceSquared(hit.point) < minDist) {
+                closest = hit;
+                minDist = ray.getHead().distanceSquared(hit.point);
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Calculates the transparency factor along a shadow ray.
+     *
+     * @param shadowRay   The shadow ray.
+     * @param maxDistance The distance of the light source from the ray's head.
+     * @return The transparency factor as a Double3 object.
+     */
+    @Override
+    protected Double3 transparency(Ray shadowRay, double maxDistance) {
+        Double3 ktr = Double3.ONE; // Transparency factor
+        for (Intersectable geometry : unboundedGeometries) {
+            List<Intersection> hits = geometry.calculateIntersections(shadowRay, maxDistance);
+            if (hits != null) ktr = transparency(ktr, hits);
+        }
+        // Find the intersections along the transparency ray, up to the first opaque one
+        if (bvh != null && !ktr.lowerThan(MIN_CALC_COLOR_K))
+            ktr = transparency(ktr, bvh.findAllIntersections(shadowRay, maxDistance, BvhRayTracer::isOpaque));
+        return ktr.lowerThan(MIN_CALC_COLOR_K) ? Double3.ZERO : ktr;
+    }
+
+    /**
+     * Checks whether an intersection blocks the light completely,
+     * so a shadow ray can stop at it.
+     *
+     * @param intersection The intersection along a shadow ray.
+     * @return True if the geometry's transparency is negligible.
+     */
+    private static boolean isOpaque(Intersection intersection) {
+        return intersection.material.Kt.lowerThan(MIN_CALC_COLOR_K);
+    }
+
+    /**
+     * Accumulates the transparency factors of the intersections along a shadow ray.
+     *
+     * @param ktr           The transparency factor so far.
+     * @param intersections The intersections along the shadow ray.
+     * @return The transparency factor as a Double3 object.
+     */
+    private static Double3 transparency(Double3 ktr, List<Intersection> intersections) {
+        for (Intersection inter : intersections) {
+            ktr = ktr.product(inter.material.Kt); // Accumulate transparency factors
+            if (ktr.lowerThan(MIN_CALC_COLOR_K)) return Double3.ZERO; // Stop if transparency is negligible
+        }
+        return ktr;
+    }
+}
@@ -1,13 +1,23 @@
 package renderer;
 
+import acceleration.Frustum;
+import geometries.Geometry;
+import geometries.Intersectable.Intersection;
 import primitives.*;
 import scene.Scene;
-import renderer.PixelManager.Pixel;
+import renderer.PixelManager.Tile;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.MissingResourceException;
-import java.util.function.Function;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.function.IntConsumer;
 import java.util.stream.IntStream;
 
 /**
@@ -84,6 +94,18 @@ public class Camera implements Cloneable {
      * Default is 4, meaning the camera will use 4 rays for adaptive sampling.
      */
     private static final int AMOUNT_OF_RAYS = 4;
+    /**
+     * The maximal subdivision level of the adaptive supersampling lattice,
+     * keeps the lattice coordinates of the whole image within an int.
+     */
+    private static final int MAX_LATTICE_LEVEL = 16;
+    /**
+     * The samples per pixel of the first pass of variance-driven sample allocation,
+     * which are also the largest batch per pixel of every later pass
+     */
+    private static final int INITIAL_SAMPLES = 4;
+    /** The offset of an area's center, as {x, y} */
+    private static final double[] CENTER_OFFSET = {0, 0};
 
     /**
      * Private constructor to enforce use of builder.
@@ -107,6 +129,8 @@ public class Camera implements Cloneable {
         private final Camera cam = new Camera();
         private Scene scene;
         private RayTracerType rayTracerType = RayTracerType.SIMPLE;
+        private Camera previousFrame = null;
+        private RayTracerBase rayTracer = null;
         /**
          * Sets the camera's location.
          *
@@ -241,6 +265,33 @@ public class Camera implements Cloneable {
             return this;
         }
 
+        /**
+         * Sets a ray tracer that was already built, such as one shared by the frames of an animation
+         * (see {@link Animation}), instead of building one for a scene. The ray tracer keeps its own
+         * blackboard settings.
+         *
+         * @param rayTracer the ray tracer, or null to build one by {@link #setRayTracer(Scene, RayTracerType)}
+         * @return the builder instance
+         */
+        public Builder setRayTracer(RayTracerBase rayTracer) {
+            this.rayTracer = rayTracer;
+            return this;
+        }
+
+        /**
+         * Sets the camera of the previous frame of an animation, whose scene had the same geometries
+         * in the same order, possibly moved. The BVH ray tracer then refits the previous frame's
+         * hierarchy to the scene instead of building one; the previous camera must not render afterward.
+         * Other ray tracers ignore it.
+         *
+         * @param previousFrame the previous frame's camera, or null for none
+         * @return the builder instance
+         */
+        public Builder setPreviousFrame(Camera previousFrame) {
+            this.previousFrame = previousFrame;
+            return this;
+        }
+
         /**
          * Set multi-threading <br>
          * Parameter value meaning:
@@ -426,18 +477,28 @@ public class Camera implements Cloneable {
             if (cam.focusPointDistance <= 0) {
                 throw new IllegalArgumentException("Focus point distance must be non-negative");
             }
-            switch (rayTracerType) {
+            // Ensure Vright is calculated
+            cam.Vright = cam.Vto.crossProduct(cam.Vup).normalize();
+
+            if (rayTracer != null) cam.rayTracerBase = rayTracer;
+            else switch (rayTracerType) {
                 case SIMPLE:
                     cam.rayTracerBase = new SimpleRayTracer(scene,cam.improvementSettings);
                     break;
                 case VOXEL:
-                    cam.rayTracerBase = new VoxelRayTracer(scene, cam.improvementSettings);
+                    cam.rayTracerBase = new VoxelRayTracer(scene, cam.improvementSettings, false, cam.gridTuningRays());
+                    break;
+                case HIERARCHICAL_VOXEL:
+                    cam.rayTracerBase = new VoxelRayTracer(scene, cam.improvementSettings, true, cam.gridTuningRays());
+                    break;
+                case BVH:
+                    cam.rayTracerBase = previousFrame != null && previousFrame.rayTracerBase instanceof BvhRayTracer previous
+                            ? new BvhRayTracer(scene, cam.improvementSettings, previous)
+                            : new BvhRayTracer(scene, cam.improvementSettings);
                     break;
                 default:
                     cam.rayTracerBase = null;
             }
-            // Ensure Vright is calculated
-            cam.Vright = cam.Vto.crossProduct(cam.Vup).normalize();
 
             try {
                 return (Camera) cam.clone();
@@ -448,6 +509,24 @@ public class Camera implements Cloneable {
         }
     }
 
+    /**
+     * Constructs the sample of rays the voxel ray tracer tunes its grid for
+     * (see {@link Blackboard#getGridTuningRays()}): rays through the centers of pixels
+     * spread evenly over the image.
+     *
+     * @return the sample rays, empty if no tuning is requested
+     */
+    private List<Ray> gridTuningRays() {
+        int samples = improvementSettings.getGridTuningRays();
+        if (samples == 0) return List.of();
+        int k = (int) Math.ceil(Math.sqrt(samples));
+        List<Ray> rays = new ArrayList<>(k * k);
+        for (int i = 0; i < k; i++)
+            for (int j = 0; j < k; j++)
+                rays.add(constructRay(nX, nY, (int) ((j + 0.5) * nX / k), (int) ((i + 0.5) * nY / k)));
+        return rays;
+    }
+
     /**
      * Constructs a ray from the camera through the (i,j) pixel of the view plane.
      *
@@ -458,14 +537,25 @@ public class Camera implements Cloneable {
      * @return a {@link Ray} that starts at the camera location and goes through the pixel
      */
     public Ray constructRay(int nX, int nY, int j, int i) {
-        Point pIJ = this.p0.add(this.Vto.scale(distance));
-
         double Rx = width / nX;
         double Ry = height / nY;
 
         double xJ = (j - ((nX - 1) / 2.0)) * Rx;
         double yI = -(i - ((nY - 1) / 2.0)) * Ry;
 
+        return constructRay(xJ, yI);
+    }
+
+    /**
+     * Constructs a ray from the camera through a point of the view plane.
+     *
+     * @param xJ the point's offset from the view plane center along Vright
+     * @param yI the point's offset from the view plane center along Vup
+     * @return a {@link Ray} that starts at the camera location and goes through the point
+     */
+    private Ray constructRay(double xJ, double yI) {
+        Point pIJ = this.p0.add(this.Vto.scale(distance));
+
         if (!Util.isZero(xJ)) {
             pIJ = pIJ.add(Vright.scale(xJ));
         }
@@ -485,6 +575,10 @@ public class Camera implements Cloneable {
      */
     public Camera renderImage() {
         pixelManager = new PixelManager(nY, nX, printInterval);
+        if (improvementSettings.useVarianceDriven())
+            return renderVarianceDriven();
+        if (improvementSettings.useAntiAliasing() && improvementSettings.useImageSpaceAdaptive())
+            return renderImageSpaceAdaptive();
         return switch (threadsCount) {
             case 0 -> renderImageNoThreads();
             case -1 -> renderImageStream();
@@ -524,58 +618,238 @@ public class Camera implements Cloneable {
     }
 
     /**
-     * Casts a ray through the specified pixel and writes the color to the image writer.
+     * Casts the sample rays of the specified pixel and writes the color to the image writer.
      *
-     * @param x the pixel's column index
-     * @param y the pixel's row index
+     * @param x       the pixel's column index
+     * @param y       the pixel's row index
+     * @param samples the adaptive supersampling sample cache of the pixel's tile
+     * @param tracer  the ray tracer of the pixel's tile
      * @throws MissingResourceException if the image writer or ray tracer is not set
      */
-    private void castRay(int x, int y) {
-        Ray baseRay = constructRay(nX, nY, x, y);
-        Color color = Color.BLACK;
+    private void castRay(int x, int y, Map<Long, Color> samples, RayTracerBase tracer) {
+        Color color;
+        if (improvementSettings.useAntiAliasing() && improvementSettings.useAdaptive())
+            color = calcAdaptive(x, y, samples, tracer);
+        else {
+            List<Ray> rays = constructPixelSamples(x, y);
+            color = traceSamples(rays, tracer).reduce(rays.size());
+        }
 
+        imageWriter.writePixel(x, y, color);
+        pixelManager.pixelDone();
+    }
 
-        List<Ray> rays = List.of(baseRay);
-        color = rayTracerBase.traceRay(baseRay);
-        if (improvementSettings.useAntiAliasing()) {
-            if(improvementSettings.useAdaptive())
-                color = calcAdaptive(baseRay);
-            else {
-                // Construct anti-aliasing rays based on the base ray and pixel size
-                rays = improvementSettings.constructRays(baseRay, distance, (this.height / this.nY)/2);
-                for(Ray aaRay : rays) {
-                    color = color.add(rayTracerBase.traceRay(aaRay));
-                }
+    /**
+     * Traces the sample rays of a pixel, in packets of the blackboard's packet size,
+     * or breadth-first as one batch with wavefront tracing.
+     * With decoupled shading, the rays resolve visibility only: the samples are grouped by the
+     * geometry they hit, each group is shaded once at the hit of its first sample, and the
+     * shaded color is weighted by the number of samples in the group.
+     *
+     * @param rays   the sample rays of a pixel
+     * @param tracer the ray tracer to trace the rays with
+     * @return the sum of the samples' colors
+     */
+    private Color traceSamples(List<Ray> rays, RayTracerBase tracer) {
+        Color sum = Color.BLACK;
+        int packetSize = improvementSettings.getPacketSize();
+        if (!improvementSettings.useDecoupledShading() || rays.size() == 1) {
+            if (improvementSettings.useWavefront()) {
+                for (Color color : tracer.traceWavefront(rays.toArray(new Ray[0])))
+                    sum = sum.add(color);
+                return sum;
+            }
+            for (int start = 0; start < rays.size(); start += packetSize) {
+                Ray[] packet = rays.subList(start, Math.min(rays.size(), start + packetSize)).toArray(new Ray[0]);
+                for (Color color : packet.length == 1 ? new Color[]{tracer.traceRay(packet[0])}
+                        : tracer.traceRays(packet))
+                    sum = sum.add(color);
             }
+            return sum;
         }
-        if(improvementSettings.useDepthOfField())
-        {
-            Point basePoint = baseRay.getPoint(distance);
-            Point focusPoint = baseRay.getPoint( focusPointDistance);
-            rays = improvementSettings.constructRays(
-                    new Ray(
-                            focusPoint,
-                            basePoint.subtract(focusPoint).normalize()
-                    ),
-                    focusPointDistance- distance, aperture
-            );
-
-            // reverse the rays' direction
-            rays = rays.stream()
-                    .map(r -> new Ray(r.getPoint(focusPointDistance), r.getDirection().scale(-1)))
-                    .toList();
-
-            for (Ray dofRay : rays) {
-                color = color.add(rayTracerBase.traceRay(dofRay));
+
+        // the first hit and the coverage of each geometry seen by the pixel, null for the background
+        Map<Geometry, Intersection> shadingHits = new HashMap<>();
+        Map<Geometry, Ray> shadingRays = new HashMap<>();
+        Map<Geometry, Integer> coverage = new HashMap<>();
+        for (int start = 0; start < rays.size(); start += packetSize) {
+            Ray[] packet = rays.subList(start, Math.min(rays.size(), start + packetSize)).toArray(new Ray[0]);
+            Intersection[] hits = tracer.findClosestIntersections(packet);
+            for (int i = 0; i < packet.length; ++i) {
+                Geometry geometry = hits[i] == null ? null : hits[i].geometry;
+                if (coverage.merge(geometry, 1, Integer::sum) == 1) {
+                    shadingHits.put(geometry, hits[i]);
+                    shadingRays.put(geometry, packet[i]);
+                }
             }
         }
+        for (var entry : coverage.entrySet()) {
+            Geometry geometry = entry.getKey();
+            sum = sum.add(tracer.traceRay(shadingHits.get(geometry), shadingRays.get(geometry))
+                    .scale(entry.getValue()));
+        }
+        return sum;
+    }
 
+    /**
+     * Constructs the sample rays of a pixel, sampling the sub-pixel position and the lens jointly.
+     * With anti-aliasing the pixel area is sampled, and with depth of field the lens disk is
+     * sampled; the two offset sets are paired in a shuffled order into one set of
+     * as many rays as the larger of them, so no ray is traced only for the pixel center
+     * or only for the lens center. Without either, the set is the pixel's center ray.
+     * The order is seeded by the pixel and the pass, so the render threads share no random
+     * generator and a render with deterministic sampling is reproducible.
+     *
+     * @param j the pixel's column index
+     * @param i the pixel's row index
+     * @return the sample rays of the pixel
+     */
+    private List<Ray> constructPixelSamples(int j, int i) {
+        return constructPixelSamples(j, i, 0);
+    }
 
-        if(rays.size() > 0)
-            color = color.reduce(rays.size());
+    /**
+     * Constructs one of several sample sets of a pixel, as {@link #constructPixelSamples(int, int)}.
+     * Each pass has different sample positions also with the deterministic GRID sampling
+     * (see {@link Blackboard#constructOffsets(double, boolean, int)}), so adding a pass refines the pixel.
+     *
+     * @param j    the pixel's column index
+     * @param i    the pixel's row index
+     * @param pass the index of the sample set, from 0
+     * @return the sample rays of the pixel
+     */
+    private List<Ray> constructPixelSamples(int j, int i, int pass) {
+        List<double[]> pixelOffsets = improvementSettings.useAntiAliasing()
+                ? improvementSettings.constructOffsets(0.5, false, pass) : List.of(CENTER_OFFSET);
+        List<double[]> lensOffsets = improvementSettings.useDepthOfField()
+                ? improvementSettings.constructOffsets(aperture, true, pass) : List.of(CENTER_OFFSET);
+        if (lensOffsets.size() > 1)
+            Collections.shuffle(lensOffsets, new SplittableRandom(((long) pass * nY + i) * nX + j));
+
+        int count = Math.max(pixelOffsets.size(), lensOffsets.size());
+        List<Ray> rays = new ArrayList<>(count);
+        for (int k = 0; k < count; ++k) {
+            double[] pixel = pixelOffsets.get(k % pixelOffsets.size());
+            double[] lens = lensOffsets.get(k % lensOffsets.size());
+            rays.add(constructSampleRay(
+                    (j + 0.5 + pixel[0] - nX / 2.0) * width / nX,
+                    -(i + 0.5 + pixel[1] - nY / 2.0) * height / nY,
+                    lens[0], lens[1]));
+        }
+        return rays;
+    }
 
-        imageWriter.writePixel(x, y, color);
-        pixelManager.pixelDone();
+    /**
+     * Renders all the pixels of a tile.
+     * The pixels of a tile share one adaptive supersampling sample cache,
+     * so lattice points on the borders between the pixels are traced once.
+     *
+     * @param tile the tile to render
+     */
+    private void renderTile(Tile tile) {
+        RayTracerBase tracer = tileTracer(tile);
+        if (improvementSettings.useWavefront()
+                && !improvementSettings.useAntiAliasing() && !improvementSettings.useDepthOfField()) {
+            renderTileWavefront(tile, tracer);
+            return;
+        }
+        if (improvementSettings.getPacketSize() > 1
+                && !improvementSettings.useAntiAliasing() && !improvementSettings.useDepthOfField()) {
+            renderTilePackets(tile, tracer);
+            return;
+        }
+        Map<Long, Color> samples = new HashMap<>();
+        for (int i = tile.row(); i < tile.row() + tile.height(); ++i)
+            for (int j = tile.col(); j < tile.col() + tile.width(); ++j)
+                castRay(j, i, samples, tracer);
+    }
+
+    /**
+     * Returns the ray tracer for the primary rays of a tile: with frustum culling (and without
+     * depth of field), the ray tracer culled to the tile's view frustum.
+     *
+     * @param tile the tile
+     * @return the ray tracer for the tile
+     */
+    private RayTracerBase tileTracer(Tile tile) {
+        if (!improvementSettings.useFrustumCulling() || improvementSettings.useDepthOfField())
+            return rayTracerBase;
+        return rayTracerBase.cull(tileFrustum(tile));
+    }
+
+    /**
+     * Constructs the view frustum of the camera's rays through a tile.
+     * The frustum is widened by half a pixel on each side, so that it surely
+     * contains the rays through the edges of the tile's pixels.
+     *
+     * @param tile the tile
+     * @return the tile's view frustum
+     */
+    private Frustum tileFrustum(Tile tile) {
+        double left = (tile.col() - 0.5 - nX / 2.0) * width / nX;
+        double right = (tile.col() + tile.width() + 0.5 - nX / 2.0) * width / nX;
+        double top = -(tile.row() - 0.5 - nY / 2.0) * height / nY;
+        double bottom = -(tile.row() + tile.height() + 0.5 - nY / 2.0) * height / nY;
+        return new Frustum(p0, viewPlaneDirection(left, top), viewPlaneDirection(right, top),
+                viewPlaneDirection(right, bottom), viewPlaneDirection(left, bottom));
+    }
+
+    /**
+     * Calculates the direction from the camera location to a point of the view plane
+     *
+     * @param xJ the point's offset from the view plane center along Vright
+     * @param yI the point's offset from the view plane center along Vup
+     * @return the (not normalized) direction to the point
+     */
+    private Vector viewPlaneDirection(double xJ, double yI) {
+        return new Vector(
+                Vto.getX() * distance + Vright.getX() * xJ + Vup.getX() * yI,
+                Vto.getY() * distance + Vright.getY() * xJ + Vup.getY() * yI,
+                Vto.getZ() * distance + Vright.getZ() * xJ + Vup.getZ() * yI);
+    }
+
+    /**
+     * Renders the pixels of a tile with one ray per pixel, tracing the rays of each block of
+     * neighbouring pixels (2x2 for packets of 4, 4x2 for 8, 4x4 for 16) as a packet.
+     *
+     * @param tile   the tile to render
+     * @param tracer the ray tracer of the tile
+     */
+    private void renderTilePackets(Tile tile, RayTracerBase tracer) {
+        int packetSize = improvementSettings.getPacketSize();
+        int blockWidth = packetSize >= 8 ? 4 : 2;
+        int blockHeight = packetSize / blockWidth;
+        for (int row = tile.row(); row < tile.row() + tile.height(); row += blockHeight)
+            for (int col = tile.col(); col < tile.col() + tile.width(); col += blockWidth) {
+                int width = Math.min(blockWidth, tile.col() + tile.width() - col);
+                int height = Math.min(blockHeight, tile.row() + tile.height() - row);
+                Ray[] rays = new Ray[width * height];
+                for (int k = 0; k < rays.length; ++k)
+                    rays[k] = constructRay(nX, nY, col + k % width, row + k / width);
+                Color[] colors = tracer.traceRays(rays);
+                for (int k = 0; k < rays.length; ++k) {
+                    imageWriter.writePixel(col + k % width, row + k / width, colors[k]);
+                    pixelManager.pixelDone();
+                }
+            }
+    }
+
+    /**
+     * Renders the pixels of a tile with one ray per pixel, tracing the rays of the whole tile
+     * breadth-first as one batch.
+     *
+     * @param tile   the tile to render
+     * @param tracer the ray tracer of the tile
+     */
+    private void renderTileWavefront(Tile tile, RayTracerBase tracer) {
+        Ray[] rays = new Ray[tile.width() * tile.height()];
+        for (int k = 0; k < rays.length; ++k)
+            rays[k] = constructRay(nX, nY, tile.col() + k % tile.width(), tile.row() + k / tile.width());
+        Color[] colors = tracer.traceWavefront(rays);
+        for (int k = 0; k < rays.length; ++k) {
+            imageWriter.writePixel(tile.col() + k % tile.width(), tile.row() + k / tile.width(), colors[k]);
+            pixelManager.pixelDone();
+        }
     }
 
     /**
@@ -584,9 +858,8 @@ public class Camera implements Cloneable {
      * @return the camera object itself
      */
     private Camera renderImageStream() {
-        IntStream.range(0, nY).parallel()
-                .forEach(i -> IntStream.range(0, nX)
-                        .forEach(j -> castRay(j, i)));
+        IntStream.range(0, pixelManager.tilesCount()).parallel()
+                .forEach(t -> renderTile(pixelManager.getTile(t)));
         return this;
     }
 
@@ -596,9 +869,8 @@ public class Camera implements Cloneable {
      * @return the camera object itself
      */
     private Camera renderImageNoThreads() {
-        for (int i = 0; i < nY; ++i)
-            for (int j = 0; j < nX; ++j)
-                castRay(j, i);
+        for (int t = 0; t < pixelManager.tilesCount(); ++t)
+            renderTile(pixelManager.getTile(t));
         return this;
     }
 
@@ -611,9 +883,9 @@ public class Camera implements Cloneable {
         var threads = new LinkedList<Thread>();
         while (threadsCount-- > 0)
             threads.add(new Thread(() -> {
-                Pixel pixel;
-                while ((pixel = pixelManager.nextPixel()) != null)
-                    castRay(pixel.col(), pixel.row());
+                Tile tile;
+                while ((tile = pixelManager.nextTile()) != null)
+                    renderTile(tile);
             }));
         for (var thread : threads) thread.start();
         try {
@@ -623,6 +895,340 @@ public class Camera implements Cloneable {
         return this;
     }
 
+    /**
+     * Render image with image-space adaptive anti-aliasing:
+     * <ol>
+     * <li>every pixel is rendered with a single ray through its center, starting at a random point
+     * of the lens with depth of field, so unflagged out-of-focus regions stay blurred</li>
+     * <li>pixels whose color differs from a neighbour's by more than the contrast threshold,
+     * or whose ray hits a different geometry than a neighbour's, are flagged</li>
+     * <li>each refinement round adds a new pass of anti-aliasing rays to the flagged pixels, and keeps
+     * flagged only the pixels whose color still changed by more than the threshold</li>
+     * </ol>
+     * Flat regions stay at one ray per pixel, and every pass runs in parallel over its pixel list.
+     *
+     * @return the camera object itself
+     */
+    private Camera renderImageSpaceAdaptive() {
+        Color[] sums = new Color[nX * nY];
+        int[] counts = new int[nX * nY];
+        Geometry[] hits = new Geometry[nX * nY];
+
+        forEachIndex(IntStream.range(0, nX * nY), p -> {
+            double[] lens = randomLensOffset();
+            Ray ray = constructSampleRay((p % nX + 0.5 - nX / 2.0) * width / nX,
+                    -(p / nX + 0.5 - nY / 2.0) * height / nY, lens[0], lens[1]);
+            Intersection hit = rayTracerBase.findClosestIntersection(ray);
+            hits[p] = hit == null ? null : hit.geometry;
+            sums[p] = rayTracerBase.traceRay(hit, ray);
+            counts[p] = 1;
+            pixelManager.pixelDone();
+        });
+
+        double threshold = improvementSettings.getContrastThreshold();
+        int[] flagged = flagContrastPixels(sums, hits, threshold);
+        for (int round = 0; round < improvementSettings.getRefinementRounds() && flagged.length > 0; ++round) {
+            int[] refined = flagged;
+            java.awt.Color[] before = new java.awt.Color[refined.length];
+            for (int f = 0; f < refined.length; ++f)
+                before[f] = sums[refined[f]].reduce(counts[refined[f]]).getColor();
+
+            int pass = round;
+            forEachIndex(IntStream.of(refined), p -> {
+                List<Ray> rays = constructPixelSamples(p % nX, p / nX, pass);
+                sums[p] = sums[p].add(traceSamples(rays, rayTracerBase));
+                counts[p] += rays.size();
+            });
+
+            flagged = IntStream.range(0, refined.length)
+                    .filter(f -> contrast(before[f], sums[refined[f]].reduce(counts[refined[f]]).getColor()) > threshold)
+                    .map(f -> refined[f]).toArray();
+        }
+
+        for (int p = 0; p < nX * nY; ++p)
+            imageWriter.writePixel(p % nX, p / nX, sums[p].reduce(counts[p]));
+        return this;
+    }
+
+    /**
+     * Finds the pixels that differ from one of their 4 neighbours in color or in the hit geometry.
+     *
+     * @param colors    the pixel colors, row by row
+     * @param hits      the geometries hit by the pixels' center rays, row by row
+     * @param threshold the maximal color contrast of non-flagged neighbours
+     * @return the indices of the flagged pixels
+     */
+    private int[] flagContrastPixels(Color[] colors, Geometry[] hits, double threshold) {
+        java.awt.Color[] rgb = new java.awt.Color[colors.length];
+        for (int p = 0; p < colors.length; ++p) rgb[p] = colors[p].getColor();
+
+        boolean[] flags = new boolean[colors.length];
+        for (int y = 0; y < nY; ++y)
+            for (int x = 0; x < nX; ++x) {
+                int p = y * nX + x;
+                if (x + 1 < nX && differ(rgb, hits, p, p + 1, threshold)) flags[p] = flags[p + 1] = true;
+                if (y + 1 < nY && differ(rgb, hits, p, p + nX, threshold)) flags[p] = flags[p + nX] = true;
+            }
+        return IntStream.range(0, flags.length).filter(p -> flags[p]).toArray();
+    }
+
+    /**
+     * Checks whether two pixels are discontinuous
+     *
+     * @param rgb       the pixel colors
+     * @param hits      the geometries hit by the pixels
+     * @param p1        the first pixel index
+     * @param p2        the second pixel index
+     * @param threshold the maximal color contrast of continuous pixels
+     * @return true if the pixels hit different geometries or their contrast exceeds the threshold
+     */
+    private static boolean differ(java.awt.Color[] rgb, Geometry[] hits, int p1, int p2, double threshold) {
+        return !Objects.equals(hits[p1], hits[p2]) || contrast(rgb[p1], rgb[p2]) > threshold;
+    }
+
+    /**
+     * Calculates the contrast of two colors as the largest difference of their channels.
+     *
+     * @param c1 the first color
+     * @param c2 the second color
+     * @return the contrast (0-255)
+     */
+    private static int contrast(java.awt.Color c1, java.awt.Color c2) {
+        return Math.max(Math.abs(c1.getRed() - c2.getRed()),
+                Math.max(Math.abs(c1.getGreen() - c2.getGreen()), Math.abs(c1.getBlue() - c2.getBlue())));
+    }
+
+    /**
+     * Render image with variance-driven sample allocation.
+     * Every pixel first gets a few samples, then in each pass the remaining sample budget is
+     * divided between the tiles in proportion to their variance estimates, until the budget is
+     * spent or the noise of every tile is below the target noise level.
+     * Samples are jittered over the pixel when anti-aliasing is enabled, and over the lens
+     * when depth of field is enabled.
+     *
+     * @return the camera object itself
+     */
+    private Camera renderVarianceDriven() {
+        int pixels = nX * nY;
+        int tiles = pixelManager.tilesCount();
+        long budget = improvementSettings.getSampleBudget();
+        if (budget == 0) budget = (long) pixels * Math.max(1, improvementSettings.getAmountOfRays());
+
+        SampleStatistics stats = new SampleStatistics(pixels);
+        int initial = Math.clamp(budget / pixels, 1, INITIAL_SAMPLES);
+        forEachIndex(IntStream.range(0, tiles), t -> {
+            sampleTile(pixelManager.getTile(t), initial, stats);
+            for (int k = tileArea(t); k > 0; --k) pixelManager.pixelDone();
+        });
+
+        long remaining = budget - (long) pixels * initial;
+        double targetError = improvementSettings.getTargetNoise() * improvementSettings.getTargetNoise();
+        double[] errors = new double[tiles];
+        int[] batch = new int[tiles];
+        while (remaining > 0) {
+            forEachIndex(IntStream.range(0, tiles), t -> errors[t] = stats.tileError(pixelManager.getTile(t)));
+
+            // a tile's share of the pass is its total squared error
+            double total = 0;
+            int worst = -1;
+            for (int t = 0; t < tiles; ++t) {
+                if (errors[t] <= targetError || errors[t] == 0) continue;
+                total += errors[t] * tileArea(t);
+                if (worst < 0 || errors[t] > errors[worst]) worst = t;
+            }
+            if (worst < 0) break;
+
+            long pass = Math.min(remaining, (long) pixels * INITIAL_SAMPLES);
+            long allocated = 0;
+            for (int t = 0; t < tiles; ++t) {
+                batch[t] = 0;
+                if (errors[t] <= targetError || errors[t] == 0) continue;
+                batch[t] = (int) Math.min(INITIAL_SAMPLES, Math.round(pass * errors[t] / total));
+                if (allocated + (long) batch[t] * tileArea(t) > remaining) batch[t] = 0;
+                allocated += (long) batch[t] * tileArea(t);
+            }
+            if (allocated == 0) {
+                if (tileArea(worst) > remaining) break;
+                batch[worst] = 1;
+                allocated = tileArea(worst);
+            }
+            remaining -= allocated;
+
+            forEachIndex(IntStream.range(0, tiles).filter(t -> batch[t] > 0),
+                    t -> sampleTile(pixelManager.getTile(t), batch[t], stats));
+        }
+
+        for (int p = 0; p < pixels; ++p)
+            imageWriter.writePixel(p % nX, p / nX, stats.mean(p));
+        return this;
+    }
+
+    /**
+     * Returns the number of pixels of a tile
+     *
+     * @param t the tile index
+     * @return the number of pixels of the tile
+     */
+    private int tileArea(int t) {
+        Tile tile = pixelManager.getTile(t);
+        return tile.width() * tile.height();
+    }
+
+    /**
+     * Adds samples to every pixel of a tile
+     *
+     * @param tile    the tile
+     * @param samples the number of samples to add to each pixel
+     * @param stats   the sample statistics to add the samples to
+     */
+    private void sampleTile(Tile tile, int samples, SampleStatistics stats) {
+        RayTracerBase tracer = tileTracer(tile);
+        for (int i = tile.row(); i < tile.row() + tile.height(); ++i)
+            for (int j = tile.col(); j < tile.col() + tile.width(); ++j)
+                for (int k = 0; k < samples; ++k)
+                    stats.add(i * nX + j, tracer.traceRay(constructSampleRay(j, i)));
+    }
+
+    /**
+     * Constructs a random sample ray of a pixel.
+     * The ray passes through a random point of the pixel when anti-aliasing is enabled,
+     * and starts at a random point of the lens when depth of field is enabled.
+     *
+     * @param j the pixel's column index
+     * @param i the pixel's row index
+     * @return the sample ray
+     */
+    private Ray constructSampleRay(int j, int i) {
+        double x = j + 0.5, y = i + 0.5;
+        if (improvementSettings.useAntiAliasing()) {
+            x = j + Math.random();
+            y = i + Math.random();
+        }
+        double[] lens = randomLensOffset();
+        return constructSampleRay((x - nX / 2.0) * width / nX, -(y - nY / 2.0) * height / nY, lens[0], lens[1]);
+    }
+
+    /**
+     * Picks a uniformly distributed random point of the lens disk
+     *
+     * @return the point's offset from the lens center, as {x, y}; the center if depth of field is disabled
+     */
+    private double[] randomLensOffset() {
+        if (!improvementSettings.useDepthOfField()) return CENTER_OFFSET;
+        double r = aperture * Math.sqrt(Math.random());
+        double angle = 2 * Math.PI * Math.random();
+        return new double[]{r * Math.cos(angle), r * Math.sin(angle)};
+    }
+
+    /**
+     * Constructs a sample ray through a point of the view plane.
+     * When depth of field is enabled, the ray starts at the given point of the lens
+     * (centered at the camera location) and passes through the focus point of the
+     * view plane point's ray, so the points at the focus distance stay sharp.
+     *
+     * @param xJ    the view plane point's offset from the view plane center along Vright
+     * @param yI    the view plane point's offset from the view plane center along Vup
+     * @param lensX the lens point's offset from the camera location along Vright
+     * @param lensY the lens point's offset from the camera location along Vup
+     * @return the sample ray
+     */
+    private Ray constructSampleRay(double xJ, double yI, double lensX, double lensY) {
+        Ray ray = constructRay(xJ, yI);
+        if (!improvementSettings.useDepthOfField() || Util.isZero(lensX) && Util.isZero(lensY)) return ray;
+
+        Point focusPoint = ray.getPoint(focusPointDistance);
+        Point lensPoint = p0;
+        if (!Util.isZero(lensX)) lensPoint = lensPoint.add(Vright.scale(lensX));
+        if (!Util.isZero(lensY)) lensPoint = lensPoint.add(Vup.scale(lensY));
+        return new Ray(lensPoint, focusPoint.subtract(lensPoint).normalize());
+    }
+
+    /**
+     * Running per-pixel sample statistics of variance-driven sample allocation.
+     * The variance of a pixel is estimated from the luminance of its samples (the channel mean,
+     * each channel clamped to 255), so that over-exposed highlights do not dominate the noise.
+     * Pixels of different tiles are updated concurrently, the pixels of one tile by a single thread.
+     */
+    private class SampleStatistics {
+        /** The variance assumed for a pixel with a single sample (a uniform distribution over 0-255) */
+        private static final double UNKNOWN_VARIANCE = 255 * 255 / 12.0;
+        /** The sum of the sample colors of each pixel */
+        private final Color[] sums;
+        /** The sum of the sample luminances of each pixel */
+        private final double[] lumSums;
+        /** The sum of the squared sample luminances of each pixel */
+        private final double[] lumSquares;
+        /** The number of samples of each pixel */
+        private final int[] counts;
+
+        /**
+         * Constructor for empty statistics
+         *
+         * @param pixels the number of pixels
+         */
+        SampleStatistics(int pixels) {
+            sums = new Color[pixels];
+            Arrays.fill(sums, Color.BLACK);
+            lumSums = new double[pixels];
+            lumSquares = new double[pixels];
+            counts = new int[pixels];
+        }
+
+        /**
+         * Adds a sample to a pixel
+         *
+         * @param p     the pixel index
+         * @param color the sample color
+         */
+        void add(int p, Color color) {
+            Double3 rgb = color.getRgb();
+            double lum = (Math.min(rgb.d1(), 255) + Math.min(rgb.d2(), 255) + Math.min(rgb.d3(), 255)) / 3;
+            sums[p] = sums[p].add(color);
+            lumSums[p] += lum;
+            lumSquares[p] += lum * lum;
+            ++counts[p];
+        }
+
+        /**
+         * Returns the mean color of a pixel
+         *
+         * @param p the pixel index
+         * @return the mean of the pixel's samples
+         */
+        Color mean(int p) {
+            return sums[p].reduce(counts[p]);
+        }
+
+        /**
+         * Estimates the mean squared error of the pixels of a tile,
+         * from the sample variance of each pixel divided by its number of samples
+         *
+         * @param tile the tile
+         * @return the mean squared error of the tile's pixels
+         */
+        double tileError(Tile tile) {
+            double error = 0;
+            for (int i = tile.row(); i < tile.row() + tile.height(); ++i)
+                for (int j = tile.col(); j < tile.col() + tile.width(); ++j) {
+                    int p = i * nX + j, n = counts[p];
+                    double variance = n < 2 ? UNKNOWN_VARIANCE
+                            : Math.max(0, (lumSquares[p] - lumSums[p] * lumSums[p] / n) / (n - 1));
+                    error += variance / n;
+                }
+            return error / (tile.width() * tile.height());
+        }
+    }
+
+    /**
+     * Runs an action for a stream of pixel or tile indices, in parallel unless multi-threading is disabled.
+     *
+     * @param indices the pixel indices (row * nX + column) or tile indices
+     * @param action  the action to run for each index
+     */
+    private void forEachIndex(IntStream indices, IntConsumer action) {
+        (threadsCount == 0 ? indices : indices.parallel()).forEach(action);
+    }
+
     /**
      * Rotates a vector around a given axis using Rodrigues' rotation formula.
      *
@@ -666,109 +1272,79 @@ public class Camera implements Cloneable {
         return result;
     }
     /**
-     * Calculates the color of a pixel using adaptive sampling.
-     * This method constructs rays through the pixel and averages their colors.
+     * Calculates the color of a pixel using adaptive supersampling.
+     * The samples are taken on a sub-pixel lattice with 2^maxAdaptiveLevel cells per pixel side.
+     * Each lattice point is traced at most once and kept in the tile's sample cache, so the
+     * corners shared by the subdivision levels and by adjacent pixels are reused.
      *
-     * @param baseRay the ray through the center of the pixel
+     * @param x       the pixel's column index
+     * @param y       the pixel's row index
+     * @param samples the sample cache of the pixel's tile, keyed by lattice coordinates
+     * @param tracer  the ray tracer of the pixel's tile
      * @return the calculated color for the pixel
      */
-    private Color calcAdaptive(Ray baseRay) {
-        // Create blackboard
-        Blackboard.Builder builder = Blackboard.getBuilder();
-        builder.setAmountOfRays(4).setMethod(Blackboard.MethodsOfPoints.GRID);
-        Blackboard blackboard = builder.build();
-
-        // Calculate pixel region radius
-        double pixelSize = (this.height / this.nY);
-        double radius = pixelSize / 2.0;
-
-        // Construct 5 rays: center + 4 corners
-        List<Ray> rays = blackboard.constructRays(baseRay, distance, radius);
-
-        // Precompute basis vectors (camera space)
-        Vector v = baseRay.getDirection();
-        Vector w = Vector.AXIS_Y.equals(v) ? Vector.AXIS_X : Vector.AXIS_Y.crossProduct(v).normalize();
-        Vector u = v.crossProduct(w).normalize();
-        Point p0 = baseRay.getHead();
-
-        return calcAdaptive(
-                radius,
-                rays.get(0), rays.get(1), rays.get(2), rays.get(3), rays.get(4),
-                0,
-                u, w, p0,
-                rayTracerBase::traceRay
-        );
-    }
-    /**
-     * Recursive method to calculate the color of a pixel using adaptive sampling.
-     *
-     * @param radius        the radius of the pixel region
-     * @param centerRay    the ray through the center of the pixel
-     * @param upLeft       the ray through the upper left corner of the pixel
-     * @param upRight      the ray through the upper right corner of the pixel
-     * @param downLeft     the ray through the lower left corner of the pixel
-     * @param downRight    the ray through the lower right corner of the pixel
-     * @param level        current recursion level
-     * @param u            camera space basis vector u
-     * @param w            camera space basis vector w
-     * @param p0           camera position in 3D space
-     * @param colorFunc    function to get color from a ray
+    private Color calcAdaptive(int x, int y, Map<Long, Color> samples, RayTracerBase tracer) {
+        int scale = 1 << Math.min(improvementSettings.getMaxAdaptiveLevel(), MAX_LATTICE_LEVEL);
+        return calcAdaptive(x * scale, y * scale, scale, scale, samples, tracer);
+    }
+
+    /**
+     * Recursive method to calculate the color of a pixel region using adaptive sampling.
+     * The region is a lattice-aligned square; it is subdivided into four quarters until
+     * its corner colors converge or it is a single lattice cell.
+     *
+     * @param gx      the lattice column of the region's upper left corner
+     * @param gy      the lattice row of the region's upper left corner
+     * @param size    the region's side in lattice cells
+     * @param scale   the amount of lattice cells per pixel side
+     * @param samples the sample cache of the tile
+     * @param tracer  the ray tracer of the tile
      * @return calculated color for this pixel region
      */
-    private Color calcAdaptive(
-            double radius,
-            Ray centerRay, Ray upLeft, Ray upRight, Ray downLeft, Ray downRight,
-            int level,
-            Vector u, Vector w, Point p0,
-            Function<Ray, Color> colorFunc) {
-
+    private Color calcAdaptive(int gx, int gy, int size, int scale, Map<Long, Color> samples, RayTracerBase tracer) {
         Color[] colors = new Color[AMOUNT_OF_RAYS];
-        colors[0] = colorFunc.apply(upLeft);
-        colors[1] = colorFunc.apply(upRight);
-        colors[2] = colorFunc.apply(downLeft);
-        colors[3] = colorFunc.apply(downRight);
+        colors[0] = latticeColor(gx, gy, scale, samples, tracer);
+        colors[1] = latticeColor(gx + size, gy, scale, samples, tracer);
+        colors[2] = latticeColor(gx, gy + size, scale, samples, tracer);
+        colors[3] = latticeColor(gx + size, gy + size, scale, samples, tracer);
 
-        if (level >= improvementSettings.getMaxAdaptiveLevel() ||
-                converged(colors, improvementSettings.getAdaptiveThreshold())) {
+        if (size == 1 || converged(colors, improvementSettings.getAdaptiveThreshold())) {
             Color avg = Color.BLACK;
             for (Color c : colors) avg = avg.add(c);
             return avg.reduce(colors.length);
         }
 
-        Point centerPoint = centerRay.getPoint(distance);
-
-        double halfRadius = radius / 2.0;
-        double nextRadius = radius / Math.pow(2.0, level + 2);
-
-        // Calculate midpoints of sub-regions
-        Point centerUpLeftPoint    = centerPoint.add(u.scale(halfRadius)).add(w.scale(-halfRadius));
-        Point centerUpRightPoint   = centerPoint.add(u.scale(halfRadius)).add(w.scale(halfRadius));
-        Point centerDownLeftPoint  = centerPoint.add(u.scale(-halfRadius)).add(w.scale(-halfRadius));
-        Point centerDownRightPoint = centerPoint.add(u.scale(-halfRadius)).add(w.scale(halfRadius));
-
-        Point upPoint    = centerPoint.add(u.scale(radius));
-        Point downPoint  = centerPoint.add(u.scale(-radius));
-        Point leftPoint  = centerPoint.add(w.scale(-radius));
-        Point rightPoint = centerPoint.add(w.scale(radius));
-
-        // Construct rays from camera to those points
-        Ray centerUpLeft    = new Ray(p0, centerUpLeftPoint.subtract(p0));
-        Ray centerUpRight   = new Ray(p0, centerUpRightPoint.subtract(p0));
-        Ray centerDownLeft  = new Ray(p0, centerDownLeftPoint.subtract(p0));
-        Ray centerDownRight = new Ray(p0, centerDownRightPoint.subtract(p0));
-        Ray up    = new Ray(p0, upPoint.subtract(p0));
-        Ray down  = new Ray(p0, downPoint.subtract(p0));
-        Ray left  = new Ray(p0, leftPoint.subtract(p0));
-        Ray right = new Ray(p0, rightPoint.subtract(p0));
-
-        // Recursive calls
-        Color c1 = calcAdaptive(nextRadius, centerUpLeft, upLeft, up, left, centerRay, level + 1, u, w, p0, colorFunc);
-        Color c2 = calcAdaptive(nextRadius, centerUpRight, up, upRight, centerRay, right, level + 1, u, w, p0, colorFunc);
-        Color c3 = calcAdaptive(nextRadius, centerDownLeft, left, centerRay, downLeft, down, level + 1, u, w, p0, colorFunc);
-        Color c4 = calcAdaptive(nextRadius, centerDownRight, centerRay, right, down, downRight, level + 1, u, w, p0, colorFunc);
+        int half = size / 2;
+        Color c1 = calcAdaptive(gx, gy, half, scale, samples, tracer);
+        Color c2 = calcAdaptive(gx + half, gy, half, scale, samples, tracer);
+        Color c3 = calcAdaptive(gx, gy + half, half, scale, samples, tracer);
+        Color c4 = calcAdaptive(gx + half, gy + half, half, scale, samples, tracer);
 
         return c1.add(c2).add(c3).add(c4).reduce(AMOUNT_OF_RAYS);
     }
+
+    /**
+     * Returns the color seen through a sub-pixel lattice point, tracing it only if
+     * it is not in the sample cache yet.
+     *
+     * @param gx      the lattice column (the image's left edge is column 0)
+     * @param gy      the lattice row (the image's top edge is row 0)
+     * @param scale   the amount of lattice cells per pixel side
+     * @param samples the sample cache of the tile
+     * @param tracer  the ray tracer of the tile
+     * @return the color of the lattice point
+     */
+    private Color latticeColor(int gx, int gy, int scale, Map<Long, Color> samples, RayTracerBase tracer) {
+        return samples.computeIfAbsent(((long) gx << 32) | (gy & 0xFFFFFFFFL),
+                key -> {
+                    double[] lens = randomLensOffset();
+                    return tracer.traceRay(constructSampleRay(
+                            ((double) gx / scale - nX / 2.0) * width / nX,
+                            -((double) gy / scale - nY / 2.0) * height / nY,
+                            lens[0], lens[1]));
+                });
+    }
+
     /**
      * Checks whether all sample colors differ by no more than the threshold.
      *
@@ -0,0 +1,146 @@
+package renderer;
+
+import acceleration.Frustum;
+import acceleration.WideBVH;
+import geometries.Geometries;
+import geometries.Intersectable;
+import geometries.Intersectable.Intersection;
+import primitives.*;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A ray tracer for a frame of an animation, whose static geometries are intersected by a ray tracer
+ * built once and shared by all the frames, and whose dynamic (moving) geometries are intersected by
+ * a small hierarchy of the frame. Each ray is traced through both, and the nearer hit wins.
+ * The dynamic hierarchy of a frame is refitted from the previous frame's, as long as the dynamic
+ * geometries keep their number and order (see {@link WideBVH#refit}).
+ * The lights, background and blackboard settings are the static ray tracer's.
+ */
+public class DynamicRayTracer extends RayTracerBase {
+
+    private final RayTracerBase staticTracer; // The shared ray tracer of the static geometries
+    private final WideBVH bvh; // The hierarchy of the bounded dynamic geometries, null if there are none
+    private final List<Intersectable> unboundedGeometries; // List of dynamic geometries without bounding boxes
+
+    /**
+     * Constructs a DynamicRayTracer for a frame of dynamic geometries.
+     *
+     * @param staticTracer The shared ray tracer of the static geometries.
+     * @param dynamic      The dynamic geometries of the frame.
+     * @param previous     The ray tracer of the previous frame, whose hierarchy is refitted
+     *                     (and must not be used afterward), or null to build one.
+     */
+    public DynamicRayTracer(RayTracerBase staticTracer, List<Intersectable> dynamic, DynamicRayTracer previous) {
+        super(staticTracer.snapshot);
+        this.blackboard = staticTracer.blackboard;
+        this.staticTracer = staticTracer;
+        this.unboundedGeometries = new LinkedList<>();
+        List<Intersectable> bounded = new ArrayList<>();
+        for (Intersectable geometry : Geometries.flatten(dynamic)) {
+            if (geometry.getAABB() == null) unboundedGeometries.add(geometry);
+            else bounded.add(geometry);
+        }
+        if (bounded.isEmpty()) this.bvh = null;
+        else if (previous != null && previous.bvh != null && previous.bvh.geometryCount() == bounded.size())
+            this.bvh = previous.bvh.refit(bounded, blackboard.getBvhRefitCostGrowth());
+        else this.bvh = new WideBVH(bounded, blackboard.getBvhWidth(),
+                    blackboard.getSpatialSplitGrowth(), blackboard.useCompressedBvh());
+    }
+
+    /**
+     * Constructs a view of a DynamicRayTracer whose static ray tracer is culled to a view frustum.
+     *
+     * @param tracer       The ray tracer.
+     * @param staticTracer The static ray tracer culled to the frustum.
+     */
+    private DynamicRayTracer(DynamicRayTracer tracer, RayTracerBase staticTracer) {
+        super(tracer.snapshot);
+        this.blackboard = tracer.blackboard;
+        this.staticTracer = staticTracer;
+        this.bvh = tracer.bvh;
+        this.unboundedGeometries = tracer.unboundedGeometries;
+    }
+
+    @Override
+    RayTracerBase cull(Frustum frustum) {
+        RayTracerBase culled = staticTracer.cull(frustum);
+        return culled == staticTracer ? this : new DynamicRayTracer(this, culled);
+    }
+
+    /**
+     * Traces a ray and calculates its color based on intersections with the scene.
+     *
+     * @param ray The ray to be traced.
+     * @return The color of the ray based on intersections or the background color if no intersection is found.
+     */
+    @Override
+    public Color traceRay(Ray ray) {
+        Intersection intersection = findClosestIntersection(ray);
+        return intersection == null ? snapshot.getBackground() : calcColor(intersection, ray);
+    }
+
+    /**
+     * Finds the closest intersection of a ray with the static and the dynamic geometries.
+     *
+     * @param ray The ray to find intersections for.
+     * @return The closest intersection or null if no intersection is found.
+     */
+    @Override
+    protected Intersection findClosestIntersection(Ray ray) {
+        Intersection closest = staticTracer.findClosestIntersection(ray);
+        double minDist = closest == null ? Double.POSITIVE_INFINITY : ray.getHead().distanceSquared(closest.point);
+        Intersection hit = bvh == null ? null : bvh.findClosestIntersection(ray);
+        if (hit != null && ray.getHead().distanceSquared(hit.point) < minDist) {
+            closest = hit;
+            minDist = ray.getHead().distanceSquared(hit.point);
+        }
+        for (Intersectable geometry : unboundedGeometries) {
+            hit = geometry.calculateClosestIntersection(ray);
+            if (hit != null && ray.getHead().distanceSquared(hit.point) < minDist) {
+                closest = hit;
+                minDist = ray.getHead().distanceSquared(hit.point);
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Calculates the transparency factor along a shadow ray, through the static and the dynamic geometries.
+     *
+     * @param shadowRay   The shadow ray.
+     * @param maxDistance The distance of the light source from the ray's head.
+     * @return The transparency factor as a Double3 object.
+     */
+    @Override
+    protected Double3 transparency(Ray shadowRay, double maxDistance) {
+        Double3 ktr = staticTracer.transparency(shadowRay, maxDistance);
+        for (Intersectable geometry : unboundedGeometries) {
+            if (ktr.lowerThan(MIN_CALC_COLOR_K)) return Double3.ZERO;
+            List<Intersection> hits = geometry.calculateIntersections(shadowRay, maxDistance);
+            if (hits != null) ktr = transparency(ktr, hits);
+        }
+        // Find the dynamic intersections along the transparency ray, up to the first opaque one
+        if (bvh != null && !ktr.lowerThan(MIN_CALC_COLOR_K))
+            ktr = transparency(ktr, bvh.findAllIntersections(shadowRay, maxDistance,
+                    intersection -> intersection.material.Kt.lowerThan(MIN_CALC_COLOR_K)));
+        return ktr.lowerThan(MIN_CALC_COLOR_K) ? Double3.ZERO : ktr;
+    }
+
+    /**
+     * Accumulates the transparency factors of the intersections along a shadow ray.
+     *
+     * @param ktr           The transparency factor so far.
+     * @param intersections The intersections along the shadow ray.
+     * @return The transparency factor as a Double3 object.
+     */
+    private static Double3 transparency(Double3 ktr, List<Intersection> intersections) {
+        for (Intersection inter : intersections) {
+            ktr = ktr.product(inter.material.Kt); // Accumulate transparency factors
+            if (ktr.lowerThan(MIN_CALC_COLOR_K)) return Double3.ZERO; // Stop if transparency is negligible
+        }
+        return ktr;
+    }
+}
@@ -18,6 +18,20 @@ class PixelManager {
     record Pixel(int col, int row) {
     }
 
+    /**
+     * Immutable class for object containing allocated tile of pixels (a rectangle
+     * of up to {@link #TILE_SIZE} x {@link #TILE_SIZE} pixels)
+     * @param col    first pixel column of the tile
+     * @param row    first pixel row of the tile
+     * @param width  amount of pixel columns in the tile
+     * @param height amount of pixel rows in the tile
+     */
+    record Tile(int col, int row, int width, int height) {
+    }
+
+    /** Size of the tile side in pixels */
+    static final int            TILE_SIZE     = 16;
+
     /** Maximum rows of pixels */
     private int                 maxRows       = 0;
     /** Maximum columns of pixels */
@@ -25,6 +39,13 @@ class PixelManager {
     /** Total amount of pixels in the generated image */
     private long                totalPixels   = 0l;
 
+    /** Amount of tile columns in the generated image */
+    private int                 tileCols      = 0;
+    /** Amount of tiles in the generated image */
+    private int                 totalTiles    = 0;
+    /** Next tile to be allocated */
+    private volatile int        cTile         = 0;
+
     /** Currently processed row of pixels */
     private volatile int        cRow          = 0;
     /** Currently processed column of pixels */
@@ -63,6 +84,8 @@ class PixelManager {
         this.maxRows  = maxRows;
         this.maxCols  = maxCols;
         totalPixels   = (long) maxRows * maxCols;
+        tileCols      = (maxCols + TILE_SIZE - 1) / TILE_SIZE;
+        totalTiles    = tileCols * ((maxRows + TILE_SIZE - 1) / TILE_SIZE);
         printInterval = interval.length == 0 ? printInterval : (long) (interval[0] * 10);
         print         = printInterval != 0;
         if (print) System.out.printf(PRINT_FORMAT, 0d);
@@ -91,6 +114,33 @@ class PixelManager {
         return null;
     }
 
+    /**
+     * Amount of tiles the image is divided into
+     * @return the amount of tiles
+     */
+    int tilesCount() { return totalTiles; }
+
+    /**
+     * Provides the tile by its index, tiles are numbered row by row
+     * @param  index the tile index (0 to {@link #tilesCount()} - 1)
+     * @return       the tile
+     */
+    Tile getTile(int index) {
+        int col = (index % tileCols) * TILE_SIZE;
+        int row = (index / tileCols) * TILE_SIZE;
+        return new Tile(col, row, Math.min(TILE_SIZE, maxCols - col), Math.min(TILE_SIZE, maxRows - row));
+    }
+
+    /**
+     * Thread-safe allocation of the next tile to be rendered, see {@link #nextPixel()}
+     * @return the next tile, or null if there are no more tiles
+     */
+    Tile nextTile() {
+        synchronized (mutexNext) {
+            return cTile == totalTiles ? null : getTile(cTile++);
+        }
+    }
+
     /** Finish pixel processing by updating and printing of progress percentage */
     void pixelDone() {
         boolean flag       = false;
@@ -1,10 +1,14 @@
 package renderer;
 
+import acceleration.Frustum;
 import lighting.LightSource;
 import primitives.*;
 import scene.Scene;
+import scene.SceneSnapshot;
 import geometries.Intersectable.Intersection;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -15,22 +19,195 @@ public abstract class RayTracerBase {
     protected static final double MIN_CALC_COLOR_K = 0.001;
     protected static final Double3 INITIAL_K = Double3.ONE;
     protected static final double SIZEOFGLOSSYANDBLURRY = 1;
+    /// Minimal cosine used when estimating the contribution of lights with a radius
+    private static final double MIN_LIGHT_COS = 0.05;
 
-    protected final Scene scene;
+    /// The compiled snapshot of the scene, which the ray tracer renders
+    protected final SceneSnapshot snapshot;
     protected Blackboard blackboard = Blackboard.getBuilder().build();
 
+    /**
+     * Constructs a ray tracer of a scene, from the scene's compiled snapshot.
+     *
+     * @param scene the scene
+     */
     public RayTracerBase(Scene scene) {
-        this.scene = scene;
+        this(compile(scene));
+    }
+
+    /**
+     * Constructs a ray tracer of a compiled scene snapshot, which may be shared with other ray tracers.
+     *
+     * @param snapshot the scene's snapshot
+     */
+    public RayTracerBase(SceneSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Compiles the snapshot of a scene for a ray tracer
+     *
+     * @param scene the scene, or null for a placeholder ray tracer with no scene
+     * @return the snapshot, or null if there is no scene
+     */
+    protected static SceneSnapshot compile(Scene scene) {
+        return scene == null ? null : scene.compile();
     }
 
     public abstract Color traceRay(Ray ray);
+
+    /**
+     * Calculates the color seen by a ray whose closest intersection was already found.
+     *
+     * @param intersection the closest intersection of the ray, or null if there is none
+     * @param ray          the ray
+     * @return the color of the intersection, or the background color if there is none
+     */
+    Color traceRay(Intersection intersection, Ray ray) {
+        return intersection == null ? snapshot.getBackground() : calcColor(intersection, ray);
+    }
     protected abstract Intersection findClosestIntersection(Ray ray);
-    protected abstract Double3 transparency(Intersection intersection);
+
+    /**
+     * Finds the closest intersection of each ray of a packet of coherent rays.
+     * The default implementation traces the rays one by one.
+     *
+     * @param rays the rays of the packet
+     * @return the closest intersection of each ray (null where there is none)
+     */
+    protected Intersection[] findClosestIntersections(Ray[] rays) {
+        Intersection[] hits = new Intersection[rays.length];
+        for (int i = 0; i < rays.length; i++)
+            hits[i] = findClosestIntersection(rays[i]);
+        return hits;
+    }
+
+    /**
+     * Calculates the transparency between an intersection and its light source (set in the intersection).
+     *
+     * @param intersection the intersection, with its light source and light direction
+     * @return the transparency factor
+     */
+    protected Double3 transparency(Intersection intersection) {
+        Ray shadowRay = new Ray(intersection.point, intersection.l.scale(-1), intersection.normal);
+        return transparency(shadowRay, intersection.light.getDistance(shadowRay.getHead()));
+    }
+
+    /**
+     * Calculates the transparency along a shadow ray, up to the light source.
+     *
+     * @param shadowRay   the shadow ray
+     * @param maxDistance the distance of the light source from the ray's head
+     * @return the transparency factor
+     */
+    protected abstract Double3 transparency(Ray shadowRay, double maxDistance);
+
+    /**
+     * Calculates the transparency along each ray of a packet of coherent shadow rays.
+     * The default implementation traces the rays one by one.
+     *
+     * @param shadowRays   the shadow rays of the packet
+     * @param maxDistances the distance of the light source from each ray's head
+     * @return the transparency factor of each ray
+     */
+    protected Double3[] transparency(Ray[] shadowRays, double[] maxDistances) {
+        Double3[] ktrs = new Double3[shadowRays.length];
+        for (int i = 0; i < shadowRays.length; i++)
+            ktrs[i] = transparency(shadowRays[i], maxDistances[i]);
+        return ktrs;
+    }
+
+    /**
+     * Traces a packet of coherent rays and calculates their colors.
+     * The closest intersections are found as a packet, and with hard shadows (without stochastic
+     * light selection) the shadow rays of all the lanes towards each light source are traced as a
+     * packet as well; the global effects of each lane are traced ray by ray.
+     *
+     * @param rays the rays of the packet
+     * @return the color of each ray
+     */
+    Color[] traceRays(Ray[] rays) {
+        Intersection[] hits = findClosestIntersections(rays);
+        Color[] colors = new Color[rays.length];
+        if (blackboard.useSoftShadows() || blackboard.useStochasticLights()) {
+            for (int i = 0; i < rays.length; i++)
+                colors[i] = traceRay(hits[i], rays[i]);
+            return colors;
+        }
+
+        for (int i = 0; i < rays.length; i++) {
+            if (hits[i] == null) colors[i] = snapshot.getBackground();
+            else if (!preprocessIntersection(hits[i], rays[i].getDirection())) {
+                colors[i] = Color.BLACK;
+                hits[i] = null;
+            } else colors[i] = hits[i].geometry.getEmission();
+        }
+
+        int[] lanes = new int[rays.length];
+        Ray[] shadowRays = new Ray[rays.length];
+        double[] maxDistances = new double[rays.length];
+        for (LightSource light : snapshot.getLights()) {
+            // the lanes lit from their shaded side
+            int count = 0;
+            for (int i = 0; i < rays.length; i++) {
+                Intersection hit = hits[i];
+                if (hit == null || !setLightSource(hit, light, light.getL(hit.point))
+                        || Util.alignZero(hit.lNormal * hit.vNormal) <= 0) continue;
+                Ray shadowRay = new Ray(hit.point, hit.l.scale(-1), hit.normal);
+                lanes[count] = i;
+                shadowRays[count] = shadowRay;
+                maxDistances[count++] = light.getDistance(shadowRay.getHead());
+            }
+            if (count == 0) continue;
+
+            Double3[] ktrs = transparency(Arrays.copyOf(shadowRays, count), Arrays.copyOf(maxDistances, count));
+            for (int c = 0; c < count; c++) {
+                Intersection hit = hits[lanes[c]];
+                if (ktrs[c].product(INITIAL_K).lowerThan(MIN_CALC_COLOR_K)) continue;
+                Color iL = light.getIntensity(hit.point).scale(ktrs[c]);
+                colors[lanes[c]] = colors[lanes[c]].add(iL.scale(calcDiffuse(hit).add(calcSpecular(hit))));
+            }
+        }
+
+        for (int i = 0; i < rays.length; i++) {
+            if (hits[i] == null) continue;
+            if (MAX_CALC_COLOR_LEVEL > 1)
+                colors[i] = colors[i].add(calcGlobalEffects(hits[i], MAX_CALC_COLOR_LEVEL, INITIAL_K));
+            colors[i] = colors[i].add(snapshot.getAmbientLight().getIntensity().scale(hits[i].geometry.getMaterial().Ka));
+        }
+        return colors;
+    }
+
+    /**
+     * Traces rays breadth-first ("wavefront") and calculates their colors.
+     * The rays are traced generation by generation - primary rays, then the reflected and refracted
+     * rays of each bounce - with each generation intersected, shaded and spawned as a batch
+     * (see {@link WavefrontTracer}). The colors are the same as tracing each ray recursively.
+     *
+     * @param rays the rays
+     * @return the color of each ray
+     */
+    Color[] traceWavefront(Ray[] rays) {
+        return new WavefrontTracer(this).trace(rays);
+    }
+
+    /**
+     * Returns a ray tracer for the rays within a view frustum, such as the primary rays of one
+     * render tile. Its rays within the frustum may be intersected with only the geometries that
+     * may intersect the frustum; all other rays are traced as by this ray tracer.
+     * The default implementation returns this ray tracer.
+     *
+     * @param frustum the view frustum
+     * @return the ray tracer for the frustum's rays
+     */
+    RayTracerBase cull(Frustum frustum) {
+        return this;
+    }
 
     protected Color calcColor(Intersection intersection, Ray ray) {
         if (!preprocessIntersection(intersection, ray.getDirection())) return Color.BLACK;
         Color base = calcColor(intersection, MAX_CALC_COLOR_LEVEL, INITIAL_K);
-        return base.add(scene.ambientLight.getIntensity().scale(intersection.geometry.getMaterial().Ka));
+        return base.add(snapshot.getAmbientLight().getIntensity().scale(intersection.geometry.getMaterial().Ka));
     }
 
     protected Color calcColor(Intersection intersection, int level, Double3 k) {
@@ -75,29 +252,155 @@ public abstract class RayTracerBase {
         Color color = intersection.geometry.getEmission();
         if (intersection.vNormal == 0) return color;
 
-        for (LightSource light : scene.lights) {
-            Vector l = light.getL(intersection.point);
-            if (!setLightSource(intersection, light, l)) continue;
+        if (blackboard.useStochasticLights() && snapshot.getLights().size() > blackboard.getLightSamples())
+            return color.add(calcSampledLightsEffects(intersection, k));
 
-            List<Ray> shadowRays = List.of(new Ray(intersection.point, l.scale(-1), intersection.normal));
-            if (blackboard.useSoftShadows()) {
-                double dist = light.getDistance(intersection.point);
-                shadowRays = blackboard.constructRays(new Ray(intersection.point, l.scale(-1),intersection.normal), dist, light.getRadius());
+        for (LightSource light : snapshot.getLights())
+            color = color.add(calcLightEffect(intersection, light, k));
+        return color;
+    }
+
+    /**
+     * Calculates the diffuse and specular contribution of a single light source,
+     * including its (soft) shadow rays.
+     *
+     * @param intersection the shaded intersection
+     * @param light        the light source
+     * @param k            the accumulated attenuation factor
+     * @return the light's contribution
+     */
+    protected Color calcLightEffect(Intersection intersection, LightSource light, Double3 k) {
+        Color color = Color.BLACK;
+        Vector l = light.getL(intersection.point);
+        if (!setLightSource(intersection, light, l)) return color;
+
+        List<Ray> shadowRays = List.of(new Ray(intersection.point, l.scale(-1), intersection.normal));
+        if (blackboard.useSoftShadows()) {
+            double dist = light.getDistance(intersection.point);
+            shadowRays = blackboard.constructRays(new Ray(intersection.point, l.scale(-1),intersection.normal), dist, light.getRadius());
+        }
+
+        // the shadow rays that light the shaded side of the surface, traced in packets
+        List<Vector> directions = new ArrayList<>(shadowRays.size());
+        for (Ray sRay : shadowRays) {
+            double lNormal = Util.alignZero(-intersection.normal.dotProduct(sRay.getDirection()));
+            if (lNormal != 0 && Util.alignZero(lNormal * intersection.vNormal) > 0)
+                directions.add(sRay.getDirection());
+        }
+        Double3[] ktrs = shadowTransparency(intersection, light, directions);
+
+        for (int i = 0; i < directions.size(); i++) {
+            Double3 ktr = ktrs[i].reduce(shadowRays.size());
+            if (!ktr.product(k).lowerThan(MIN_CALC_COLOR_K)) {
+                setLightSource(intersection, light, directions.get(i).scale(-1));
+                Color iL = light.getIntensity(intersection.point).scale(ktr);
+                color = color.add(iL.scale(calcDiffuse(intersection).add(calcSpecular(intersection))));
+            }
+        }
+        return color;
+    }
+
+    /**
+     * Calculates the transparency from an intersection towards a light source along several
+     * directions, tracing the shadow rays in packets of the blackboard's packet size.
+     *
+     * @param intersection the intersection
+     * @param light        the light source
+     * @param directions   the directions of the shadow rays
+     * @return the transparency factor along each direction
+     */
+    private Double3[] shadowTransparency(Intersection intersection, LightSource light, List<Vector> directions) {
+        Double3[] ktrs = new Double3[directions.size()];
+        int packetSize = blackboard.getPacketSize();
+        if (packetSize == 1 || directions.size() == 1) {
+            for (int i = 0; i < ktrs.length; i++) {
+                Ray shadowRay = new Ray(intersection.point, directions.get(i), intersection.normal);
+                ktrs[i] = transparency(shadowRay, light.getDistance(shadowRay.getHead()));
             }
+            return ktrs;
+        }
 
-            for (Ray sRay : shadowRays) {
-                if (!setLightSource(intersection, light, sRay.getDirection().scale(-1)) ||
-                       Util.alignZero(intersection.lNormal * intersection.vNormal) <= 0) continue;
-                Double3 ktr = transparency(intersection).reduce(shadowRays.size());
-                if (!ktr.product(k).lowerThan(MIN_CALC_COLOR_K)) {
-                    Color iL = light.getIntensity(intersection.point).scale(ktr);
-                    color = color.add(iL.scale(calcDiffuse(intersection).add(calcSpecular(intersection))));
-                }
+        for (int start = 0; start < directions.size(); start += packetSize) {
+            int size = Math.min(packetSize, directions.size() - start);
+            Ray[] rays = new Ray[size];
+            double[] maxDistances = new double[size];
+            for (int i = 0; i < size; i++) {
+                rays[i] = new Ray(intersection.point, directions.get(start + i), intersection.normal);
+                maxDistances[i] = light.getDistance(rays[i].getHead());
             }
+            System.arraycopy(transparency(rays, maxDistances), 0, ktrs, start, size);
+        }
+        return ktrs;
+    }
+
+    /**
+     * Stochastic light selection: picks {@link Blackboard#getLightSamples()} lights with probability
+     * proportional to their estimated contribution (power × attenuation × cosine) and reweights
+     * each picked light by the inverse of its selection probability, so the expected color equals
+     * shading all the lights.
+     *
+     * @param intersection the shaded intersection
+     * @param k            the accumulated attenuation factor
+     * @return the estimated contribution of all the lights
+     */
+    protected Color calcSampledLightsEffects(Intersection intersection, Double3 k) {
+        List<LightSource> lights = snapshot.getLights();
+        double[] cdf = new double[lights.size()];
+        double total = 0;
+        for (int i = 0; i < cdf.length; i++) {
+            total += estimateLightContribution(intersection, lights.get(i));
+            cdf[i] = total;
+        }
+        if (total <= 0) return Color.BLACK;
+
+        int samples = blackboard.getLightSamples();
+        int[] picks = new int[cdf.length];
+        for (int s = 0; s < samples; s++)
+            picks[pickLight(cdf, Math.random() * total)]++;
+
+        Color color = Color.BLACK;
+        for (int i = 0; i < cdf.length; i++) {
+            if (picks[i] == 0) continue;
+            double probability = (cdf[i] - (i == 0 ? 0 : cdf[i - 1])) / total;
+            color = color.add(calcLightEffect(intersection, lights.get(i), k).scale(picks[i] / (samples * probability)));
         }
         return color;
     }
 
+    /**
+     * Estimates the unshadowed contribution of a light at an intersection.
+     * Lights with a radius keep a small minimal cosine, since their soft shadow rays
+     * may still reach the surface when the light's center is behind it.
+     *
+     * @param intersection the shaded intersection
+     * @param light        the light source
+     * @return the estimated (non-negative) contribution
+     */
+    private double estimateLightContribution(Intersection intersection, LightSource light) {
+        Double3 power = light.getIntensity(intersection.point).getRgb();
+        double cos = Util.alignZero(intersection.normal.dotProduct(light.getL(intersection.point)))
+                * Math.signum(intersection.vNormal);
+        double minCos = light.getRadius() > 0 ? MIN_LIGHT_COS : 0;
+        return (power.d1() + power.d2() + power.d3()) * Math.max(cos, minCos);
+    }
+
+    /**
+     * Finds the light whose cumulative estimate interval contains the given value.
+     *
+     * @param cdf   the cumulative light estimates
+     * @param value a value in [0, total estimate)
+     * @return the index of the picked light
+     */
+    private static int pickLight(double[] cdf, double value) {
+        int low = 0, high = cdf.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cdf[mid] > value) high = mid;
+            else low = mid + 1;
+        }
+        return low;
+    }
+
     protected Color calcGlobalEffects(Intersection intersection, int level, Double3 k) {
         Material mat = intersection.geometry.getMaterial();
         return calcGlobalEffect(intersection, constructRefractedRay(intersection), mat.Kt, level, k)
@@ -109,22 +412,11 @@ public abstract class RayTracerBase {
         if (kkx.lowerThan(MIN_CALC_COLOR_K)) return Color.BLACK;
 
         Color color = Color.BLACK;
-        List<Ray> rays = List.of(ray);
-
-        if (blackboard.useBlurryAndGlossy() && inter.material.strength > 0) {
-            double alpha = inter.material.strength;
-            double radius = Math.tan(Math.toRadians(alpha));
-            rays = blackboard.constructRays(ray, SIZEOFGLOSSYANDBLURRY, radius);
-
-            if (kx == inter.material.Kr) {
-                rays.removeIf(r -> inter.normal.dotProduct(r.getDirection()) <= 0);
-            }
-        }
-
+        List<Ray> rays = constructGlobalEffectRays(inter, ray, kx);
         for (Ray r : rays) {
             Intersection hit = findClosestIntersection(r);
             if (hit == null) {
-                color = color.add(scene.background);
+                color = color.add(snapshot.getBackground());
             } else if (preprocessIntersection(hit, r.getDirection())) {
                 color = color.add(calcColor(hit, level - 1, kkx));
             }
@@ -134,4 +426,26 @@ public abstract class RayTracerBase {
         return color.reduce(rays.size()).scale(kx);
     }
 
+    /**
+     * Constructs the rays of a global effect: the reflected or refracted ray itself, or with
+     * blurry and glossy surfaces a beam of rays around it (without the reflected rays that
+     * go below the surface).
+     *
+     * @param inter the intersection
+     * @param ray   the reflected or refracted ray
+     * @param kx    the attenuation factor of the effect (the material's Kr or Kt)
+     * @return the rays of the effect
+     */
+    protected List<Ray> constructGlobalEffectRays(Intersection inter, Ray ray, Double3 kx) {
+        if (!blackboard.useBlurryAndGlossy() || inter.material.strength <= 0) return List.of(ray);
+
+        double alpha = inter.material.strength;
+        double radius = Math.tan(Math.toRadians(alpha));
+        List<Ray> rays = blackboard.constructRays(ray, SIZEOFGLOSSYANDBLURRY, radius);
+        if (kx == inter.material.Kr) {
+            rays.removeIf(r -> inter.normal.dotProduct(r.getDirection()) <= 0);
+        }
+        return rays;
+    }
+
 }
@@ -7,5 +7,9 @@ public enum RayTracerType {
    /** Simple (basic) ray tracer */
    SIMPLE,
    /** Ray tracer using Voxels grid */
-   VOXEL
+   VOXEL,
+   /** Ray tracer using a two-level voxel grid, with nested grids in the dense voxels */
+   HIERARCHICAL_VOXEL,
+   /** Ray tracer using a wide bounding volume hierarchy */
+   BVH
 }
@@ -3,8 +3,8 @@ package renderer;
 import primitives.Color;
 import primitives.Double3;
 import primitives.Ray;
-import primitives.Vector;
 import scene.Scene;
+import scene.SceneSnapshot;
 import geometries.Intersectable.Intersection;
 
 import java.util.List;
@@ -19,29 +19,34 @@ public class SimpleRayTracer extends RayTracerBase {
     }
 
     public SimpleRayTracer(Scene scene, Blackboard blackboard) {
-        super(scene);
+        this(compile(scene), blackboard);
+    }
+
+    /**
+     * Constructs a SimpleRayTracer of a compiled scene snapshot with the given blackboard settings.
+     *
+     * @param snapshot   The scene's snapshot.
+     * @param blackboard The blackboard settings for rendering.
+     */
+    public SimpleRayTracer(SceneSnapshot snapshot, Blackboard blackboard) {
+        super(snapshot);
         this.blackboard = blackboard;
     }
 
     @Override
     public Color traceRay(Ray ray) {
         Intersection intersection = findClosestIntersection(ray);
-        return intersection == null ? scene.background : calcColor(intersection, ray);
+        return intersection == null ? snapshot.getBackground() : calcColor(intersection, ray);
     }
 
     @Override
     protected Intersection findClosestIntersection(Ray ray) {
-        List<Intersection> intersections = scene.geometries.calculateIntersections(ray);
-        if (intersections == null) return null;
-        return ray.findClosestIntersection(intersections);
+        return snapshot.getGeometries().calculateClosestIntersection(ray);
     }
 
     @Override
-    protected Double3 transparency(Intersection intersection) {
-        Vector lightDirection = intersection.l.scale(-1);
-        Ray lightRay = new Ray(intersection.point, lightDirection, intersection.normal);
-        double distance = intersection.light.getDistance(lightRay.getHead());
-        List<Intersection> intersections = scene.geometries.calculateIntersections(lightRay, distance);
+    protected Double3 transparency(Ray shadowRay, double maxDistance) {
+        List<Intersection> intersections = snapshot.getGeometries().calculateIntersections(shadowRay, maxDistance);
         if (intersections == null) return Double3.ONE;
 
         Double3 ktr = Double3.ONE;
@@ -1,12 +1,21 @@
 package renderer;
 
 import acceleration.AABB;
+import acceleration.Frustum;
+import acceleration.GridCache;
+import acceleration.GridTuner;
 import acceleration.VoxelGrid;
+import geometries.BoundedProxy;
 import geometries.Intersectable;
+import geometries.Plane;
+import geometries.Tube;
 import geometries.Intersectable.Intersection;
 import primitives.*;
 import scene.Scene;
+import scene.SceneSnapshot;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -14,12 +23,26 @@ import java.util.List;
  * A ray tracer that uses a voxel grid for spatial acceleration.
  * This class optimizes ray tracing by dividing the scene into a grid of voxels,
  * allowing efficient intersection calculations for bounded and unbounded geometries.
+ * <p>
+ * The unbounded geometries (planes and tubes) are put in the grid as well, as {@link BoundedProxy bounded proxies}
+ * clipped to the bounding box of the bounded geometries with a margin, so a ray that hits something in the grid
+ * tests them only for their intersections before it enters the clip box (none for a ray inside it).
+ * A geometry whose proxy spans the whole clip box along two axes (such as a ground plane of a flat scene)
+ * would fill a whole layer of voxels, so it is kept out of the grid and tested along the whole ray.
  */
 public class VoxelRayTracer extends RayTracerBase {
 
     private static final int VOXELS_PER_OBJECT = 4; // Number of voxels per object for optimal grid size calculation
+    private static final int SUBDIVISION_THRESHOLD = 16; // Number of geometries of a voxel above which it gets a nested grid
+    private static final double CLIP_MARGIN = 0.01; // The margin of the proxies' clip box, relative to the scene's diagonal
     private final VoxelGrid voxelGrid; // The voxel grid used for spatial acceleration
-    private final List<Intersectable> unboundedGeometries; // List of geometries without bounding boxes
+    private final List<Intersectable> unboundedGeometries; // The geometries without bounding boxes tested along whole rays
+    private final List<Intersectable> clippedGeometries; // The geometries without bounding boxes tested outside the clip box
+    private final AABB proxyClip; // The clip box of the unbounded geometries' proxies in the grid, null if there are none
+    private final Frustum frustum; // The view frustum the scene is culled to, null if it is not culled
+    private final VoxelGrid frustumGrid; // The voxel grid of the geometries in the frustum, null if there are none
+    private final List<Intersectable> frustumUnboundedGeometries; // The geometries tested along whole rays in the frustum
+    private final List<Intersectable> frustumClippedGeometries; // The geometries tested outside the clip box in the frustum
 
     /**
      * Constructs a VoxelRayTracer with the given scene and default blackboard settings.
@@ -37,27 +60,169 @@ public class VoxelRayTracer extends RayTracerBase {
      * @param blackboard The blackboard settings for rendering.
      */
     public VoxelRayTracer(Scene scene, Blackboard blackboard) {
-        super(scene);
-        this.blackboard = blackboard;
+        this(scene, blackboard, false);
+    }
+
+    /**
+     * Constructs a VoxelRayTracer with the given scene and blackboard settings, optionally with a two-level grid
+     * whose voxels of more than {@value #SUBDIVISION_THRESHOLD} geometries get nested grids
+     * (see {@link VoxelGrid#subdivide}), for scenes whose geometries are spread unevenly.
+     *
+     * @param scene        The scene to be rendered.
+     * @param blackboard   The blackboard settings for rendering.
+     * @param hierarchical Whether to subdivide the dense voxels.
+     */
+    public VoxelRayTracer(Scene scene, Blackboard blackboard, boolean hierarchical) {
+        this(scene, blackboard, hierarchical, List.of());
+    }
+
+    /**
+     * Constructs a VoxelRayTracer with the given scene and blackboard settings, optionally with a two-level grid,
+     * and with a grid resolution tuned for a sample of rays (see {@link GridTuner#tune}).
+     *
+     * @param scene        The scene to be rendered.
+     * @param blackboard   The blackboard settings for rendering.
+     * @param hierarchical Whether to subdivide the dense voxels.
+     * @param sampleRays   The rays to tune the grid's resolution for, empty to choose it from the scene only.
+     */
+    public VoxelRayTracer(Scene scene, Blackboard blackboard, boolean hierarchical, List<Ray> sampleRays) {
+        this(compile(scene), blackboard, hierarchical, sampleRays);
+    }
 
-        // Calculate optimal grid size based on the number of objects in the scene
-        int objectCount = scene.geometries.getGeomitriesSize();
-        int optimalGridSize = (int) Math.cbrt(objectCount * VOXELS_PER_OBJECT);
+    /**
+     * Constructs a VoxelRayTracer of a compiled scene snapshot with the given blackboard settings, optionally
+     * with a two-level grid, and with a grid resolution tuned for a sample of rays (see {@link GridTuner#tune}).
+     *
+     * @param snapshot     The scene's snapshot.
+     * @param blackboard   The blackboard settings for rendering.
+     * @param hierarchical Whether to subdivide the dense voxels.
+     * @param sampleRays   The rays to tune the grid's resolution for, empty to choose it from the scene only.
+     */
+    public VoxelRayTracer(SceneSnapshot snapshot, Blackboard blackboard, boolean hierarchical, List<Ray> sampleRays) {
+        super(snapshot);
+        this.blackboard = blackboard;
 
         // Create the voxel grid based on the scene's bounding box
-        AABB sceneBounds = scene.geometries.getAABB();
-        this.voxelGrid = new VoxelGrid(sceneBounds, optimalGridSize, optimalGridSize, optimalGridSize);
-
-        // Separate bounded and unbounded geometries
-        this.unboundedGeometries = new LinkedList<>();
-        for (Intersectable geometry : scene.geometries.getGeometries()) {
-            AABB aabb = geometry.getAABB();
-            if (aabb == null) {
-                unboundedGeometries.add(geometry);
-            } else {
-                voxelGrid.addObject(geometry, aabb);
+        AABB sceneBounds = snapshot.getBounds();
+
+        // The bounded and unbounded leaf geometries, of nested collections too
+        List<Intersectable> unbounded = snapshot.getUnboundedPrimitives();
+        List<Intersectable> bounded = new ArrayList<>(snapshot.getBoundedPrimitives());
+        List<AABB> boundedBoxes = new ArrayList<>(snapshot.getBoundedPrimitiveBounds());
+        // Put the unbounded geometries in the grid as proxies clipped to the scene's bounds with a margin,
+        // except those whose proxies would span the clip box along two axes
+        if (sceneBounds != null && !unbounded.isEmpty()) {
+            double margin = sceneBounds.getMax().distance(sceneBounds.getMin()) * CLIP_MARGIN;
+            this.proxyClip = sceneBounds.expand(margin);
+            this.unboundedGeometries = new ArrayList<>();
+            this.clippedGeometries = new ArrayList<>();
+            for (Intersectable geometry : unbounded) {
+                BoundedProxy proxy = BoundedProxy.of(geometry, proxyClip);
+                if (proxy != null && spansTwoAxes(proxy.getAABB(), proxyClip)) {
+                    unboundedGeometries.add(geometry);
+                    continue;
+                }
+                // a geometry that misses the clip box has all its intersections outside it
+                clippedGeometries.add(geometry);
+                if (proxy != null) {
+                    bounded.add(proxy);
+                    boundedBoxes.add(proxy.getAABB());
+                    sceneBounds = sceneBounds.union(proxy.getAABB());
+                }
             }
+        } else {
+            this.proxyClip = null;
+            this.unboundedGeometries = unbounded;
+            this.clippedGeometries = List.of();
+        }
+        // Calculate the grid's resolution along each axis from the scene's extents and geometries
+        int[] resolution = GridTuner.resolution(sceneBounds, boundedBoxes, VOXELS_PER_OBJECT, blackboard.getMaxVoxels());
+        if (blackboard.getAccelerationCache() != null) {
+            // Load the grid from the cache, or build it and store it there
+            this.voxelGrid = GridCache.build(Path.of(blackboard.getAccelerationCache()), sceneBounds,
+                    resolution[0], resolution[1], resolution[2], bounded, boundedBoxes);
+        } else if (!sampleRays.isEmpty()) {
+            // Build the grid of the resolution that suits the sample rays best
+            this.voxelGrid = GridTuner.tune(sceneBounds, bounded, boundedBoxes, sampleRays, blackboard.getMaxVoxels());
+        } else {
+            // Insert the bounded geometries into the grid, in parallel for large scenes
+            this.voxelGrid = new VoxelGrid(sceneBounds, resolution[0], resolution[1], resolution[2]);
+            voxelGrid.addObjects(bounded, boundedBoxes);
+        }
+        if (hierarchical) voxelGrid.subdivide(SUBDIVISION_THRESHOLD);
+        this.frustum = null;
+        this.frustumGrid = null;
+        this.frustumUnboundedGeometries = null;
+        this.frustumClippedGeometries = null;
+    }
+
+    /**
+     * Checks whether a proxy's bounding box spans the whole clip box along at least two axes
+     *
+     * @param box  The proxy's bounding box.
+     * @param clip The clip box.
+     * @return True if the box covers the clip box's extent along two or three axes.
+     */
+    private static boolean spansTwoAxes(AABB box, AABB clip) {
+        Point min = box.getMin(), max = box.getMax(), clipMin = clip.getMin(), clipMax = clip.getMax();
+        int axes = 0;
+        if (min.getX() <= clipMin.getX() && max.getX() >= clipMax.getX()) ++axes;
+        if (min.getY() <= clipMin.getY() && max.getY() >= clipMax.getY()) ++axes;
+        if (min.getZ() <= clipMin.getZ() && max.getZ() >= clipMax.getZ()) ++axes;
+        return axes >= 2;
+    }
+
+    /**
+     * Constructs a view of a VoxelRayTracer for the rays within a view frustum.
+     * The view intersects the rays within the frustum with the geometries that may intersect
+     * the frustum only, and traces all other rays as the full ray tracer.
+     *
+     * @param tracer  The full ray tracer.
+     * @param frustum The view frustum.
+     */
+    private VoxelRayTracer(VoxelRayTracer tracer, Frustum frustum) {
+        super(tracer.snapshot);
+        this.blackboard = tracer.blackboard;
+        this.voxelGrid = tracer.voxelGrid;
+        this.unboundedGeometries = tracer.unboundedGeometries;
+        this.clippedGeometries = tracer.clippedGeometries;
+        this.proxyClip = tracer.proxyClip;
+        this.frustum = frustum;
+        this.frustumGrid = voxelGrid.cull(frustum);
+        this.frustumUnboundedGeometries = cull(unboundedGeometries, frustum);
+        this.frustumClippedGeometries = cull(clippedGeometries, frustum);
+    }
+
+    /**
+     * Culls unbounded geometries to a view frustum: the planes and tubes that the frustum's rays cannot reach
+     * are removed.
+     *
+     * @param geometries The unbounded geometries.
+     * @param frustum    The view frustum.
+     * @return The geometries that the frustum's rays may reach.
+     */
+    private static List<Intersectable> cull(List<Intersectable> geometries, Frustum frustum) {
+        List<Intersectable> culled = new LinkedList<>();
+        for (Intersectable geometry : geometries) {
+            if (geometry instanceof Plane plane && !frustum.intersectsPlane(plane.getPoint(), plane.getNormal()))
+                continue;
+            if (geometry instanceof Tube tube && !frustum.intersectsTube(tube.getAxis(), tube.getRadius()))
+                continue;
+            culled.add(geometry);
         }
+        return culled;
+    }
+
+    /**
+     * Returns a view of this ray tracer for the rays within a view frustum,
+     * with the voxel grid and the unbounded geometries culled to the frustum.
+     *
+     * @param frustum The view frustum.
+     * @return The view of this ray tracer for the frustum's rays.
+     */
+    @Override
+    RayTracerBase cull(Frustum frustum) {
+        return new VoxelRayTracer(this, frustum);
     }
 
     /**
@@ -69,19 +234,36 @@ public class VoxelRayTracer extends RayTracerBase {
     @Override
     public Color traceRay(Ray ray) {
         Intersection intersection = findClosestIntersection(ray);
-        return intersection == null ? scene.background : calcColor(intersection, ray);
+        return intersection == null ? snapshot.getBackground() : calcColor(intersection, ray);
     }
 
     /**
      * Finds the closest intersection of a ray with the scene's geometries.
+     * A ray within the culled frustum is intersected with the geometries in the frustum only.
      *
      * @param ray The ray to find intersections for.
      * @return The closest intersection or null if no intersection is found.
      */
     @Override
     protected Intersection findClosestIntersection(Ray ray) {
-        Intersection voxelHit = voxelGrid.findClosestIntersection(ray);
-        Intersection unboundedHit = findClosestUnbounded(ray);
+        if (frustum != null && frustum.contains(ray))
+            return findClosestIntersection(ray, frustumGrid, frustumUnboundedGeometries, frustumClippedGeometries);
+        return findClosestIntersection(ray, voxelGrid, unboundedGeometries, clippedGeometries);
+    }
+
+    /**
+     * Finds the closest intersection of a ray with the geometries of a voxel grid and unbounded geometries.
+     *
+     * @param ray       The ray to find intersections for.
+     * @param grid      The voxel grid, null if it is empty.
+     * @param unbounded The unbounded geometries tested along the whole ray.
+     * @param clipped   The unbounded geometries tested outside the clip box.
+     * @return The closest intersection or null if no intersection is found.
+     */
+    private Intersection findClosestIntersection(Ray ray, VoxelGrid grid, List<Intersectable> unbounded,
+                                                 List<Intersectable> clipped) {
+        Intersection voxelHit = grid == null ? null : grid.findClosestIntersection(ray);
+        Intersection unboundedHit = findClosestUnbounded(ray, unbounded, clipped, voxelHit != null);
 
         if (voxelHit == null) return unboundedHit;
         if (unboundedHit == null) return voxelHit;
@@ -93,16 +275,50 @@ public class VoxelRayTracer extends RayTracerBase {
     }
 
     /**
-     * Finds the closest intersection of a ray with unbounded geometries.
+     * Finds the closest intersection of each ray of a packet of coherent rays,
+     * walking the voxel grid with all the rays together.
+     * A packet within the culled frustum is intersected with the geometries in the frustum only.
      *
-     * @param ray The ray to find intersections for.
+     * @param rays The rays of the packet.
+     * @return The closest intersection of each ray, null where there is none.
+     */
+    @Override
+    protected Intersection[] findClosestIntersections(Ray[] rays) {
+        boolean culled = frustum != null;
+        for (int i = 0; culled && i < rays.length; i++)
+            culled = frustum.contains(rays[i]);
+        VoxelGrid grid = culled ? frustumGrid : voxelGrid;
+        List<Intersectable> unbounded = culled ? frustumUnboundedGeometries : unboundedGeometries;
+        List<Intersectable> clipped = culled ? frustumClippedGeometries : clippedGeometries;
+
+        Intersection[] hits = grid == null ? new Intersection[rays.length] : grid.findClosestIntersections(rays);
+        for (int i = 0; i < rays.length; i++) {
+            Intersection unboundedHit = findClosestUnbounded(rays[i], unbounded, clipped, hits[i] != null);
+            if (unboundedHit != null && (hits[i] == null ||
+                    rays[i].getHead().distanceSquared(unboundedHit.point) < rays[i].getHead().distanceSquared(hits[i].point)))
+                hits[i] = unboundedHit;
+        }
+        return hits;
+    }
+
+    /**
+     * Finds the closest intersection of a ray with unbounded geometries: along the whole ray for the geometries
+     * that are not in the grid, and outside the proxies' clip box for the others. The grid lies within the clip box,
+     * so for a ray that hits something in the grid, only the intersections before the ray enters the clip box may
+     * be nearer, and a ray that starts inside the clip box needs no test of those geometries at all.
+     *
+     * @param ray       The ray to find intersections for.
+     * @param unbounded The unbounded geometries tested along the whole ray.
+     * @param clipped   The unbounded geometries tested outside the clip box.
+     * @param gridHit   Whether the ray hits something in the grid.
      * @return The closest intersection or null if no intersection is found.
      */
-    private Intersection findClosestUnbounded(Ray ray) {
+    private Intersection findClosestUnbounded(Ray ray, List<Intersectable> unbounded, List<Intersectable> clipped,
+                                              boolean gridHit) {
         Intersection closest = null;
         double minDist = Double.POSITIVE_INFINITY;
 
-        for (Intersectable g : unboundedGeometries) {
+        for (Intersectable g : unbounded) {
             List<Intersection> hits = g.calculateIntersections(ray);
             if (hits != null) {
                 for (Intersection i : hits) {
@@ -114,25 +330,114 @@ public class VoxelRayTracer extends RayTracerBase {
                 }
             }
         }
+        if (clipped.isEmpty()) return closest;
+
+        double maxDistance = Double.POSITIVE_INFINITY;
+        if (gridHit) {
+            double[] interval = proxyClip.intersectionInterval(ray);
+            if (interval != null) maxDistance = interval[0];
+            if (maxDistance <= 0) return closest;
+        }
+        for (Intersectable g : clipped) {
+            List<Intersection> hits = g.calculateIntersections(ray, maxDistance);
+            if (hits != null) {
+                for (Intersection i : hits) {
+                    if (proxyClip.contains(i.point)) continue; // found by the proxy
+                    double dist = ray.getHead().distance(i.point);
+                    if (dist < minDist) {
+                        minDist = dist;
+                        closest = i;
+                    }
+                }
+            }
+        }
         return closest;
     }
 
     /**
-     * Calculates the transparency factor for a given intersection.
+     * Calculates the transparency factor along a shadow ray.
      *
-     * @param intersection The intersection to calculate transparency for.
+     * @param shadowRay   The shadow ray.
+     * @param maxDistance The distance of the light source from the ray's head.
      * @return The transparency factor as a Double3 object.
      */
     @Override
-    protected Double3 transparency(Intersection intersection) {
-        Vector ld = intersection.l.scale(-1); // Light direction
-        Ray tRay = new Ray(intersection.point, ld, intersection.normal); // Transparency ray
-        double maxDist = intersection.light.getDistance(tRay.getHead()); // Maximum distance to the light source
+    protected Double3 transparency(Ray shadowRay, double maxDistance) {
+        // Find the intersections along the transparency ray, up to the first opaque one
+        Double3 ktr = transparency(voxelGrid.findAllIntersections(shadowRay, maxDistance, VoxelRayTracer::isOpaque));
+        return unboundedTransparency(ktr, shadowRay, maxDistance);
+    }
 
-        // Find all intersections along the transparency ray
-        List<Intersection> intersections = voxelGrid.findAllIntersections(tRay, maxDist);
-        if (intersections == null) return Double3.ONE;
+    /**
+     * Accumulates the transparency factors of the unbounded geometries' intersections along a shadow ray:
+     * along the whole ray for the geometries that are not in the grid, and outside the proxies' clip box for
+     * the others. The latter are not tested for a ray within the clip box up to the light source.
+     *
+     * @param ktr         The transparency factor so far.
+     * @param shadowRay   The shadow ray.
+     * @param maxDistance The distance of the light source from the ray's head.
+     * @return The transparency factor as a Double3 object.
+     */
+    private Double3 unboundedTransparency(Double3 ktr, Ray shadowRay, double maxDistance) {
+        if (ktr == Double3.ZERO) return ktr;
+        for (Intersectable geometry : unboundedGeometries) {
+            List<Intersection> hits = geometry.calculateIntersections(shadowRay, maxDistance);
+            if (hits == null) continue;
+            for (Intersection inter : hits) {
+                ktr = ktr.product(inter.material.Kt);
+                if (ktr.lowerThan(MIN_CALC_COLOR_K)) return Double3.ZERO;
+            }
+        }
+        if (clippedGeometries.isEmpty()) return ktr;
+        if (proxyClip.contains(shadowRay.getHead())
+                && proxyClip.intersectionInterval(shadowRay)[1] >= maxDistance) return ktr;
+        for (Intersectable geometry : clippedGeometries) {
+            List<Intersection> hits = geometry.calculateIntersections(shadowRay, maxDistance);
+            if (hits == null) continue;
+            for (Intersection inter : hits) {
+                if (proxyClip.contains(inter.point)) continue; // found by the proxy
+                ktr = ktr.product(inter.material.Kt);
+                if (ktr.lowerThan(MIN_CALC_COLOR_K)) return Double3.ZERO;
+            }
+        }
+        return ktr;
+    }
 
+    /**
+     * Calculates the transparency factor along each ray of a packet of shadow rays,
+     * walking the voxel grid with all the rays together.
+     *
+     * @param shadowRays   The shadow rays of the packet.
+     * @param maxDistances The distance of the light source from each ray's head.
+     * @return The transparency factor of each ray.
+     */
+    @Override
+    protected Double3[] transparency(Ray[] shadowRays, double[] maxDistances) {
+        List<List<Intersection>> hits = voxelGrid.findAllIntersections(shadowRays, maxDistances, VoxelRayTracer::isOpaque);
+        Double3[] ktrs = new Double3[shadowRays.length];
+        for (int i = 0; i < shadowRays.length; i++)
+            ktrs[i] = unboundedTransparency(transparency(hits.get(i)), shadowRays[i], maxDistances[i]);
+        return ktrs;
+    }
+
+    /**
+     * Checks whether an intersection blocks the light completely,
+     * so a shadow ray can stop at it.
+     *
+     * @param intersection The intersection along a shadow ray.
+     * @return True if the geometry's transparency is negligible.
+     */
+    private static boolean isOpaque(Intersection intersection) {
+        return intersection.material.Kt.lowerThan(MIN_CALC_COLOR_K);
+    }
+
+    /**
+     * Accumulates the transparency factors of the intersections along a shadow ray.
+     *
+     * @param intersections The intersections along the shadow ray.
+     * @return The transparency factor as a Double3 object.
+     */
+    private Double3 transparency(List<Intersection> intersections) {
         Double3 ktr = Double3.ONE; // Transparency factor
         for (Intersection inter : intersections) {
             ktr = ktr.product(inter.material.Kt); // Accumulate transparency factors
@@ -0,0 +1,437 @@
+package renderer;
+
+import geometries.Intersectable.Intersection;
+import lighting.LightSource;
+import primitives.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static renderer.RayTracerBase.*;
+
+/**
+ * Breadth-first ("wavefront") ray tracing, the batch entry point {@link RayTracerBase#traceWavefront(Ray[])}.
+ * Instead of following the reflection and refraction tree of each ray depth-first, the rays are
+ * traced generation by generation, in stages:
+ * <ol>
+ *     <li>intersect - the rays of the generation are sorted by direction octant and origin,
+ *     and their closest intersections are found in that order;</li>
+ *     <li>shade - the local effects of the hits are calculated; with hard shadows the shadow rays
+ *     of all the hits towards each light source are queued, sorted and traced in that order;</li>
+ *     <li>spawn - the refracted and reflected rays of the hits are queued as the next generation.</li>
+ * </ol>
+ * The primary generation and its shadow rays are coherent, and are traced in packets; the rays of
+ * later generations diverge, and tracing them as packets costs more than it saves, so they are
+ * traced one by one (still in sorted order).
+ * After the last generation the colors are folded back from the last generation to the first,
+ * accumulating each global effect in the same order and with the same operations as the recursive
+ * path, so the images are the same as with recursive tracing.
+ */
+final class WavefrontTracer {
+    /** The number of bits of each coordinate in the origin sort key */
+    private static final int ORIGIN_BITS = 13;
+    /** The number of bits of a ray's index packed below its sort key */
+    private static final int INDEX_BITS = 21;
+    /** The largest quantized coordinate in the origin sort key */
+    private static final double ORIGIN_SCALE = (1 << ORIGIN_BITS) - 1;
+
+    /** The ray tracer whose intersection and shading methods are used */
+    private final RayTracerBase tracer;
+    /** The number of rays of the primary generation traced together as a packet */
+    private final int packetSize;
+    /** Whether the shadow rays of a generation are traced as batches per light source */
+    private final boolean batchShadows;
+
+    /**
+     * One generation of rays in structure-of-arrays layout.
+     * The rays of a generation are grouped by the global effect (refraction or reflection
+     * of a hit of the previous generation) that spawned them; the rays of a group are consecutive.
+     */
+    private static final class Generation {
+        /** The rays */
+        final Ray[] rays;
+        /** The accumulated attenuation factor of each ray */
+        final Double3[] k;
+        /** The number of rays traced together as a packet */
+        final int packetSize;
+        /** The closest intersection of each ray, null where there is none; released once spawned */
+        Intersection[] hits;
+        /** Whether each ray misses the scene */
+        final boolean[] missed;
+        /** Whether each hit faces the ray (and is shaded) */
+        final boolean[] shaded;
+        /** The local effects of each shaded hit */
+        final Color[] local;
+        /** The group of the next generation spawned by the refraction of each hit, -1 for none */
+        int[] refracted = null;
+        /** The group of the next generation spawned by the reflection of each hit, -1 for none */
+        int[] reflected = null;
+
+        /** The first ray of each group */
+        final int[] groupStart;
+        /** The number of rays of each group */
+        final int[] groupSize;
+        /** The attenuation factor (Kt or Kr) of the global effect of each group */
+        final Double3[] groupKx;
+
+        /**
+         * Constructs a generation
+         *
+         * @param rays       the rays
+         * @param k          the accumulated attenuation factor of each ray
+         * @param groupStart the first ray of each group
+         * @param groupSize  the number of rays of each group
+         * @param groupKx    the attenuation factor of the global effect of each group
+         * @param packetSize the number of rays traced together as a packet
+         */
+        Generation(Ray[] rays, Double3[] k, int[] groupStart, int[] groupSize, Double3[] groupKx, int packetSize) {
+            this.rays = rays;
+            this.packetSize = packetSize;
+            this.k = k;
+            this.groupStart = groupStart;
+            this.groupSize = groupSize;
+            this.groupKx = groupKx;
+            hits = new Intersection[rays.length];
+            missed = new boolean[rays.length];
+            shaded = new boolean[rays.length];
+            local = new Color[rays.length];
+        }
+    }
+
+    /**
+     * Constructs a wavefront tracer
+     *
+     * @param tracer the ray tracer whose intersection and shading methods are used
+     */
+    WavefrontTracer(RayTracerBase tracer) {
+        this.tracer = tracer;
+        packetSize = tracer.blackboard.getPacketSize();
+        batchShadows = !tracer.blackboard.useSoftShadows() && !tracer.blackboard.useStochasticLights();
+    }
+
+    /**
+     * Traces rays breadth-first and calculates their colors
+     *
+     * @param rays the rays
+     * @return the color of each ray
+     */
+    Color[] trace(Ray[] rays) {
+        Double3[] k = new Double3[rays.length];
+        Arrays.fill(k, INITIAL_K);
+        Generation generation = new Generation(rays, k, new int[0], new int[0], new Double3[0], packetSize);
+
+        List<Generation> generations = new ArrayList<>();
+        Color[] ambient = null;
+        for (int level = MAX_CALC_COLOR_LEVEL; ; --level) {
+            generations.add(generation);
+            intersect(generation);
+            shade(generation);
+            if (ambient == null) ambient = ambientEffects(generation);
+            Generation current = generation;
+            if (level > 1) generation = spawn(current);
+            // the hits are not needed anymore, release them before tracing the next generation
+            current.hits = null;
+            if (level == 1 || generation.rays.length == 0) break;
+        }
+
+        Color[] groupColors = null;
+        Color[] colors = null;
+        for (int g = generations.size() - 1; g >= 0; --g) {
+            colors = fold(generations.get(g), groupColors);
+            groupColors = groupColors(generations.get(g), colors);
+        }
+
+        for (int i = 0; i < rays.length; ++i)
+            if (ambient[i] != null) colors[i] = colors[i].add(ambient[i]);
+        return colors;
+    }
+
+    /**
+     * Calculates the ambient light effects of the primary generation's hits
+     *
+     * @param generation the primary generation
+     * @return the ambient light effect of each shaded hit, null where there is none
+     */
+    private Color[] ambientEffects(Generation generation) {
+        Color[] ambient = new Color[generation.rays.length];
+        for (int i = 0; i < ambient.length; ++i)
+            if (generation.shaded[i])
+                ambient[i] = tracer.snapshot.getAmbientLight().getIntensity()
+                        .scale(generation.hits[i].geometry.getMaterial().Ka);
+        return ambient;
+    }
+
+    /**
+     * The intersect stage: finds the closest intersections of a generation's rays
+     * in packets of coherent rays
+     *
+     * @param generation the generation
+     */
+    private void intersect(Generation generation) {
+        int[] order = coherentOrder(generation.rays);
+        int packetSize = generation.packetSize;
+        for (int start = 0; start < order.length; start += packetSize) {
+            int size = Math.min(packetSize, order.length - start);
+            if (size == 1) {
+                generation.hits[order[start]] = tracer.findClosestIntersection(generation.rays[order[start]]);
+                generation.missed[order[start]] = generation.hits[order[start]] == null;
+                continue;
+            }
+            Ray[] packet = new Ray[size];
+            for (int i = 0; i < size; ++i) packet[i] = generation.rays[order[start + i]];
+            Intersection[] hits = tracer.findClosestIntersections(packet);
+            for (int i = 0; i < size; ++i) {
+                generation.hits[order[start + i]] = hits[i];
+                generation.missed[order[start + i]] = hits[i] == null;
+            }
+        }
+    }
+
+    /**
+     * The shade stage: calculates the local effects of a generation's hits.
+     * With hard shadows, the shadow rays of all the hits towards each light source are traced as
+     * sorted packets; otherwise the local effects of each hit are calculated by the ray tracer.
+     *
+     * @param generation the generation
+     */
+    private void shade(Generation generation) {
+        Ray[] rays = generation.rays;
+        for (int i = 0; i < rays.length; ++i) {
+            Intersection hit = generation.hits[i];
+            if (hit == null || !tracer.preprocessIntersection(hit, rays[i].getDirection())) continue;
+            generation.shaded[i] = true;
+            generation.local[i] = batchShadows ? hit.geometry.getEmission()
+                    : tracer.calcColorLocalEffects(hit, generation.k[i]);
+        }
+        if (!batchShadows) return;
+
+        int[] lanes = new int[rays.length];
+        Ray[] shadowRays = new Ray[rays.length];
+        double[] maxDistances = new double[rays.length];
+        for (LightSource light : tracer.snapshot.getLights()) {
+            // the hits lit from their shaded side
+            int count = 0;
+            for (int i = 0; i < rays.length; ++i) {
+                Intersection hit = generation.hits[i];
+                if (!generation.shaded[i] || !tracer.setLightSource(hit, light, light.getL(hit.point))
+                        || Util.alignZero(hit.lNormal * hit.vNormal) <= 0) continue;
+                Ray shadowRay = new Ray(hit.point, hit.l.scale(-1), hit.normal);
+                lanes[count] = i;
+                shadowRays[count] = shadowRay;
+                maxDistances[count++] = light.getDistance(shadowRay.getHead());
+            }
+            if (count == 0) continue;
+
+            Double3[] ktrs = transparency(Arrays.copyOf(shadowRays, count), Arrays.copyOf(maxDistances, count),
+                    generation.packetSize);
+            for (int c = 0; c < count; ++c) {
+                int i = lanes[c];
+                Intersection hit = generation.hits[i];
+                if (ktrs[c].product(generation.k[i]).lowerThan(MIN_CALC_COLOR_K)) continue;
+                Color iL = light.getIntensity(hit.point).scale(ktrs[c]);
+                generation.local[i] = generation.local[i]
+                        .add(iL.scale(tracer.calcDiffuse(hit).add(tracer.calcSpecular(hit))));
+            }
+        }
+    }
+
+    /**
+     * Traces shadow rays in coherent order
+     *
+     * @param shadowRays   the shadow rays
+     * @param maxDistances the distance of the light source from each ray's head
+     * @param packetSize   the number of rays traced together as a packet
+     * @return the transparency factor of each ray
+     */
+    private Double3[] transparency(Ray[] shadowRays, double[] maxDistances, int packetSize) {
+        Double3[] ktrs = new Double3[shadowRays.length];
+        int[] order = coherentOrder(shadowRays);
+        for (int start = 0; start < order.length; start += packetSize) {
+            int size = Math.min(packetSize, order.length - start);
+            if (size == 1) {
+                ktrs[order[start]] = tracer.transparency(shadowRays[order[start]], maxDistances[order[start]]);
+                continue;
+            }
+            Ray[] packet = new Ray[size];
+            double[] distances = new double[size];
+            for (int i = 0; i < size; ++i) {
+                packet[i] = shadowRays[order[start + i]];
+                distances[i] = maxDistances[order[start + i]];
+            }
+            Double3[] packetKtrs = tracer.transparency(packet, distances);
+            for (int i = 0; i < size; ++i) ktrs[order[start + i]] = packetKtrs[i];
+        }
+        return ktrs;
+    }
+
+    /**
+     * The spawn stage: queues the refracted and reflected rays of a generation's hits
+     * as the next generation
+     *
+     * @param generation the generation
+     * @return the next generation
+     */
+    private Generation spawn(Generation generation) {
+        List<Ray> rays = new ArrayList<>();
+        List<Double3> k = new ArrayList<>();
+        List<Integer> groupStart = new ArrayList<>();
+        List<Double3> groupKx = new ArrayList<>();
+        int n = generation.rays.length;
+        generation.refracted = new int[n];
+        generation.reflected = new int[n];
+        Arrays.fill(generation.refracted, -1);
+        Arrays.fill(generation.reflected, -1);
+
+        for (int i = 0; i < n; ++i) {
+            if (!generation.shaded[i]) continue;
+            Intersection hit = generation.hits[i];
+            Material material = hit.geometry.getMaterial();
+            for (boolean refraction : new boolean[]{true, false}) {
+                Double3 kx = refraction ? material.Kt : material.Kr;
+                Double3 kkx = generation.k[i].product(kx);
+                if (kkx.lowerThan(MIN_CALC_COLOR_K)) continue;
+                Ray ray = refraction ? tracer.constructRefractedRay(hit) : tracer.constructReflectedRay(hit);
+                List<Ray> group = tracer.constructGlobalEffectRays(hit, ray, kx);
+                if (group.isEmpty()) continue;
+
+                (refraction ? generation.refracted : generation.reflected)[i] = groupStart.size();
+                groupStart.add(rays.size());
+                groupKx.add(kx);
+                for (Ray r : group) {
+                    rays.add(r);
+                    k.add(kkx);
+                }
+            }
+        }
+
+        int groups = groupStart.size();
+        int[] starts = new int[groups];
+        int[] sizes = new int[groups];
+        for (int g = 0; g < groups; ++g) {
+            starts[g] = groupStart.get(g);
+            sizes[g] = (g + 1 < groups ? groupStart.get(g + 1) : rays.size()) - starts[g];
+        }
+        return new Generation(rays.toArray(new Ray[0]), k.toArray(new Double3[0]),
+                starts, sizes, groupKx.toArray(new Double3[0]), 1);
+    }
+
+    /**
+     * Calculates the colors of a generation's rays (without the ambient light of the primary rays)
+     *
+     * @param generation  the generation
+     * @param groupColors the color of each group of the next generation, null if there is none
+     * @return the color of each ray
+     */
+    private Color[] fold(Generation generation, Color[] groupColors) {
+        Color[] colors = new Color[generation.rays.length];
+        for (int i = 0; i < colors.length; ++i) {
+            if (generation.missed[i]) colors[i] = tracer.snapshot.getBackground();
+            else if (!generation.shaded[i]) colors[i] = Color.BLACK;
+            else if (generation.refracted == null) colors[i] = generation.local[i];
+            else colors[i] = generation.local[i].add(groupColor(groupColors, generation.refracted[i])
+                    .add(groupColor(groupColors, generation.reflected[i])));
+        }
+        return colors;
+    }
+
+    /**
+     * Calculates the color of each group of a generation: the average color of its rays,
+     * attenuated by the factor of its global effect
+     *
+     * @param generation the generation
+     * @param colors     the color of each ray of the generation
+     * @return the color of each group
+     */
+    private static Color[] groupColors(Generation generation, Color[] colors) {
+        Color[] groupColors = new Color[generation.groupStart.length];
+        for (int g = 0; g < groupColors.length; ++g) {
+            Color color = Color.BLACK;
+            for (int i = generation.groupStart[g]; i < generation.groupStart[g] + generation.groupSize[g]; ++i)
+                color = color.add(colors[i]);
+            groupColors[g] = color.reduce(generation.groupSize[g]).scale(generation.groupKx[g]);
+        }
+        return groupColors;
+    }
+
+    /**
+     * Returns the color of a group, black for no group
+     *
+     * @param groupColors the color of each group
+     * @param group       the group, -1 for none
+     * @return the group's color
+     */
+    private static Color groupColor(Color[] groupColors, int group) {
+        return group < 0 ? Color.BLACK : groupColors[group];
+    }
+
+    /**
+     * Orders rays for coherent packets: by the octant of their direction, then along a Morton
+     * (Z-order) curve of their heads within the heads' bounding box.
+     * The keys are sorted as primitives, with each ray's index packed below its key.
+     *
+     * @param rays the rays
+     * @return the indices of the rays in coherent order
+     */
+    private static int[] coherentOrder(Ray[] rays) {
+        if (rays.length >= 1 << INDEX_BITS) return IntStream.range(0, rays.length).toArray();
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for (Ray ray : rays) {
+            Point head = ray.getHead();
+            minX = Math.min(minX, head.getX());
+            minY = Math.min(minY, head.getY());
+            minZ = Math.min(minZ, head.getZ());
+            maxX = Math.max(maxX, head.getX());
+            maxY = Math.max(maxY, head.getY());
+            maxZ = Math.max(maxZ, head.getZ());
+        }
+
+        long[] keys = new long[rays.length];
+        for (int i = 0; i < rays.length; ++i) {
+            Point head = rays[i].getHead();
+            Vector dir = rays[i].getDirection();
+            long octant = (dir.getX() < 0 ? 1 : 0) | (dir.getY() < 0 ? 2 : 0) | (dir.getZ() < 0 ? 4 : 0);
+            long key = octant << (3 * ORIGIN_BITS)
+                    | spreadBits(quantize(head.getX(), minX, maxX))
+                    | spreadBits(quantize(head.getY(), minY, maxY)) << 1
+                    | spreadBits(quantize(head.getZ(), minZ, maxZ)) << 2;
+            keys[i] = key << INDEX_BITS | i;
+        }
+
+        Arrays.sort(keys);
+        int[] order = new int[rays.length];
+        for (int i = 0; i < order.length; ++i) order[i] = (int) (keys[i] & ((1 << INDEX_BITS) - 1));
+        return order;
+    }
+
+    /**
+     * Quantizes a coordinate within a range to the bits of the origin sort key
+     *
+     * @param value the coordinate
+     * @param min   the range's minimum
+     * @param max   the range's maximum
+     * @return the quantized coordinate
+     */
+    private static long quantize(double value, double min, double max) {
+        return max > min ? (long) ((value - min) / (max - min) * ORIGIN_SCALE) : 0;
+    }
+
+    /**
+     * Spreads the bits of a quantized coordinate two bits apart, for interleaving
+     * three coordinates into a Morton code
+     *
+     * @param x the quantized coordinate
+     * @return the spread bits
+     */
+    private static long spreadBits(long x) {
+        x &= 0x1fffffL;
+        x = (x | x << 32) & 0x1f00000000ffffL;
+        x = (x | x << 16) & 0x1f0000ff0000ffL;
+        x = (x | x << 8) & 0x100f00f00f00f00fL;
+        x = (x | x << 4) & 0x10c30c30c30c30c3L;
+        x = (x | x << 2) & 0x1249249249249249L;
+        return x;
+    }
+}
@@ -1,5 +1,6 @@
 package scene;
 
+import acceleration.BottomLevelGrid;
 import geometries.*;
 import lighting.*;
 import org.json.simple.JSONArray;
@@ -11,8 +12,10 @@ import primitives.*;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * JsonScene is a utility class that provides methods to create a Scene object from a JSON file.
@@ -44,7 +47,9 @@ public class JsonScene {
         }
         if(sceneObj.containsKey("geometries")){
             JSONArray materials = (JSONArray) sceneObj.get("materials");
-            scene.geometries=parseGeometries((JSONArray) sceneObj.get("geometries"), materials);
+            Map<String, BottomLevelGrid> groups = sceneObj.containsKey("groups")
+                    ? parseGroups((JSONObject) sceneObj.get("groups"), materials) : Map.of();
+            scene.geometries=parseGeometries((JSONArray) sceneObj.get("geometries"), materials, groups);
         }
 
         if(sceneObj.containsKey("lights"))
@@ -143,16 +148,41 @@ public class JsonScene {
         double[] colors = parseCoordinates(rgb);
         return new Color(colors[0], colors[1], colors[2]);
     }
+    /**
+     * Parses a JSON object of named groups of geometries, and builds the shared grid of each group.
+     * Each group is an array of geometries in the format of the scene's geometries (without instances),
+     * in the group's own object space.
+     *
+     * @param groupsObj the JSON object mapping group names to arrays of geometries
+     * @param materials the JSON array containing the materials
+     * @return the grid of each group, by name
+     */
+    private static Map<String, BottomLevelGrid> parseGroups(JSONObject groupsObj, JSONArray materials) {
+        Map<String, BottomLevelGrid> groups = new HashMap<>();
+        for (Object name : groupsObj.keySet()) {
+            Geometries group = parseGeometries((JSONArray) groupsObj.get(name), materials, Map.of());
+            groups.put((String) name, new BottomLevelGrid(group.flatten()));
+        }
+        return groups;
+    }
+
     /**
      * Parses a JSON array of geometries and returns a Geometries object.
      *
      * @param geometriesArray the JSON array containing the geometries
+     * @param materials       the JSON array containing the materials
+     * @param groups          the grids of the named groups that the geometries may instance
      * @return a Geometries object constructed from the JSON data
      */
-    private static Geometries parseGeometries(JSONArray geometriesArray, JSONArray materials) {
+    private static Geometries parseGeometries(JSONArray geometriesArray, JSONArray materials,
+                                              Map<String, BottomLevelGrid> groups) {
         Geometries geometries = new Geometries();
         for (Object obj : geometriesArray) {
             JSONObject geometryObj = (JSONObject) obj;
+            if (geometryObj.containsKey("instance")) {
+                geometries.add(parseInstance(geometryObj, materials, groups));
+                continue;
+            }
             Geometry geometry;
             if (geometryObj.containsKey("sphere")) {
                 geometry = parseSphere((JSONObject) geometryObj.get("sphere"));
@@ -173,7 +203,7 @@ public class JsonScene {
             }
 
             if (geometryObj.containsKey("material"))
-                parseMaterial(geometryObj, geometry, materials);
+                geometry.setMaterial(parseMaterial(geometryObj, materials));
 
             if(geometryObj.containsKey("emission"))
                 geometry.setEmission(parseColor((String) geometryObj.get("emission")));
@@ -184,12 +214,54 @@ public class JsonScene {
     }
 
     /**
-     * Parses the material properties from a JSON object and sets them to the geometry.
+     * Parses a JSON object representing an instance of a named group and returns an Instance object.
+     * The instance's transformation scales, then rotates (around the X, Y and Z axes, in degrees),
+     * then translates the group; each of "scale", "rotate" and "translate" is optional.
+     * The instance's "material" and "emission", if given, override those of the group's geometries.
+     *
+     * @param geometryObj the JSON object holding the instance
+     * @param materials   the JSON array containing the materials
+     * @param groups      the grids of the named groups
+     * @return an Instance object constructed from the JSON data
+     * @throws IllegalArgumentException if the instanced group is not declared
+     */
+    private static Instance parseInstance(JSONObject geometryObj, JSONArray materials,
+                                          Map<String, BottomLevelGrid> groups) {
+        JSONObject instanceObj = (JSONObject) geometryObj.get("instance");
+        BottomLevelGrid group = groups.get((String) instanceObj.get("group"));
+        if (group == null)
+            throw new IllegalArgumentException("Unknown group " + instanceObj.get("group"));
+
+        Transform transform = Transform.IDENTITY;
+        if (instanceObj.containsKey("scale")) {
+            Object scale = instanceObj.get("scale");
+            double[] factors = scale instanceof Number number
+                    ? new double[]{number.doubleValue(), number.doubleValue(), number.doubleValue()}
+                    : parseCoordinates((String) scale);
+            transform = transform.then(Transform.scaling(new Double3(factors[0], factors[1], factors[2])));
+        }
+        if (instanceObj.containsKey("rotate")) {
+            double[] angles = parseCoordinates((String) instanceObj.get("rotate"));
+            transform = transform.then(Transform.rotation(new Double3(angles[0], angles[1], angles[2])));
+        }
+        if (instanceObj.containsKey("translate"))
+            transform = transform.then(Transform.translation(parseVector((String) instanceObj.get("translate"))));
+
+        Instance instance = new Instance(group, transform);
+        if (geometryObj.containsKey("material"))
+            instance.setMaterial(parseMaterial(geometryObj, materials));
+        if (geometryObj.containsKey("emission"))
+            instance.setEmission(parseColor((String) geometryObj.get("emission")));
+        return instance;
+    }
+
+    /**
+     * Parses the material properties of a geometry from a JSON object.
      * @param geometryObj the JSON object representing the geometry
-     * @param geometry the geometry object to set the material for
      * @param materials the JSON array containing the materials
+     * @return the geometry's material
      */
-    private static void parseMaterial(JSONObject geometryObj, Geometry geometry, JSONArray materials) {
+    private static Material parseMaterial(JSONObject geometryObj, JSONArray materials) {
 
         Object objCheck = geometryObj.get("material");
         JSONObject materialObj = null;
@@ -243,7 +315,7 @@ public class JsonScene {
                 material.setKR(krColor);
             }
         }
-        geometry.setMaterial(material);
+        return material;
     }
 
     /**
@@ -71,4 +71,14 @@ public class Scene {
         this.lights = lights;
         return this;
     }
+
+    /**
+     * Compiles a frozen snapshot of the scene for rendering (see {@link SceneSnapshot}).
+     * Changes to the scene afterward do not affect the snapshot.
+     *
+     * @return the snapshot
+     */
+    public SceneSnapshot compile() {
+        return new SceneSnapshot(this);
+    }
 }
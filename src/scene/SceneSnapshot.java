@@ -0,0 +1,159 @@
+package scene;
+
+import acceleration.AABB;
+import geometries.Geometries;
+import geometries.Intersectable;
+import lighting.AmbientLight;
+import lighting.LightSource;
+import primitives.Color;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A frozen snapshot of a scene for rendering, compiled once by {@link Scene#compile()}.
+ * The scene's nested geometry collections are flattened into their leaf geometries (primitives),
+ * which are split into the bounded primitives, with their bounding boxes, and the unbounded ones,
+ * along with the scene's bounding box. The lights are copied to an array too.
+ * <p>
+ * The ray tracers read the snapshot instead of the scene's public mutable lists, so the render threads
+ * share plain read-only data with no locking, and changing the scene (adding geometries or lights,
+ * also to a nested collection) after its snapshot was compiled does not affect the snapshot.
+ * The geometries themselves are shared with the scene, and must not be changed while rendering.
+ */
+public final class SceneSnapshot {
+    /** The name of the scene */
+    private final String name;
+    /** The background color */
+    private final Color background;
+    /** The ambient light */
+    private final AmbientLight ambientLight;
+    /** The primitives as one flat collection, for tracers that intersect all of them */
+    private final Geometries geometries;
+    /** The bounded primitives, in order */
+    private final List<Intersectable> boundedPrimitives;
+    /** The bounding boxes of the bounded primitives, in the same order */
+    private final List<AABB> boundedPrimitiveBounds;
+    /** The unbounded primitives, in order */
+    private final List<Intersectable> unboundedPrimitives;
+    /** The lights */
+    private final List<LightSource> lights;
+    /** The bounding box of the bounded primitives, null if there are none */
+    private final AABB bounds;
+
+    /**
+     * Compiles a snapshot of a scene
+     *
+     * @param scene the scene
+     */
+    SceneSnapshot(Scene scene) {
+        this.name = scene.name;
+        this.background = scene.background;
+        this.ambientLight = scene.ambientLight;
+        this.lights = Collections.unmodifiableList(Arrays.asList(scene.lights.toArray(new LightSource[0])));
+
+        List<Intersectable> primitives = scene.geometries.flatten();
+        this.geometries = new Geometries(primitives);
+        List<Intersectable> bounded = new ArrayList<>(primitives.size());
+        List<AABB> boundedBoxes = new ArrayList<>(primitives.size());
+        List<Intersectable> unbounded = new ArrayList<>();
+        AABB box = null;
+        for (Intersectable primitive : primitives) {
+            AABB primitiveBox = primitive.getAABB();
+            if (primitiveBox == null) unbounded.add(primitive);
+            else {
+                bounded.add(primitive);
+                boundedBoxes.add(primitiveBox);
+                box = box == null ? primitiveBox : box.union(primitiveBox);
+            }
+        }
+        this.boundedPrimitives = Collections.unmodifiableList(bounded);
+        this.boundedPrimitiveBounds = Collections.unmodifiableList(boundedBoxes);
+        this.unboundedPrimitives = Collections.unmodifiableList(unbounded);
+        this.bounds = box;
+    }
+
+    /**
+     * Returns the name of the scene
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the background color
+     *
+     * @return the background color
+     */
+    public Color getBackground() {
+        return background;
+    }
+
+    /**
+     * Returns the ambient light
+     *
+     * @return the ambient light
+     */
+    public AmbientLight getAmbientLight() {
+        return ambientLight;
+    }
+
+    /**
+     * Returns the primitives as one flat collection, in order, for intersecting all of them.
+     * The collection must not be changed.
+     *
+     * @return the geometries
+     */
+    public Geometries getGeometries() {
+        return geometries;
+    }
+
+    /**
+     * Returns the bounded primitives, in order
+     *
+     * @return an unmodifiable list of the primitives
+     */
+    public List<Intersectable> getBoundedPrimitives() {
+        return boundedPrimitives;
+    }
+
+    /**
+     * Returns the bounding boxes of the bounded primitives, in the order of {@link #getBoundedPrimitives()}
+     *
+     * @return an unmodifiable list of the bounding boxes
+     */
+    public List<AABB> getBoundedPrimitiveBounds() {
+        return boundedPrimitiveBounds;
+    }
+
+    /**
+     * Returns the unbounded primitives (planes, tubes), in order
+     *
+     * @return an unmodifiable list of the primitives
+     */
+    public List<Intersectable> getUnboundedPrimitives() {
+        return unboundedPrimitives;
+    }
+
+    /**
+     * Returns the lights
+     *
+     * @return an unmodifiable list of the lights
+     */
+    public List<LightSource> getLights() {
+        return lights;
+    }
+
+    /**
+     * Returns the bounding box of the bounded primitives
+     *
+     * @return the bounding box, or null if there are no bounded primitives
+     */
+    public AABB getBounds() {
+        return bounds;
+    }
+}
@@ -0,0 +1,148 @@
+package acceleration;
+
+import geometries.*;
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the on-disk voxel grid cache
+ */
+class GridCacheTests {
+    /**
+     * Test for the cache: the first build stores the grid, the second loads it and finds the same
+     * intersections, moved geometry misses the cache, and a corrupt cached grid is rebuilt
+     */
+    @Test
+    public void testCache() throws IOException {
+        Path directory = Files.createTempDirectory("gridcache");
+        try {
+            testCache(directory);
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.toList()) Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Tests the cache in a directory
+     *
+     * @param directory the cache directory
+     * @throws IOException if the cache directory cannot be read
+     */
+    private void testCache(Path directory) throws IOException {
+        List<Intersectable> geometries = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            for (int k = 0; k < 10; k++) {
+                Point center = new Point(i * 10, (i * k) % 5 * 3, k * 10 + 50);
+                if ((i + k) % 2 == 0) geometries.add(new Sphere(center, 2 + (i + k) % 3));
+                else geometries.add(new Triangle(center, center.add(new Vector(4, 0, 1)), center.add(new Vector(0, 5, 2))));
+            }
+        List<AABB> boxes = geometries.stream().map(Intersectable::getAABB).toList();
+        AABB bounds = new Geometries(geometries).getAABB();
+
+        VoxelGrid built = new VoxelGrid(bounds, 10, 5, 10);
+        built.addObjects(geometries, boxes);
+        VoxelGrid stored = GridCache.build(directory, bounds, 10, 5, 10, geometries, boxes);
+        assertEquals(1, files(directory), "the first build must store the grid");
+        Path file = directory.resolve(String.format("voxelgrid-%016x.bin", GridCache.key(bounds, 10, 5, 10, geometries, boxes)));
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        VoxelGrid loaded = GridCache.build(directory, bounds, 10, 5, 10, geometries, boxes);
+        assertEquals(modified, Files.getLastModifiedTime(file).toMillis(), "the second build must load the grid");
+
+        for (int r = 0; r < 400; r++) {
+            Ray ray = new Ray(new Point(45, 6, -20), new Vector(r % 20 * 0.05 - 0.5, r / 20 * 0.02 - 0.2, 1));
+            Intersectable.Intersection expected = built.findClosestIntersection(ray);
+            for (VoxelGrid grid : new VoxelGrid[]{stored, loaded}) {
+                Intersectable.Intersection actual = grid.findClosestIntersection(ray);
+                if (expected == null) assertNull(actual, "the cached grid found a wrong hit");
+                else assertEquals(expected.point, actual.point, "the cached grid found a wrong closest hit");
+                assertEquals(built.findAllIntersections(ray, 200).size(), grid.findAllIntersections(ray, 200).size(),
+                        "the cached grid found wrong intersections");
+            }
+        }
+
+        // moving one geometry changes the key
+        List<Intersectable> moved = new ArrayList<>(geometries);
+        moved.set(0, new Sphere(new Point(0, 0, 51), 2));
+        List<AABB> movedBoxes = moved.stream().map(Intersectable::getAABB).toList();
+        assertNotEquals(GridCache.key(bounds, 10, 5, 10, geometries, boxes),
+                GridCache.key(bounds, 10, 5, 10, moved, movedBoxes), "moved geometry must change the key");
+        assertNotEquals(GridCache.key(bounds, 10, 5, 10, geometries, boxes),
+                GridCache.key(bounds, 10, 10, 10, geometries, boxes), "another resolution must change the key");
+
+        // a corrupt cached grid is rebuilt and replaced
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 4));
+        VoxelGrid rebuilt = GridCache.build(directory, bounds, 10, 5, 10, geometries, boxes);
+        assertArrayEquals(bytes, Files.readAllBytes(file), "a corrupt cached grid must be replaced");
+        Ray ray = new Ray(new Point(45, 6, -20), new Vector(0, 0, 1));
+        assertEquals(built.findAllIntersections(ray, 200).size(), rebuilt.findAllIntersections(ray, 200).size(),
+                "a rebuilt grid found wrong intersections");
+    }
+
+    /**
+     * Test for the cache key of shapes: geometries of the same class and the same bounding box that
+     * overlap different voxels, so the grid cached for one must not be reused for the other
+     */
+    @Test
+    public void testShapes() throws IOException {
+        Path directory = Files.createTempDirectory("gridcache");
+        try {
+            List<Intersectable> first = List.of(new Triangle(new Point(0, 0, -5), new Point(10, 0, 5), new Point(0, 10, 5)));
+            List<Intersectable> second = List.of(new Triangle(new Point(10, 10, -5), new Point(0, 10, 5), new Point(10, 0, 5)));
+            List<AABB> firstBoxes = List.of(first.getFirst().getAABB());
+            List<AABB> secondBoxes = List.of(second.getFirst().getAABB());
+            AABB bounds = firstBoxes.getFirst();
+            assertEquals(bounds.getMin(), secondBoxes.getFirst().getMin(), "the bounding boxes must be the same");
+            assertEquals(bounds.getMax(), secondBoxes.getFirst().getMax(), "the bounding boxes must be the same");
+
+            // ============ Equivalence Partitions Tests ==============
+            // TC01: the shapes have different keys
+            assertNotEquals(GridCache.key(bounds, 8, 8, 8, first, firstBoxes),
+                    GridCache.key(bounds, 8, 8, 8, second, secondBoxes), "another shape must change the key");
+            // TC02: the grid cached for the first triangle is not reused for the second
+            GridCache.build(directory, bounds, 8, 8, 8, first, firstBoxes);
+            VoxelGrid cached = GridCache.build(directory, bounds, 8, 8, 8, second, secondBoxes);
+            assertEquals(2, files(directory), "the second triangle's grid must be stored apart from the first's");
+            VoxelGrid built = new VoxelGrid(bounds, 8, 8, 8);
+            built.addObjects(second, secondBoxes);
+            for (int r = 0; r < 100; r++) {
+                Ray ray = new Ray(new Point(r % 10 + 0.5, r / 10 + 0.5, -20), Vector.AXIS_Z);
+                Intersectable.Intersection expected = built.findClosestIntersection(ray);
+                Intersectable.Intersection actual = cached.findClosestIntersection(ray);
+                if (expected == null) assertNull(actual, "the cached grid found a wrong hit");
+                else assertEquals(expected.point, actual.point, "the cached grid missed a hit");
+            }
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.toList()) Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Counts the cached grid files
+     *
+     * @param directory the cache directory
+     * @return the number of files in the cache directory
+     * @throws IOException if the directory cannot be listed
+     */
+    private long files(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
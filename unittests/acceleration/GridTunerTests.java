@@ -0,0 +1,89 @@
+package acceleration;
+
+import geometries.*;
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the choice of voxel grid resolutions
+ */
+class GridTunerTests {
+    /**
+     * Creates a wide flat scene: a field of small spheres on the XZ plane
+     *
+     * @return the geometries
+     */
+    private static List<Intersectable> field() {
+        List<Intersectable> geometries = new ArrayList<>();
+        for (int i = 0; i < 40; i++)
+            for (int k = 0; k < 10; k++)
+                geometries.add(new Sphere(new Point(i * 10, 0, k * 10), 1 + (i + k) % 3 * 0.5));
+        return geometries;
+    }
+
+    /**
+     * Test for the resolution: it follows the scene's extents along each axis, gives a flat axis
+     * a single voxel, respects the voxel cap, and rejects a non-positive density or cap
+     */
+    @Test
+    public void testResolution() {
+        List<Intersectable> geometries = field();
+        List<AABB> boxes = geometries.stream().map(Intersectable::getAABB).toList();
+        AABB bounds = new Geometries(geometries).getAABB();
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: a wide scene gets more voxels along its longer axis, and few along its thin one
+        int[] resolution = GridTuner.resolution(bounds, boxes, 4, 1L << 24);
+        assertTrue(resolution[0] > 3 * resolution[2], "the longer axis must get more voxels");
+        assertTrue(resolution[1] < resolution[2], "the thin axis must get fewer voxels");
+        // TC02: the voxels are not much smaller than the geometries
+        assertTrue(resolution[1] <= 4, "the voxels must not be much thinner than the geometries");
+        // TC03: the cap is respected
+        int[] capped = GridTuner.resolution(bounds, boxes, 4, 100);
+        assertTrue((long) capped[0] * capped[1] * capped[2] <= 100, "the voxel cap must be respected");
+        assertTrue(capped[0] > capped[2], "a capped grid must keep following the scene's extents");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: a flat scene gets a single voxel along its flat axis
+        List<Intersectable> triangles = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+            triangles.add(new Triangle(new Point(i * 4, 0, 0), new Point(i * 4 + 3, 0, 0), new Point(i * 4, 0, 20)));
+        AABB flat = new Geometries(triangles).getAABB();
+        assertEquals(1, GridTuner.resolution(flat, triangles.stream().map(Intersectable::getAABB).toList(),
+                4, 1L << 24)[1], "a flat axis must get a single voxel");
+        // TC11: a non-positive density or cap is rejected
+        assertThrows(IllegalArgumentException.class, () -> GridTuner.resolution(bounds, boxes, 0, 100),
+                "a non-positive density must be rejected");
+        assertThrows(IllegalArgumentException.class, () -> GridTuner.resolution(bounds, boxes, 4, 0),
+                "a non-positive voxel cap must be rejected");
+    }
+
+    /**
+     * Test for tuning: the tuned grid finds the same closest hits as a grid of the default resolution
+     */
+    @Test
+    public void testTune() {
+        List<Intersectable> geometries = field();
+        List<AABB> boxes = geometries.stream().map(Intersectable::getAABB).toList();
+        AABB bounds = new Geometries(geometries).getAABB();
+        List<Ray> rays = new ArrayList<>();
+        for (int r = 0; r < 400; r++)
+            rays.add(new Ray(new Point(200, 30, -60), new Vector(r % 20 * 0.1 - 1, -0.2 - r / 20 * 0.02, 1)));
+
+        int[] resolution = GridTuner.resolution(bounds, boxes, 4, 1L << 24);
+        VoxelGrid expected = new VoxelGrid(bounds, resolution[0], resolution[1], resolution[2]);
+        expected.addObjects(geometries, boxes);
+        VoxelGrid tuned = GridTuner.tune(bounds, geometries, boxes, rays, 1L << 24);
+        for (Ray ray : rays) {
+            Intersectable.Intersection hit = expected.findClosestIntersection(ray);
+            Intersectable.Intersection actual = tuned.findClosestIntersection(ray);
+            if (hit == null) assertNull(actual, "the tuned grid found a wrong hit");
+            else assertEquals(hit.point, actual.point, "the tuned grid found a wrong closest hit");
+        }
+    }
+}
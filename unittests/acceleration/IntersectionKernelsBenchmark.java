@@ -0,0 +1,118 @@
+package acceleration;
+
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+import java.util.Random;
+
+/**
+ * A microbenchmark of the batched intersection kernels: the scalar kernels against the kernels of the
+ * running JVM (the Vector API kernels when run with {@code --add-modules jdk.incubator.vector}).
+ * Each kernel is warmed up, then timed over several measurement rounds of many rays against batches of
+ * several sizes, and the best round is reported in nanoseconds per primitive test. The kernels' results
+ * are summed and printed, so the JIT cannot drop the work.
+ * <p>
+ * Run from the compiled classes, including the kernels of {@code vector/src}, e.g.
+ * {@code java --add-modules jdk.incubator.vector -cp <classes> acceleration.IntersectionKernelsBenchmark}
+ */
+public final class IntersectionKernelsBenchmark {
+    /** The batch sizes, as in the voxel grid's cells */
+    private static final int[] SIZES = {4, 8, 16, 64};
+    /** The number of rays of a round */
+    private static final int RAYS = 4096;
+    /** The number of warm-up rounds */
+    private static final int WARMUP_ROUNDS = 20;
+    /** The number of measurement rounds */
+    private static final int ROUNDS = 30;
+
+    /** The sum of the results, to keep the work alive */
+    private static double sink = 0;
+
+    /** Don't let anyone instantiate this class. */
+    private IntersectionKernelsBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        IntersectionKernels scalar = new ScalarKernels();
+        IntersectionKernels kernels = IntersectionKernels.get();
+        System.out.println("kernels: " + kernels.getClass().getSimpleName());
+        System.out.println("kind      size  scalar ns  kernels ns  speedup");
+        Random random = new Random(5785);
+        PackedRay[] rays = new PackedRay[RAYS];
+        for (int r = 0; r < RAYS; r++)
+            rays[r] = new PackedRay(new Ray(new Point(random.nextDouble() * 20 - 10, random.nextDouble() * 20 - 10, -20),
+                    new Vector(random.nextGaussian() * 0.2, random.nextGaussian() * 0.2, 1)));
+
+        for (int size : SIZES) {
+            double[][] data = new double[9][size];
+            for (double[] column : data)
+                for (int i = 0; i < size; i++) column[i] = random.nextDouble() * 20 - 10;
+            for (int i = 0; i < size; i++) data[3][i] = 0.25 + random.nextDouble(); // the spheres' squared radii
+            for (int i = 0; i < size; i++) { // the boxes' maximal coordinates
+                data[6][i] = data[0][i] + random.nextDouble() * 2;
+                data[7][i] = data[1][i] + random.nextDouble() * 2;
+                data[8][i] = data[2][i] + random.nextDouble() * 2;
+            }
+            for (String kind : new String[]{"spheres", "triangles", "boxes"}) {
+                double scalarTime = measure(scalar, kind, rays, data, size);
+                double kernelsTime = measure(kernels, kind, rays, data, size);
+                System.out.printf("%-9s %4d  %9.2f  %10.2f  %6.2fx%n", kind, size, scalarTime, kernelsTime,
+                        scalarTime / kernelsTime);
+            }
+        }
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    /**
+     * Measures a kernel
+     *
+     * @param kernels the kernels
+     * @param kind    the kernel: "spheres", "triangles" or "boxes"
+     * @param rays    the rays of a round
+     * @param data    the primitives' arrays
+     * @param size    the number of primitives
+     * @return the best time of a round, in nanoseconds per primitive test
+     */
+    private static double measure(IntersectionKernels kernels, String kind, PackedRay[] rays, double[][] data, int size) {
+        double[] t = new double[size];
+        for (int round = 0; round < WARMUP_ROUNDS; round++) round(kernels, kind, rays, data, size, t);
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            round(kernels, kind, rays, data, size, t);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return (double) best / ((long) rays.length * size);
+    }
+
+    /**
+     * Runs a round of a kernel over all the rays
+     *
+     * @param kernels the kernels
+     * @param kind    the kernel: "spheres", "triangles" or "boxes"
+     * @param rays    the rays
+     * @param data    the primitives' arrays
+     * @param size    the number of primitives
+     * @param t       the output hit distances
+     */
+    private static void round(IntersectionKernels kernels, String kind, PackedRay[] rays, double[][] data, int size,
+                              double[] t) {
+        double sum = 0;
+        for (PackedRay ray : rays) {
+            switch (kind) {
+                case "spheres" -> kernels.spheres(ray, data[0], data[1], data[2], data[3], size, t);
+                case "triangles" -> kernels.triangles(ray, data[0], data[1], data[2], data[3], data[4], data[5],
+                        data[6], data[7], data[8], size, t);
+                default -> kernels.boxes(ray, data[0], data[1], data[2], data[6], data[7], data[8], size, t);
+            }
+            for (int i = 0; i < size; i++) if (t[i] < Double.POSITIVE_INFINITY) sum += t[i];
+        }
+        sink += sum;
+    }
+}
@@ -0,0 +1,136 @@
+package acceleration;
+
+import geometries.Intersectable;
+import geometries.Sphere;
+import geometries.Triangle;
+import org.junit.jupiter.api.Test;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the batched intersection kernels
+ */
+class IntersectionKernelsTests {
+    /** The number of primitives in each batch (not a multiple of the vector length, to test the tails) */
+    private static final int COUNT = 37;
+    /** The number of tested rays */
+    private static final int RAYS = 200;
+
+    /**
+     * Test that the kernels of the running JVM (Vector API kernels when the module is available)
+     * agree with the scalar kernels, and that both are conservative: every exact hit of a geometry
+     * is reported by the kernel at a distance that is not beyond it
+     */
+    @Test
+    public void testKernels() {
+        Random random = new Random(5785);
+        IntersectionKernels kernels = IntersectionKernels.get();
+        IntersectionKernels scalar = new ScalarKernels();
+
+        Sphere[] spheres = new Sphere[COUNT];
+        Triangle[] triangles = new Triangle[COUNT];
+        double[] cx = new double[COUNT], cy = new double[COUNT], cz = new double[COUNT], r2 = new double[COUNT];
+        double[] ax = new double[COUNT], ay = new double[COUNT], az = new double[COUNT];
+        double[] e1x = new double[COUNT], e1y = new double[COUNT], e1z = new double[COUNT];
+        double[] e2x = new double[COUNT], e2y = new double[COUNT], e2z = new double[COUNT];
+        double[] minX = new double[COUNT], minY = new double[COUNT], minZ = new double[COUNT];
+        double[] maxX = new double[COUNT], maxY = new double[COUNT], maxZ = new double[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            Point center = randomPoint(random);
+            double radius = 0.5 + random.nextDouble() * 2;
+            spheres[i] = new Sphere(center, radius);
+            cx[i] = center.getX();
+            cy[i] = center.getY();
+            cz[i] = center.getZ();
+            r2[i] = radius * radius;
+
+            Point a = randomPoint(random);
+            Point b = a.add(randomVector(random).scale(3));
+            Point c = a.add(randomVector(random).scale(3));
+            triangles[i] = new Triangle(a, b, c);
+            ax[i] = a.getX();
+            ay[i] = a.getY();
+            az[i] = a.getZ();
+            e1x[i] = b.getX() - a.getX();
+            e1y[i] = b.getY() - a.getY();
+            e1z[i] = b.getZ() - a.getZ();
+            e2x[i] = c.getX() - a.getX();
+            e2y[i] = c.getY() - a.getY();
+            e2z[i] = c.getZ() - a.getZ();
+
+            AABB box = triangles[i].getAABB();
+            minX[i] = box.getMin().getX();
+            minY[i] = box.getMin().getY();
+            minZ[i] = box.getMin().getZ();
+            maxX[i] = box.getMax().getX();
+            maxY[i] = box.getMax().getY();
+            maxZ[i] = box.getMax().getZ();
+        }
+
+        double[] t = new double[COUNT];
+        double[] expected = new double[COUNT];
+        for (int r = 0; r < RAYS; r++) {
+            Ray ray = new Ray(randomPoint(random), randomVector(random));
+            PackedRay packed = new PackedRay(ray);
+
+            kernels.spheres(packed, cx, cy, cz, r2, COUNT, t);
+            scalar.spheres(packed, cx, cy, cz, r2, COUNT, expected);
+            assertKernel(ray, spheres, t, expected, "sphere");
+
+            kernels.triangles(packed, ax, ay, az, e1x, e1y, e1z, e2x, e2y, e2z, COUNT, t);
+            scalar.triangles(packed, ax, ay, az, e1x, e1y, e1z, e2x, e2y, e2z, COUNT, expected);
+            assertKernel(ray, triangles, t, expected, "triangle");
+
+            kernels.boxes(packed, minX, minY, minZ, maxX, maxY, maxZ, COUNT, t);
+            scalar.boxes(packed, minX, minY, minZ, maxX, maxY, maxZ, COUNT, expected);
+            assertKernel(ray, triangles, t, expected, "box");
+        }
+    }
+
+    /**
+     * Checks the results of a kernel against the scalar kernel and the exact intersections
+     *
+     * @param ray        the tested ray
+     * @param geometries the geometries of the batch
+     * @param t          the kernel's results
+     * @param expected   the scalar kernel's results
+     * @param kind       the kind of the kernel, for the messages
+     */
+    private static void assertKernel(Ray ray, Intersectable[] geometries, double[] t, double[] expected, String kind) {
+        for (int i = 0; i < COUNT; i++) {
+            if (Double.isInfinite(expected[i])) assertTrue(Double.isInfinite(t[i]), kind + " kernel found a wrong hit");
+            else assertEquals(expected[i], t[i], 1e-9, kind + " kernel differs from the scalar kernel");
+
+            List<Point> hits = geometries[i].findIntersections(ray);
+            if (hits != null)
+                for (Point hit : hits)
+                    assertTrue(t[i] <= ray.getHead().distance(hit) + 1e-9, kind + " kernel missed an exact hit");
+        }
+    }
+
+    /**
+     * Generates a random point in a cube around the origin
+     *
+     * @param random the random generator
+     * @return the point
+     */
+    private static Point randomPoint(Random random) {
+        return new Point(random.nextDouble() * 20 - 10, random.nextDouble() * 20 - 10, random.nextDouble() * 20 - 10);
+    }
+
+    /**
+     * Generates a random unit vector
+     *
+     * @param random the random generator
+     * @return the vector
+     */
+    private static Vector randomVector(Random random) {
+        return new Vector(random.nextGaussian(), random.nextGaussian(), random.nextGaussian()).normalize();
+    }
+}
@@ -9,8 +9,11 @@ import renderer.*;
 import renderer.RayTracerType;
 import scene.Scene;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.*;
+
 class VoxelGridTests {
     @Test
     public void test3DDDA()
@@ -79,4 +82,295 @@ class VoxelGridTests {
 
 
 
-}
\ No newline at end of file
+    /**
+     * Test for packet traversal: a packet of coherent rays must find the same closest
+     * intersections and shadow intersections as tracing its rays one by one
+     */
+    @Test
+    public void testPacketTraversal() {
+        Geometries spheres = new Geometries();
+        for (int i = 0; i < 8; i++)
+            for (int k = 0; k < 8; k++)
+                spheres.add(new Sphere(new Point(i * 10, (i + k) % 3 * 4, k * 10 + 50), 3));
+
+        VoxelGrid voxelGrid = new VoxelGrid(spheres.getAABB(), 8, 3, 8);
+        for (Intersectable geometry : spheres.getGeometries())
+            voxelGrid.addObject(geometry, geometry.getAABB());
+
+        Point origin = new Point(35, 4, -20);
+        Ray[] rays = new Ray[16];
+        double[] distances = new double[16];
+        for (int lane = 0; lane < rays.length; lane++) {
+            rays[lane] = new Ray(origin, new Vector(lane % 4 * 0.15 - 0.2, lane / 4 * 0.05 - 0.08, 1));
+            distances[lane] = 60 + lane * 3;
+        }
+
+        Intersectable.Intersection[] closest = voxelGrid.findClosestIntersections(rays);
+        List<List<Intersectable.Intersection>> all = voxelGrid.findAllIntersections(rays, distances);
+        for (int lane = 0; lane < rays.length; lane++) {
+            Intersectable.Intersection expected = voxelGrid.findClosestIntersection(rays[lane]);
+            if (expected == null) assertNull(closest[lane], "packet lane " + lane + " found a wrong hit");
+            else assertEquals(expected.point, closest[lane].point, "packet lane " + lane + " found a wrong closest hit");
+            assertEquals(voxelGrid.findAllIntersections(rays[lane], distances[lane]).size(), all.get(lane).size(),
+                    "packet lane " + lane + " found wrong shadow intersections");
+        }
+    }
+
+
+    /**
+     * Test for frustum culling: the rays within a frustum must find the same closest intersections
+     * in the grid culled to the frustum as in the full grid, and the planes, tubes and geometries
+     * that the frustum's rays cannot reach must be culled
+     */
+    @Test
+    public void testFrustumCulling() {
+        Geometries spheres = new Geometries();
+        for (int i = 0; i < 20; i++)
+            for (int k = 0; k < 20; k++)
+                spheres.add(new Sphere(new Point(i * 10 - 100, (i + k) % 3 * 4, -k * 10 - 20), 3));
+
+        VoxelGrid voxelGrid = new VoxelGrid(spheres.getAABB(), 20, 3, 20);
+        for (Intersectable geometry : spheres.getGeometries())
+            voxelGrid.addObject(geometry, geometry.getAABB());
+
+        Point apex = new Point(0, 4, 0);
+        Frustum frustum = new Frustum(apex, new Vector(-0.1, 0.05, -1), new Vector(0.1, 0.05, -1),
+                new Vector(0.1, -0.05, -1), new Vector(-0.1, -0.05, -1));
+        VoxelGrid culled = voxelGrid.cull(frustum);
+        assertNotNull(culled, "the frustum sees some of the spheres");
+
+        for (int r = 0; r < 100; r++) {
+            Ray ray = new Ray(apex, new Vector(r % 10 * 0.02 - 0.09, r / 10 * 0.01 - 0.045, -1));
+            assertTrue(frustum.contains(ray), "the ray is within the frustum");
+            Intersectable.Intersection expected = voxelGrid.findClosestIntersection(ray);
+            Intersectable.Intersection actual = culled.findClosestIntersection(ray);
+            if (expected == null) assertNull(actual, "the culled grid found a wrong hit");
+            else assertEquals(expected.point, actual.point, "the culled grid found a wrong closest hit");
+        }
+        assertFalse(frustum.contains(new Ray(apex, new Vector(0.5, 0, -1))), "the ray is outside the frustum");
+        assertFalse(frustum.contains(new Ray(new Point(0, 5, 0), new Vector(0, 0, -1))),
+                "the ray does not start at the apex");
+
+        assertNull(new VoxelGrid(spheres.getAABB(), 20, 3, 20).cull(frustum), "an empty grid has nothing to see");
+        assertNull(voxelGrid.cull(new Frustum(apex, new Vector(-0.1, 0.05, 1), new Vector(0.1, 0.05, 1),
+                new Vector(0.1, -0.05, 1), new Vector(-0.1, -0.05, 1))), "the spheres are behind the frustum");
+
+        assertTrue(frustum.intersectsPlane(new Point(0, -5, 0), new Vector(0, 1, 0)), "the floor is seen");
+        assertFalse(frustum.intersectsPlane(new Point(0, 0, 10), new Vector(0, 0, 1)), "the plane is behind");
+        assertTrue(frustum.intersectsTube(new Ray(new Point(-100, 4, -50), new Vector(1, 0, 0)), 1),
+                "the tube crosses the frustum");
+        assertFalse(frustum.intersectsTube(new Ray(new Point(50, 0, -50), new Vector(0, 1, 0)), 1),
+                "the tube is beside the frustum");
+        assertFalse(frustum.intersectsTube(new Ray(new Point(0, 0, 10), new Vector(0, 1, 0)), 0.5),
+                "the tube is behind the frustum");
+    }
+
+    /**
+     * Test for parallel insertion: a grid of geometries added together must find the same
+     * intersections, in the same order, as a grid of the same geometries added one by one
+     */
+    @Test
+    public void testParallelInsertion() {
+        List<Intersectable> geometries = new ArrayList<>();
+        List<AABB> boxes = new ArrayList<>();
+        for (int i = 0; i < 40; i++)
+            for (int k = 0; k < 40; k++) {
+                Point center = new Point(i * 2.5, (i * k) % 5, k * 2.5 + 50);
+                Intersectable geometry = (i + k) % 2 == 0 ? new Sphere(center, 1 + (i + k) % 3)
+                        : new Triangle(center, center.add(new Vector(4, 0, 1)), center.add(new Vector(0, 3, 2)));
+                geometries.add(geometry);
+                boxes.add(geometry.getAABB());
+            }
+        AABB bounds = new Geometries(geometries).getAABB();
+
+        VoxelGrid serial = new VoxelGrid(bounds, 23, 4, 23);
+        for (int i = 0; i < geometries.size(); i++)
+            serial.addObject(geometries.get(i), boxes.get(i));
+        VoxelGrid parallel = new VoxelGrid(bounds, 23, 4, 23);
+        parallel.addObjects(geometries, boxes);
+
+        for (int r = 0; r < 400; r++) {
+            Ray ray = new Ray(new Point(50, 3, -20), new Vector(r % 20 * 0.05 - 0.5, r / 20 * 0.01 - 0.1, 1));
+            Intersectable.Intersection expected = serial.findClosestIntersection(ray);
+            Intersectable.Intersection actual = parallel.findClosestIntersection(ray);
+            if (expected == null) assertNull(actual, "the parallel grid found a wrong hit");
+            else assertEquals(expected.point, actual.point, "the parallel grid found a wrong closest hit");
+            assertEquals(serial.findAllIntersections(ray, 150).stream().map(i -> i.point).toList(),
+                    parallel.findAllIntersections(ray, 150).stream().map(i -> i.point).toList(),
+                    "the parallel grid found different intersections");
+        }
+    }
+
+    /**
+     * Test for exact overlap at insertion: long diagonal triangles and large spheres must be referred to
+     * from fewer voxels than their bounding boxes cover, the same ones when added together or one by one,
+     * and the grid must find the same intersections as testing every geometry
+     */
+    @Test
+    public void testExactOverlap() {
+        List<Intersectable> geometries = new ArrayList<>();
+        for (int i = 0; i < 40; i++)
+            for (int k = 0; k < 30; k++) {
+                Point corner = new Point(i * 3, k % 4, k * 3);
+                geometries.add((i + k) % 3 == 0 ? new Sphere(corner, 4)
+                        : new Triangle(corner, corner.add(new Vector(12, 1, 12)), corner.add(new Vector(13, 2, 11))));
+            }
+        List<AABB> boxes = geometries.stream().map(Intersectable::getAABB).toList();
+        AABB bounds = new Geometries(geometries).getAABB();
+        Geometries all = new Geometries(geometries);
+
+        VoxelGrid serial = new VoxelGrid(bounds, 40, 4, 30);
+        for (int i = 0; i < geometries.size(); i++) serial.addObject(geometries.get(i), boxes.get(i));
+        VoxelGrid parallel = new VoxelGrid(bounds, 40, 4, 30);
+        parallel.addObjects(geometries, boxes);
+        assertArrayEquals(serial.cells()[2], parallel.cells()[2], "the parallel grid must refer to the same geometries");
+
+        // the number of voxels the bounding boxes cover
+        long covered = 0;
+        int[] n = {40, 4, 30};
+        for (AABB box : boxes) {
+            long voxels = 1;
+            for (int axis = 0; axis < 3; axis++) {
+                double min = coordinate(bounds.getMin(), axis), size = (coordinate(bounds.getMax(), axis) - min) / n[axis];
+                int first = Math.min(n[axis] - 1, (int) ((coordinate(box.getMin(), axis) - min) / size));
+                int last = Math.min(n[axis] - 1, (int) ((coordinate(box.getMax(), axis) - min) / size));
+                voxels *= last - first + 1;
+            }
+            covered += voxels;
+        }
+        assertTrue(serial.cells()[2].length < covered, "the geometries must be referred to from fewer voxels than their bounding boxes cover");
+
+        for (int r = 0; r < 400; r++) {
+            Ray ray = new Ray(new Point(60, 20, -20), new Vector(r % 20 * 0.05 - 0.5, -0.2 - r / 20 * 0.02, 1));
+            Intersectable.Intersection expected = all.calculateClosestIntersection(ray);
+            for (VoxelGrid grid : new VoxelGrid[]{serial, parallel}) {
+                Intersectable.Intersection actual = grid.findClosestIntersection(ray);
+                if (expected == null) assertNull(actual, "the grid found a wrong hit");
+                else assertEquals(expected.point, actual.point, "the grid found a wrong closest hit");
+                List<Intersectable.Intersection> hits = all.calculateIntersections(ray, 200);
+                assertEquals(hits == null ? 0 : hits.size(), grid.findAllIntersections(ray, 200).size(),
+                        "the grid found wrong intersections");
+            }
+        }
+    }
+
+    /**
+     * Test for empty-space skipping: in a fine grid of a few far apart geometries, rays leaping over
+     * the empty macro-cells (also rays along the axes and diagonals through the voxels' corners) must find
+     * the same intersections as testing every geometry
+     */
+    @Test
+    public void testEmptySpaceSkipping() {
+        List<Intersectable> geometries = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+            for (int k = 0; k < 4; k++) {
+                Point center = new Point(i * 30 + (k % 2) * 7, (i + k) % 3 * 20, k * 30);
+                geometries.add(i % 2 == 0 ? new Sphere(center, 1.5)
+                        : new Triangle(center, center.add(new Vector(3, 0, 1)), center.add(new Vector(0, 3, 2))));
+            }
+        geometries.add(new Sphere(new Point(0, 0, 0), 1));
+        geometries.add(new Sphere(new Point(100, 100, 100), 1));
+        List<AABB> boxes = geometries.stream().map(Intersectable::getAABB).toList();
+        AABB bounds = new Geometries(geometries).getAABB();
+        Geometries all = new Geometries(geometries);
+        VoxelGrid grid = new VoxelGrid(bounds, 64, 64, 64);
+        grid.addObjects(geometries, boxes);
+
+        List<Ray> rays = new ArrayList<>();
+        for (Intersectable geometry : geometries) {
+            Point target = geometry.getAABB().getCenter();
+            rays.add(new Ray(new Point(-20, -10, -30), target.subtract(new Point(-20, -10, -30))));
+            rays.add(new Ray(new Point(target.getX(), target.getY(), -50), new Vector(0, 0, 1)));
+            rays.add(new Ray(new Point(target.getX(), 150, target.getZ()), new Vector(0, -1, 0)));
+        }
+        // diagonals through the voxels' corners, and rays from inside the grid
+        rays.add(new Ray(new Point(-1, -1, -1), new Vector(1, 1, 1)));
+        rays.add(new Ray(new Point(101, 101, 101), new Vector(-1, -1, -1)));
+        rays.add(new Ray(new Point(50, 50, 50), new Vector(-1, -1, -1)));
+        for (int r = 0; r < 400; r++)
+            rays.add(new Ray(new Point(50, 40, 50), new Vector(Math.cos(r * 0.7), Math.sin(r * 1.3), Math.cos(r * 2.9) + 0.01)));
+
+        for (Ray ray : rays) {
+            Intersectable.Intersection expected = all.calculateClosestIntersection(ray);
+            Intersectable.Intersection actual = grid.findClosestIntersection(ray);
+            if (expected == null) assertNull(actual, "the grid found a wrong hit");
+            else assertEquals(expected.point, actual.point, "the grid skipped the closest hit");
+            List<Intersectable.Intersection> hits = all.calculateIntersections(ray, 300);
+            assertEquals(hits == null ? 0 : hits.size(), grid.findAllIntersections(ray, 300).size(),
+                    "the grid skipped intersections");
+        }
+    }
+
+    /**
+     * Returns a point's coordinate along an axis
+     *
+     * @param point the point
+     * @param axis  the axis, 0 for X, 1 for Y and 2 for Z
+     * @return the coordinate
+     */
+    private static double coordinate(Point point, int axis) {
+        return axis == 0 ? point.getX() : axis == 1 ? point.getY() : point.getZ();
+    }
+
+    /**
+     * Test for a two-level grid: a dense cluster of small triangles on a sparse floor of large spheres
+     * must get nested grids, and the subdivided grid must find the same intersections as the flat grid,
+     * each geometry once, also for packets of rays and for a grid culled to a frustum
+     */
+    @Test
+    public void testSubdivision() {
+        List<Intersectable> geometries = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            for (int k = 0; k < 10; k++)
+                geometries.add(new Sphere(new Point(i * 20 - 100, -6, k * 20 - 100), 5));
+        for (int i = 0; i < 30; i++)
+            for (int j = 0; j < 30; j++) {
+                Point corner = new Point(i * 0.3 - 4.5, j * 0.3, (i * j) % 7 * 0.3);
+                geometries.add(new Triangle(corner, corner.add(new Vector(0.5, 0, 0.1)), corner.add(new Vector(0, 0.5, 0.2))));
+            }
+        List<AABB> boxes = geometries.stream().map(Intersectable::getAABB).toList();
+        AABB bounds = new Geometries(geometries).getAABB();
+
+        VoxelGrid flat = new VoxelGrid(bounds, 15, 3, 15);
+        flat.addObjects(geometries, boxes);
+        VoxelGrid subdivided = new VoxelGrid(bounds, 15, 3, 15);
+        subdivided.addObjects(geometries, boxes);
+        subdivided.subdivide(16);
+        assertTrue(subdivided.subGridCount() > 0, "the cluster's voxels must get nested grids");
+
+        Ray[] packet = new Ray[20];
+        double[] maxDistances = new double[packet.length];
+        for (int r = 0; r < 400; r++) {
+            Ray ray = new Ray(new Point(0, 15, -40), new Vector(r % 20 * 0.01 - 0.1, r / 20 * -0.02 - 0.1, 1));
+            Intersectable.Intersection expected = flat.findClosestIntersection(ray);
+            Intersectable.Intersection actual = subdivided.findClosestIntersection(ray);
+            if (expected == null) assertNull(actual, "the subdivided grid found a wrong hit");
+            else assertEquals(expected.point, actual.point, "the subdivided grid found a wrong closest hit");
+            assertEquals(flat.findAllIntersections(ray, 200).size(), subdivided.findAllIntersections(ray, 200).size(),
+                    "the subdivided grid found wrong intersections");
+            packet[r % 20] = ray;
+            maxDistances[r % 20] = 200;
+            if (r % 20 == 19) {
+                Intersectable.Intersection[] hits = subdivided.findClosestIntersections(packet);
+                List<List<Intersectable.Intersection>> all = subdivided.findAllIntersections(packet, maxDistances);
+                for (int lane = 0; lane < packet.length; lane++) {
+                    Intersectable.Intersection hit = flat.findClosestIntersection(packet[lane]);
+                    assertEquals(hit == null ? null : hit.point, hits[lane] == null ? null : hits[lane].point,
+                            "the subdivided grid found a wrong closest hit of a packet");
+                    assertEquals(flat.findAllIntersections(packet[lane], 200).size(), all.get(lane).size(),
+                            "the subdivided grid found wrong intersections of a packet");
+                }
+            }
+        }
+
+        Point apex = new Point(0, 15, -40);
+        Frustum frustum = new Frustum(apex, new Vector(-0.1, -0.1, 1), new Vector(0.1, -0.1, 1),
+                new Vector(0.1, -0.5, 1), new Vector(-0.1, -0.5, 1));
+        VoxelGrid culled = subdivided.cull(frustum);
+        assertTrue(culled.subGridCount() > 0, "a culled grid must be subdivided as well");
+        Ray ray = new Ray(apex, new Vector(0.01, -0.35, 1));
+        assertEquals(flat.findClosestIntersection(ray).point, culled.findClosestIntersection(ray).point,
+                "the culled subdivided grid found a wrong closest hit");
+        assertThrows(IllegalArgumentException.class, () -> flat.subdivide(0), "the threshold must be positive");
+    }
+}
@@ -0,0 +1,213 @@
+package acceleration;
+
+import geometries.*;
+import lighting.AmbientLight;
+import lighting.PointLight;
+import org.junit.jupiter.api.Test;
+import primitives.*;
+import renderer.*;
+import scene.Scene;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the wide bounding volume hierarchy
+ */
+class WideBVHTests {
+    /**
+     * Test for the traversal: for each width, the hierarchy must find the same closest
+     * intersections and the same intersections up to a distance as a voxel grid of the same geometries
+     */
+    @Test
+    public void testTraversal() {
+        Geometries geometries = new Geometries();
+        for (int i = 0; i < 10; i++)
+            for (int k = 0; k < 10; k++) {
+                Point center = new Point(i * 10, (i * k) % 5 * 3, k * 10 + 50);
+                if ((i + k) % 2 == 0) geometries.add(new Sphere(center, 2 + (i + k) % 3));
+                else geometries.add(new Triangle(center, center.add(new Vector(4, 0, 1)), center.add(new Vector(0, 5, 2))));
+            }
+
+        VoxelGrid voxelGrid = new VoxelGrid(geometries.getAABB(), 10, 5, 10);
+        for (Intersectable geometry : geometries.getGeometries())
+            voxelGrid.addObject(geometry, geometry.getAABB());
+
+        for (int width : new int[]{2, 4, 8}) {
+            WideBVH bvh = new WideBVH(geometries.getGeometries(), width);
+            for (int r = 0; r < 400; r++) {
+                Ray ray = new Ray(new Point(45, 6, -20), new Vector(r % 20 * 0.05 - 0.5, r / 20 * 0.02 - 0.2, 1));
+                Intersectable.Intersection expected = voxelGrid.findClosestIntersection(ray);
+                Intersectable.Intersection actual = bvh.findClosestIntersection(ray);
+                if (expected == null) assertNull(actual, "width " + width + " found a wrong hit");
+                else assertEquals(expected.point, actual.point, "width " + width + " found a wrong closest hit");
+                assertEquals(voxelGrid.findAllIntersections(ray, 100).size(), bvh.findAllIntersections(ray, 100).size(),
+                        "width " + width + " found wrong intersections");
+            }
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> new WideBVH(geometries.getGeometries(), 9),
+                "a BVH width must be between 2 and 8");
+        assertThrows(IllegalArgumentException.class,
+                () -> new WideBVH(List.of(new Plane(new Point(0, 0, 0), new Vector(0, 0, 1))), 4),
+                "a BVH geometry must be bounded");
+    }
+
+    /**
+     * Test for spatial splits: long thin triangles and cylinders that cross each other must be
+     * referenced more than once, within the growth limit, and found the same as without spatial splits
+     */
+    @Test
+    public void testSpatialSplits() {
+        Geometries geometries = new Geometries();
+        for (int i = 0; i < 40; i++) {
+            // diagonal slivers across the whole scene
+            Point a = new Point(i * 2.5, 0, 0);
+            geometries.add(new Triangle(a, new Point(100 - i * 2.5, 40, 100), new Point(100 - i * 2.5, 40.5, 100)));
+            geometries.add(new Cylinder(0.3, new Ray(new Point(i * 2.5, 0, 100 - i * 2.5), new Vector(1, 1, -1)), 60));
+            geometries.add(new Sphere(new Point(i * 2.5, 20, 50), 1));
+        }
+        int count = geometries.getGeometries().size();
+
+        WideBVH objectSplits = new WideBVH(geometries.getGeometries(), 4);
+        WideBVH spatialSplits = new WideBVH(geometries.getGeometries(), 4, 0.5);
+        assertEquals(count, objectSplits.referenceCount(), "object splits reference each geometry once");
+        assertTrue(spatialSplits.referenceCount() > count, "spatial splits must cut through the slivers");
+        assertTrue(spatialSplits.referenceCount() <= count * 1.5, "spatial splits must keep to the growth limit");
+
+        for (int r = 0; r < 400; r++) {
+            Ray ray = new Ray(new Point(50, 20, -50), new Vector(r % 20 * 0.05 - 0.5, r / 20 * 0.03 - 0.3, 1));
+            Intersectable.Intersection expected = objectSplits.findClosestIntersection(ray);
+            Intersectable.Intersection actual = spatialSplits.findClosestIntersection(ray);
+            if (expected == null) assertNull(actual, "spatial splits found a wrong hit");
+            else assertEquals(expected.point, actual.point, "spatial splits found a wrong closest hit");
+            assertEquals(objectSplits.findAllIntersections(ray, 200).size(),
+                    spatialSplits.findAllIntersections(ray, 200).size(), "spatial splits found wrong intersections");
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> new WideBVH(geometries.getGeometries(), 4, -1),
+                "the growth limit must not be negative");
+    }
+
+    /**
+     * Test for compressed nodes: for each width, the hierarchy with quantized bounds must take less memory
+     * and find the same intersections as the hierarchy with exact bounds, also for rays that graze its boxes
+     */
+    @Test
+    public void testCompressedNodes() {
+        Geometries geometries = new Geometries();
+        for (int i = 0; i < 30; i++)
+            for (int k = 0; k < 30; k++) {
+                Point center = new Point(i * 3.3 - 1000, (i * k) % 7 * 0.7, k * 3.1 + 500);
+                if ((i + k) % 2 == 0) geometries.add(new Sphere(center, 0.5 + (i + k) % 3 * 0.4));
+                else geometries.add(new Triangle(center, center.add(new Vector(1.5, 0, 0.3)), center.add(new Vector(0, 1.2, 0.7))));
+            }
+
+        for (int width : new int[]{2, 4, 8}) {
+            WideBVH exact = new WideBVH(geometries.getGeometries(), width, 0, false);
+            WideBVH compressed = new WideBVH(geometries.getGeometries(), width, 0, true);
+            assertEquals(exact.nodeCount(), compressed.nodeCount(), "compression must keep the hierarchy");
+            assertTrue(compressed.nodeMemory() * 3 < exact.nodeMemory(), "compressed nodes must take much less memory");
+
+            for (int r = 0; r < 900; r++) {
+                // the rays run along the rows of geometries, grazing their boxes
+                Ray ray = new Ray(new Point(-1000 + r % 30 * 3.3, r / 30 % 7 * 0.7 + 0.5, 450),
+                        new Vector(r % 3 * 0.01, 0, 1));
+                Intersectable.Intersection expected = exact.findClosestIntersection(ray);
+                Intersectable.Intersection actual = compressed.findClosestIntersection(ray);
+                if (expected == null) assertNull(actual, "width " + width + " compressed found a wrong hit");
+                else assertEquals(expected.point, actual.point, "width " + width + " compressed found a wrong closest hit");
+                assertEquals(exact.findAllIntersections(ray, 200).size(), compressed.findAllIntersections(ray, 200).size(),
+                        "width " + width + " compressed found wrong intersections");
+            }
+        }
+    }
+
+    /**
+     * Test for refitting: orbiting spheres and triangles refitted frame by frame must be found the same as by
+     * a hierarchy built for each frame, a small motion must keep the hierarchy, and scrambling the geometries
+     * must rebuild it
+     */
+    @Test
+    public void testRefit() {
+        for (boolean compressed : new boolean[]{false, true}) {
+            WideBVH bvh = new WideBVH(orbit(0), 4, 0, compressed);
+            for (int frame = 1; frame <= 10; frame++) {
+                List<Intersectable> geometries = orbit(frame * 0.02);
+                WideBVH refitted = bvh.refit(geometries);
+                assertSame(bvh, refitted, "a small motion must keep the hierarchy");
+                WideBVH built = new WideBVH(geometries, 4, 0, compressed);
+                for (int r = 0; r < 400; r++) {
+                    Ray ray = new Ray(new Point(0, 30, -60), new Vector(r % 20 * 0.05 - 0.5, r / 20 * 0.03 - 0.8, 1));
+                    Intersectable.Intersection expected = built.findClosestIntersection(ray);
+                    Intersectable.Intersection actual = refitted.findClosestIntersection(ray);
+                    if (expected == null) assertNull(actual, "the refitted hierarchy found a wrong hit");
+                    else assertEquals(expected.point, actual.point, "the refitted hierarchy found a wrong closest hit");
+                    assertEquals(built.findAllIntersections(ray, 200).size(), refitted.findAllIntersections(ray, 200).size(),
+                            "the refitted hierarchy found wrong intersections");
+                }
+            }
+
+            // shuffling the geometries moves each of them away from its neighbors in the hierarchy
+            List<Intersectable> scrambled = new ArrayList<>(orbit(0.2));
+            Collections.shuffle(scrambled, new Random(1));
+            WideBVH rebuilt = bvh.refit(scrambled);
+            assertNotSame(bvh, rebuilt, "a degraded hierarchy must be rebuilt");
+            assertTrue(bvh.cost() > rebuilt.cost(), "the rebuilt hierarchy must be cheaper");
+            assertThrows(IllegalArgumentException.class, () -> bvh.refit(orbit(0).subList(1, 10)),
+                    "a refit must keep the number of geometries");
+        }
+    }
+
+    /**
+     * Creates the geometries of an orbit animation: rings of spheres and triangles around the origin
+     *
+     * @param angle the rotation of the rings
+     * @return the geometries, in the same order for each angle
+     */
+    private static List<Intersectable> orbit(double angle) {
+        List<Intersectable> geometries = new ArrayList<>();
+        for (int ring = 0; ring < 5; ring++)
+            for (int i = 0; i < 60; i++) {
+                double a = i * Math.PI / 30 + angle * (ring + 1), radius = 10 + ring * 6;
+                Point center = new Point(radius * Math.cos(a), ring % 2 * 2, radius * Math.sin(a));
+                if (i % 3 == 0)
+                    geometries.add(new Triangle(center, center.add(new Vector(1, 0, 0.5)), center.add(new Vector(0, 1, 0.5))));
+                else geometries.add(new Sphere(center, 0.7));
+            }
+        return geometries;
+    }
+
+    /**
+     * Test for the BVH ray tracer: a scene of spheres over a plane rendered with the BVH ray tracer
+     */
+    @Test
+    public void testRender() {
+        Scene scene = new Scene("BVH Test Scene");
+        scene.setAmbientLight(new AmbientLight(new Color(30, 30, 30)));
+        scene.geometries.add(new Plane(new Point(0, -3, 0), new Vector(0, 1, 0))
+                .setEmission(new Color(40, 40, 40)).setMaterial(new Material().setKD(0.5)));
+        for (int i = 0; i < 20; i++)
+            for (int k = 0; k < 20; k++)
+                scene.geometries.add(new Sphere(new Point(i * 10 - 95, 0, -k * 10 - 50), 3)
+                        .setEmission(new Color(20 + i * 10, 50, 20 + k * 10))
+                        .setMaterial(new Material().setKD(0.5).setKS(0.5).setShininess(50)));
+        scene.lights.add(new PointLight(new Color(400, 400, 400), new Point(0, 60, -50)));
+
+        Camera.getBuilder()
+                .setRayTracer(scene, RayTracerType.BVH)
+                .setBlackboard(Blackboard.getBuilder().setBvhWidth(8).build())
+                .setLocation(new Point(0, 40, 60))
+                .setDirection(new Point(0, 0, -100), new Vector(0, 1, 0))
+                .setVpDistance(100).setVpSize(100, 100)
+                .setResolution(500, 500)
+                .setMultithreading(-1)
+                .build()
+                .renderImage()
+                .writeToImage("acceleration/wideBVH");
+    }
+}
@@ -0,0 +1,63 @@
+package geometries;
+
+import acceleration.AABB;
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the bounded proxies of unbounded geometries
+ */
+class BoundedProxyTests {
+    /** The clip box of the tests */
+    private final AABB clip = new AABB(new Point(-10, -10, -10), new Point(10, 10, 10));
+
+    /**
+     * Test method for {@link geometries.BoundedProxy#of(Intersectable, AABB)}.
+     */
+    @Test
+    void testOf() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: A ground plane's proxy is a thin slab of the clip box
+        AABB ground = BoundedProxy.of(new Plane(new Point(0, -5, 0), Vector.AXIS_Y), clip).getAABB();
+        assertEquals(-5, ground.getMin().getY(), 1e-3, "the ground's proxy must be flat");
+        assertEquals(-5, ground.getMax().getY(), 1e-3, "the ground's proxy must be flat");
+        assertEquals(-10, ground.getMin().getX(), 1e-3, "the ground's proxy must span the clip box");
+        assertEquals(10, ground.getMax().getZ(), 1e-3, "the ground's proxy must span the clip box");
+        // TC02: A tube's proxy is the clip box near its axis
+        AABB tube = BoundedProxy.of(new Tube(1, new Ray(Point.ZERO, Vector.AXIS_Z)), clip).getAABB();
+        assertEquals(1, tube.getMax().getX(), 1e-3, "the tube's proxy must be within its radius of the axis");
+        assertEquals(-1, tube.getMin().getY(), 1e-3, "the tube's proxy must be within its radius of the axis");
+        assertEquals(10, tube.getMax().getZ(), 1e-3, "the tube's proxy must span the clip box along the axis");
+        // TC03: A plane or a tube that misses the clip box has no proxy
+        assertNull(BoundedProxy.of(new Plane(new Point(0, 20, 0), Vector.AXIS_Y), clip), "a plane above the box has no proxy");
+        assertNull(BoundedProxy.of(new Tube(1, new Ray(new Point(20, 0, 0), Vector.AXIS_Z)), clip), "a tube beside the box has no proxy");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: A tilted plane's proxy spans the clip box's diagonal
+        AABB tilted = BoundedProxy.of(new Plane(Point.ZERO, new Vector(1, 1, 1)), clip).getAABB();
+        assertEquals(-10, tilted.getMin().getX(), 1e-3, "a tilted plane's proxy must reach the clip box's sides");
+        assertEquals(10, tilted.getMax().getY(), 1e-3, "a tilted plane's proxy must reach the clip box's sides");
+    }
+
+    /**
+     * Test method for {@link geometries.BoundedProxy#calculateIntersections(Ray)}.
+     */
+    @Test
+    void testFindIntersections() {
+        Plane plane = new Plane(new Point(0, -5, 0), Vector.AXIS_Y);
+        BoundedProxy proxy = BoundedProxy.of(plane, clip);
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The ray hits the plane inside the clip box
+        List<Intersectable.Intersection> hits = proxy.calculateIntersections(new Ray(Point.ZERO, new Vector(1, -1, 0)));
+        assertNotNull(hits, "the ray must hit the proxy");
+        assertEquals(new Point(5, -5, 0), hits.getFirst().point, "wrong intersection point");
+        assertSame(plane, hits.getFirst().geometry, "the intersection must be the plane's");
+        // TC02: The ray hits the plane outside the clip box
+        assertNull(proxy.calculateIntersections(new Ray(Point.ZERO, new Vector(4, -1, 0))),
+                "a hit outside the clip box is not the proxy's");
+    }
+}
@@ -1,5 +1,6 @@
 package geometries;
 
+import acceleration.AABB;
 import org.junit.jupiter.api.Test;
 import primitives.*;
 
@@ -92,4 +93,17 @@ public class CubeTests {
         assertNull(cube.calculateIntersections(ray5, 10),
                 "TC05: Ray should not intersect with the cube");
     }
+
+    /**
+     * Test method for {@link geometries.Cube#getAABB()}: the bounding box of a rotated cube
+     */
+    @Test
+    void testGetAABB() {
+        // ============ Equivalence Partitions Tests ==================
+        // TC01: A cube rotated by 45 degrees about the Y axis is wider along X and Z
+        AABB box = new Cube(2, new Point(0, 0, 0), new Double3(0, 45, 0)).getAABB();
+        assertEquals(Math.sqrt(2), box.getMax().getX(), 1e-9, "Wrong bounding box of a rotated cube");
+        assertEquals(-Math.sqrt(2), box.getMin().getZ(), 1e-9, "Wrong bounding box of a rotated cube");
+        assertEquals(1, box.getMax().getY(), 1e-9, "Wrong bounding box of a rotated cube");
+    }
 }
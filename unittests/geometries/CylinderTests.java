@@ -1,5 +1,6 @@
 package geometries;
 
+import acceleration.AABB;
 import org.junit.jupiter.api.Test;
 import primitives.Point;
 import primitives.Ray;
@@ -9,6 +10,8 @@ import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 //import primitives.Ray;
 //import primitives.Vector;
 //import static org.junit.jupiter.api.Assertions.*;
@@ -129,4 +132,19 @@ class CylinderTests {
         assertEquals(2, cylinder.calculateIntersections(new Ray(new Point(3, 0, 0.5), new Vector(-1, 0, 0)), 10).size(),
                 "Ray's intersection points is in the distance");
     }
-}
\ No newline at end of file
+
+    /**
+     * Test method for {@link geometries.Cylinder#overlaps(acceleration.AABB)}.
+     */
+    @Test
+    void testOverlaps() {
+        Cylinder cylinder = new Cylinder(1, new Ray(new Point(0, 0, 0), new Vector(1, 1, 1)), 10);
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The box is around the axis
+        assertTrue(cylinder.overlaps(new AABB(new Point(2, 2, 2), new Point(3, 3, 3))), "A box around the axis overlaps the cylinder");
+        // TC02: The box is in a corner of the cylinder's bounding box, far from the axis
+        assertFalse(cylinder.overlaps(new AABB(new Point(5, -1, -1), new Point(6, 0, 0))), "A box far from the axis does not overlap the cylinder");
+        // TC03: The bounding boxes do not overlap
+        assertFalse(cylinder.overlaps(new AABB(new Point(20, 20, 20), new Point(21, 21, 21))), "A box beyond the cylinder does not overlap it");
+    }
+}
@@ -47,4 +47,74 @@ class GeometriesTests {
         assertNotNull(result);
         assertEquals(2, result.size(), "Some shapes intersect should return two intersection points");
     }
-}
\ No newline at end of file
+
+    /**
+     * Test method for {@link geometries.Geometries#flatten()}.
+     */
+    @Test
+    void testFlatten() {
+        Sphere first = new Sphere(new Point(0, 0, 0), 1), second = new Sphere(new Point(5, 0, 0), 1);
+        Plane plane = new Plane(new Point(0, -2, 0), new Vector(0, 1, 0));
+        Triangle triangle = new Triangle(new Point(0, 0, 5), new Point(1, 0, 5), new Point(0, 1, 5));
+        Geometries inner = new Geometries();
+        inner.add(second, plane);
+        Geometries middle = new Geometries();
+        middle.add(inner, new Geometries());
+        Geometries geometries = new Geometries();
+        geometries.add(first, middle, triangle);
+
+        // ============ Equivalence Partitions Tests ==================
+        // TC01: Nested collections are replaced by their geometries, in order
+        assertEquals(List.of(first, second, plane, triangle), geometries.flatten(), "Wrong leaf geometries");
+        // TC02: A list of geometries is flattened like a collection of them
+        assertEquals(List.of(first, second, plane, triangle), Geometries.flatten(List.of(first, middle, triangle)),
+                "Wrong leaf geometries of a list");
+        // =============== Boundary Values Tests ==================
+        // TC10: An empty collection has no leaf geometries
+        assertTrue(new Geometries().flatten().isEmpty(), "An empty collection should have no leaf geometries");
+    }
+
+    /**
+     * Test method for the bounding box culling of {@link geometries.Geometries#calculateIntersections(Ray)}.
+     */
+    @Test
+    void testCulling() {
+        Geometries bounded = new Geometries();
+        bounded.add(new Sphere(new Point(10, 0, 0), 1), new Sphere(new Point(10, 5, 0), 1));
+        Geometries withPlane = new Geometries();
+        withPlane.add(new Sphere(new Point(-10, 0, 0), 1), new Plane(new Point(0, -20, 0), new Vector(0, 1, 0)));
+        Geometries geometries = new Geometries();
+        geometries.add(bounded, withPlane);
+        Ray down = new Ray(new Point(0, 0, 0), new Vector(0, -1, 0));
+
+        // ============ Equivalence Partitions Tests ==================
+        // TC01: A ray missing the bounded geometries still hits the unbounded plane of a nested collection
+        assertEquals(1, geometries.calculateIntersections(down).size(), "A nested plane must not be culled");
+        assertNotNull(geometries.calculateClosestIntersection(down), "A nested plane must not be culled");
+        // TC02: A ray hitting the bounded collection's box finds its geometries
+        assertEquals(2, bounded.calculateIntersections(new Ray(new Point(0, 0, 0), new Vector(1, 0, 0))).size(),
+                "Wrong number of intersections");
+        // TC03: The cached bounding box is updated when a geometry is added
+        Ray up = new Ray(new Point(10, 20, 0), new Vector(0, 1, 0));
+        assertNull(bounded.calculateIntersections(up), "The ray misses the collection");
+        bounded.add(new Sphere(new Point(10, 30, 0), 1));
+        assertEquals(2, bounded.calculateIntersections(up).size(), "An added geometry must extend the bounding box");
+        // TC04: The cached bounding box of the outer collection is updated when a geometry is added to a nested one
+        Ray far = new Ray(new Point(50, 20, 0), new Vector(0, 1, 0));
+        assertNull(geometries.calculateClosestIntersection(far), "The ray misses the collection");
+        assertNull(geometries.calculateIntersections(far), "The ray misses the collection");
+        bounded.add(new Sphere(new Point(50, 30, 0), 1));
+        assertNotNull(geometries.calculateClosestIntersection(far), "A geometry added to a nested collection must be hit");
+        assertEquals(2, geometries.calculateIntersections(far).size(),
+                "A geometry added to a nested collection must be hit");
+        // TC05: A plane added to a nested collection is not culled by the outer collection's bounding box
+        Geometries inner = new Geometries();
+        inner.add(new Sphere(new Point(0, 0, 100), 1));
+        Geometries outer = new Geometries();
+        outer.add(inner);
+        assertNull(outer.calculateIntersections(down), "The ray misses the collection");
+        inner.add(new Plane(new Point(0, -20, 0), new Vector(0, 1, 0)));
+        assertEquals(1, outer.calculateIntersections(down).size(), "A plane added to a nested collection must not be culled");
+        assertNotNull(outer.calculateClosestIntersection(down), "A plane added to a nested collection must not be culled");
+    }
+}
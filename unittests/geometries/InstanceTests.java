@@ -0,0 +1,82 @@
+package geometries;
+
+import acceleration.BottomLevelGrid;
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstanceTests {
+    /** A unit sphere at the origin, the model of the instances */
+    private final BottomLevelGrid model = new BottomLevelGrid(List.of(new Sphere(new Point(0, 0, 0), 1)));
+
+    /**
+     * Test method for {@link geometries.Instance#calculateIntersections(Ray)}.
+     */
+    @Test
+    void testCalculateIntersections() {
+        Instance moved = new Instance(model, Transform.translation(new Vector(5, 0, 0)));
+        Instance stretched = new Instance(model, Transform.scaling(new Double3(2, 1, 1))
+                .then(Transform.rotation(new Double3(0, 0, 90))));
+
+        // ============ Equivalence Partitions Tests ==================
+        // TC01: Ray crosses a translated instance at the copy's surface
+        List<Intersectable.Intersection> hits = moved.calculateIntersections(new Ray(new Point(0, 0, 0), new Vector(1, 0, 0)));
+        assertNotNull(hits, "Ray crosses the translated instance");
+        assertEquals(2, hits.size(), "Ray crosses the translated instance twice");
+        assertEquals(new Point(4, 0, 0), new Ray(new Point(0, 0, 0), new Vector(1, 0, 0)).findClosestIntersection(hits).point,
+                "Wrong hit of the translated instance");
+        // TC02: The closest hit of a scaled and rotated instance (an ellipsoid stretched along Y)
+        Intersectable.Intersection closest = stretched.calculateClosestIntersection(new Ray(new Point(0, -5, 0), new Vector(0, 1, 0)));
+        assertEquals(new Point(0, -2, 0), closest.point, "Wrong closest hit of the transformed instance");
+        assertEquals(new Vector(0, -1, 0), closest.geometry.getNormal(closest.point), "Wrong normal of the transformed instance");
+        // TC03: Ray misses the translated instance
+        assertNull(moved.calculateIntersections(new Ray(new Point(0, 0, 0), new Vector(-1, 0, 0))), "Ray misses the instance");
+        // TC04: The instance's material overrides the model's material
+        Material material = new Material().setKD(0.7);
+        moved.setMaterial(material);
+        assertSame(material, moved.calculateClosestIntersection(new Ray(new Point(0, 0, 0), new Vector(1, 0, 0))).material,
+                "The instance's material is not used");
+        // TC05: The instance's emission overrides the model's emission
+        Color emission = new Color(10, 20, 30);
+        moved.setEmission(emission);
+        assertSame(emission, moved.calculateClosestIntersection(new Ray(new Point(0, 0, 0), new Vector(1, 0, 0)))
+                .geometry.getEmission(), "The instance's emission is not used");
+
+        // =============== Boundary Values Tests ==================
+        // TC06: The hits beyond the maximal distance are not found, in world space distances
+        assertEquals(1, moved.calculateIntersections(new Ray(new Point(0, 0, 0), new Vector(1, 0, 0)), 5).size(),
+                "Wrong hits within a distance of the translated instance");
+        assertEquals(1, stretched.calculateIntersections(new Ray(new Point(0, -5, 0), new Vector(0, 1, 0)), 4).size(),
+                "Wrong hits within a distance of the scaled instance");
+        // TC07: Hits of the same geometry of an instance have equal views of it, and of another instance do not
+        Ray ray = new Ray(new Point(0, 0, 0), new Vector(1, 0, 0));
+        Geometry view = moved.calculateClosestIntersection(ray).geometry;
+        assertEquals(view, moved.calculateClosestIntersection(ray).geometry, "Views of the same hit geometry differ");
+        assertEquals(view.hashCode(), moved.calculateClosestIntersection(ray).geometry.hashCode(),
+                "Views of the same hit geometry hash differently");
+        Instance other = new Instance(model, Transform.translation(new Vector(5, 0, 0)));
+        assertNotEquals(view, other.calculateClosestIntersection(ray).geometry,
+                "Views of the geometry in different instances are equal");
+    }
+
+    /**
+     * Test method for {@link geometries.Instance#getAABB()}.
+     */
+    @Test
+    void testGetAABB() {
+        // ============ Equivalence Partitions Tests ==================
+        // TC01: The box of a scaled and translated instance
+        Instance instance = new Instance(model, Transform.scaling(new Double3(2, 1, 1))
+                .then(Transform.translation(new Vector(1, 2, 3))));
+        assertEquals(new Point(-1, 1, 2), instance.getAABB().getMin(), "Wrong minimum of the instance's box");
+        assertEquals(new Point(3, 3, 4), instance.getAABB().getMax(), "Wrong maximum of the instance's box");
+
+        // =============== Boundary Values Tests ==================
+        // TC02: An instance of an unbounded model has no box
+        assertNull(new Instance(new BottomLevelGrid(List.of(new Plane(new Point(0, 0, 0), new Vector(0, 0, 1)))),
+                Transform.IDENTITY).getAABB(), "An instance of an unbounded model has no box");
+    }
+}
@@ -1,5 +1,6 @@
 package geometries;
 
+import acceleration.AABB;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -92,4 +93,22 @@ class PlaneTests {
         assertEquals(1, plane.calculateIntersectionsHelper(new Ray(p1, new Vector(0, 1, -1)), 10).size(),
                 "Ray's intersection points is in the distance");
     }
-}
\ No newline at end of file
+
+    /**
+     * Test method for {@link geometries.Plane#overlaps(acceleration.AABB)}.
+     */
+    @Test
+    void testOverlaps() {
+        Plane plane = new Plane(new Point(0, 1, 0), new Vector(0, 1, 1));
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The plane crosses the box
+        assertTrue(plane.overlaps(new AABB(new Point(-1, -1, -1), new Point(1, 1, 1))), "A box across the plane overlaps it");
+        // TC02: The box is on one side of the plane
+        assertFalse(plane.overlaps(new AABB(new Point(-1, 2, 2), new Point(1, 3, 3))), "A box above the plane does not overlap it");
+        assertFalse(plane.overlaps(new AABB(new Point(-1, -3, -3), new Point(1, -2, -2))), "A box below the plane does not overlap it");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: The plane touches a corner of the box
+        assertTrue(plane.overlaps(new AABB(new Point(-1, 1, 0), new Point(1, 2, 1))), "A box touching the plane overlaps it");
+    }
+}
@@ -2,6 +2,7 @@ package geometries;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import acceleration.AABB;
 import org.junit.jupiter.api.Test;
 
 import primitives.*;
@@ -157,4 +158,23 @@ class PolygonTests {
       assertEquals(1, mesh.calculateIntersectionsHelper(new Ray(new Point(-0.5, -0.5, 2), new Vector(0, 0, -1)),
               10).size(), "Ray's intersection points is in the distance");
    }
+
+   /**
+    * Test method for {@link geometries.Polygon#overlaps(acceleration.AABB)}.
+    */
+   @Test
+   void testOverlaps() {
+      Polygon square = new Polygon(new Point(2, 0, 0), new Point(0, 2, 0), new Point(-2, 0, 0), new Point(0, -2, 0));
+      // ============ Equivalence Partitions Tests ==============
+      // TC01: The box is in the middle of the polygon
+      assertTrue(square.overlaps(new AABB(new Point(-0.5, -0.5, -0.5), new Point(0.5, 0.5, 0.5))), "A box in the middle overlaps the polygon");
+      // TC02: The box is in a corner of the polygon's bounding box, outside the polygon
+      assertFalse(square.overlaps(new AABB(new Point(1.5, 1.5, -0.5), new Point(2, 2, 0.5))), "A box beyond an edge does not overlap the polygon");
+      // TC03: The box is above the polygon
+      assertFalse(square.overlaps(new AABB(new Point(-0.5, -0.5, 0.5), new Point(0.5, 0.5, 1))), "A box above the polygon does not overlap it");
+
+      // =============== Boundary Values Tests ==================
+      // TC10: The box touches an edge
+      assertTrue(square.overlaps(new AABB(new Point(1, 1, -0.5), new Point(2, 2, 0.5))), "A box touching an edge overlaps the polygon");
+   }
 }
@@ -1,5 +1,6 @@
 package geometries;
 
+import acceleration.AABB;
 import org.junit.jupiter.api.Test;
 import primitives.Point;
 import primitives.Ray;
@@ -90,4 +91,23 @@ class SphereTests {
         assertNull( s.calculateIntersectionsHelper(new Ray(new Point(9,1.5,0), new Vector(1,0,0)), 2), "Ray start outside the sphere and intersects the sphere");
     }
 
-}
\ No newline at end of file
+    /**
+     * Test method for {@link geometries.Sphere#overlaps(acceleration.AABB)}.
+     */
+    @Test
+    void testOverlaps() {
+        Sphere s = new Sphere(new Point(0, 0, 0), 2);
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The box contains the sphere's center
+        assertTrue(s.overlaps(new AABB(new Point(-1, -1, -1), new Point(1, 1, 1))), "A box around the center overlaps the sphere");
+        // TC02: The box crosses a face of the sphere
+        assertTrue(s.overlaps(new AABB(new Point(1.5, -1, -1), new Point(3, 1, 1))), "A box across the surface overlaps the sphere");
+        // TC03: The box is in the corner of the sphere's bounding box, outside the sphere
+        assertFalse(s.overlaps(new AABB(new Point(1.5, 1.5, 1.5), new Point(2, 2, 2))), "A box in the bounding box's corner does not overlap the sphere");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: The box touches the sphere
+        assertTrue(s.overlaps(new AABB(new Point(2, -1, -1), new Point(3, 1, 1))), "A box touching the sphere overlaps it");
+    }
+
+}
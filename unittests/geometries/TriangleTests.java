@@ -1,5 +1,6 @@
 package geometries;
 
+import acceleration.AABB;
 import org.junit.jupiter.api.Test;
 import primitives.Point;
 import primitives.Ray;
@@ -61,4 +62,25 @@ class TriangleTests {
         assertEquals(1,triangle.calculateIntersectionsHelper(new Ray(new Point(1.8, 1.8, 1), new Vector(-1, -1, -1)), 10).size(),
                 "Ray's intersection points is in the distance");
     }
-}
\ No newline at end of file
+
+    /**
+     * Test method for {@link geometries.Polygon#overlaps(acceleration.AABB)} of a triangle.
+     */
+    @Test
+    void testOverlaps() {
+        Triangle triangle = new Triangle(new Point(0, 0, 0), new Point(4, 0, 0), new Point(0, 4, 4));
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The box contains a vertex
+        assertTrue(triangle.overlaps(new AABB(new Point(3, -1, -1), new Point(5, 1, 1))), "A box around a vertex overlaps the triangle");
+        // TC02: The triangle crosses the box, with no vertex inside it
+        assertTrue(triangle.overlaps(new AABB(new Point(0.5, 0.5, 0), new Point(1.5, 1.5, 2))), "A box the triangle crosses overlaps it");
+        // TC03: The box is inside the triangle's bounding box, off the triangle's plane
+        assertFalse(triangle.overlaps(new AABB(new Point(0.5, 2.5, 0), new Point(1, 3, 0.5))), "A box off the plane does not overlap the triangle");
+        // TC04: The box is in the triangle's plane, beyond its hypotenuse
+        assertFalse(triangle.overlaps(new AABB(new Point(2.9, 2.9, 2.9), new Point(3.1, 3.1, 3.1))), "A box beyond an edge does not overlap the triangle");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: The box touches a vertex
+        assertTrue(triangle.overlaps(new AABB(new Point(4, 0, 0), new Point(5, 1, 1))), "A box touching a vertex overlaps the triangle");
+    }
+}
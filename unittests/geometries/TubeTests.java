@@ -1,5 +1,6 @@
 package geometries;
 
+import acceleration.AABB;
 import org.junit.jupiter.api.Test;
 import primitives.Ray;
 import primitives.Point;
@@ -310,4 +311,18 @@ class TubeTests {
                 "Ray's intersection points is in the distance");
     }
 
-}
\ No newline at end of file
+
+    /**
+     * Test method for {@link geometries.Tube#overlaps(acceleration.AABB)}.
+     */
+    @Test
+    void testOverlaps() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The box contains a part of the axis
+        assertTrue(tube.overlaps(new AABB(new Point(-0.5, -0.5, 5), new Point(0.5, 0.5, 6))), "A box around the axis overlaps the tube");
+        // TC02: The box crosses the surface
+        assertTrue(tube.overlaps(new AABB(new Point(0.5, -0.5, -6), new Point(2, 0.5, -5))), "A box across the surface overlaps the tube");
+        // TC03: The box is far from the axis
+        assertFalse(tube.overlaps(new AABB(new Point(3, 3, 100), new Point(4, 4, 101))), "A box far from the axis does not overlap the tube");
+    }
+}
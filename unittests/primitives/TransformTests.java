@@ -0,0 +1,49 @@
+package primitives;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransformTests {
+    /** Scales by 2 along X, rotates by 90 degrees around Z, then translates by (1, 2, 3) */
+    private final Transform transform = Transform.scaling(new Double3(2, 1, 1))
+            .then(Transform.rotation(new Double3(0, 0, 90)))
+            .then(Transform.translation(new Vector(1, 2, 3)));
+
+    /**
+     * Test method for {@link primitives.Transform#apply(Point)} and {@link primitives.Transform#applyInverse(Point)}.
+     */
+    @Test
+    void testApplyPoint() {
+        // ============ Equivalence Partitions Tests ==================
+        // TC01: A point is scaled, rotated and translated
+        assertEquals(new Point(1, 4, 3), transform.apply(new Point(1, 0, 0)), "Wrong transformed point");
+        // TC02: The inverse transformation restores the point
+        assertEquals(new Point(1, 2, 3), transform.applyInverse(transform.apply(new Point(1, 2, 3))), "Wrong inverse point");
+
+        // =============== Boundary Values Tests ==================
+        // TC03: The origin is moved by the translation only
+        assertEquals(new Point(1, 2, 3), transform.apply(Point.ZERO), "Wrong transformed origin");
+    }
+
+    /**
+     * Test method for {@link primitives.Transform#apply(Vector)} and {@link primitives.Transform#applyNormal(Vector)}.
+     */
+    @Test
+    void testApplyVector() {
+        // ============ Equivalence Partitions Tests ==================
+        // TC01: A vector is scaled and rotated, not translated
+        assertEquals(new Vector(0, 2, 0), transform.apply(new Vector(1, 0, 0)), "Wrong transformed vector");
+        assertEquals(new Vector(1, 0, 0), transform.applyInverse(new Vector(0, 2, 0)), "Wrong inverse vector");
+        // TC02: A normal stays perpendicular to the transformed surface
+        Vector tangent = transform.apply(new Vector(1, -1, 0));
+        Vector normal = transform.applyNormal(new Vector(1, 1, 0));
+        assertEquals(0, tangent.dotProduct(normal), 1e-10, "The transformed normal is not perpendicular");
+        assertEquals(1, normal.length(), 1e-10, "The transformed normal is not normalized");
+
+        // =============== Boundary Values Tests ==================
+        // TC03: A singular transformation is rejected
+        assertThrows(IllegalArgumentException.class, () -> Transform.scaling(new Double3(1, 0, 1)),
+                "A singular transformation must be rejected");
+    }
+}
@@ -0,0 +1,101 @@
+package renderer;
+
+import geometries.*;
+import lighting.AmbientLight;
+import lighting.PointLight;
+import org.junit.jupiter.api.Test;
+import primitives.*;
+import scene.Scene;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.MissingResourceException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing animations with static and dynamic geometries
+ */
+class AnimationTests {
+    /**
+     * Creates the static scene of the tests: a field of boxes of triangles on a plane, with lights
+     *
+     * @return the scene
+     */
+    private static Scene staticScene() {
+        Scene scene = new Scene("Animation Test Scene").setAmbientLight(new AmbientLight(new Color(20, 20, 20)));
+        scene.geometries.add(new Plane(new Point(0, -2, 0), Vector.AXIS_Y)
+                .setEmission(new Color(30, 30, 30)).setMaterial(new Material().setKD(0.5)));
+        for (int i = 0; i < 8; i++)
+            for (int k = 0; k < 8; k++) {
+                Point corner = new Point(i * 6 - 24, -2, k * 6 - 24);
+                scene.geometries.add(new Triangle(corner, corner.add(new Vector(2, 4, 0)), corner.add(new Vector(4, 0, 1)))
+                        .setEmission(new Color(20 + i * 20, 40, 20 + k * 20))
+                        .setMaterial(new Material().setKD(0.5).setKS(0.3).setShininess(30)));
+            }
+        scene.lights.add(new PointLight(new Color(500, 500, 500), new Point(10, 40, 10)));
+        return scene;
+    }
+
+    /**
+     * Creates a dynamic geometry: a sphere orbiting the scene's center
+     *
+     * @param index the sphere's index
+     * @param frame the frame
+     * @return the sphere at the frame
+     */
+    private static Intersectable orbiter(int index, int frame) {
+        double angle = index * Math.PI / 10 + frame * 0.1, radius = 8 + index % 3 * 5;
+        return new Sphere(new Point(radius * Math.cos(angle), 2 + index % 4, radius * Math.sin(angle)), 1.5)
+                .setEmission(new Color(100, 20 + index * 10, 60))
+                .setMaterial(new Material().setKD(0.4).setKS(0.4).setShininess(60).setKT(index % 5 == 0 ? 0.5 : 0));
+    }
+
+    /**
+     * Test for the dynamic ray tracer: for each frame, the static ray tracer shared by all frames together with
+     * the frame's refitted dynamic hierarchy must see the same colors as a ray tracer of the whole frame's scene
+     */
+    @Test
+    public void testDynamicRayTracer() {
+        RayTracerBase staticTracer = new VoxelRayTracer(staticScene());
+        DynamicRayTracer previous = null;
+        for (int frame = 0; frame < 5; frame++) {
+            List<Intersectable> dynamic = new ArrayList<>();
+            for (int i = 0; i < 20; i++) dynamic.add(orbiter(i, frame * 3));
+            DynamicRayTracer tracer = new DynamicRayTracer(staticTracer, dynamic, previous);
+            previous = tracer;
+
+            Scene whole = staticScene();
+            for (Intersectable geometry : dynamic) whole.geometries.add(geometry);
+            RayTracerBase expected = new VoxelRayTracer(whole);
+            for (int r = 0; r < 400; r++) {
+                Ray ray = new Ray(new Point(0, 20, 40), new Vector(r % 20 * 0.08 - 0.8, -0.5 - r / 20 * 0.03, -1));
+                assertEquals(expected.traceRay(ray).getRgb().toString(), tracer.traceRay(ray).getRgb().toString(),
+                        "frame " + frame + " traced a wrong color");
+            }
+        }
+    }
+
+    /**
+     * Test for an animation: a camera orbiting the scene in keyframes around spheres orbiting it
+     */
+    @Test
+    public void testAnimation() {
+        Animation.Builder builder = Animation.getBuilder()
+                .setScene(staticScene())
+                .setRayTracer(RayTracerType.VOXEL)
+                .setCamera(Camera.getBuilder().setVpDistance(100).setVpSize(100, 100).setResolution(200, 200)
+                        .setMultithreading(-1))
+                .setFrames(4)
+                .addCameraKeyframe(0, new Point(0, 30, 60), new Point(0, 0, 0))
+                .addCameraKeyframe(3, new Point(60, 30, 0), new Point(0, 0, 0));
+        for (int i = 0; i < 20; i++) {
+            int index = i;
+            builder.addDynamic(frame -> orbiter(index, frame));
+        }
+        builder.build().render("animation/orbit");
+
+        assertThrows(MissingResourceException.class, () -> Animation.getBuilder().setScene(staticScene()).build(),
+                "an animation needs a camera, frames and keyframes");
+    }
+}
@@ -9,6 +9,8 @@ import scene.Scene;
 
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.*;
+
 class BlackboardTests {
     /**
      * The builder for the Blackboard used in the tests
@@ -63,6 +65,66 @@ class BlackboardTests {
         makeScene(rays,"Blackboard_Circle");
     }
 
+    /**
+     * Test for the lens offsets of the joint pixel and lens sample set in the Blackboard
+     */
+    @Test
+    public void lensOffsetsTest()
+    {
+        Blackboard blackboard = blackboardBuilder.setMethod(Blackboard.MethodsOfPoints.JITTERED).build();
+        List<Ray> rays = blackboard.constructOffsets(0.5, true).stream()
+                .map(o -> new Ray(Point.ZERO, new Vector(o[0], o[1], distance).normalize()))
+                .toList();
+        makeScene(rays,"Blackboard_Lens_Offsets");
+    }
+
+    /**
+     * Test for the packet size in the Blackboard: packets are used automatically
+     */
+    @Test
+    public void packetSizeTest()
+    {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: by default rays are traced in packets of 16
+        assertEquals(16, Blackboard.getBuilder().build().getPacketSize(), "packets must be on by default");
+        // TC02: a supported packet size
+        assertEquals(8, Blackboard.getBuilder().setPacketSize(8).build().getPacketSize(), "wrong packet size");
+        // TC03: an unsupported packet size
+        assertThrows(IllegalArgumentException.class, () -> Blackboard.getBuilder().setPacketSize(5),
+                "an unsupported packet size must be rejected");
+    }
+
+    /**
+     * Test for the sample passes of the grid method in the Blackboard:
+     * every pass has different points within the same area
+     */
+    @Test
+    public void gridPassesTest()
+    {
+        Blackboard blackboard = Blackboard.getBuilder().setMethod(Blackboard.MethodsOfPoints.GRID)
+                .setAmountOfRays(16).setGridSize(4).build();
+        List<double[]> first = blackboard.constructOffsets(0.5, false, 0);
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: the first pass is the grid of the cells' centers
+        List<double[]> centers = blackboard.constructOffsets(0.5, false);
+        for (int k = 0; k < first.size(); k++)
+            assertArrayEquals(centers.get(k), first.get(k), 1e-12, "the first pass must be the cells' centers");
+        // TC02: the later passes have other points in the same area
+        for (int pass = 1; pass <= 3; pass++) {
+            List<double[]> offsets = blackboard.constructOffsets(0.5, false, pass);
+            assertEquals(first.size(), offsets.size(), "wrong number of points in pass " + pass);
+            for (int k = 0; k < offsets.size(); k++) {
+                double[] offset = offsets.get(k);
+                assertTrue(Math.abs(offset[0]) <= 0.5 && Math.abs(offset[1]) <= 0.5,
+                        "a point of pass " + pass + " is out of the area");
+                for (int earlier = 0; earlier < pass; earlier++)
+                    for (double[] other : blackboard.constructOffsets(0.5, false, earlier))
+                        assertFalse(offset[0] == other[0] && offset[1] == other[1],
+                                "pass " + pass + " repeats a point of pass " + earlier);
+            }
+        }
+    }
+
     /**
      * Helper function to create a scene with the given rays and name
      * @param rays the rays to use in the scene
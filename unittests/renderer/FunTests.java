@@ -47,6 +47,26 @@ public class FunTests {
         }, "Failed to render image");
     }
 
+    @Test
+    public void instancedDiamonds() {
+        assertDoesNotThrow(() -> {
+            Scene scene = JsonScene.CreateScene("jsonScenes/instancedDiamonds.json");
+            camera
+                    .setResolution(1000, 1000)
+                    .setRayTracer(scene, RayTracerType.VOXEL)
+                    .setDebugPrint(0.1)
+                    .setDirection(new Vector(0, 1, -0.1).normalize(), new Vector(0, 1, 10).normalize())
+                    .setLocation(new Point(0, -350, 45))
+                    .setVpDistance(500)
+                    .setVpSize(150, 150)
+                    .setMultithreading(-1)
+                    .build()
+                    .renderImage()
+                    .writeToImage("instanced diamonds");
+
+        }, "Failed to render image");
+    }
+
     @Test
     public void crown() {
         assertDoesNotThrow(() -> {
@@ -472,102 +492,100 @@ public class FunTests {
         double outerDiskRadius = innerDiskRadius + 10;
         double frameAngleShift = Math.PI * 2 / numFrames;
 
-        for (int frame = 0; frame < numFrames; frame++) {
-            Scene scene = new Scene("BlackHole_Frame_" + frame)
-                    .setBackground(new Color(5, 5, 15))
-                    .setAmbientLight(new AmbientLight(new Color(25, 25, 35)));
+        // The static geometries: the black hole and the stars
+        Scene scene = new Scene("BlackHole")
+                .setBackground(new Color(5, 5, 15))
+                .setAmbientLight(new AmbientLight(new Color(25, 25, 35)));
 
-            // Central black hole (perfect reflector to simulate light bending)
-            scene.geometries.add(
-                    new Sphere(new Point(0, 0, 0), blackHoleRadius)
-                            .setEmission(Color.BLACK)
-                            .setMaterial(new Material()
-                                    .setKD(0.0)
-                                    .setKR(1.0)
-                            )
-            );
+        // Central black hole (perfect reflector to simulate light bending)
+        scene.geometries.add(
+                new Sphere(new Point(0, 0, 0), blackHoleRadius)
+                        .setEmission(Color.BLACK)
+                        .setMaterial(new Material()
+                                .setKD(0.0)
+                                .setKR(1.0)
+                        )
+        );
 
-            Random rand = new Random(42);
-
-            // Accretion disk (animated glowing particles)
-            for (int ring = 0; ring < numRings; ring++) {
-                double radius = innerDiskRadius + ring * ((outerDiskRadius - innerDiskRadius) / (numRings - 1));
-                for (int i = 0; i < spheresPerRing; i++) {
-                    double angle = i * 2 * Math.PI / spheresPerRing + frame * frameAngleShift * 0.5;
-                    double x = radius * Math.cos(angle);
-                    double z = radius * Math.sin(angle);
-
-                    // Random rich glowing color
-                    Color glow = new Color(
-                            180 + rand.nextInt(60),
-                            80 + rand.nextInt(100),
-                            30 + rand.nextInt(80)
-                    );
-
-                    // Random reflective/transmissive disk particles
-                    Material mat = new Material()
-                            .setKD(0.4)
-                            .setKS(0.8)
-                            .setShininess(120)
-                            .setKR(rand.nextDouble() < 0.2 ? 0.5 : 0)
-                            .setKT(rand.nextDouble() < 0.2 ? 0.5 : 0);
-
-                    scene.geometries.add(
-                            new Sphere(new Point(x, 0, z), 0.8)
-                                    .setEmission(glow)
-                                    .setMaterial(mat)
-                    );
-                }
-            }
+        Random rand = new Random(42);
+        Animation.Builder animation = Animation.getBuilder();
 
-            // Stars and cosmic depth
-            for (int i = 0; i < 150; i++) {
-                double x = -120 + rand.nextDouble() * 240;
-                double y = -100 + rand.nextDouble() * 200;
-                double z = -120 + rand.nextDouble() * 240;
+        // Accretion disk (animated glowing particles), the dynamic geometries
+        for (int ring = 0; ring < numRings; ring++) {
+            double radius = innerDiskRadius + ring * ((outerDiskRadius - innerDiskRadius) / (numRings - 1));
+            for (int i = 0; i < spheresPerRing; i++) {
+                double startAngle = i * 2 * Math.PI / spheresPerRing;
 
-                Color starColor = new Color(
-                        100 + rand.nextInt(155),
-                        100 + rand.nextInt(155),
-                        200 + rand.nextInt(55)
+                // Random rich glowing color
+                Color glow = new Color(
+                        180 + rand.nextInt(60),
+                        80 + rand.nextInt(100),
+                        30 + rand.nextInt(80)
                 );
 
-                scene.geometries.add(
-                        new Sphere(new Point(x, y, z), 0.2)
-                                .setEmission(starColor)
-                                .setMaterial(new Material().setKA(1))
-                );
+                // Random reflective/transmissive disk particles
+                Material mat = new Material()
+                        .setKD(0.4)
+                        .setKS(0.8)
+                        .setShininess(120)
+                        .setKR(rand.nextDouble() < 0.2 ? 0.5 : 0)
+                        .setKT(rand.nextDouble() < 0.2 ? 0.5 : 0);
+
+                animation.addDynamic(frame -> {
+                    double angle = startAngle + frame * frameAngleShift * 0.5;
+                    return new Sphere(new Point(radius * Math.cos(angle), 0, radius * Math.sin(angle)), 0.8)
+                            .setEmission(glow)
+                            .setMaterial(mat);
+                });
             }
+        }
 
-            // Multi-directional lighting to simulate lensing and galactic glow
-            scene.lights.addAll(List.of(
-                    new PointLight(new Color(255, 200, 255), new Point(50, 0, -50)).setKl(0.01).setKq(0.001),
-                    new PointLight(new Color(255, 150, 150), new Point(-50, 30, -50)).setKl(0.01).setKq(0.002),
-                    new PointLight(new Color(180, 220, 255), new Point(70, 40, 40)).setKl(0.01).setKq(0.0015),
-                    new PointLight(new Color(120, 120, 255), new Point(-70, -50, 70)).setKl(0.01).setKq(0.002)
-            ));
+        // Stars and cosmic depth
+        for (int i = 0; i < 150; i++) {
+            double x = -120 + rand.nextDouble() * 240;
+            double y = -100 + rand.nextDouble() * 200;
+            double z = -120 + rand.nextDouble() * 240;
 
-            // Camera rotation
-            double cameraAngle = frame * frameAngleShift;
-            double camX = 40 * Math.cos(cameraAngle);
-            double camZ = 40 * Math.sin(cameraAngle);
-            Point camLocation = new Point(camX, 15, camZ);
-            Vector camDirection = new Point(0, 0, 0).subtract(camLocation).normalize();
+            Color starColor = new Color(
+                    100 + rand.nextInt(155),
+                    100 + rand.nextInt(155),
+                    200 + rand.nextInt(55)
+            );
 
-            Camera.getBuilder()
-                    .setRayTracer(scene, RayTracerType.VOXEL)
-                    .setMultithreading(-1)
-                    .setDebugPrint(0)
-                    .setLocation(camLocation)
-                    .setDirection(camDirection)
-                    .setVpDistance(50)
-                    .setVpSize(100, 100)
-                    .setResolution(600, 600)
-                    .build()
-                    .renderImage()
-                    .writeToImage("Video_BlackHole/BlackHole_Frame_" + frame);
+            scene.geometries.add(
+                    new Sphere(new Point(x, y, z), 0.2)
+                            .setEmission(starColor)
+                            .setMaterial(new Material().setKA(1))
+            );
+        }
+
+        // Multi-directional lighting to simulate lensing and galactic glow
+        scene.lights.addAll(List.of(
+                new PointLight(new Color(255, 200, 255), new Point(50, 0, -50)).setKl(0.01).setKq(0.001),
+                new PointLight(new Color(255, 150, 150), new Point(-50, 30, -50)).setKl(0.01).setKq(0.002),
+                new PointLight(new Color(180, 220, 255), new Point(70, 40, 40)).setKl(0.01).setKq(0.0015),
+                new PointLight(new Color(120, 120, 255), new Point(-70, -50, 70)).setKl(0.01).setKq(0.002)
+        ));
+
+        // Camera rotation, a keyframe per frame along the circle
+        for (int frame = 0; frame < numFrames; frame++) {
+            double cameraAngle = frame * frameAngleShift;
+            animation.addCameraKeyframe(frame,
+                    new Point(40 * Math.cos(cameraAngle), 15, 40 * Math.sin(cameraAngle)), new Point(0, 0, 0));
         }
 
+        animation.setScene(scene)
+                .setRayTracer(RayTracerType.VOXEL)
+                .setCamera(Camera.getBuilder()
+                        .setMultithreading(-1)
+                        .setDebugPrint(0)
+                        .setVpDistance(50)
+                        .setVpSize(100, 100)
+                        .setResolution(600, 600))
+                .setFrames(numFrames)
+                .build()
+                .render("Video_BlackHole/BlackHole_Frame");
+
         try {
             ImagesToVideo.createVideoFromImages("Video_BlackHole", "Video_BlackHole/TheVideo/blackhole", 1, false);
         } catch (Exception e) {
@@ -233,4 +233,33 @@ class LightsTests {
               .renderImage()
               .writeToImage("Light/trianglesMultipleLights");
    }
+   /** Produce a picture of a sphere lighted by many lights, sampled stochastically per shading point */
+   @Test
+   void sphereStochasticLights() {
+      scene1.geometries.add(sphere);
+      for (int i = 0; i < 60; i++) {
+         double angle = Math.toRadians(i * 6);
+         Color color = new Color(40 + 3 * i, 240 - 3 * i, 120).reduce(10);
+         if (i % 3 == 0)
+            scene1.lights.add(new PointLight(color, new Point(200 * Math.cos(angle), 200 * Math.sin(angle), 100))
+                    .setKl(0.0004).setKq(0.00002));
+         else if (i % 3 == 1)
+            scene1.lights.add(new SpotLight(color, new Point(150 * Math.cos(angle), 150 * Math.sin(angle), 150),
+                    new Vector(-Math.cos(angle), -Math.sin(angle), -1)).setKl(0.0004).setKq(0.00002));
+         else
+            scene1.lights.add(new DirectionalLight(color.reduce(10), new Vector(Math.cos(angle), Math.sin(angle), -1)));
+      }
+
+      camera1.setResolution(500, 500)
+              .setBlackboard(Blackboard.getBuilder()
+                      .setStochasticLights(true)
+                      .setLightSamples(4)
+                      .setAntiAliasing(true)
+                      .setAmountOfRays(16)
+                      .setGridSize(4)
+                      .build())
+              .build()
+              .renderImage()
+              .writeToImage("Light/sphereStochasticLights");
+   }
 }
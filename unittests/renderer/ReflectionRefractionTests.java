@@ -11,6 +11,8 @@ import scene.Scene;
 
 import java.util.Random;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 /**
  * Tests for reflection and transparency functionality, test for partial
  * shadows
@@ -52,6 +54,52 @@ class ReflectionRefractionTests {
     /** Produce a picture of a sphere lighted by a spot light */
     @Test
     void twoSpheresOnMirrors() {
+        prepareTwoSpheresOnMirrors();
+        cameraBuilder
+                .setMultithreading(-1)
+                .setLocation(new Point(0, 0, 10000)) //
+                .setDirection(Point.ZERO, Vector.AXIS_Y) //
+                .setVpDistance(10000).setVpSize(2500, 2500) //
+                .setResolution(500, 500) //
+                .build() //
+                .renderImage() //
+                .writeToImage("Reflections/reflectionTwoSpheresMirrored");
+    }
+
+    /**
+     * Test wavefront (breadth-first) tracing of the mirrors scene: the colors of a batch of rays
+     * traced breadth-first must be the same as tracing each ray recursively, with both ray tracers,
+     * and the picture is produced with wavefront tracing
+     */
+    @Test
+    void twoSpheresOnMirrorsWavefront() {
+        prepareTwoSpheresOnMirrors();
+        Blackboard blackboard = Blackboard.getBuilder().setWavefront(true).build();
+        Point eye = new Point(0, 0, 10000);
+        Ray[] rays = new Ray[400];
+        for (int i = 0; i < rays.length; ++i)
+            rays[i] = new Ray(eye, new Point(i % 20 * 125 - 1250, i / 20 * 125 - 1250, 0).subtract(eye));
+        for (RayTracerBase tracer : new RayTracerBase[]{
+                new SimpleRayTracer(scene, blackboard), new VoxelRayTracer(scene, blackboard)}) {
+            Color[] colors = tracer.traceWavefront(rays);
+            for (int i = 0; i < rays.length; ++i)
+                assertEquals(tracer.traceRay(rays[i]), colors[i], "wavefront color differs for ray " + i);
+        }
+
+        cameraBuilder
+                .setBlackboard(blackboard)
+                .setMultithreading(-1)
+                .setLocation(eye) //
+                .setDirection(Point.ZERO, Vector.AXIS_Y) //
+                .setVpDistance(10000).setVpSize(2500, 2500) //
+                .setResolution(500, 500) //
+                .build() //
+                .renderImage() //
+                .writeToImage("Reflections/reflectionTwoSpheresMirroredWavefront");
+    }
+
+    /** Prepares the scene of two spheres on mirrors, lighted by a spot light */
+    private void prepareTwoSpheresOnMirrors() {
         scene.geometries.add( //
                 new Sphere(new Point(-950, -900, -1000), 400d).setEmission(new Color(0, 50, 100)) //
                         .setMaterial(new Material().setKD(0.25).setKS(0.25).setShininess(20) //
@@ -69,16 +117,6 @@ class ReflectionRefractionTests {
         scene.setAmbientLight(new AmbientLight(new Color(26, 26, 26)));
         scene.lights.add(new SpotLight(new Color(1020, 400, 400), new Point(-750, -750, -150), new Vector(-1, -1, -4)) //
                 .setKl(0.00001).setKq(0.000005));
-
-        cameraBuilder
-                .setMultithreading(-1)
-                .setLocation(new Point(0, 0, 10000)) //
-                .setDirection(Point.ZERO, Vector.AXIS_Y) //
-                .setVpDistance(10000).setVpSize(2500, 2500) //
-                .setResolution(500, 500) //
-                .build() //
-                .renderImage() //
-                .writeToImage("Reflections/reflectionTwoSpheresMirrored");
     }
 
     /**
@@ -1,6 +1,7 @@
 package renderer;
 
 import static java.awt.Color.BLUE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import org.junit.jupiter.api.Test;
 
@@ -125,4 +126,73 @@ class ShadowTests {
               .renderImage() //
               .writeToImage("Shadow/shadowTrianglesSphere");
    }
+
+   /**
+    * Test the shadows of unbounded geometries with the voxel ray tracer: a ground plane below the bounded
+    * geometries and a partially transparent tube, in the grid as a bounded proxy, must shade and cast shadows,
+    * inside and far outside the bounded geometries' bounds, exactly as with the simple ray tracer
+    */
+   @Test
+   void unboundedShadowsVoxel() {
+      scene.geometries.add( //
+              sphere, //
+              new Triangle(new Point(-70, -40, -150), new Point(70, -40, -150), new Point(0, 60, -250)) //
+                      .setMaterial(trMaterial), //
+              new Plane(new Point(0, -100, 0), Vector.AXIS_Y) //
+                      .setEmission(new Color(20, 20, 20)).setMaterial(trMaterial), //
+              new Tube(20, new Ray(new Point(100, 0, -150), Vector.AXIS_Y)) //
+                      .setEmission(new Color(40, 0, 0)) //
+                      .setMaterial(new Material().setKD(0.5).setKT(0.5)));
+      scene.setAmbientLight(new AmbientLight(new Color(38, 38, 38)));
+      scene.lights.add(new PointLight(new Color(400, 400, 400), new Point(300, 300, 100)).setKl(1E-5).setKq(1E-7));
+
+      Blackboard blackboard = Blackboard.getBuilder().build();
+      RayTracerBase simple = new SimpleRayTracer(scene, blackboard);
+      RayTracerBase voxel = new VoxelRayTracer(scene, blackboard);
+      Point eye = new Point(0, 0, 1000);
+      for (int i = 0; i < 40; ++i)
+         for (int j = 0; j < 40; ++j) {
+            Ray ray = new Ray(eye, new Vector(i * 0.05 - 1, j * 0.02 - 0.5, -1));
+            assertEquals(simple.traceRay(ray), voxel.traceRay(ray), "wrong color for ray " + i + ", " + j);
+         }
+   }
+
+   /**
+    * Test the unbounded geometries with the voxel ray tracer when a ground plane cuts through the bounded
+    * geometries: the plane spans the whole grid, so it is tested along the rays instead of in the grid,
+    * while the tube stays in the grid as a bounded proxy. The colors of single rays and of packets, from
+    * outside and from inside the bounded geometries' bounds, must be exactly as with the simple ray tracer
+    */
+   @Test
+   void groundPlaneVoxel() {
+      scene.geometries.add( //
+              sphere, //
+              new Triangle(new Point(-70, -40, -150), new Point(70, -40, -150), new Point(0, 60, -250)) //
+                      .setMaterial(trMaterial), //
+              new Plane(new Point(0, -30, 0), Vector.AXIS_Y) //
+                      .setEmission(new Color(20, 20, 20)).setMaterial(trMaterial), //
+              new Tube(20, new Ray(new Point(100, 0, -150), Vector.AXIS_Y)) //
+                      .setEmission(new Color(40, 0, 0)) //
+                      .setMaterial(new Material().setKD(0.5).setKT(0.5)));
+      scene.setAmbientLight(new AmbientLight(new Color(38, 38, 38)));
+      scene.lights.add(new PointLight(new Color(400, 400, 400), new Point(300, 300, 100)).setKl(1E-5).setKq(1E-7));
+
+      Blackboard blackboard = Blackboard.getBuilder().build();
+      RayTracerBase simple = new SimpleRayTracer(scene, blackboard);
+      RayTracerBase voxel = new VoxelRayTracer(scene, blackboard);
+      for (Point eye : new Point[]{new Point(0, 0, 1000), new Point(0, 20, -120)}) {
+         Ray[] packet = new Ray[16];
+         for (int i = 0; i < 40; ++i)
+            for (int j = 0; j < 40; ++j) {
+               Ray ray = new Ray(eye, new Vector(i * 0.05 - 1, j * 0.02 - 0.5, -1));
+               assertEquals(simple.traceRay(ray), voxel.traceRay(ray), "wrong color for ray " + i + ", " + j);
+               packet[(i * 40 + j) % 16] = ray;
+               if ((i * 40 + j) % 16 == 15) {
+                  Color[] expected = simple.traceRays(packet), colors = voxel.traceRays(packet);
+                  for (int k = 0; k < 16; ++k)
+                     assertEquals(expected[k], colors[k], "wrong color for lane " + k + " of a packet");
+               }
+            }
+      }
+   }
 }
@@ -9,9 +9,14 @@ import org.junit.jupiter.api.Test;
 import primitives.*;
 import scene.Scene;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
 
 import static java.awt.Color.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Test rendering an improved images
@@ -427,4 +432,278 @@ class SuperSamplingTests {
       }
    }
 
+   /**
+    * Test for image-space adaptive anti-aliasing
+    * Renders spheres over a plane with one ray per pixel, and refines only the pixels
+    * on edges and shadow boundaries with anti-aliasing rays.
+    */
+   @Test
+   void Image_Space_Adaptive_Test() {
+      scene.setAmbientLight(new AmbientLight(new Color(30, 30, 30)));
+      scene.geometries.add(
+              new Plane(new Point(0, -20, 0), new Vector(0, 1, 0))
+                      .setEmission(new Color(40, 40, 40))
+                      .setMaterial(new Material().setKD(0.5).setKS(0.3).setShininess(20)),
+              new Sphere(new Point(-25, 0, -50), 20)
+                      .setEmission(new Color(120, 20, 20))
+                      .setMaterial(new Material().setKD(0.5).setKS(0.5).setShininess(60)),
+              new Sphere(new Point(25, 0, -80), 20)
+                      .setEmission(new Color(20, 20, 120))
+                      .setMaterial(new Material().setKD(0.5).setKS(0.5).setShininess(60)),
+              new Triangle(new Point(-60, -20, -120), new Point(60, -20, -120), new Point(0, 60, -140))
+                      .setEmission(new Color(20, 100, 20))
+                      .setMaterial(new Material().setKD(0.5).setKS(0.2).setShininess(30))
+      );
+      scene.lights.add(new SpotLight(new Color(500, 500, 500), new Point(60, 80, 40), new Vector(-1, -1.2, -1.5))
+              .setKl(0.0001).setKq(0.00001));
+
+      Blackboard blackboard = new Blackboard.Builder()
+              .setAntiAliasing(true)
+              .setImageSpaceAdaptive(true)
+              .setContrastThreshold(8)
+              .setRefinementRounds(3)
+              .setAmountOfRays(36)
+              .setGridSize(6)
+              .build();
+
+      cameraBuilder
+              .setBlackboard(blackboard)
+              .setRayTracer(scene, RayTracerType.VOXEL)
+              .setMultithreading(threadNum)
+              .setLocation(new Point(0, 10, 150))
+              .setDirection(new Vector(0, -0.05, -1), new Vector(0, 1, -0.05))
+              .setVpDistance(150)
+              .setVpSize(200, 200)
+              .setResolution(600, 600)
+              .build()
+              .renderImage()
+              .writeToImage("superSampling/Image_Space_Adaptive");
+   }
+
+   /**
+    * Test for image-space adaptive anti-aliasing with depth of field:
+    * the single-ray pass samples the lens too, so the pixels near a defocused edge are blurred
+    * even when they are not flagged for refinement, instead of keeping a sharp pinhole sample.
+    * @throws IOException if the rendered image cannot be read
+    */
+   @Test
+   void Image_Space_Adaptive_Depth_Of_Field_Test() throws IOException {
+      // a white wall on the left half of the view, far behind the focus distance
+      scene.geometries.add(
+              new Polygon(new Point(-1000, -1000, -400), new Point(0, -1000, -400),
+                      new Point(0, 1000, -400), new Point(-1000, 1000, -400))
+                      .setEmission(new Color(255, 255, 255)));
+
+      Blackboard blackboard = new Blackboard.Builder()
+              .setAntiAliasing(true)
+              .setDepthOfField(true)
+              .setImageSpaceAdaptive(true)
+              .setContrastThreshold(8)
+              .setRefinementRounds(2)
+              .setAmountOfRays(16)
+              .setGridSize(4)
+              .build();
+
+      cameraBuilder
+              .setBlackboard(blackboard)
+              .setRayTracer(scene, RayTracerType.SIMPLE)
+              .setMultithreading(threadNum)
+              .setLocation(Point.ZERO)
+              .setDirection(new Vector(0, 0, -1), Vector.AXIS_Y)
+              .setVpDistance(100)
+              .setVpSize(100, 100)
+              .setResolution(100, 100)
+              .setFocusPointDistance(100)
+              .setAperture(10)
+              .build()
+              .renderImage()
+              .writeToImage("superSampling/Image_Space_Adaptive_Depth_Of_Field");
+
+      // the edge is blurred over about 7 pixels on each side; a pinhole image is black right of column 50,
+      // and the pixels two columns or more from the edge are never flagged for refinement
+      BufferedImage image = ImageIO.read(
+              new File(System.getProperty("user.dir") + "/images/superSampling/Image_Space_Adaptive_Depth_Of_Field.png"));
+      long lit = 0;
+      for (int y = 0; y < 100; ++y)
+         for (int x = 52; x < 56; ++x)
+            if ((image.getRGB(x, y) & 0xFFFFFF) != 0) ++lit;
+      assertTrue(lit > 20, "the defocused edge must be blurred, not pinhole-sharp (" + lit + " lit pixels)");
+   }
+
+   /**
+    * Test for the reproducibility of combined anti-aliasing and depth of field with GRID sampling.
+    * The pairing of the sub-pixel and lens samples is seeded by the pixel, so two multithreaded
+    * renders of the same scene are identical.
+    * @throws IOException if the rendered images cannot be read
+    */
+   @Test
+   void Grid_Depth_Of_Field_Reproducible_Test() throws IOException {
+      scene.geometries.add(
+              new Sphere(new Point(-20, 0, -150), 15).setEmission(new Color(200, 60, 40)),
+              new Sphere(new Point(20, 0, -50), 15).setEmission(new Color(40, 60, 200)));
+
+      Blackboard blackboard = new Blackboard.Builder()
+              .setMethod(Blackboard.MethodsOfPoints.GRID)
+              .setAntiAliasing(true)
+              .setDepthOfField(true)
+              .setAmountOfRays(16)
+              .setGridSize(4)
+              .build();
+
+      cameraBuilder
+              .setBlackboard(blackboard)
+              .setRayTracer(scene, RayTracerType.SIMPLE)
+              .setMultithreading(threadNum)
+              .setLocation(Point.ZERO)
+              .setDirection(new Vector(0, 0, -1), Vector.AXIS_Y)
+              .setVpDistance(100)
+              .setVpSize(100, 100)
+              .setResolution(60, 60)
+              .setFocusPointDistance(100)
+              .setAperture(10);
+      String[] names = {"superSampling/Grid_Depth_Of_Field_1", "superSampling/Grid_Depth_Of_Field_2"};
+      for (String name : names)
+         cameraBuilder.build().renderImage().writeToImage(name);
+
+      BufferedImage first = ImageIO.read(new File(System.getProperty("user.dir") + "/images/" + names[0] + ".png"));
+      BufferedImage second = ImageIO.read(new File(System.getProperty("user.dir") + "/images/" + names[1] + ".png"));
+      for (int y = 0; y < 60; ++y)
+         for (int x = 0; x < 60; ++x)
+            assertEquals(first.getRGB(x, y), second.getRGB(x, y),
+                    "the renders differ at pixel (" + x + ", " + y + ")");
+   }
+
+   /**
+    * Test for variance-driven sample allocation
+    * Renders soft shadows with depth of field using a total sample budget of 24 samples per pixel
+    * on average, which is spent mostly on the blurred and penumbra tiles.
+    */
+   @Test
+   void Variance_Driven_Test() {
+      scene.setAmbientLight(new AmbientLight(new Color(30, 30, 30)));
+      scene.geometries.add(
+              new Plane(new Point(0, -20, 0), new Vector(0, 1, 0))
+                      .setEmission(new Color(40, 40, 40))
+                      .setMaterial(new Material().setKD(0.5).setKS(0.3).setShininess(20)),
+              new Sphere(new Point(-25, 0, -50), 20)
+                      .setEmission(new Color(120, 20, 20))
+                      .setMaterial(new Material().setKD(0.5).setKS(0.5).setShininess(60)),
+              new Sphere(new Point(25, 0, -120), 20)
+                      .setEmission(new Color(20, 20, 120))
+                      .setMaterial(new Material().setKD(0.5).setKS(0.5).setShininess(60))
+      );
+      scene.lights.add(new PointLight(new Color(500, 500, 500), new Point(60, 80, 40), 10)
+              .setKl(0.0001).setKq(0.00001));
+
+      int resolution = 400;
+      Blackboard blackboard = new Blackboard.Builder()
+              .setAntiAliasing(true)
+              .setDepthOfField(true)
+              .setSoftShadows(true)
+              .setAmountOfRays(4)
+              .setGridSize(2)
+              .setVarianceDriven(true)
+              .setSampleBudget(24L * resolution * resolution)
+              .setTargetNoise(1)
+              .build();
+
+      cameraBuilder
+              .setBlackboard(blackboard)
+              .setRayTracer(scene, RayTracerType.VOXEL)
+              .setMultithreading(threadNum)
+              .setLocation(new Point(0, 10, 150))
+              .setDirection(new Vector(0, -0.05, -1), new Vector(0, 1, -0.05))
+              .setVpDistance(150)
+              .setVpSize(200, 200)
+              .setFocusPointDistance(200)
+              .setAperture(2)
+              .setResolution(resolution, resolution)
+              .build()
+              .renderImage()
+              .writeToImage("superSampling/Variance_Driven");
+   }
+
+   /**
+    * Test for combined anti-aliasing and depth of field
+    * Every pixel is rendered with one joint set of sub-pixel and lens samples.
+    */
+   @Test
+   void Anti_Aliasing_Depth_Of_Field_Test() {
+      scene.setAmbientLight(new AmbientLight(new Color(30, 30, 30)));
+      for (int k = 0; k < 5; ++k)
+         scene.geometries.add(new Sphere(new Point(-60 + 30 * k, 0, -40 * k), 12)
+                 .setEmission(new Color(40 * k, 60, 200 - 40 * k))
+                 .setMaterial(new Material().setKD(0.5).setKS(0.5).setShininess(60)));
+      scene.geometries.add(new Plane(new Point(0, -12, 0), new Vector(0, 1, 0))
+              .setEmission(new Color(50, 50, 50))
+              .setMaterial(new Material().setKD(0.5)));
+      scene.lights.add(new DirectionalLight(new Color(200, 200, 200), new Vector(-1, -1, -1)));
+
+      Blackboard blackboard = new Blackboard.Builder()
+              .setAntiAliasing(true)
+              .setDepthOfField(true)
+              .setAmountOfRays(36)
+              .setGridSize(6)
+              .build();
+
+      cameraBuilder
+              .setBlackboard(blackboard)
+              .setRayTracer(scene, RayTracerType.VOXEL)
+              .setMultithreading(threadNum)
+              .setLocation(new Point(0, 20, 200))
+              .setDirection(new Vector(0, -0.1, -1), new Vector(0, 1, -0.1))
+              .setVpDistance(150)
+              .setVpSize(150, 150)
+              .setFocusPointDistance(280)
+              .setAperture(3)
+              .setResolution(400, 400)
+              .build()
+              .renderImage()
+              .writeToImage("superSampling/Anti_Aliasing_Depth_Of_Field");
+   }
+
+   /**
+    * Test for decoupled shading of anti-aliased pixels
+    * Renders soft shadows with 64 anti-aliasing rays per pixel, where every pixel shades
+    * each geometry it sees only once.
+    */
+   @Test
+   void Decoupled_Shading_Test() {
+      scene.setAmbientLight(new AmbientLight(new Color(30, 30, 30)));
+      scene.geometries.add(
+              new Plane(new Point(0, -20, 0), new Vector(0, 1, 0))
+                      .setEmission(new Color(40, 40, 40))
+                      .setMaterial(new Material().setKD(0.5).setKS(0.3).setShininess(20)),
+              new Sphere(new Point(-25, 0, -50), 20)
+                      .setEmission(new Color(120, 20, 20))
+                      .setMaterial(new Material().setKD(0.5).setKS(0.5).setShininess(60)),
+              new Sphere(new Point(25, 0, -80), 20)
+                      .setEmission(new Color(20, 20, 120))
+                      .setMaterial(new Material().setKD(0.5).setKS(0.5).setShininess(60))
+      );
+      scene.lights.add(new PointLight(new Color(400, 400, 400), new Point(60, 80, 40), 8)
+              .setKl(0.0001).setKq(0.00001));
+
+      Blackboard blackboard = new Blackboard.Builder()
+              .setAntiAliasing(true)
+              .setSoftShadows(true)
+              .setDecoupledShading(true)
+              .setAmountOfRays(64)
+              .setGridSize(8)
+              .build();
+
+      cameraBuilder
+              .setBlackboard(blackboard)
+              .setRayTracer(scene, RayTracerType.VOXEL)
+              .setMultithreading(threadNum)
+              .setLocation(new Point(0, 10, 150))
+              .setDirection(new Vector(0, -0.05, -1), new Vector(0, 1, -0.05))
+              .setVpDistance(150)
+              .setVpSize(200, 200)
+              .setResolution(400, 400)
+              .build()
+              .renderImage()
+              .writeToImage("superSampling/Decoupled_Shading");
+   }
+
 }
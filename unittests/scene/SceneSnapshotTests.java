@@ -0,0 +1,67 @@
+package scene;
+
+import geometries.*;
+import lighting.AmbientLight;
+import lighting.PointLight;
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the compiled snapshots of scenes
+ */
+class SceneSnapshotTests {
+    /**
+     * Test method for {@link scene.Scene#compile()}.
+     */
+    @Test
+    void testCompile() {
+        Sphere sphere = new Sphere(new Point(0, 0, 0), 1);
+        Triangle triangle = new Triangle(new Point(2, 0, 0), new Point(3, 0, 0), new Point(2, 1, 0));
+        Plane plane = new Plane(new Point(0, -1, 0), Vector.AXIS_Y);
+        Geometries nested = new Geometries(List.of(triangle, plane));
+        Scene scene = new Scene("Test scene").setBackground(new Color(10, 20, 30))
+                .setAmbientLight(new AmbientLight(new Color(5, 5, 5)));
+        scene.geometries.add(sphere, nested);
+        scene.lights.add(new PointLight(new Color(100, 100, 100), new Point(0, 10, 0)));
+        SceneSnapshot snapshot = scene.compile();
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: the nested collections are flattened into primitives, in order
+        assertEquals(List.of(sphere, triangle, plane), snapshot.getGeometries().getGeometries(),
+                "wrong primitives of the snapshot");
+        // TC02: the bounded and unbounded primitives and the bounds
+        assertEquals(List.of(sphere, triangle), snapshot.getBoundedPrimitives(), "wrong bounded primitives");
+        assertEquals(2, snapshot.getBoundedPrimitiveBounds().size(), "wrong number of bounding boxes");
+        assertEquals(List.of(plane), snapshot.getUnboundedPrimitives(), "wrong unbounded primitives");
+        assertEquals(new Point(-1, -1, -1), snapshot.getBounds().getMin(), "wrong bounds");
+        assertEquals(new Point(3, 1, 1), snapshot.getBounds().getMax(), "wrong bounds");
+        // TC03: the scene's settings
+        assertEquals(1, snapshot.getLights().size(), "wrong number of lights");
+        assertSame(scene.background, snapshot.getBackground(), "wrong background");
+        assertSame(scene.ambientLight, snapshot.getAmbientLight(), "wrong ambient light");
+
+        // =============== Boundary Values Tests ==================
+        // TC10: changing the scene afterward does not change the snapshot, also in a nested collection
+        scene.geometries.add(new Sphere(new Point(10, 0, 0), 1));
+        nested.add(new Sphere(new Point(-10, 0, 0), 1));
+        scene.lights.add(new PointLight(new Color(100, 100, 100), new Point(0, -10, 0)));
+        assertEquals(2, snapshot.getBoundedPrimitives().size(), "the snapshot must not see added geometries");
+        assertEquals(1, snapshot.getLights().size(), "the snapshot must not see added lights");
+        assertEquals(3, snapshot.getGeometries().getGeometries().size(), "the snapshot must not see added geometries");
+        Ray toAdded = new Ray(new Point(-10, 0, 5), new Vector(0, 0, -1));
+        assertNotNull(scene.geometries.calculateIntersections(toAdded), "the ray must cross the added geometry");
+        assertNull(snapshot.getGeometries().calculateIntersections(toAdded),
+                "the snapshot must not see geometries added to a nested collection");
+        // TC11: the snapshot's lists cannot be changed
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.getLights().clear(),
+                "the lights must not be changeable");
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.getBoundedPrimitives().clear(),
+                "the primitives must not be changeable");
+        // TC12: an empty scene has no bounds
+        assertNull(new Scene("Empty").compile().getBounds(), "an empty scene has no bounds");
+    }
+}
@@ -0,0 +1,105 @@
+package acceleration;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import static acceleration.IntersectionKernels.EPSILON;
+
+/**
+ * Implementation of the batched intersection kernels with the JDK Vector API.
+ * Processes as many primitives per step as the platform's preferred vector shape holds
+ * (4 doubles with AVX2, 8 with AVX-512), and the remaining tail with the scalar kernels.
+ * Loaded by {@link IntersectionKernels#get()} only when the {@code jdk.incubator.vector}
+ * module is available. Kept apart from the main sources and compiled with
+ * {@code --add-modules jdk.incubator.vector}, against the classes of the main sources.
+ */
+public final class VectorKernels implements IntersectionKernels {
+    /** The preferred vector shape of the platform */
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    /** A vector of misses */
+    private static final DoubleVector MISS = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+    /** A vector of zeros */
+    private static final DoubleVector ZERO = DoubleVector.zero(SPECIES);
+
+    @Override
+    public void spheres(PackedRay ray, double[] cx, double[] cy, double[] cz, double[] r2, int count, double[] t) {
+        int bound = SPECIES.loopBound(count);
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            DoubleVector lx = DoubleVector.fromArray(SPECIES, cx, i).sub(ray.ox);
+            DoubleVector ly = DoubleVector.fromArray(SPECIES, cy, i).sub(ray.oy);
+            DoubleVector lz = DoubleVector.fromArray(SPECIES, cz, i).sub(ray.oz);
+            DoubleVector rr = DoubleVector.fromArray(SPECIES, r2, i);
+            DoubleVector tca = lx.mul(ray.dx).add(ly.mul(ray.dy)).add(lz.mul(ray.dz));
+            DoubleVector thc2 = rr.sub(lx.mul(lx).add(ly.mul(ly)).add(lz.mul(lz)).sub(tca.mul(tca)));
+            VectorMask<Double> hit = thc2.compare(VectorOperators.GE, rr.mul(-EPSILON));
+            DoubleVector thc = thc2.max(ZERO).sqrt();
+            DoubleVector t0 = tca.sub(thc);
+            DoubleVector t1 = tca.add(thc);
+            VectorMask<Double> front = t0.compare(VectorOperators.GT, -EPSILON);
+            DoubleVector first = t1.blend(t0, front);
+            hit = hit.and(first.compare(VectorOperators.GT, -EPSILON));
+            MISS.blend(first.max(ZERO), hit).intoArray(t, i);
+        }
+        ScalarKernels.spheres(ray, cx, cy, cz, r2, bound, count, t);
+    }
+
+    @Override
+    public void triangles(PackedRay ray, double[] ax, double[] ay, double[] az,
+                          double[] e1x, double[] e1y, double[] e1z,
+                          double[] e2x, double[] e2y, double[] e2z, int count, double[] t) {
+        int bound = SPECIES.loopBound(count);
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            DoubleVector ux = DoubleVector.fromArray(SPECIES, e1x, i);
+            DoubleVector uy = DoubleVector.fromArray(SPECIES, e1y, i);
+            DoubleVector uz = DoubleVector.fromArray(SPECIES, e1z, i);
+            DoubleVector wx = DoubleVector.fromArray(SPECIES, e2x, i);
+            DoubleVector wy = DoubleVector.fromArray(SPECIES, e2y, i);
+            DoubleVector wz = DoubleVector.fromArray(SPECIES, e2z, i);
+
+            DoubleVector hx = wz.mul(ray.dy).sub(wy.mul(ray.dz));
+            DoubleVector hy = wx.mul(ray.dz).sub(wz.mul(ray.dx));
+            DoubleVector hz = wy.mul(ray.dx).sub(wx.mul(ray.dy));
+            DoubleVector a = ux.mul(hx).add(uy.mul(hy)).add(uz.mul(hz));
+            VectorMask<Double> hit = a.abs().compare(VectorOperators.GE, EPSILON * EPSILON);
+            DoubleVector f = DoubleVector.broadcast(SPECIES, 1).div(a);
+
+            DoubleVector sx = DoubleVector.fromArray(SPECIES, ax, i).neg().add(ray.ox);
+            DoubleVector sy = DoubleVector.fromArray(SPECIES, ay, i).neg().add(ray.oy);
+            DoubleVector sz = DoubleVector.fromArray(SPECIES, az, i).neg().add(ray.oz);
+            DoubleVector u = f.mul(sx.mul(hx).add(sy.mul(hy)).add(sz.mul(hz)));
+            DoubleVector qx = sy.mul(uz).sub(sz.mul(uy));
+            DoubleVector qy = sz.mul(ux).sub(sx.mul(uz));
+            DoubleVector qz = sx.mul(uy).sub(sy.mul(ux));
+            DoubleVector v = f.mul(qx.mul(ray.dx).add(qy.mul(ray.dy)).add(qz.mul(ray.dz)));
+            DoubleVector d = f.mul(wx.mul(qx).add(wy.mul(qy)).add(wz.mul(qz)));
+
+            hit = hit.and(u.compare(VectorOperators.GE, -EPSILON))
+                    .and(v.compare(VectorOperators.GE, -EPSILON))
+                    .and(u.add(v).compare(VectorOperators.LE, 1 + EPSILON))
+                    .and(d.compare(VectorOperators.GT, -EPSILON));
+            MISS.blend(d.max(ZERO), hit).intoArray(t, i);
+        }
+        ScalarKernels.triangles(ray, ax, ay, az, e1x, e1y, e1z, e2x, e2y, e2z, bound, count, t);
+    }
+
+    @Override
+    public void boxes(PackedRay ray, double[] minX, double[] minY, double[] minZ,
+                      double[] maxX, double[] maxY, double[] maxZ, int count, double[] t) {
+        int bound = SPECIES.loopBound(count);
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            DoubleVector tx1 = DoubleVector.fromArray(SPECIES, minX, i).sub(ray.ox).mul(ray.ix);
+            DoubleVector tx2 = DoubleVector.fromArray(SPECIES, maxX, i).sub(ray.ox).mul(ray.ix);
+            DoubleVector ty1 = DoubleVector.fromArray(SPECIES, minY, i).sub(ray.oy).mul(ray.iy);
+            DoubleVector ty2 = DoubleVector.fromArray(SPECIES, maxY, i).sub(ray.oy).mul(ray.iy);
+            DoubleVector tz1 = DoubleVector.fromArray(SPECIES, minZ, i).sub(ray.oz).mul(ray.iz);
+            DoubleVector tz2 = DoubleVector.fromArray(SPECIES, maxZ, i).sub(ray.oz).mul(ray.iz);
+            DoubleVector near = tx1.min(tx2).max(ty1.min(ty2)).max(tz1.min(tz2).max(ZERO));
+            DoubleVector far = tx1.max(tx2).min(ty1.max(ty2)).min(tz1.max(tz2));
+            VectorMask<Double> hit = near.compare(VectorOperators.LE, far.mul(1 + EPSILON).add(EPSILON));
+            MISS.blend(near, hit).intoArray(t, i);
+        }
+        ScalarKernels.boxes(ray, minX, minY, minZ, maxX, maxY, maxZ, bound, count, t);
+    }
+}